@@ -1,12 +1,18 @@
 package org.matsim.networkEditor;
 
+import java.util.Arrays;
+
 /**
  * Helper class needed when launching the app. see
  * https://stackoverflow.com/questions/52653836/maven-shade-javafx-runtime-components-are-missing
- * 
+ * With the {@link HeadlessApp#HEADLESS_FLAG} argument the headless mode runs instead, without starting JavaFX
  */
 public class AppLauncher {
     public static void main(String[] args) {
-        App.main(args);
+        if (Arrays.asList(args).contains(HeadlessApp.HEADLESS_FLAG)) {
+            HeadlessApp.main(args);
+        } else {
+            App.main(args);
+        }
     }
 }
@@ -0,0 +1,428 @@
+package org.matsim.networkEditor;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.*;
+
+import org.matsim.api.core.v01.network.Network;
+import org.matsim.api.core.v01.network.Node;
+import org.matsim.core.network.io.NetworkWriter;
+import org.matsim.networkEditor.algorithms.InMemoryNetworkCleaner;
+import org.matsim.networkEditor.algorithms.NetworkDelta;
+import org.matsim.networkEditor.elements.CompactNetwork;
+import org.matsim.networkEditor.elements.NetworkModel;
+import org.matsim.networkEditor.elements.ValidationTableEntry;
+import org.matsim.networkEditor.io.NetworkLoader;
+import org.matsim.networkEditor.io.NetworkSnapshot;
+import org.matsim.networkEditor.io.OsmImportOptions;
+import org.matsim.networkEditor.utils.CachedTransformation;
+import org.matsim.networkEditor.utils.StageTimings;
+import org.matsim.networkEditor.validation.ValidationContext;
+import org.matsim.networkEditor.validation.ValidationEngine;
+import org.matsim.networkEditor.validation.ValidationReport;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Runs the editor without its window, e.g. in nightly pipelines on servers: a network file is read, optionally cropped,
+ * cleaned and validated with the same model and engines as the editor, and written out, possibly in another format or
+ * coordinate system. What was done is described by a JSON report, and the outcome by the exit code
+ */
+public class HeadlessApp {
+    /** The argument that starts the headless mode instead of the editor */
+    public static final String HEADLESS_FLAG = "--headless";
+    /** Exit code of a run that succeeded */
+    public static final int EXIT_OK = 0;
+    /** Exit code of a run whose validation found warnings, with --fail-on-warnings */
+    public static final int EXIT_WARNINGS = 1;
+    /** Exit code of a run with wrong arguments */
+    public static final int EXIT_USAGE = 2;
+    /** Exit code of a run that failed, e.g. because a file could not be read or written */
+    public static final int EXIT_FAILURE = 3;
+
+    private static final Logger logger = LoggerFactory.getLogger(HeadlessApp.class);
+    private static final String USAGE = String.join(System.lineSeparator(),
+            "Usage: " + HEADLESS_FLAG + " --input <file> [options]",
+            "  --input <file>              network to read: MATSim .xml/.xml.gz, OSM .osm/.osm.pbf or snapshot "
+                    + NetworkSnapshot.EXTENSION,
+            "  --format matsim|osm|osm_pbf|snapshot  format of the input, guessed from its ending by default",
+            "  --crs <system>              coordinate system of the input, WGS84 by default",
+            "  --crop minX,minY,maxX,maxY  keep only the nodes within the area, in WGS84 longitude and latitude",
+            "                              applied while parsing OSM input",
+            "  --highways <type,...>       highway types to import from OSM input, all known types by default",
+            "  --clean                     keep only the largest strongly connected part of the network",
+            "  --validate                  run the validation rules",
+            "  --fail-on-warnings          exit with " + EXIT_WARNINGS + " if the validation found warnings",
+            "  --output <file>             network to write: MATSim .xml/.xml.gz or snapshot " + NetworkSnapshot.EXTENSION,
+            "  --output-crs <system>       coordinate system of the output, the one of the input by default",
+            "  --report <file>             JSON report to write, - for the standard output (default)",
+            "Exit codes: " + EXIT_OK + " success, " + EXIT_WARNINGS + " validation warnings, " + EXIT_USAGE
+                    + " wrong arguments, " + EXIT_FAILURE + " failure");
+
+    private String inputPath = null;
+    private NetworkLoader.Format format = null;
+    private String coordinateSystem = "WGS84";
+    private double[] cropArea = null;
+    private final OsmImportOptions osmOptions = new OsmImportOptions();
+    private boolean clean = false;
+    private boolean validate = false;
+    private boolean failOnWarnings = false;
+    private String outputPath = null;
+    private String outputCoordinateSystem = null;
+    private String reportPath = "-";
+    // The report, in the order its entries are written
+    private final Map<String, Object> report = new LinkedHashMap<>();
+    private final StageTimings timings = new StageTimings("Headless run");
+
+    public static void main(String[] args) {
+        System.exit(run(args));
+    }
+
+    /**
+     * Runs the headless mode
+     * @param args The arguments, see the usage; the {@link #HEADLESS_FLAG} is ignored
+     * @return The exit code
+     */
+    public static int run(String[] args) {
+        HeadlessApp app = new HeadlessApp();
+        try {
+            app.parse(args);
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.err.println(USAGE);
+            return EXIT_USAGE;
+        }
+        int exitCode;
+        try {
+            exitCode = app.execute();
+        } catch (Exception e) {
+            logger.error("Headless run failed", e);
+            app.report.put("status", "failed");
+            app.report.put("error", String.valueOf(e.getMessage()));
+            exitCode = EXIT_FAILURE;
+        }
+        app.report.put("timings", app.timings.getStages());
+        app.report.put("exitCode", exitCode);
+        try {
+            app.writeReport();
+        } catch (IOException e) {
+            logger.error("Writing the report to " + app.reportPath + " failed", e);
+            return EXIT_FAILURE;
+        }
+        return exitCode;
+    }
+
+    /**
+     * Reads the arguments into the settings of the run
+     * @param args The arguments
+     * @throws IllegalArgumentException If an argument is unknown, lacks its value or has a wrong value
+     */
+    private void parse(String[] args) {
+        for (int i = 0; i < args.length; i++) {
+            String arg = args[i];
+            switch (arg) {
+                case HEADLESS_FLAG:
+                    break;
+                case "--input":
+                    this.inputPath = value(args, ++i, arg);
+                    break;
+                case "--format":
+                    String formatName = value(args, ++i, arg);
+                    try {
+                        this.format = NetworkLoader.Format.valueOf(formatName.toUpperCase(Locale.ROOT));
+                    } catch (IllegalArgumentException e) {
+                        throw new IllegalArgumentException("Unknown format " + formatName);
+                    }
+                    break;
+                case "--crs":
+                    this.coordinateSystem = value(args, ++i, arg);
+                    break;
+                case "--crop":
+                    this.cropArea = parseArea(value(args, ++i, arg));
+                    this.osmOptions.setArea(this.cropArea[0], this.cropArea[1], this.cropArea[2], this.cropArea[3]);
+                    break;
+                case "--highways":
+                    String highways = value(args, ++i, arg).trim();
+                    this.osmOptions.setHighwayTypes(new LinkedHashSet<>(Arrays.asList(highways.split("\\s*,\\s*"))));
+                    break;
+                case "--clean":
+                    this.clean = true;
+                    break;
+                case "--validate":
+                    this.validate = true;
+                    break;
+                case "--fail-on-warnings":
+                    this.validate = true;
+                    this.failOnWarnings = true;
+                    break;
+                case "--output":
+                    this.outputPath = value(args, ++i, arg);
+                    break;
+                case "--output-crs":
+                    this.outputCoordinateSystem = value(args, ++i, arg);
+                    break;
+                case "--report":
+                    this.reportPath = value(args, ++i, arg);
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown argument " + arg);
+            }
+        }
+        if (this.inputPath == null) {
+            throw new IllegalArgumentException("No input given");
+        }
+        if (this.format == null) {
+            this.format = NetworkLoader.Format.of(this.inputPath);
+        }
+    }
+
+    /**
+     * @param args The arguments
+     * @param i The position of the value of an option
+     * @param option The option
+     * @return The value of the option
+     * @throws IllegalArgumentException If the option has no value
+     */
+    private static String value(String[] args, int i, String option) {
+        if (i >= args.length || args[i].startsWith("--")) {
+            throw new IllegalArgumentException("No value given for " + option);
+        }
+        return args[i];
+    }
+
+    /**
+     * @param area The area as minX,minY,maxX,maxY
+     * @return The bounds of the area
+     * @throws IllegalArgumentException If the area is not four numbers with the minimums below the maximums
+     */
+    private static double[] parseArea(String area) {
+        String[] parts = area.split(",");
+        if (parts.length != 4) {
+            throw new IllegalArgumentException("The area must be given as minX,minY,maxX,maxY");
+        }
+        double[] bounds = new double[4];
+        try {
+            for (int i = 0; i < 4; i++) {
+                bounds[i] = Double.parseDouble(parts[i].trim());
+            }
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("The area must be given as numbers: " + area);
+        }
+        if (bounds[0] > bounds[2] || bounds[1] > bounds[3]) {
+            throw new IllegalArgumentException("The minimums of the area must not be above its maximums: " + area);
+        }
+        return bounds;
+    }
+
+    /**
+     * Reads, crops, cleans, validates and writes the network, as given by the arguments, recording each step in the
+     * report
+     * @return The exit code
+     * @throws IOException If the network cannot be read or written
+     */
+    private int execute() throws IOException {
+        this.report.put("input", this.inputPath);
+        this.report.put("format", this.format.name());
+        if (!new File(this.inputPath).isFile()) {
+            throw new IOException("No such file: " + this.inputPath);
+        }
+        NetworkLoader loader = new NetworkLoader(this.inputPath, this.coordinateSystem, this.format, this.timings);
+        loader.setOsmOptions(this.osmOptions);
+        Network network = loader.load();
+        NetworkModel model = this.timings.time("build", () -> new NetworkModel(network, this.inputPath,
+                loader.getCoordinateSystem()));
+        model.getAttributeSchema().merge(loader.getSchema());
+        this.report.put("coordinateSystem", model.getCoordinateSystem());
+        this.report.put("read", counts(model.getNetwork()));
+
+        if (this.cropArea != null) {
+            int links = model.getNetwork().getLinks().size();
+            int removedNodes = this.timings.time("crop",
+                    () -> model.crop(this.cropArea[0], this.cropArea[1], this.cropArea[2], this.cropArea[3]));
+            Map<String, Object> crop = new LinkedHashMap<>();
+            crop.put("removedNodes", removedNodes);
+            crop.put("removedLinks", links - model.getNetwork().getLinks().size());
+            this.report.put("crop", crop);
+        }
+
+        if (this.clean) {
+            this.timings.start("clean");
+            Map<String, Object> cleaning = new LinkedHashMap<>();
+            try {
+                NetworkDelta delta = new InMemoryNetworkCleaner().analyze(model.getNetwork());
+                model.removeElements(delta.getRemovedNodes(), delta.getRemovedLinks());
+                cleaning.put("removedNodes", delta.getRemovedNodes().size());
+                cleaning.put("removedLinks", delta.getRemovedLinks().size());
+            } finally {
+                this.timings.stop();
+            }
+            this.report.put("clean", cleaning);
+        }
+
+        int warnings = 0;
+        if (this.validate) {
+            ValidationReport validation = this.timings.time("validate",
+                    () -> ValidationEngine.load().validate(ValidationContext.of(model)));
+            model.setValidationWarnings(validation.getWarnings());
+            warnings = validation.getWarnings().size();
+            Map<String, Object> validationReport = new LinkedHashMap<>();
+            validationReport.put("warnings", warnings);
+            validationReport.put("rules", validation.getTimings().getStages());
+            List<Map<String, Object>> items = new ArrayList<>(warnings);
+            for (ValidationTableEntry warning : validation.getWarnings()) {
+                Map<String, Object> item = new LinkedHashMap<>();
+                item.put("type", warning.getElement() instanceof Node ? "node" : "link");
+                item.put("id", warning.getElementId());
+                item.put("message", warning.getMessage());
+                items.add(item);
+            }
+            validationReport.put("items", items);
+            this.report.put("validation", validationReport);
+        }
+
+        if (this.outputPath != null) {
+            String outputSystem = this.outputCoordinateSystem != null ? this.outputCoordinateSystem
+                    : model.getCoordinateSystem();
+            this.timings.start("write");
+            try {
+                write(model, outputSystem);
+            } finally {
+                this.timings.stop();
+            }
+            this.report.put("output", this.outputPath);
+            this.report.put("outputCoordinateSystem", outputSystem);
+        }
+        this.report.put("result", counts(model.getNetwork()));
+        logger.info("{}", this.timings);
+
+        if (warnings > 0 && this.failOnWarnings) {
+            this.report.put("status", "warnings");
+            return EXIT_WARNINGS;
+        }
+        this.report.put("status", "ok");
+        return EXIT_OK;
+    }
+
+    /**
+     * Writes the network to the output file, a snapshot if the file has its ending, otherwise a MATSim network
+     * @param model The network
+     * @param outputSystem The coordinate system to write the network in
+     * @throws IOException If the file cannot be written
+     */
+    private void write(NetworkModel model, String outputSystem) throws IOException {
+        if (this.outputPath.endsWith(NetworkSnapshot.EXTENSION)) {
+            // Snapshots hold the coordinates in WGS84, like the editor, along with the system to store the network in
+            CompactNetwork compactNetwork = model.toCompactNetwork();
+            compactNetwork.setCoordinateSystem(outputSystem);
+            NetworkSnapshot.write(compactNetwork, this.outputPath);
+        } else {
+            new NetworkWriter(CachedTransformation.fromWgs84(outputSystem), model.getNetwork()).write(this.outputPath);
+        }
+    }
+
+    /**
+     * @param network A network
+     * @return The number of nodes and links of the network, for the report
+     */
+    private static Map<String, Object> counts(Network network) {
+        Map<String, Object> counts = new LinkedHashMap<>();
+        counts.put("nodes", network.getNodes().size());
+        counts.put("links", network.getLinks().size());
+        return counts;
+    }
+
+    /**
+     * Writes the report as JSON to the report file, or to the standard output
+     * @throws IOException If the report file cannot be written
+     */
+    private void writeReport() throws IOException {
+        StringBuilder json = new StringBuilder();
+        appendJson(json, this.report);
+        json.append(System.lineSeparator());
+        if ("-".equals(this.reportPath)) {
+            PrintStream out = System.out;
+            out.print(json);
+            out.flush();
+        } else {
+            try (Writer writer = Files.newBufferedWriter(Paths.get(this.reportPath), StandardCharsets.UTF_8)) {
+                writer.write(json.toString());
+            }
+        }
+    }
+
+    /**
+     * Appends a value of the report as JSON
+     * @param json The JSON written so far
+     * @param value A map, a collection, a number, a boolean, a string or null
+     */
+    private static void appendJson(StringBuilder json, Object value) {
+        if (value instanceof Map) {
+            json.append('{');
+            String separator = "";
+            for (Map.Entry<?, ?> entry : ((Map<?, ?>) value).entrySet()) {
+                json.append(separator);
+                appendString(json, String.valueOf(entry.getKey()));
+                json.append(':');
+                appendJson(json, entry.getValue());
+                separator = ",";
+            }
+            json.append('}');
+        } else if (value instanceof Collection) {
+            json.append('[');
+            String separator = "";
+            for (Object item : (Collection<?>) value) {
+                json.append(separator);
+                appendJson(json, item);
+                separator = ",";
+            }
+            json.append(']');
+        } else if (value instanceof Number || value instanceof Boolean) {
+            json.append(value);
+        } else if (value == null) {
+            json.append("null");
+        } else {
+            appendString(json, value.toString());
+        }
+    }
+
+    /**
+     * Appends a string as JSON, quoted and escaped
+     * @param json The JSON written so far
+     * @param value The string
+     */
+    private static void appendString(StringBuilder json, String value) {
+        json.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '"':
+                    json.append("\\\"");
+                    break;
+                case '\\':
+                    json.append("\\\\");
+                    break;
+                case '\n':
+                    json.append("\\n");
+                    break;
+                case '\r':
+                    json.append("\\r");
+                    break;
+                case '\t':
+                    json.append("\\t");
+                    break;
+                default:
+                    if (c < 0x20) {
+                        json.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        json.append(c);
+                    }
+            }
+        }
+        json.append('"');
+    }
+}
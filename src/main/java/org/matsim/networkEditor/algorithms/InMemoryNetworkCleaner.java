@@ -0,0 +1,68 @@
+package org.matsim.networkEditor.algorithms;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.network.Link;
+import org.matsim.api.core.v01.network.Network;
+import org.matsim.api.core.v01.network.Node;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Cleans a network the way MATSim's NetworkCleaner does, keeping only the largest strongly connected component so that
+ * every node can be reached from every other one, but on the network in memory instead of from file to file. The
+ * cleaner does not modify the network; it computes the delta, which can be previewed and then applied to the editor
+ */
+public class InMemoryNetworkCleaner {
+    private static final Logger logger = LoggerFactory.getLogger(InMemoryNetworkCleaner.class);
+
+    private StronglyConnectedComponents components = null;
+
+    /**
+     * Computes which nodes and links the cleaning would remove: the nodes outside the largest strongly connected
+     * component, and the links attached to them
+     * @param network The network to clean
+     * @return The kept and the removed nodes and links
+     */
+    public NetworkDelta analyze(Network network) {
+        long start = System.nanoTime();
+        this.components = StronglyConnectedComponents.compute(network);
+        int largest = this.components.getLargestComponent();
+
+        List<Id<Node>> keptNodes = new ArrayList<>();
+        List<Id<Node>> removedNodes = new ArrayList<>();
+        Node[] nodes = this.components.getNodes();
+        for (int i = 0; i < nodes.length; i++) {
+            if (largest != StronglyConnectedComponents.NO_COMPONENT && this.components.getComponentOfIndex(i) == largest) {
+                keptNodes.add(nodes[i].getId());
+            } else {
+                removedNodes.add(nodes[i].getId());
+            }
+        }
+        List<Id<Link>> keptLinks = new ArrayList<>();
+        List<Id<Link>> removedLinks = new ArrayList<>();
+        for (Link link : network.getLinks().values()) {
+            // A link between two nodes of the largest component is kept, even if it is not part of a cycle itself
+            if (largest != StronglyConnectedComponents.NO_COMPONENT
+                    && this.components.getComponent(link.getFromNode().getId()) == largest
+                    && this.components.getComponent(link.getToNode().getId()) == largest) {
+                keptLinks.add(link.getId());
+            } else {
+                removedLinks.add(link.getId());
+            }
+        }
+        logger.info("cleaning keeps {} nodes and {} links, removes {} nodes and {} links of {} smaller components in {}ms",
+                keptNodes.size(), keptLinks.size(), removedNodes.size(), removedLinks.size(),
+                Math.max(0, this.components.getComponentCount() - 1), (System.nanoTime() - start) / 1000000);
+        return new NetworkDelta(keptNodes, removedNodes, keptLinks, removedLinks);
+    }
+
+    /**
+     * @return The strongly connected components found by the last {@link #analyze}, or null if it was not run yet
+     */
+    public StronglyConnectedComponents getComponents() {
+        return this.components;
+    }
+}
@@ -0,0 +1,153 @@
+package org.matsim.networkEditor.algorithms;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.network.Link;
+import org.matsim.api.core.v01.network.Network;
+import org.matsim.api.core.v01.network.Node;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Connectivity of a network per mode: the strongly connected components formed by the links that allow each mode, as
+ * given by {@link Link#getAllowedModes()}. A network can be connected as a whole while the links of one mode, e.g. bike
+ * lanes or pt lines, fall apart in islands that cannot be reached from the rest of that mode's network. The modes are
+ * analysed in parallel and share the numbering of the nodes; the largest component of a mode is its main subnetwork,
+ * the others are its islands
+ */
+public class ModeConnectivity {
+    private static final Logger logger = LoggerFactory.getLogger(ModeConnectivity.class);
+
+    private final Map<String, Subnetwork> mainSubnetworks;
+    private final Map<String, List<Subnetwork>> islands;
+
+    private ModeConnectivity(Map<String, Subnetwork> mainSubnetworks, Map<String, List<Subnetwork>> islands) {
+        this.mainSubnetworks = mainSubnetworks;
+        this.islands = islands;
+    }
+
+    /**
+     * Analyses the connectivity of all modes of a network, which must not be changed until the analysis is done, e.g.
+     * by holding its read lock
+     * @param network The network
+     * @return The subnetworks of each mode
+     */
+    public static ModeConnectivity analyze(Network network) {
+        return analyze(network.getNodes().values().toArray(new Node[0]), network.getLinks().values().toArray(new Link[0]));
+    }
+
+    /**
+     * Analyses the connectivity of all modes of a network, given as arrays. The allowed modes and the nodes of the links
+     * are read during the analysis, so they must not be changed until it is done
+     * @param nodes The nodes of the network
+     * @param links The links of the network
+     * @return The subnetworks of each mode
+     */
+    public static ModeConnectivity analyze(Node[] nodes, Link[] links) {
+        long start = System.nanoTime();
+        HashMap<Id<Node>, Integer> nodeIndexes = StronglyConnectedComponents.indexNodes(nodes);
+        Set<String> modes = Arrays.stream(links).parallel()
+                .flatMap(link -> link.getAllowedModes().stream())
+                .collect(Collectors.toCollection(TreeSet::new));
+
+        Map<String, Subnetwork> mainSubnetworks = new ConcurrentHashMap<>();
+        Map<String, List<Subnetwork>> islands = new ConcurrentHashMap<>();
+        modes.parallelStream().forEach(mode -> {
+            // The links of the mode are selected once, for the components and for grouping them afterwards
+            Link[] modeLinks = Arrays.stream(links).filter(link -> link.getAllowedModes().contains(mode)).toArray(Link[]::new);
+            StronglyConnectedComponents components = StronglyConnectedComponents.compute(nodes, nodeIndexes, modeLinks,
+                    link -> true);
+            List<Subnetwork> subnetworks = subnetworks(mode, components, nodes, modeLinks);
+            if (!subnetworks.isEmpty()) {
+                mainSubnetworks.put(mode, subnetworks.get(0));
+                islands.put(mode, Collections.unmodifiableList(subnetworks.subList(1, subnetworks.size())));
+            }
+        });
+        ModeConnectivity connectivity = new ModeConnectivity(new TreeMap<>(mainSubnetworks), new TreeMap<>(islands));
+        logger.info("connectivity of {} modes over {} nodes and {} links, {} islands in {}ms", modes.size(),
+                nodes.length, links.length, connectivity.getIslandCount(), (System.nanoTime() - start) / 1000000);
+        return connectivity;
+    }
+
+    /**
+     * Groups the nodes and links of a mode by their component
+     * @param mode The mode
+     * @param components The components formed by the links of the mode
+     * @param nodes The nodes of the network, numbered as for the components
+     * @param modeLinks The links of the network that allow the mode
+     * @return The subnetworks of the mode, the largest first
+     */
+    private static List<Subnetwork> subnetworks(String mode, StronglyConnectedComponents components, Node[] nodes,
+                                                Link[] modeLinks) {
+        int componentCount = components.getComponentCount();
+        List<List<Node>> componentNodes = new ArrayList<>(componentCount);
+        List<List<Link>> componentLinks = new ArrayList<>(componentCount);
+        for (int c = 0; c < componentCount; c++) {
+            componentNodes.add(new ArrayList<>(components.getComponentSize(c)));
+            componentLinks.add(new ArrayList<>());
+        }
+        for (int i = 0; i < nodes.length; i++) {
+            int component = components.getComponentOfIndex(i);
+            if (component != StronglyConnectedComponents.NO_COMPONENT) {
+                componentNodes.get(component).add(nodes[i]);
+            }
+        }
+        for (Link link : modeLinks) {
+            int component = components.getComponent(link.getFromNode().getId());
+            // Links between two components belong to neither of them
+            if (component != StronglyConnectedComponents.NO_COMPONENT
+                    && component == components.getComponent(link.getToNode().getId())) {
+                componentLinks.get(component).add(link);
+            }
+        }
+        List<Subnetwork> subnetworks = new ArrayList<>(componentCount);
+        for (int c = 0; c < componentCount; c++) {
+            subnetworks.add(new Subnetwork(mode, componentNodes.get(c), componentLinks.get(c)));
+        }
+        subnetworks.sort(Comparator.comparingInt(Subnetwork::size).reversed());
+        return subnetworks;
+    }
+
+    /**
+     * @return The modes of the network, in alphabetical order
+     */
+    public Set<String> getModes() {
+        return this.mainSubnetworks.keySet();
+    }
+
+    /**
+     * @param mode A mode of the network
+     * @return The largest subnetwork of the mode, or null if no link allows the mode
+     */
+    public Subnetwork getMainSubnetwork(String mode) {
+        return this.mainSubnetworks.get(mode);
+    }
+
+    /**
+     * @param mode A mode of the network
+     * @return The subnetworks of the mode other than the largest one, the largest first; empty if the links of the mode
+     * are strongly connected
+     */
+    public List<Subnetwork> getIslands(String mode) {
+        return this.islands.getOrDefault(mode, Collections.emptyList());
+    }
+
+    /**
+     * @return The number of islands of all modes
+     */
+    public int getIslandCount() {
+        return this.islands.values().stream().mapToInt(List::size).sum();
+    }
+}
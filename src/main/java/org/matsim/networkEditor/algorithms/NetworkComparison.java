@@ -0,0 +1,488 @@
+package org.matsim.networkEditor.algorithms;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Objects;
+import java.util.function.Consumer;
+import java.util.stream.IntStream;
+
+import org.matsim.networkEditor.elements.CompactNetwork;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Compares two versions of a network, e.g. a network and the modified copy another team sent back. Nodes and links are
+ * matched by their id first; nodes and links that only exist in one of the networks are then matched by their
+ * geometry, so that renumbered elements show up as renamed instead of as removed and added. The networks are read into
+ * the compact model, with coordinates in WGS84, and every element is compared in parallel
+ */
+public class NetworkComparison {
+    private static final Logger logger = LoggerFactory.getLogger(NetworkComparison.class);
+    /** Metres per degree of latitude, to convert the tolerance and the distances of the WGS84 coordinates */
+    private static final double METRES_PER_DEGREE = 111320.0;
+
+    /** The kinds of differences between the networks */
+    public enum Kind {
+        /** Only in the second network */
+        ADDED,
+        /** Only in the first network */
+        REMOVED,
+        /** In both networks with the same id, with different attributes or geometry */
+        CHANGED,
+        /** In both networks at the same place but with different ids, possibly with different attributes */
+        RENAMED
+    }
+
+    /** The kinds of elements of the networks */
+    public enum Element {
+        NODE, LINK
+    }
+
+    /**
+     * A difference between the networks, about one node or link, with the coordinates to show it on the map
+     */
+    public static final class Difference {
+        private final Kind kind;
+        private final Element element;
+        private final String firstId;
+        private final String secondId;
+        private final String details;
+        private final double[] coords;
+
+        /**
+         * @param kind The kind of difference
+         * @param element The kind of element
+         * @param firstId The id of the element in the first network, or null if it is only in the second one
+         * @param secondId The id of the element in the second network, or null if it is only in the first one
+         * @param details The description of the changes, empty if there is nothing to add to the kind
+         * @param coords The WGS84 coordinates of the element, x and y for a node and fromX, fromY, toX and toY for a link
+         */
+        Difference(Kind kind, Element element, String firstId, String secondId, String details, double... coords) {
+            this.kind = kind;
+            this.element = element;
+            this.firstId = firstId;
+            this.secondId = secondId;
+            this.details = details;
+            this.coords = coords;
+        }
+
+        /**
+         * @return The kind of difference
+         */
+        public Kind getKind() {
+            return this.kind;
+        }
+
+        /**
+         * @return The kind of element
+         */
+        public Element getElement() {
+            return this.element;
+        }
+
+        /**
+         * @return The id of the element in the first network, or null if it is only in the second one
+         */
+        public String getFirstId() {
+            return this.firstId;
+        }
+
+        /**
+         * @return The id of the element in the second network, or null if it is only in the first one
+         */
+        public String getSecondId() {
+            return this.secondId;
+        }
+
+        /**
+         * @return The id of the element, the one of the second network unless it is only in the first one
+         */
+        public String getId() {
+            return this.secondId != null ? this.secondId : this.firstId;
+        }
+
+        /**
+         * @return The description of the changes, empty if there is nothing to add to the kind
+         */
+        public String getDetails() {
+            return this.details;
+        }
+
+        /**
+         * @return The WGS84 coordinates of the element, x and y for a node and fromX, fromY, toX and toY for a link
+         */
+        public double[] getCoords() {
+            return this.coords;
+        }
+
+        /**
+         * @return The WGS84 x coordinate of the node, or of the middle of the link
+         */
+        public double getCenterX() {
+            return this.coords.length == 2 ? this.coords[0] : (this.coords[0] + this.coords[2]) / 2;
+        }
+
+        /**
+         * @return The WGS84 y coordinate of the node, or of the middle of the link
+         */
+        public double getCenterY() {
+            return this.coords.length == 2 ? this.coords[1] : (this.coords[1] + this.coords[3]) / 2;
+        }
+    }
+
+    private final double tolerance;
+
+    /**
+     * @param tolerance The distance in metres within which two nodes are at the same place
+     */
+    public NetworkComparison(double tolerance) {
+        this.tolerance = tolerance;
+    }
+
+    /**
+     * Compares two networks
+     * @param first The first network, e.g. the original one
+     * @param second The second network, e.g. the modified one
+     * @return The differences from the first network to the second one: nodes first, then links, each in the order of
+     *         the first network followed by the elements only in the second one
+     */
+    public List<Difference> compare(CompactNetwork first, CompactNetwork second) {
+        List<Difference> differences = new ArrayList<>();
+        compare(first, second, differences::add);
+        return differences;
+    }
+
+    /**
+     * Compares two networks, handing the differences over as soon as each phase has found them: the differences of the
+     * nodes once the nodes are matched, then the ones of the links, so that a report can be written while the links are
+     * still to be compared
+     * @param first The first network, e.g. the original one
+     * @param second The second network, e.g. the modified one
+     * @param sink Receives the differences from the first network to the second one on the calling thread, in the order
+     *             of {@link #compare(CompactNetwork, CompactNetwork)}
+     * @return The number of differences
+     */
+    public int compare(CompactNetwork first, CompactNetwork second, Consumer<Difference> sink) {
+        long start = System.nanoTime();
+        int[] count = {0};
+        Consumer<Difference> counted = difference -> {
+            count[0]++;
+            sink.accept(difference);
+        };
+        int firstNodes = first.getNodeCount();
+        int secondNodes = second.getNodeCount();
+        // Built once here, so that the lookups of the parallel comparison only read it
+        second.indexOfNode("");
+
+        // Nodes by id: the node of the second network matching each node of the first one, or -1
+        int[] nodeMatch = new int[firstNodes];
+        boolean[] secondNodeMatched = new boolean[secondNodes];
+        Difference[] firstNodeDifferences = new Difference[firstNodes];
+        IntStream.range(0, firstNodes).parallel().forEach(i -> {
+            int j = second.indexOfNode(first.getNodeId(i));
+            nodeMatch[i] = j;
+            if (j >= 0) {
+                secondNodeMatched[j] = true;
+                double distance = distance(first.getNodeX(i), first.getNodeY(i), second.getNodeX(j), second.getNodeY(j));
+                if (distance > this.tolerance) {
+                    firstNodeDifferences[i] = new Difference(Kind.CHANGED, Element.NODE, first.getNodeId(i), second.getNodeId(j),
+                            String.format("moved by %.1f m", distance), second.getNodeX(j), second.getNodeY(j));
+                }
+            }
+        });
+
+        // Nodes by geometry: the remaining nodes of the second network on a grid of the tolerance
+        // A degree of longitude is shorter than one of latitude, the cells are as wide as the tolerance at the highest
+        // latitude of the network, so that the neighbouring cells cover the tolerance everywhere
+        HashMap<Long, List<Integer>> grid = new HashMap<>();
+        double maxLatitude = 0.0;
+        for (int j = 0; j < secondNodes; j++) {
+            maxLatitude = Math.max(maxLatitude, Math.abs(second.getNodeY(j)));
+        }
+        double cellHeight = Math.max(this.tolerance, 0.01) / METRES_PER_DEGREE;
+        double[] cellSize = {cellHeight / Math.max(Math.cos(Math.toRadians(Math.min(maxLatitude, 89.0))), 0.01), cellHeight};
+        for (int j = 0; j < secondNodes; j++) {
+            if (!secondNodeMatched[j]) {
+                grid.computeIfAbsent(cell(second.getNodeX(j), second.getNodeY(j), cellSize), c -> new ArrayList<>()).add(j);
+            }
+        }
+        for (int i = 0; i < firstNodes; i++) {
+            if (nodeMatch[i] >= 0) {
+                continue;
+            }
+            int j = nearestUnmatched(grid, second, secondNodeMatched, first.getNodeX(i), first.getNodeY(i), cellSize);
+            if (j >= 0) {
+                nodeMatch[i] = j;
+                secondNodeMatched[j] = true;
+                firstNodeDifferences[i] = new Difference(Kind.RENAMED, Element.NODE, first.getNodeId(i), second.getNodeId(j),
+                        "", second.getNodeX(j), second.getNodeY(j));
+            } else {
+                firstNodeDifferences[i] = new Difference(Kind.REMOVED, Element.NODE, first.getNodeId(i), null, "",
+                        first.getNodeX(i), first.getNodeY(i));
+            }
+        }
+
+        Arrays.stream(firstNodeDifferences).filter(Objects::nonNull).forEach(counted);
+        for (int j = 0; j < secondNodes; j++) {
+            if (!secondNodeMatched[j]) {
+                counted.accept(new Difference(Kind.ADDED, Element.NODE, null, second.getNodeId(j), "",
+                        second.getNodeX(j), second.getNodeY(j)));
+            }
+        }
+
+        // Links by id, with their nodes compared through the node matching
+        int firstLinks = first.getLinkCount();
+        int secondLinks = second.getLinkCount();
+        HashMap<String, Integer> secondLinkIndexes = new HashMap<>(secondLinks * 4 / 3 + 1);
+        for (int j = 0; j < secondLinks; j++) {
+            secondLinkIndexes.put(second.getLinkId(j), j);
+        }
+        int[] linkMatch = new int[firstLinks];
+        boolean[] secondLinkMatched = new boolean[secondLinks];
+        Difference[] firstLinkDifferences = new Difference[firstLinks];
+        IntStream.range(0, firstLinks).parallel().forEach(i -> {
+            Integer j = secondLinkIndexes.get(first.getLinkId(i));
+            linkMatch[i] = j == null ? -1 : j;
+            if (j != null) {
+                secondLinkMatched[j] = true;
+                String details = compareLinks(first, i, second, j, nodeMatch);
+                if (!details.isEmpty()) {
+                    firstLinkDifferences[i] = linkDifference(Kind.CHANGED, first.getLinkId(i), second, j, details);
+                }
+            }
+        });
+
+        // Links by geometry: the remaining links of the second network by their nodes
+        HashMap<Long, ArrayDeque<Integer>> secondLinksByNodes = new HashMap<>();
+        for (int j = 0; j < secondLinks; j++) {
+            if (!secondLinkMatched[j]) {
+                secondLinksByNodes.computeIfAbsent(nodePair(second.getLinkFrom(j), second.getLinkTo(j)), p -> new ArrayDeque<>()).add(j);
+            }
+        }
+        for (int i = 0; i < firstLinks; i++) {
+            if (linkMatch[i] >= 0) {
+                continue;
+            }
+            int from = nodeMatch[first.getLinkFrom(i)];
+            int to = nodeMatch[first.getLinkTo(i)];
+            ArrayDeque<Integer> candidates = from < 0 || to < 0 ? null : secondLinksByNodes.get(nodePair(from, to));
+            if (candidates != null && !candidates.isEmpty()) {
+                int j = candidates.poll();
+                secondLinkMatched[j] = true;
+                firstLinkDifferences[i] = linkDifference(Kind.RENAMED, first.getLinkId(i), second, j,
+                        compareLinks(first, i, second, j, nodeMatch));
+            } else {
+                firstLinkDifferences[i] = new Difference(Kind.REMOVED, Element.LINK, first.getLinkId(i), null, "",
+                        first.getNodeX(first.getLinkFrom(i)), first.getNodeY(first.getLinkFrom(i)),
+                        first.getNodeX(first.getLinkTo(i)), first.getNodeY(first.getLinkTo(i)));
+            }
+        }
+
+        Arrays.stream(firstLinkDifferences).filter(Objects::nonNull).forEach(counted);
+        for (int j = 0; j < secondLinks; j++) {
+            if (!secondLinkMatched[j]) {
+                counted.accept(linkDifference(Kind.ADDED, null, second, j, ""));
+            }
+        }
+        logger.info("{} differences between networks of {} and {} links found in {}ms", count[0], firstLinks,
+                secondLinks, (System.nanoTime() - start) / 1000000);
+        return count[0];
+    }
+
+    /**
+     * Writes the header line of a tab separated report of differences
+     * @param writer The writer of the report
+     * @throws IOException If the report cannot be written
+     */
+    public static void writeReportHeader(Writer writer) throws IOException {
+        writer.write("kind\telement\tfirst_id\tsecond_id\tx\ty\tdetails\n");
+    }
+
+    /**
+     * Writes a difference as a line of a tab separated report
+     * @param difference The difference
+     * @param writer The writer of the report
+     * @throws IOException If the report cannot be written
+     */
+    public static void writeReportRow(Difference difference, Writer writer) throws IOException {
+        writer.write(difference.getKind().name());
+        writer.write('\t');
+        writer.write(difference.getElement().name());
+        writer.write('\t');
+        writer.write(difference.getFirstId() == null ? "" : difference.getFirstId());
+        writer.write('\t');
+        writer.write(difference.getSecondId() == null ? "" : difference.getSecondId());
+        writer.write('\t');
+        writer.write(Double.toString(difference.getCenterX()));
+        writer.write('\t');
+        writer.write(Double.toString(difference.getCenterY()));
+        writer.write('\t');
+        writer.write(difference.getDetails());
+        writer.write('\n');
+    }
+
+    /**
+     * Compares the attributes and the nodes of two links
+     * @param first The first network
+     * @param i The link of the first network
+     * @param second The second network
+     * @param j The link of the second network
+     * @param nodeMatch The node of the second network matching each node of the first one, or -1
+     * @return The description of the differences, empty if there are none
+     */
+    private static String compareLinks(CompactNetwork first, int i, CompactNetwork second, int j, int[] nodeMatch) {
+        StringBuilder details = new StringBuilder();
+        if (nodeMatch[first.getLinkFrom(i)] != second.getLinkFrom(j)) {
+            append(details, "from node " + first.getNodeId(first.getLinkFrom(i)) + " -> " + second.getNodeId(second.getLinkFrom(j)));
+        }
+        if (nodeMatch[first.getLinkTo(i)] != second.getLinkTo(j)) {
+            append(details, "to node " + first.getNodeId(first.getLinkTo(i)) + " -> " + second.getNodeId(second.getLinkTo(j)));
+        }
+        compareValue(details, "length", first.getLinkLength(i), second.getLinkLength(j));
+        compareValue(details, "freespeed", first.getLinkFreespeed(i), second.getLinkFreespeed(j));
+        compareValue(details, "capacity", first.getLinkCapacity(i), second.getLinkCapacity(j));
+        compareValue(details, "lanes", first.getLinkLanes(i), second.getLinkLanes(j));
+        String firstModes = first.getLinkModes(i);
+        String secondModes = second.getLinkModes(j);
+        // The order of the modes does not matter
+        if (!Objects.equals(firstModes, secondModes) && !modeSet(firstModes).equals(modeSet(secondModes))) {
+            append(details, "modes " + firstModes + " -> " + secondModes);
+        }
+        return details.toString();
+    }
+
+    /**
+     * @param details The description of the differences
+     * @param name The name of the attribute
+     * @param firstValue The value of the first link
+     * @param secondValue The value of the second link
+     */
+    private static void compareValue(StringBuilder details, String name, double firstValue, double secondValue) {
+        if (Double.compare(firstValue, secondValue) != 0) {
+            append(details, name + " " + firstValue + " -> " + secondValue);
+        }
+    }
+
+    /**
+     * @param details The description of the differences
+     * @param difference A difference to add to the description
+     */
+    private static void append(StringBuilder details, String difference) {
+        if (details.length() > 0) {
+            details.append(", ");
+        }
+        details.append(difference);
+    }
+
+    /**
+     * @param modes The comma separated modes of a link
+     * @return The modes
+     */
+    private static HashSet<String> modeSet(String modes) {
+        HashSet<String> set = new HashSet<>();
+        if (modes != null) {
+            for (String mode : modes.split(",")) {
+                if (!mode.trim().isEmpty()) {
+                    set.add(mode.trim());
+                }
+            }
+        }
+        return set;
+    }
+
+    /**
+     * @param kind The kind of difference
+     * @param firstId The id of the link in the first network, or null
+     * @param second The second network
+     * @param j The link of the second network
+     * @param details The description of the changes
+     * @return The difference, shown at the link of the second network
+     */
+    private static Difference linkDifference(Kind kind, String firstId, CompactNetwork second, int j, String details) {
+        int from = second.getLinkFrom(j);
+        int to = second.getLinkTo(j);
+        return new Difference(kind, Element.LINK, firstId, second.getLinkId(j), details,
+                second.getNodeX(from), second.getNodeY(from), second.getNodeX(to), second.getNodeY(to));
+    }
+
+    /**
+     * Finds the closest node of the second network within the tolerance that is not matched yet
+     * @param grid The unmatched nodes of the second network by their cell
+     * @param second The second network
+     * @param matched Whether each node of the second network is matched
+     * @param x The WGS84 x coordinate
+     * @param y The WGS84 y coordinate
+     * @param cellSize The width and height of the cells of the grid, in degrees
+     * @return The node, or -1 if there is none
+     */
+    private int nearestUnmatched(HashMap<Long, List<Integer>> grid, CompactNetwork second, boolean[] matched, double x,
+                                 double y, double[] cellSize) {
+        long cellX = (long) Math.floor(x / cellSize[0]);
+        long cellY = (long) Math.floor(y / cellSize[1]);
+        int nearest = -1;
+        double nearestDistance = this.tolerance;
+        for (long cx = cellX - 1; cx <= cellX + 1; cx++) {
+            for (long cy = cellY - 1; cy <= cellY + 1; cy++) {
+                List<Integer> candidates = grid.get(cellKey(cx, cy));
+                if (candidates == null) {
+                    continue;
+                }
+                for (int j : candidates) {
+                    double distance = distance(x, y, second.getNodeX(j), second.getNodeY(j));
+                    if (!matched[j] && distance <= nearestDistance) {
+                        nearest = j;
+                        nearestDistance = distance;
+                    }
+                }
+            }
+        }
+        return nearest;
+    }
+
+    /**
+     * @param x A WGS84 x coordinate
+     * @param y A WGS84 y coordinate
+     * @param cellSize The width and height of the cells, in degrees
+     * @return The key of the cell of the coordinate
+     */
+    private static long cell(double x, double y, double[] cellSize) {
+        return cellKey((long) Math.floor(x / cellSize[0]), (long) Math.floor(y / cellSize[1]));
+    }
+
+    /**
+     * @param cellX The column of a cell
+     * @param cellY The row of a cell
+     * @return The key of the cell
+     */
+    private static long cellKey(long cellX, long cellY) {
+        return (cellX << 32) ^ (cellY & 0xffffffffL);
+    }
+
+    /**
+     * @param from A node
+     * @param to Another node
+     * @return The key of the pair of nodes, in this direction
+     */
+    private static long nodePair(int from, int to) {
+        return ((long) from << 32) | (to & 0xffffffffL);
+    }
+
+    /**
+     * @param x1 The WGS84 x coordinate of the first point
+     * @param y1 The WGS84 y coordinate of the first point
+     * @param x2 The WGS84 x coordinate of the second point
+     * @param y2 The WGS84 y coordinate of the second point
+     * @return The approximate distance between the points in metres, exact enough for the short distances compared
+     */
+    static double distance(double x1, double y1, double x2, double y2) {
+        double dx = (x2 - x1) * Math.cos(Math.toRadians((y1 + y2) / 2));
+        double dy = y2 - y1;
+        return Math.sqrt(dx * dx + dy * dy) * METRES_PER_DEGREE;
+    }
+}
@@ -0,0 +1,68 @@
+package org.matsim.networkEditor.algorithms;
+
+import java.util.Collections;
+import java.util.List;
+
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.network.Link;
+import org.matsim.api.core.v01.network.Node;
+
+/**
+ * The outcome of an operation on a network that is computed first and applied afterwards, e.g. after a preview: the
+ * nodes and links it keeps and the ones it removes
+ */
+public class NetworkDelta {
+    private final List<Id<Node>> keptNodes;
+    private final List<Id<Node>> removedNodes;
+    private final List<Id<Link>> keptLinks;
+    private final List<Id<Link>> removedLinks;
+
+    /**
+     * @param keptNodes The nodes that stay in the network
+     * @param removedNodes The nodes that are removed from the network
+     * @param keptLinks The links that stay in the network
+     * @param removedLinks The links that are removed from the network
+     */
+    public NetworkDelta(List<Id<Node>> keptNodes, List<Id<Node>> removedNodes, List<Id<Link>> keptLinks,
+                        List<Id<Link>> removedLinks) {
+        this.keptNodes = Collections.unmodifiableList(keptNodes);
+        this.removedNodes = Collections.unmodifiableList(removedNodes);
+        this.keptLinks = Collections.unmodifiableList(keptLinks);
+        this.removedLinks = Collections.unmodifiableList(removedLinks);
+    }
+
+    /**
+     * @return The nodes that stay in the network
+     */
+    public List<Id<Node>> getKeptNodes() {
+        return this.keptNodes;
+    }
+
+    /**
+     * @return The nodes that are removed from the network
+     */
+    public List<Id<Node>> getRemovedNodes() {
+        return this.removedNodes;
+    }
+
+    /**
+     * @return The links that stay in the network
+     */
+    public List<Id<Link>> getKeptLinks() {
+        return this.keptLinks;
+    }
+
+    /**
+     * @return The links that are removed from the network, including those that are removed along with their nodes
+     */
+    public List<Id<Link>> getRemovedLinks() {
+        return this.removedLinks;
+    }
+
+    /**
+     * @return True if nothing is removed, otherwise false
+     */
+    public boolean isEmpty() {
+        return this.removedNodes.isEmpty() && this.removedLinks.isEmpty();
+    }
+}
@@ -0,0 +1,224 @@
+package org.matsim.networkEditor.algorithms;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.IntStream;
+
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.network.Link;
+import org.matsim.api.core.v01.network.NetworkFactory;
+import org.matsim.api.core.v01.network.Node;
+import org.matsim.networkEditor.elements.CompactNetwork;
+import org.matsim.networkEditor.elements.LinkIndex;
+import org.matsim.networkEditor.elements.NodeSpatialIndex;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Merges a second network into a network, e.g. a hand-edited transit corridor into a city imported from OSM. A node of
+ * the second network within a distance of a node of the network is the same node, so the links of the second network
+ * connect to the network there; the other nodes and the links are added, with ids that clash with the network
+ * prefixed. A link between two matched nodes that the network already has in the same direction is not added again,
+ * nor is a link whose nodes are matched to the same node. The merge is planned without modifying the network, and
+ * applied with {@link org.matsim.networkEditor.elements.ExtendedNetwork#merge}
+ */
+public class NetworkMerge {
+    private static final Logger logger = LoggerFactory.getLogger(NetworkMerge.class);
+    /** Metres per degree of latitude, to convert the tolerance to the WGS84 coordinates */
+    private static final double METRES_PER_DEGREE = 111320.0;
+
+    private final double tolerance;
+    private final String prefix;
+
+    /**
+     * The nodes and links to add to the network, created for the network but not added to it yet
+     */
+    public static final class Plan {
+        private final List<Node> addedNodes;
+        private final List<Link> addedLinks;
+        private final int matchedNodes;
+        private final int renamedNodes;
+        private final int renamedLinks;
+        private final int skippedLinks;
+
+        private Plan(List<Node> addedNodes, List<Link> addedLinks, int matchedNodes, int renamedNodes, int renamedLinks,
+                     int skippedLinks) {
+            this.addedNodes = Collections.unmodifiableList(addedNodes);
+            this.addedLinks = Collections.unmodifiableList(addedLinks);
+            this.matchedNodes = matchedNodes;
+            this.renamedNodes = renamedNodes;
+            this.renamedLinks = renamedLinks;
+            this.skippedLinks = skippedLinks;
+        }
+
+        /**
+         * @return The nodes to add, the ones of the second network without a node of the network nearby
+         */
+        public List<Node> getAddedNodes() {
+            return this.addedNodes;
+        }
+
+        /**
+         * @return The links to add, connected to the added nodes and to the matched nodes of the network
+         */
+        public List<Link> getAddedLinks() {
+            return this.addedLinks;
+        }
+
+        /**
+         * @return The number of nodes of the second network that are the same as a node of the network
+         */
+        public int getMatchedNodes() {
+            return this.matchedNodes;
+        }
+
+        /**
+         * @return The number of added nodes whose id was prefixed, because the network has a node with the id
+         */
+        public int getRenamedNodes() {
+            return this.renamedNodes;
+        }
+
+        /**
+         * @return The number of added links whose id was prefixed, because the network has a link with the id
+         */
+        public int getRenamedLinks() {
+            return this.renamedLinks;
+        }
+
+        /**
+         * @return The number of links of the second network that are not added, because the network already has them or
+         *         their nodes are matched to the same node
+         */
+        public int getSkippedLinks() {
+            return this.skippedLinks;
+        }
+    }
+
+    /**
+     * @param tolerance The distance in metres within which a node of the second network is the same as a node of the
+     *                  network
+     * @param prefix The prefix of the ids of the second network that clash with ids of the network
+     */
+    public NetworkMerge(double tolerance, String prefix) {
+        this.tolerance = tolerance;
+        this.prefix = prefix;
+    }
+
+    /**
+     * Plans the merge of a second network into a network. Only reads the given elements of the network, so it may run
+     * off the JavaFX application thread on a copy of the arrays of the network
+     * @param incoming The second network, with WGS84 coordinates like the network
+     * @param nodes The nodes of the network
+     * @param links The links of the network
+     * @param factory The factory of the network, to create the added nodes and links with
+     * @return The nodes and links to add
+     */
+    public Plan plan(CompactNetwork incoming, Node[] nodes, Link[] links, NetworkFactory factory) {
+        long start = System.nanoTime();
+        NodeSpatialIndex nodeIndex = new NodeSpatialIndex();
+        HashSet<Id<Node>> nodeIds = new HashSet<>(nodes.length * 4 / 3 + 1);
+        for (Node node : nodes) {
+            nodeIndex.add(node);
+            nodeIds.add(node.getId());
+        }
+        LinkIndex linkIndex = new LinkIndex();
+        HashSet<Id<Link>> linkIds = new HashSet<>(links.length * 4 / 3 + 1);
+        for (Link link : links) {
+            linkIndex.add(link);
+            linkIds.add(link.getId());
+        }
+
+        // The nearest node of the network for every node of the second network, looked up in parallel
+        int incomingNodes = incoming.getNodeCount();
+        Node[] matches = new Node[incomingNodes];
+        IntStream.range(0, incomingNodes).parallel().forEach(i ->
+                matches[i] = findNearest(nodeIndex, incoming.getNodeX(i), incoming.getNodeY(i)));
+
+        Node[] mergedNodes = new Node[incomingNodes];
+        List<Node> addedNodes = new ArrayList<>();
+        int matchedNodes = 0;
+        int renamedNodes = 0;
+        for (int i = 0; i < incomingNodes; i++) {
+            if (matches[i] != null) {
+                mergedNodes[i] = matches[i];
+                matchedNodes++;
+                continue;
+            }
+            Id<Node> id = uniqueId(incoming.getNodeId(i), nodeIds, Node.class);
+            if (!id.toString().equals(incoming.getNodeId(i))) {
+                renamedNodes++;
+            }
+            nodeIds.add(id);
+            mergedNodes[i] = incoming.createNode(i, id, factory);
+            addedNodes.add(mergedNodes[i]);
+        }
+
+        List<Link> addedLinks = new ArrayList<>();
+        HashMap<String, Set<String>> modeSets = new HashMap<>();
+        int renamedLinks = 0;
+        int skippedLinks = 0;
+        for (int l = 0; l < incoming.getLinkCount(); l++) {
+            Node from = mergedNodes[incoming.getLinkFrom(l)];
+            Node to = mergedNodes[incoming.getLinkTo(l)];
+            if (from == to || linkIndex.contains(from.getId(), to.getId())) {
+                skippedLinks++;
+                continue;
+            }
+            Id<Link> id = uniqueId(incoming.getLinkId(l), linkIds, Link.class);
+            if (!id.toString().equals(incoming.getLinkId(l))) {
+                renamedLinks++;
+            }
+            linkIds.add(id);
+            addedLinks.add(incoming.createLink(l, id, from, to, factory, modeSets));
+        }
+        logger.info("merge planned in {}ms: {} nodes matched, {} nodes and {} links added, {} links skipped",
+                (System.nanoTime() - start) / 1000000, matchedNodes, addedNodes.size(), addedLinks.size(), skippedLinks);
+        return new Plan(addedNodes, addedLinks, matchedNodes, renamedNodes, renamedLinks, skippedLinks);
+    }
+
+    /**
+     * Finds the node of the network closest to a node of the second network, within the tolerance in metres. A degree
+     * of longitude is shorter than one of latitude away from the equator, so the candidates are looked up in a box
+     * that is wider in degrees of longitude, and their distance is measured in metres
+     * @param nodeIndex The spatial index of the nodes of the network
+     * @param x The WGS84 x coordinate of the node of the second network
+     * @param y The WGS84 y coordinate of the node of the second network
+     * @return The closest node within the tolerance, or null if there is none
+     */
+    private Node findNearest(NodeSpatialIndex nodeIndex, double x, double y) {
+        double toleranceY = this.tolerance / METRES_PER_DEGREE;
+        // The box is widened for the latitude of its edge closest to the pole
+        double cosine = Math.cos(Math.toRadians(Math.min(Math.abs(y) + toleranceY, 89.0)));
+        double toleranceX = toleranceY / cosine;
+        Node nearest = null;
+        double nearestDistance = this.tolerance;
+        for (Node node : nodeIndex.findWithin(x - toleranceX, y - toleranceY, x + toleranceX, y + toleranceY)) {
+            double distance = NetworkComparison.distance(x, y, node.getCoord().getX(), node.getCoord().getY());
+            if (distance <= nearestDistance) {
+                nearest = node;
+                nearestDistance = distance;
+            }
+        }
+        return nearest;
+    }
+
+    /**
+     * @param id The id of an element of the second network
+     * @param ids The ids of the elements of the network and of the elements added so far
+     * @param type The type of the element
+     * @param <T> The type of the element
+     * @return The id itself if the network does not have it, otherwise the id with the prefix, numbered if needed
+     */
+    private <T> Id<T> uniqueId(String id, Set<Id<T>> ids, Class<T> type) {
+        Id<T> unique = Id.create(id, type);
+        for (int n = 1; ids.contains(unique); n++) {
+            unique = Id.create(n == 1 ? this.prefix + id : this.prefix + n + "_" + id, type);
+        }
+        return unique;
+    }
+}
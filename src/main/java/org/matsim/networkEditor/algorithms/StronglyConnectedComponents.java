@@ -0,0 +1,220 @@
+package org.matsim.networkEditor.algorithms;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.function.Predicate;
+
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.network.Link;
+import org.matsim.api.core.v01.network.Network;
+import org.matsim.api.core.v01.network.Node;
+
+/**
+ * The strongly connected components of the graph formed by a subset of the links of a network, i.e. the largest sets of
+ * nodes in which every node can be reached from every other one. Computed with Tarjan's algorithm over an array-based
+ * adjacency list; the depth-first search keeps its own stack instead of recursing, so that the long chains of nodes of
+ * real road networks do not overflow the call stack. Nodes without any of the selected links are not part of any
+ * component
+ */
+public final class StronglyConnectedComponents {
+    /** Component of the nodes that have none of the selected links */
+    public static final int NO_COMPONENT = -1;
+
+    private final Node[] nodes;
+    private final HashMap<Id<Node>, Integer> nodeIndexes;
+    private final int[] components;
+    private final int[] componentSizes;
+
+    private StronglyConnectedComponents(Node[] nodes, HashMap<Id<Node>, Integer> nodeIndexes, int[] components,
+                                        int[] componentSizes) {
+        this.nodes = nodes;
+        this.nodeIndexes = nodeIndexes;
+        this.components = components;
+        this.componentSizes = componentSizes;
+    }
+
+    /**
+     * Computes the strongly connected components formed by all links of a network
+     * @param network The network
+     * @return The components
+     */
+    public static StronglyConnectedComponents compute(Network network) {
+        return compute(network, link -> true);
+    }
+
+    /**
+     * Computes the strongly connected components formed by some of the links of a network, e.g. the links of a mode.
+     * Only reads the network, so it may run concurrently with other computations on the same network
+     * @param network The network
+     * @param linkFilter Selects the links that connect the nodes
+     * @return The components
+     */
+    public static StronglyConnectedComponents compute(Network network, Predicate<? super Link> linkFilter) {
+        Node[] nodes = network.getNodes().values().toArray(new Node[0]);
+        return compute(nodes, indexNodes(nodes), network.getLinks().values().toArray(new Link[0]), linkFilter);
+    }
+
+    /**
+     * Computes the strongly connected components formed by some links of a network, with the nodes already numbered,
+     * so that several computations over the same network share the numbering
+     * @param nodes The nodes of the network
+     * @param nodeIndexes The position of each node in the array of nodes, see {@link #indexNodes}
+     * @param allLinks The links of the network
+     * @param linkFilter Selects the links that connect the nodes
+     * @return The components
+     */
+    public static StronglyConnectedComponents compute(Node[] nodes, HashMap<Id<Node>, Integer> nodeIndexes, Link[] allLinks,
+                                                      Predicate<? super Link> linkFilter) {
+        int nodeCount = nodes.length;
+        // Adjacency list of the selected links: the targets of node i are targets[offsets[i]] to targets[offsets[i + 1] - 1]
+        Link[] links = Arrays.stream(allLinks).filter(linkFilter).toArray(Link[]::new);
+        int[] offsets = new int[nodeCount + 1];
+        boolean[] connected = new boolean[nodeCount];
+        for (Link link : links) {
+            int from = nodeIndexes.get(link.getFromNode().getId());
+            offsets[from + 1]++;
+            connected[from] = true;
+            connected[nodeIndexes.get(link.getToNode().getId())] = true;
+        }
+        for (int i = 0; i < nodeCount; i++) {
+            offsets[i + 1] += offsets[i];
+        }
+        int[] targets = new int[links.length];
+        int[] fill = Arrays.copyOf(offsets, nodeCount);
+        for (Link link : links) {
+            targets[fill[nodeIndexes.get(link.getFromNode().getId())]++] = nodeIndexes.get(link.getToNode().getId());
+        }
+
+        int[] components = new int[nodeCount];
+        Arrays.fill(components, NO_COMPONENT);
+        int[] componentSizes = new int[16];
+        int componentCount = 0;
+
+        int[] order = new int[nodeCount];
+        Arrays.fill(order, -1);
+        int[] lowLink = new int[nodeCount];
+        boolean[] onStack = new boolean[nodeCount];
+        int[] stack = new int[nodeCount];
+        int stackSize = 0;
+        // The path of the depth-first search, with the position of the next link to follow from each node on it
+        int[] path = new int[nodeCount];
+        int[] nextLink = new int[nodeCount];
+        int counter = 0;
+
+        for (int start = 0; start < nodeCount; start++) {
+            if (order[start] != -1 || !connected[start]) {
+                continue;
+            }
+            int pathSize = 0;
+            order[start] = lowLink[start] = counter++;
+            stack[stackSize++] = start;
+            onStack[start] = true;
+            nextLink[start] = offsets[start];
+            path[pathSize++] = start;
+
+            while (pathSize > 0) {
+                int node = path[pathSize - 1];
+                if (nextLink[node] < offsets[node + 1]) {
+                    int target = targets[nextLink[node]++];
+                    if (order[target] == -1) {
+                        order[target] = lowLink[target] = counter++;
+                        stack[stackSize++] = target;
+                        onStack[target] = true;
+                        nextLink[target] = offsets[target];
+                        path[pathSize++] = target;
+                    } else if (onStack[target]) {
+                        lowLink[node] = Math.min(lowLink[node], order[target]);
+                    }
+                    continue;
+                }
+                // All links of the node are followed, return to the previous node of the path
+                pathSize--;
+                if (pathSize > 0) {
+                    int previous = path[pathSize - 1];
+                    lowLink[previous] = Math.min(lowLink[previous], lowLink[node]);
+                }
+                if (lowLink[node] == order[node]) {
+                    // The node is the root of a component, which consists of the nodes above it on the stack
+                    if (componentCount == componentSizes.length) {
+                        componentSizes = Arrays.copyOf(componentSizes, componentCount * 2);
+                    }
+                    int member;
+                    do {
+                        member = stack[--stackSize];
+                        onStack[member] = false;
+                        components[member] = componentCount;
+                        componentSizes[componentCount]++;
+                    } while (member != node);
+                    componentCount++;
+                }
+            }
+        }
+        return new StronglyConnectedComponents(nodes, nodeIndexes, components,
+                Arrays.copyOf(componentSizes, componentCount));
+    }
+
+    /**
+     * Numbers the nodes of a network by their position in an array
+     * @param nodes The nodes of the network
+     * @return The position of each node, by its id
+     */
+    public static HashMap<Id<Node>, Integer> indexNodes(Node[] nodes) {
+        HashMap<Id<Node>, Integer> nodeIndexes = new HashMap<>(nodes.length * 4 / 3 + 1);
+        for (int i = 0; i < nodes.length; i++) {
+            nodeIndexes.put(nodes[i].getId(), i);
+        }
+        return nodeIndexes;
+    }
+
+    /**
+     * @return The number of components
+     */
+    public int getComponentCount() {
+        return this.componentSizes.length;
+    }
+
+    /**
+     * @param component A component
+     * @return The number of nodes of the component
+     */
+    public int getComponentSize(int component) {
+        return this.componentSizes[component];
+    }
+
+    /**
+     * @return The component with the most nodes, or {@link #NO_COMPONENT} if there are no components
+     */
+    public int getLargestComponent() {
+        int largest = NO_COMPONENT;
+        for (int c = 0; c < this.componentSizes.length; c++) {
+            if (largest == NO_COMPONENT || this.componentSizes[c] > this.componentSizes[largest]) {
+                largest = c;
+            }
+        }
+        return largest;
+    }
+
+    /**
+     * @param nodeId The id of a node of the network
+     * @return The component of the node, or {@link #NO_COMPONENT} if it has none of the selected links or is unknown
+     */
+    public int getComponent(Id<Node> nodeId) {
+        Integer index = this.nodeIndexes.get(nodeId);
+        return index == null ? NO_COMPONENT : this.components[index];
+    }
+
+    /**
+     * @return The nodes of the network, in the order of {@link #getComponentOfIndex(int)}
+     */
+    public Node[] getNodes() {
+        return this.nodes;
+    }
+
+    /**
+     * @param nodeIndex The position of a node in {@link #getNodes()}
+     * @return The component of the node, or {@link #NO_COMPONENT} if it has none of the selected links
+     */
+    public int getComponentOfIndex(int nodeIndex) {
+        return this.components[nodeIndex];
+    }
+}
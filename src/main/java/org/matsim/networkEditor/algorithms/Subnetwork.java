@@ -0,0 +1,56 @@
+package org.matsim.networkEditor.algorithms;
+
+import java.util.Collections;
+import java.util.List;
+
+import org.matsim.api.core.v01.network.Link;
+import org.matsim.api.core.v01.network.Node;
+
+/**
+ * A strongly connected component of the links of one mode: nodes that can all be reached from each other using only
+ * links that allow the mode, and the links of the mode between them
+ */
+public class Subnetwork {
+    private final String mode;
+    private final List<Node> nodes;
+    private final List<Link> links;
+
+    /**
+     * @param mode The mode whose links form the subnetwork
+     * @param nodes The nodes of the subnetwork
+     * @param links The links of the mode between the nodes of the subnetwork
+     */
+    public Subnetwork(String mode, List<Node> nodes, List<Link> links) {
+        this.mode = mode;
+        this.nodes = Collections.unmodifiableList(nodes);
+        this.links = Collections.unmodifiableList(links);
+    }
+
+    /**
+     * @return The mode whose links form the subnetwork
+     */
+    public String getMode() {
+        return this.mode;
+    }
+
+    /**
+     * @return The nodes of the subnetwork
+     */
+    public List<Node> getNodes() {
+        return this.nodes;
+    }
+
+    /**
+     * @return The links of the mode between the nodes of the subnetwork
+     */
+    public List<Link> getLinks() {
+        return this.links;
+    }
+
+    /**
+     * @return The number of nodes of the subnetwork
+     */
+    public int size() {
+        return this.nodes.size();
+    }
+}
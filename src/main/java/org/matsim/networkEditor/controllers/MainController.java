@@ -18,9 +18,17 @@ package org.matsim.networkEditor.controllers;
 import java.io.*;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.LinkedHashSet;
+import java.util.HashSet;
 import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.regex.Pattern;
+import java.util.stream.IntStream;
+import java.util.stream.Collectors;
 
 import com.sothawo.mapjfx.Configuration;
 import com.sothawo.mapjfx.Coordinate;
@@ -37,19 +45,49 @@ import com.sothawo.mapjfx.event.MapViewEvent;
 import com.sothawo.mapjfx.event.MarkerEvent;
 import com.sothawo.mapjfx.offline.OfflineCache;
 
+import javafx.application.Platform;
+import javafx.beans.property.SimpleStringProperty;
+import javafx.collections.FXCollections;
+import javafx.collections.ListChangeListener;
+import javafx.concurrent.Task;
 import javafx.event.ActionEvent;
 import javafx.scene.control.*;
 import org.matsim.api.core.v01.Coord;
 import org.matsim.api.core.v01.Id;
 import org.matsim.api.core.v01.network.Link;
+import org.matsim.api.core.v01.network.Network;
 import org.matsim.api.core.v01.network.Node;
 import org.matsim.core.network.NetworkUtils;
-import org.matsim.core.network.io.MatsimNetworkReader;
 import org.matsim.core.utils.geometry.CoordUtils;
 import org.matsim.core.utils.geometry.transformations.TransformationFactory;
+import org.matsim.networkEditor.algorithms.InMemoryNetworkCleaner;
+import org.matsim.networkEditor.algorithms.ModeConnectivity;
+import org.matsim.networkEditor.algorithms.NetworkComparison;
+import org.matsim.networkEditor.algorithms.NetworkDelta;
+import org.matsim.networkEditor.algorithms.NetworkMerge;
+import org.matsim.networkEditor.algorithms.Subnetwork;
+import org.matsim.networkEditor.elements.BulkLinkEdit;
+import org.matsim.networkEditor.elements.ChangeTracker;
+import org.matsim.networkEditor.elements.CommandJournal;
 import org.matsim.networkEditor.elements.ExtendedNetwork;
+import org.matsim.networkEditor.elements.LinkIndex;
+import org.matsim.networkEditor.elements.NetworkCheckpoint;
+import org.matsim.networkEditor.elements.NetworkDiff;
+import org.matsim.networkEditor.elements.NetworkChangeListener;
 import org.matsim.networkEditor.elements.ValidationTableEntry;
-import org.matsim.run.NetworkCleaner;
+import org.matsim.networkEditor.io.NetworkComparisonTask;
+import org.matsim.networkEditor.io.NetworkImportTask;
+import org.matsim.networkEditor.io.NetworkLoader;
+import org.matsim.networkEditor.io.NetworkMergeTask;
+import org.matsim.networkEditor.utils.CachedTransformation;
+import org.matsim.networkEditor.io.NetworkSnapshot;
+import org.matsim.networkEditor.io.OsmImportOptions;
+import org.matsim.networkEditor.validation.ValidationContext;
+import org.matsim.networkEditor.validation.ValidationEngine;
+import org.matsim.networkEditor.validation.ValidationReport;
+import org.matsim.networkEditor.validation.ValidationTask;
+import org.matsim.networkEditor.visualElements.NetworkLayer;
+import org.matsim.networkEditor.visualElements.TaskProgressDialog;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -68,6 +106,7 @@ import javafx.scene.layout.StackPane;
 import javafx.scene.layout.VBox;
 import javafx.scene.paint.Color;
 import javafx.stage.FileChooser;
+import javafx.stage.Modality;
 import javafx.stage.Stage;
 
 public class MainController {
@@ -78,11 +117,29 @@ public class MainController {
     private static final Logger logger = LoggerFactory.getLogger(MainController.class);
 
     private ExtendedNetwork extendedNetwork = null;
+    private NetworkLayer networkLayer = null;
+    private final ValidationEngine validationEngine = ValidationEngine.load();
+    private ValidationTask validationTask = null;
+    // The rows of the last connectivity analysis in the validation tableview, replaced when it is run again
+    private List<ValidationTableEntry> connectivityWarnings = new ArrayList<>();
     /** Keeping track of the selected node and link for editing/deleting purposes */
     private Node selectedNode = null;
     private Link selectedLink = null;
     private ValidationTableEntry selectedValidationItem = null;
 
+    /** Colour of the nodes and links a cleaning would remove */
+    private static final String CLEANING_PREVIEW_COLOR = "#e00000";
+    private static final String LINK_SELECTION_COLOR = "#0090ff";
+    /** Colours of the added, removed, changed and renamed elements when comparing network files, in this order */
+    private static final String[] DIFFERENCE_COLORS = {"#00b050", "#e00000", "#ff9900", "#a040ff"};
+    /** Zoom level the map is zoomed in to at least when a difference is selected */
+    private static final int DIFFERENCE_ZOOM = 16;
+    /** Number of ids of each kind of difference listed when comparing versions of the network */
+    private static final int DIFF_LISTED_IDS = 200;
+    /** Colours of the islands of the modes on the map, used in turn */
+    private static final String[] SUBNETWORK_COLORS = {"#e6194b", "#3cb44b", "#4363d8", "#f58231", "#911eb4", "#42d4f4",
+            "#f032e6", "#9a6324"};
+
     private static final Coordinate COORD_GERMANY_NORTH = new Coordinate(55.05863889, 8.417527778);
     private static final Coordinate COORD_GERMANY_SOUTH = new Coordinate(47.27166667, 10.17405556);
     private static final Coordinate COORD_GERMANY_WEST = new Coordinate(51.0525, 5.866944444);
@@ -97,6 +154,8 @@ public class MainController {
     /** Used to keep track of the from and to nodes for link creation */
     private Marker firstNodeMarker = null;
     private Marker secondNodeMarker = null;
+    // The visible extent of the map, offered as the area to crop OpenStreetMap imports to
+    private Extent mapExtent = null;
 
     /** button to import network.xml */
     @FXML
@@ -106,6 +165,10 @@ public class MainController {
     @FXML
     private Button buttonImportOsm;
 
+    /** button to merge a second network file into the network */
+    @FXML
+    private Button buttonMerge;
+
     /** button to create new network */
     @FXML
     private Button buttonCreate;
@@ -122,6 +185,10 @@ public class MainController {
     @FXML
     private Button buttonRedo;
 
+    /** button to take, compare and restore versions of the network */
+    @FXML
+    private Button buttonVersions;
+
     /** button to set the map's zoom. */
     @FXML
     private Button buttonZoom;
@@ -172,10 +239,30 @@ public class MainController {
     @FXML
     private Button linkDeleteButton;
 
+    /** toggle to select the links within a box drawn on the map with Ctrl+drag, instead of zooming to the box */
+    @FXML
+    private ToggleButton linkSelectToggle;
+
+    /** button to edit the attributes of all selected links at once */
+    @FXML
+    private Button linkBulkEditButton;
+
     /** button to run the validation function */
     @FXML
     private Button validationRunButton;
 
+    /** button to cancel a running validation */
+    @FXML
+    private Button validationCancelButton;
+
+    /** label showing the rule a running validation is checking, or the outcome of the last validation */
+    @FXML
+    private Label validationStatusLabel;
+
+    /** progress of a running validation */
+    @FXML
+    private ProgressBar validationProgress;
+
     /** button to edit Node/Link from the validation table */
     @FXML
     private Button validationEditButton;
@@ -184,10 +271,34 @@ public class MainController {
     @FXML
     private Button validationDeleteButton;
 
+    /** button to analyse the connectivity of each mode */
+    @FXML
+    private Button connectivityButton;
+
     /** button to run the network cleaner */
     @FXML
     private Button cleanNetworkButton;
 
+    /** pane listing the differences between two network files */
+    @FXML
+    private TitledPane differences;
+
+    /** contents of the differences pane */
+    @FXML
+    private VBox vboxDifferences;
+
+    /** label showing the files compared and the number of differences */
+    @FXML
+    private Label differencesStatusLabel;
+
+    /** button to compare two network files */
+    @FXML
+    private Button compareFilesButton;
+
+    /** button to remove the differences from the map and the side panel */
+    @FXML
+    private Button differencesClearButton;
+
     /** the MapView containing the map */
     @FXML
     private MapView mapView;
@@ -283,6 +394,7 @@ public class MainController {
         // file chooser
         buttonImport.setOnAction(event -> importNetworkDialog());
         buttonImportOsm.setOnAction(event -> importOsmNetwork());
+        buttonMerge.setOnAction(event -> mergeNetworkFile());
         buttonCreate.setOnAction(event -> createNetworkDialog());
         buttonImport.setOnAction(event -> importNetwork());
         buttonCreate.setOnAction(event -> createNetwork());
@@ -290,16 +402,23 @@ public class MainController {
 
         buttonUndo.setOnAction(event -> actionUndo());
         buttonRedo.setOnAction(event -> actionRedo());
+        buttonVersions.setOnAction(event -> openVersions());
 
         // Connect node, link, validation and cleaning buttons to respective operations
         nodeDeleteButton.setOnAction(event -> deleteSelectedNode());
         nodeEditButton.setOnAction(event -> editSelectedNode());
         linkDeleteButton.setOnAction(event -> deleteSelectedLink());
         linkEditButton.setOnAction(event -> editSelectedLink());
+        linkBulkEditButton.setOnAction(event -> bulkEditSelectedLinks());
+        linkSelectToggle.setTooltip(new Tooltip("Select the links within a box drawn with Ctrl+drag on the map"));
         validationRunButton.setOnAction(event -> runValidation());
+        validationCancelButton.setOnAction(event -> cancelValidation());
         validationEditButton.setOnAction(event -> editSelectedValidationItem());
         validationDeleteButton.setOnAction(event -> deleteSelectedValidationItem());
+        connectivityButton.setOnAction(event -> analyzeConnectivity());
         cleanNetworkButton.setOnAction(event -> cleanNetwork());
+        compareFilesButton.setOnAction(event -> compareNetworkFiles());
+        differencesClearButton.setOnAction(event -> clearDifferences());
         buttonSettings.setOnAction(event -> openSettings());
 
         // Undo and Redo initially disabled
@@ -311,12 +430,17 @@ public class MainController {
         nodeEditButton.setDisable(true);
         linkDeleteButton.setDisable(true);
         linkEditButton.setDisable(true);
+        linkBulkEditButton.setDisable(true);
         buttonSave.setDisable(true);
+        buttonVersions.setDisable(true);
+        buttonMerge.setDisable(true);
         // TODO Change validation run and clean network to disabled, when there is a check for network to not be empty
         validationRunButton.setDisable(false);
         validationEditButton.setDisable(true);
         validationDeleteButton.setDisable(true);
+        connectivityButton.setDisable(false);
         cleanNetworkButton.setDisable(false);
+        differencesClearButton.setDisable(true);
 
         // set the controls to disabled, this will be changed when the MapView is initialized
         setControlsDisable(true);
@@ -528,6 +652,7 @@ public class MainController {
             // If there is a previous network loaded, clear the content, map, side panel and selected node/link items
             // for the new network to be imported and displayed
             if (this.extendedNetwork != null) {
+                cancelValidation();
                 this.extendedNetwork.clear();
                 this.selectedNode = null;
                 this.selectedLink = null;
@@ -597,6 +722,17 @@ public class MainController {
         grid.add(coordinateOptions, 1, 0);
         grid.add(epsgCode, 1, 1);
 
+        // The highway types to import and the area to crop to are applied while the file is parsed
+        TextField highwayTypes = new TextField(String.join(", ", OsmImportOptions.HIGHWAY_DEFAULTS.keySet()));
+        highwayTypes.setPrefColumnCount(30);
+        Extent extent = this.mapExtent;
+        CheckBox cropToMap = new CheckBox("Crop to the map extent");
+        cropToMap.setSelected(extent != null);
+        cropToMap.setDisable(extent == null);
+        grid.add(new Label("Highway types:"), 0, 3);
+        grid.add(highwayTypes, 1, 3);
+        grid.add(cropToMap, 1, 4);
+
         // Enable/Disable button
         javafx.scene.Node importButton = dialog.getDialogPane().lookupButton(buttonTypeImport);
         importButton.setDisable(false);
@@ -665,10 +801,24 @@ public class MainController {
             } else {
                 coordSysOption.append(coordinateOptions.getValue());
             }
+            OsmImportOptions options = new OsmImportOptions();
+            try {
+                String types = highwayTypes.getText().trim();
+                options.setHighwayTypes(new LinkedHashSet<>(Arrays.asList(types.split("\\s*,\\s*"))));
+            } catch (IllegalArgumentException e) {
+                message.setText(e.getMessage());
+                message.setTextFill(Color.RED);
+                return;
+            }
+            if (cropToMap.isSelected()) {
+                // Swap latitude and longitude to match MATSim notation
+                options.setArea(extent.getMin().getLongitude(), extent.getMin().getLatitude(),
+                        extent.getMax().getLongitude(), extent.getMax().getLatitude());
+            }
 
-            if (this.locateOsmFile(coordSysOption.toString()) == false) {
+            if (this.locateOsmFile(coordSysOption.toString(), options) == false) {
                 if (importNetworkDialog()) {
-                    locateOsmFile(coordSysOption.toString());
+                    locateOsmFile(coordSysOption.toString(), options);
                 } else {
                     dialog.close();
                 }
@@ -703,6 +853,7 @@ public class MainController {
             }
 
             if (this.extendedNetwork != null) {
+                cancelValidation();
                 this.extendedNetwork.clear();
                 this.selectedNode = null;
                 this.selectedLink = null;
@@ -878,6 +1029,7 @@ public class MainController {
             // If there is a previous network loaded, clear the contents, map, side panel and selected node/link items
             // for the new network to be imported and displayed
             if (this.extendedNetwork != null) {
+                cancelValidation();
                 this.extendedNetwork.clear();
                 this.selectedNode = null;
                 this.selectedLink = null;
@@ -889,10 +1041,12 @@ public class MainController {
 
             // Create new network, initialize table listeners and remove overlapping glass pane
             this.extendedNetwork = new ExtendedNetwork(nameValue, null, null, null, vboxNetwork,
-                    vboxNodes, vboxLinks, vboxValidation, mapView, coordSysOption.toString());
+                    vboxNodes, vboxLinks, vboxValidation, networkLayer, coordSysOption.toString());
             initializeTableListeners();
             // Enable save button and make glass pane invisible
             buttonSave.setDisable(false);
+            buttonVersions.setDisable(false);
+            buttonMerge.setDisable(false);
             glassPane.setVisible(false);
         });
         return false;
@@ -939,6 +1093,20 @@ public class MainController {
                 validationDeleteButton.setDisable(true);
             }
         });
+        // The selected links are highlighted on the map and can be edited at once
+        this.extendedNetwork.getLinkTable().getSelectionModel().getSelectedItems()
+                .addListener((ListChangeListener<Link>) change -> showLinkSelection());
+        showLinkSelection();
+
+        // The undo and redo buttons follow the history of the network, which may be changed on a worker thread
+        this.extendedNetwork.getJournal().setListener(() -> {
+            if (Platform.isFxApplicationThread()) {
+                updateUndoRedoButtons();
+            } else {
+                Platform.runLater(this::updateUndoRedoButtons);
+            }
+        });
+        updateUndoRedoButtons();
     }
 
     /**
@@ -965,10 +1133,9 @@ public class MainController {
         grid.setPadding(new Insets(20, 150, 10, 30));
 
         // Transform map coordinates to MATSim style coords, considering the coordinate system
-        Coord coordA = TransformationFactory.getCoordinateTransformation(TransformationFactory.WGS84, this.extendedNetwork.getCoordinateSystem())
-                .transform(CoordUtils.createCoord(nodeCoordinateA.getLongitude(), nodeCoordinateA.getLatitude()));
-        Coord coordB = TransformationFactory.getCoordinateTransformation(TransformationFactory.WGS84, this.extendedNetwork.getCoordinateSystem())
-                .transform(CoordUtils.createCoord(nodeCoordinateB.getLongitude(), nodeCoordinateB.getLatitude()));
+        CachedTransformation toNetwork = CachedTransformation.fromWgs84(this.extendedNetwork.getCoordinateSystem());
+        Coord coordA = toNetwork.transform(CoordUtils.createCoord(nodeCoordinateA.getLongitude(), nodeCoordinateA.getLatitude()));
+        Coord coordB = toNetwork.transform(CoordUtils.createCoord(nodeCoordinateB.getLongitude(), nodeCoordinateB.getLatitude()));
 
         // Calculate distance between two coordinates to show as default
         double nodesDistance = CoordUtils.calcEuclideanDistance(coordA, coordB);
@@ -1077,29 +1244,34 @@ public class MainController {
                     + this.extendedNetwork.getNodeDescr(nodeCoordinateA) + ", Length:" + dLength + ", Free Speed:" + dFreeSpeed + ", Capacity:"
                     + dCapacity + ", #Lanes:" + dLanes + ", Bidirectional:" + isBidirectional);
 
-            if (!this.extendedNetwork.containsLink(firstNodeMarker.getPosition(), secondNodeMarker.getPosition())) {
-                this.extendedNetwork.addLink(dlinkId, firstNodeMarker.getPosition(), secondNodeMarker.getPosition(), dLength,
-                        dFreeSpeed, dCapacity, dLanes);
-                if (isBidirectional) {
-                    if (NetworkUtils.findLinkInOppositeDirection(this.extendedNetwork.getNetwork().getLinks().get(Id.create(dlinkId, Link.class))) == null) {
-                        // TODO Add check of already existing link
-                        //if (!this.extendedNetwork.containsLink(secondNodeMarker.getPosition(), firstNodeMarker.getPosition()))
+            // Both directions of a bidirectional link are added as one change to undo. The alert is only shown once the
+            // batch is closed, so that the network is not locked while it is open
+            String problem = null;
+            this.extendedNetwork.beginBatch(isBidirectional ? "add bidirectional link" : "add link");
+            try {
+                if (this.extendedNetwork.containsLink(firstNodeMarker.getPosition(), secondNodeMarker.getPosition())) {
+                    problem = "Link already exists!";
+                } else if (!this.extendedNetwork.addLink(dlinkId, firstNodeMarker.getPosition(),
+                        secondNodeMarker.getPosition(), dLength, dFreeSpeed, dCapacity, dLanes)) {
+                    problem = "A link with the id " + dlinkId + " already exists!";
+                } else if (isBidirectional) {
+                    if (!this.extendedNetwork.containsLink(secondNodeMarker.getPosition(), firstNodeMarker.getPosition())) {
                         this.extendedNetwork.addLink(secondNodeMarker.getPosition(), firstNodeMarker.getPosition(), dLength, dFreeSpeed, dCapacity, dLanes);
                     }
                     else {
-                        Alert alert = new Alert(AlertType.INFORMATION);
-                        alert.setTitle("Cannot add link");
-                        alert.setHeaderText(null);
-                        alert.setContentText("Reverse link already exists!");
-
-                        alert.showAndWait();
+                        problem = "Reverse link already exists!";
                     }
                 }
-            } else {
+            } catch (RuntimeException e) {
+                this.extendedNetwork.rollback();
+                throw e;
+            }
+            this.extendedNetwork.commit();
+            if (problem != null) {
                 Alert alert = new Alert(AlertType.INFORMATION);
                 alert.setTitle("Cannot add link");
                 alert.setHeaderText(null);
-                alert.setContentText("Link already exists!");
+                alert.setContentText(problem);
 
                 alert.showAndWait();
             }
@@ -1130,6 +1302,7 @@ public class MainController {
 
             if (file != null) {
                 NetworkUtils.writeNetwork(this.extendedNetwork.getNetwork(), file.getPath());
+                writeSnapshot(file.getPath());
             }
         } catch (Exception exception) {
             logger.debug("Saving file fail");
@@ -1140,23 +1313,218 @@ public class MainController {
     }
 
     /**
-     * Repeats the last change that was undone from the network - to be implemented
+     * Writes a binary snapshot of the network next to the saved network file, so that it can be reopened without parsing
+     * the xml. A failing snapshot does not fail the saving of the network itself
+     * @param networkPath The path the network file was saved to
+     */
+    private void writeSnapshot(String networkPath) {
+        String snapshotPath = NetworkSnapshot.snapshotPathFor(networkPath);
+        try {
+            NetworkSnapshot.write(this.extendedNetwork.toCompactNetwork(), snapshotPath);
+            logger.info("Snapshot written to {}", snapshotPath);
+        } catch (IOException e) {
+            logger.warn("Writing the snapshot " + snapshotPath + " failed", e);
+        }
+    }
+
+    /**
+     * Repeats the last change that was undone from the network
      * @return
      */
     @FXML
     private Object actionRedo() {
+        if (this.extendedNetwork != null) {
+            clearSelection();
+            String description = this.extendedNetwork.redo();
+            if (description != null) {
+                labelEvent.setText("Event: redo " + description);
+            }
+        }
         return null;
     }
 
     /**
-     * Removes the last change made to the network - to be implemented
+     * Removes the last change made to the network
      * @return
      */
     @FXML
     private Object actionUndo() {
+        if (this.extendedNetwork != null) {
+            clearSelection();
+            String description = this.extendedNetwork.undo();
+            if (description != null) {
+                labelEvent.setText("Event: undo " + description);
+            }
+        }
         return null;
     }
 
+    /**
+     * Shows a dialog with the named versions of the network: a version of the current network can be taken, the network
+     * restored to a version as one change to undo, and any two versions or a version and the current network compared,
+     * listing the nodes and links that were added, removed or changed
+     */
+    private void openVersions() {
+        if (this.extendedNetwork == null || this.extendedNetwork.isInBatch()) {
+            return;
+        }
+        // Clear node markers used for link creation
+        firstNodeMarker = null;
+        secondNodeMarker = null;
+
+        Dialog<Void> dialog = new Dialog<>();
+        dialog.setTitle("Versions");
+        dialog.setHeaderText("Take, compare and restore versions of the network");
+        dialog.getDialogPane().getButtonTypes().add(ButtonType.CLOSE);
+
+        ListView<NetworkCheckpoint> versionList = new ListView<>();
+        versionList.setPrefHeight(150);
+        TextField nameField = new TextField();
+        nameField.setPromptText("Name of the version");
+        Button takeButton = new Button("Take");
+        Button restoreButton = new Button("Restore");
+        Button deleteButton = new Button("Delete");
+        ChoiceBox<String> fromChoice = new ChoiceBox<>();
+        ChoiceBox<String> toChoice = new ChoiceBox<>();
+        Button compareButton = new Button("Compare");
+        TextArea diffArea = new TextArea();
+        diffArea.setEditable(false);
+        diffArea.setPrefRowCount(12);
+
+        // The versions are listed in the order they were taken; the comparison offers the current network first
+        Runnable refresh = () -> {
+            List<NetworkCheckpoint> checkpoints = this.extendedNetwork.getVersions().getCheckpoints();
+            versionList.getItems().setAll(checkpoints);
+            List<String> names = new ArrayList<>();
+            names.add("(current network)");
+            checkpoints.forEach(checkpoint -> names.add(checkpoint.getName()));
+            fromChoice.getItems().setAll(names);
+            toChoice.getItems().setAll(names);
+            fromChoice.getSelectionModel().select(names.size() > 1 ? 1 : 0);
+            toChoice.getSelectionModel().select(0);
+        };
+        refresh.run();
+        restoreButton.disableProperty().bind(versionList.getSelectionModel().selectedItemProperty().isNull());
+        deleteButton.disableProperty().bind(versionList.getSelectionModel().selectedItemProperty().isNull());
+        takeButton.disableProperty().bind(nameField.textProperty().isEmpty());
+
+        takeButton.setOnAction(event -> {
+            NetworkCheckpoint checkpoint = this.extendedNetwork.checkpoint(nameField.getText().trim());
+            nameField.clear();
+            refresh.run();
+            labelEvent.setText("Event: version " + checkpoint.getName() + " taken");
+        });
+        deleteButton.setOnAction(event -> {
+            this.extendedNetwork.getVersions().removeCheckpoint(versionList.getSelectionModel().getSelectedItem().getName());
+            refresh.run();
+        });
+        restoreButton.setOnAction(event -> {
+            String name = versionList.getSelectionModel().getSelectedItem().getName();
+            clearSelection();
+            NetworkDiff diff = this.extendedNetwork.restoreCheckpoint(name);
+            if (diff != null) {
+                diffArea.setText(describeDiff(diff));
+                labelEvent.setText("Event: version " + name + " restored, " + diff.size() + " nodes and links changed");
+            }
+        });
+        compareButton.setOnAction(event -> {
+            List<NetworkCheckpoint> checkpoints = this.extendedNetwork.getVersions().getCheckpoints();
+            int from = fromChoice.getSelectionModel().getSelectedIndex();
+            int to = toChoice.getSelectionModel().getSelectedIndex();
+            NetworkCheckpoint fromVersion = from <= 0 ? this.extendedNetwork.getCurrentVersion() : checkpoints.get(from - 1);
+            NetworkCheckpoint toVersion = to <= 0 ? this.extendedNetwork.getCurrentVersion() : checkpoints.get(to - 1);
+            diffArea.setText(describeDiff(fromVersion.diff(toVersion)));
+        });
+
+        GridPane grid = new GridPane();
+        grid.setHgap(10);
+        grid.setVgap(10);
+        grid.setPadding(new Insets(20, 30, 10, 30));
+        grid.add(versionList, 0, 0, 4, 1);
+        grid.add(nameField, 0, 1, 2, 1);
+        grid.add(takeButton, 2, 1);
+        grid.add(restoreButton, 0, 2);
+        grid.add(deleteButton, 1, 2);
+        grid.add(new Label("Compare"), 0, 3);
+        grid.add(fromChoice, 1, 3);
+        grid.add(new Label("with"), 2, 3);
+        grid.add(toChoice, 3, 3);
+        grid.add(compareButton, 0, 4);
+        grid.add(diffArea, 0, 5, 4, 1);
+        dialog.getDialogPane().setContent(grid);
+        dialog.showAndWait();
+    }
+
+    /**
+     * @param diff The differences between two versions of the network
+     * @return The differences as text: the number of added, removed and changed nodes and links, followed by their ids,
+     *         up to {@link #DIFF_LISTED_IDS} of each
+     */
+    private static String describeDiff(NetworkDiff diff) {
+        if (diff.isEmpty()) {
+            return "The versions " + diff.getFromName() + " and " + diff.getToName() + " are the same";
+        }
+        StringBuilder text = new StringBuilder("From " + diff.getFromName() + " to " + diff.getToName() + ": " + diff);
+        appendIds(text, "Added nodes", diff.getAddedNodes());
+        appendIds(text, "Removed nodes", diff.getRemovedNodes());
+        appendIds(text, "Changed nodes", diff.getChangedNodes());
+        appendIds(text, "Added links", diff.getAddedLinks());
+        appendIds(text, "Removed links", diff.getRemovedLinks());
+        appendIds(text, "Changed links", diff.getChangedLinks());
+        return text.toString();
+    }
+
+    /**
+     * @param text The text to append the ids to
+     * @param title The title of the ids
+     * @param ids The ids of nodes or links, of which at most {@link #DIFF_LISTED_IDS} are appended
+     */
+    private static void appendIds(StringBuilder text, String title, List<? extends Id<?>> ids) {
+        if (ids.isEmpty()) {
+            return;
+        }
+        text.append("\n\n").append(title).append(": ");
+        ids.stream().limit(DIFF_LISTED_IDS).forEach(id -> text.append(id).append(' '));
+        if (ids.size() > DIFF_LISTED_IDS) {
+            text.append("and ").append(ids.size() - DIFF_LISTED_IDS).append(" more");
+        }
+    }
+
+    /**
+     * Enables the undo and redo buttons if there is a change to undo or redo, with the change named in their tooltip
+     */
+    private void updateUndoRedoButtons() {
+        if (this.extendedNetwork == null) {
+            return;
+        }
+        CommandJournal journal = this.extendedNetwork.getJournal();
+        // The history is read under the lock of the network, since a task in the background may be changing it
+        this.extendedNetwork.read(() -> {
+            buttonUndo.setDisable(!journal.canUndo());
+            buttonUndo.setTooltip(journal.canUndo() ? new Tooltip("Undo " + journal.getUndoDescription()) : null);
+            buttonRedo.setDisable(!journal.canRedo());
+            buttonRedo.setTooltip(journal.canRedo() ? new Tooltip("Redo " + journal.getRedoDescription()) : null);
+        });
+    }
+
+    /**
+     * Clears the selected node, link and validation item along with the node markers used for link creation, since
+     * they might no longer be part of the network after an undo or redo
+     */
+    private void clearSelection() {
+        this.selectedNode = null;
+        this.selectedLink = null;
+        this.selectedValidationItem = null;
+        nodeDeleteButton.setDisable(true);
+        nodeEditButton.setDisable(true);
+        linkDeleteButton.setDisable(true);
+        linkEditButton.setDisable(true);
+        validationEditButton.setDisable(true);
+        validationDeleteButton.setDisable(true);
+        firstNodeMarker = null;
+        secondNodeMarker = null;
+    }
+
     /**
      * Shows a dialog with the default zoom size and the center of the map location for the user
      * to choose and set. Changes are persistent
@@ -1247,7 +1615,6 @@ public class MainController {
         mapView.addEventHandler(MarkerEvent.MARKER_DOUBLECLICKED, event -> {
             event.consume();
             Marker marker = event.getMarker();
-            mapView.removeMarker(marker);
             labelEvent.setText("Event: marker removed at: " + marker.getPosition());
             this.extendedNetwork.removeNode(marker.getPosition());
         });
@@ -1279,15 +1646,20 @@ public class MainController {
             }
         });
 
-        // add an event handler for MapViewEvent#MAP_EXTENT and set the extent in the map
+        // add an event handler for MapViewEvent#MAP_EXTENT and set the extent in the map, or select the links within it
         mapView.addEventHandler(MapViewEvent.MAP_EXTENT, event -> {
             event.consume();
-            mapView.setExtent(event.getExtent());
+            if (linkSelectToggle.isSelected() && this.extendedNetwork != null) {
+                selectLinksWithin(event.getExtent());
+            } else {
+                mapView.setExtent(event.getExtent());
+            }
         });
 
-        // add an event handler for extent changes and display them in the status label
+        // add an event handler for extent changes; the network layer follows them to draw only the visible elements
         mapView.addEventHandler(MapViewEvent.MAP_BOUNDING_EXTENT, event -> {
             event.consume();
+            this.mapExtent = event.getExtent();
         });
 
         mapView.addEventHandler(MapViewEvent.MAP_RIGHTCLICKED, event -> {
@@ -1334,6 +1706,17 @@ public class MainController {
      */
     private void afterMapIsInitialized() {
         logger.debug("map initialised");
+        // Nodes and links are drawn on their own layer, clicks on the map are hit-tested against the nodes of the
+        // current network. The layer is installed first, so that it receives the extent of the initial view
+        this.networkLayer = new NetworkLayer(mapView);
+        this.networkLayer.setNodeLocator((coordinate, tolerance) ->
+                this.extendedNetwork == null ? null : this.extendedNetwork.findNearestNode(coordinate, tolerance));
+        // Only the elements within the viewport are drawn, so the drawn elements follow the map when it is panned or zoomed
+        this.networkLayer.setViewportListener(() -> {
+            if (this.extendedNetwork != null) {
+                this.extendedNetwork.updateViewport();
+            }
+        });
         // start at the harbour with default zoom
         mapView.setZoom(zoomDefault);
         mapView.setCenter(coordCenter);
@@ -1437,37 +1820,24 @@ public class MainController {
 
     /**
      * Opens up the system's open file window for the user to choose the file containing the
-     * MATSim network. .xml and .gz files are accepted.
-     * @param coordinateSystem The coordinate system of the network stored in the file
+     * MATSim network. .xml and .gz files are accepted, as well as .mnet snapshots written when saving a network.
+     * @param coordinateSystem The coordinate system of the network stored in the file, snapshots store their own
      * @return True if the file is successfully opened, otherwise false
      */
     protected boolean locateFile(String coordinateSystem) {
         FileChooser chooser = new FileChooser();
         chooser.setTitle("Choose an .xml file to import");
         chooser.getExtensionFilters().addAll(new FileChooser.ExtensionFilter("XML Files", "*.xml"),
-                new FileChooser.ExtensionFilter("GZ Files", "*.gz"));
+                new FileChooser.ExtensionFilter("GZ Files", "*.gz"),
+                new FileChooser.ExtensionFilter("Network snapshots", "*" + NetworkSnapshot.EXTENSION));
 
         File selectedFile = chooser.showOpenDialog(new Stage());
 
-        // If a file is selected, check if a network is already loaded and clear the contents and the map of all elements
-        // along with the selected node, link and markers for link creation, then set in the new network
+        // If a file is selected, read it in the background, the current network is replaced once the new one is loaded
         if (selectedFile != null) {
-            if (this.extendedNetwork != null) {
-                this.extendedNetwork.clear();
-                this.selectedNode = null;
-                this.selectedLink = null;
-                this.selectedValidationItem = null;
-                // Clear node markers used for link creation
-                firstNodeMarker = null;
-                secondNodeMarker = null;
-            }
-            this.extendedNetwork = new ExtendedNetwork(selectedFile.getPath(), this.vboxNetwork, this.vboxNodes,
-                    this.vboxLinks, this.vboxValidation, this.mapView, coordinateSystem);
-
-            initializeTableListeners();
-            // Enable save button and make glasspane invisible
-            buttonSave.setDisable(false);
-            glassPane.setVisible(false);
+            NetworkLoader.Format format = selectedFile.getName().endsWith(NetworkSnapshot.EXTENSION)
+                    ? NetworkLoader.Format.SNAPSHOT : NetworkLoader.Format.MATSIM;
+            runImport(new NetworkImportTask(selectedFile.getPath(), coordinateSystem, format));
             return true;
         }
         return false;
@@ -1475,35 +1845,89 @@ public class MainController {
 
     /**
      * Opens up the system's open file window for the user to choose the file containing the
-     * osm network. .osm files are accepted.
-     * @param coordinateSystem
-     * @return
+     * osm network. .osm and .osm.pbf files are accepted.
+     * @param coordinateSystem The coordinate system of the network
+     * @param options The highway types to import and the area to crop to
+     * @return True if a file is chosen, otherwise false
      */
-    protected boolean locateOsmFile(String coordinateSystem) {
+    protected boolean locateOsmFile(String coordinateSystem, OsmImportOptions options) {
         FileChooser chooser = new FileChooser();
-        chooser.setTitle("Choose an .osm file to import");
-        chooser.getExtensionFilters().addAll(new FileChooser.ExtensionFilter("OSM Files", "*.osm"));
+        chooser.setTitle("Choose an .osm or .osm.pbf file to import");
+        chooser.getExtensionFilters().addAll(new FileChooser.ExtensionFilter("OSM Files", "*.osm", "*.osm.pbf", "*.pbf"));
 
         File selectedFile = chooser.showOpenDialog(new Stage());
 
         if (selectedFile != null) {
+            // TODO Test plus clear out if both .osm and .xml files but in OSM form should be accepted
+            NetworkLoader.Format format = NetworkLoader.Format.of(selectedFile.getName()) == NetworkLoader.Format.OSM_PBF
+                    ? NetworkLoader.Format.OSM_PBF : NetworkLoader.Format.OSM;
+            NetworkImportTask task = new NetworkImportTask(selectedFile.getPath(), coordinateSystem, format);
+            task.setOsmOptions(options);
+            runImport(task);
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Runs an import task in the background while showing its progress. Once the network is read, the previous network
+     * is cleared from the editor and the new one is attached to the side panels and the map in one step
+     * @param task The import task for the selected file
+     */
+    private void runImport(NetworkImportTask task) {
+        task.setOnSucceeded(event -> {
+            ExtendedNetwork importedNetwork = task.getValue();
+            if (importedNetwork == null) {
+                return;
+            }
+            // Clear the contents and the map of the previous network, along with the selected node, link and markers
+            // for link creation
             if (this.extendedNetwork != null) {
+                cancelValidation();
                 this.extendedNetwork.clear();
                 this.selectedNode = null;
                 this.selectedLink = null;
+                this.selectedValidationItem = null;
+                // Clear node markers used for link creation
+                firstNodeMarker = null;
+                secondNodeMarker = null;
             }
-
-            // TODO Test plus clear out if both .osm and .xml files but in OSM form should be accepted
-            // OSM Reader-specific constructor
-            this.extendedNetwork = new ExtendedNetwork(selectedFile.getPath(), coordinateSystem, this.vboxNetwork, this.vboxNodes, this.vboxLinks, this.vboxValidation, this.mapView);
+            this.extendedNetwork = importedNetwork;
+            task.getTimings().time("render", () -> importedNetwork.attachToView(this.vboxNetwork, this.vboxNodes,
+                    this.vboxLinks, this.vboxValidation, this.networkLayer));
+            logger.info("{}", task.getTimings());
 
             initializeTableListeners();
             // Enable save button and make glass pane invisible
             buttonSave.setDisable(false);
+            buttonVersions.setDisable(false);
+            buttonMerge.setDisable(false);
             glassPane.setVisible(false);
-            return true;
-        }
-        return false;
+            labelEvent.setText("Event: network imported in " + task.getTimings().getTotal() + "ms");
+        });
+        task.setOnCancelled(event -> labelEvent.setText("Event: import of " + task.getNetworkPath() + " cancelled"));
+        task.setOnFailed(event -> {
+            logger.error("Import of " + task.getNetworkPath() + " failed", task.getException());
+            Alert alert = new Alert(AlertType.ERROR);
+            alert.setTitle("Import failed");
+            alert.setHeaderText(null);
+            alert.setContentText("The network could not be imported: " + task.getException().getMessage());
+            alert.showAndWait();
+        });
+
+        new TaskProgressDialog(task, "Importing network").show();
+        startInBackground(task, "network-import");
+    }
+
+    /**
+     * Starts a task on its own daemon thread, so that a running task does not keep the application from exiting
+     * @param task The task to run
+     * @param name The name of the thread
+     */
+    private void startInBackground(Task<?> task, String name) {
+        Thread thread = new Thread(task, name);
+        thread.setDaemon(true);
+        thread.start();
     }
 
     /**
@@ -1781,28 +2205,41 @@ public class MainController {
                         + this.selectedLink.getFromNode().getId().toString() + ", ToNode: " + this.selectedLink.getToNode().getId().toString() +
                         ", Length: " + newLength + ", FreeSpeed: " + newFreeSpeed + ", Capacity: " + newCapacity + ", #Lanes: " + newLanes +
                         ", Bidirectional: " + isBidirectional);
-                // TODO Check correctness
-                if (!isBidirectional) {
-                    if (NetworkUtils.findLinkInOppositeDirection(this.selectedLink) != null) {
-                        this.extendedNetwork.removeLink(this.selectedLink.getToNode().getId().toString(), this.selectedLink.getFromNode().getId().toString());
-                    }
-                } else {
-                    if (NetworkUtils.findLinkInOppositeDirection(this.selectedLink) == null) {
-                        this.extendedNetwork.addLink(this.extendedNetwork.createLinkId(), this.selectedLink.getToNode().getId().toString(),
-                                this.selectedLink.getFromNode().getId().toString(), newLength, newFreeSpeed, newCapacity, newLanes);
+                // The reverse link and the link itself are changed at once, as one change to undo. The alert is only shown
+                // once the batch is closed, so that the network is not locked while it is open
+                boolean reverseLinkExists = false;
+                this.extendedNetwork.beginBatch("edit link");
+                try {
+                    // TODO Check correctness
+                    if (!isBidirectional) {
+                        if (this.extendedNetwork.findReverseLink(this.selectedLink) != null) {
+                            this.extendedNetwork.removeLink(this.selectedLink.getToNode().getId().toString(), this.selectedLink.getFromNode().getId().toString());
+                        }
+                    } else {
+                        if (this.extendedNetwork.findReverseLink(this.selectedLink) == null) {
+                            this.extendedNetwork.addLink(this.extendedNetwork.createLinkId(), this.selectedLink.getToNode().getId().toString(),
+                                    this.selectedLink.getFromNode().getId().toString(), newLength, newFreeSpeed, newCapacity, newLanes);
+                        }
+                        else {
+                            reverseLinkExists = true;
+                        }
                     }
-                    else {
-                        Alert alert = new Alert(AlertType.INFORMATION);
-                        alert.setTitle("Cannot add link");
-                        alert.setHeaderText(null);
-                        alert.setContentText("Reverse link already exists!");
 
-                        alert.showAndWait();
-                    }
+                    // TODO if false, show alert to user about link ID existing?
+                    this.extendedNetwork.editLink(oldLinkId, newLinkId, newLength, newFreeSpeed, newCapacity, newLanes);
+                } catch (RuntimeException e) {
+                    this.extendedNetwork.rollback();
+                    throw e;
+                }
+                this.extendedNetwork.commit();
+                if (reverseLinkExists) {
+                    Alert alert = new Alert(AlertType.INFORMATION);
+                    alert.setTitle("Cannot add link");
+                    alert.setHeaderText(null);
+                    alert.setContentText("Reverse link already exists!");
+
+                    alert.showAndWait();
                 }
-
-                // TODO if false, show alert to user about link ID existing?
-                this.extendedNetwork.editLink(oldLinkId, newLinkId, newLength, newFreeSpeed, newCapacity, newLanes);
 
                 // TODO This needs to be rechecked
                 this.extendedNetwork.getLinkTable().sort();
@@ -1826,21 +2263,98 @@ public class MainController {
 
     /**
      * Checks for basic issues with the network, and shows the issues on the validation tableview of the side panel.
-     * Includes checks for dangling nodes, subnetworks existing, bidirectional link attributes being different between
-     * them and link attributes having odd values
+     * The checks are the rules of the validation engine, by default checks for dangling nodes, bidirectional link
+     * attributes being different between them and link attributes having odd values. The validation runs in the
+     * background and the warnings appear in the tableview as they are found, the network can be edited meanwhile
      */
     private void runValidation() {
-        // Clear previous warning items
-        this.extendedNetwork.getValidationWarnings().clear();
+        if (this.extendedNetwork == null) {
+            return;
+        }
         // Clear node markers used for link creation
         firstNodeMarker = null;
         secondNodeMarker = null;
 
-        checkDanglingNodes(this.extendedNetwork.getValidationWarnings());
-        checkBidirectionalLinkAttributes(extendedNetwork.getValidationWarnings());
-        checkAttributeRanges(extendedNetwork.getValidationWarnings());
+        // A validation that is still running is replaced by the new one
+        cancelValidation();
+        ExtendedNetwork network = this.extendedNetwork;
+        network.startValidation();
+        ValidationTask task = new ValidationTask(this.validationEngine, ValidationContext.of(network),
+                network::addValidationWarnings);
+        this.validationTask = task;
+        this.validationProgress.progressProperty().bind(task.progressProperty());
+        this.validationStatusLabel.textProperty().bind(task.messageProperty());
+        setValidationRunning(true);
+
+        task.setOnSucceeded(event -> {
+            finishValidation(task);
+            ValidationReport report = task.getValue();
+            this.validationStatusLabel.setText(report.getWarnings().size() + " warnings");
+            labelEvent.setText("Event: network validated in " + report.getTimings().getTotal() + "ms");
+            // The elements modified while the validation was running are validated again
+            revalidateChanges();
+        });
+        task.setOnCancelled(event -> {
+            finishValidation(task);
+            this.validationStatusLabel.setText("Validation cancelled");
+        });
+        task.setOnFailed(event -> {
+            logger.error("Validation failed", task.getException());
+            finishValidation(task);
+            this.validationStatusLabel.setText("Validation failed");
+        });
+        startInBackground(task, "validation");
+    }
+
+    /**
+     * Cancels the running validation, if there is one; the warnings found so far stay in the validation tableview
+     */
+    private void cancelValidation() {
+        if (this.validationTask != null) {
+            this.validationTask.cancel();
+        }
+    }
+
+    /**
+     * Resets the validation controls once a validation task is done, unless another validation has been started since
+     * @param task The validation task that is done
+     */
+    private void finishValidation(ValidationTask task) {
+        if (this.validationTask != task) {
+            return;
+        }
+        this.validationTask = null;
+        this.validationProgress.progressProperty().unbind();
+        this.validationStatusLabel.textProperty().unbind();
+        setValidationRunning(false);
+    }
+
+    /**
+     * Shows the progress bar and the cancel button of the validation while it runs, and hides them afterwards
+     * @param running True if a validation is running
+     */
+    private void setValidationRunning(boolean running) {
+        for (javafx.scene.Node control : List.of(this.validationProgress, this.validationCancelButton)) {
+            control.setVisible(running);
+            control.setManaged(running);
+        }
+    }
 
-        this.extendedNetwork.populateValidationTable();
+    /**
+     * Validates the nodes and links that were changed since the last validation again, along with their neighbours,
+     * and updates their rows of the validation tableview in place, instead of validating the whole network
+     */
+    private void revalidateChanges() {
+        // While a validation is running, the changes are kept and validated again once it is done
+        if (this.validationTask != null) {
+            return;
+        }
+        ChangeTracker elements = this.extendedNetwork.takeValidationChanges();
+        if (elements.isEmpty()) {
+            return;
+        }
+        ValidationReport report = this.validationEngine.revalidate(ValidationContext.of(this.extendedNetwork), elements);
+        this.extendedNetwork.updateValidationWarnings(elements, report.getWarnings());
     }
 
     /**
@@ -1863,8 +2377,8 @@ public class MainController {
             this.selectedValidationItem = null;
             validationDeleteButton.setDisable(true);
             validationEditButton.setDisable(true);
-            // TODO Maybe find another way to refresh the warnings list/ validation table
-            this.runValidation();
+            // Only the edited element and its neighbours are validated again
+            this.revalidateChanges();
         }
         // Clear node markers used for link creation
         firstNodeMarker = null;
@@ -1892,9 +2406,8 @@ public class MainController {
 
             validationDeleteButton.setDisable(true);
             validationEditButton.setDisable(true);
-            this.extendedNetwork.populateValidationTable();
 
-            this.runValidation();
+            this.revalidateChanges();
         }
         // Clear node markers used for link creation
         firstNodeMarker = null;
@@ -1902,120 +2415,658 @@ public class MainController {
     }
 
     /**
-     * Stores the current network in a file, cleans the network and loads it to the map view
+     * Cleans the network in memory, keeping only its largest strongly connected component like MATSim's network
+     * cleaner. The components are found in the background, under the read lock of the network, and the nodes and links
+     * that would be removed are then highlighted on the map, and only removed once the user confirms; the map and the
+     * tables are then updated with the removed elements only
      */
     private void cleanNetwork() {
-        // Save file temporarily
-        File tempFile = null;
-        try {
-            tempFile = new File( "data/" + this.extendedNetwork.getNetwork().getName()+ "_pre-cleaned_file.xml");
-            if (this.extendedNetwork.getNetwork() != null) {
-                NetworkUtils.writeNetwork(this.extendedNetwork.getNetwork(), tempFile.getAbsolutePath());
-                System.out.println("File created: " + tempFile.getName());
-            } else {
-                System.out.println("File already exists.");
-            }
-        } catch (Exception e) {
-            System.out.println("An error occurred.");
-            e.printStackTrace();
+        if (this.extendedNetwork == null) {
+            return;
         }
+        // Clear node markers used for link creation
+        firstNodeMarker = null;
+        secondNodeMarker = null;
 
-        // Run network cleaner
-        NetworkCleaner nc = new NetworkCleaner();
-        String cleanedFilePath = "./data/" + this.extendedNetwork.getNetwork().getName() + "_cleaned_file.xml";
-        try {
-            nc.run(tempFile.getAbsolutePath(), cleanedFilePath);
-        }
-        catch (NullPointerException e) {
-            e.printStackTrace();
+        ExtendedNetwork network = this.extendedNetwork;
+        InMemoryNetworkCleaner cleaner = new InMemoryNetworkCleaner();
+        // The elements to be removed are looked up along with the analysis, while no other thread changes the network
+        ArrayList<Node> removedNodes = new ArrayList<>();
+        ArrayList<Link> removedLinks = new ArrayList<>();
+        Task<NetworkDelta> task = new Task<>() {
+            @Override
+            protected NetworkDelta call() {
+                return network.read(() -> {
+                    NetworkDelta delta = cleaner.analyze(network.getNetwork());
+                    delta.getRemovedNodes().forEach(nodeId -> removedNodes.add(network.getNetwork().getNodes().get(nodeId)));
+                    delta.getRemovedLinks().forEach(linkId -> removedLinks.add(network.getNetwork().getLinks().get(linkId)));
+                    return delta;
+                });
+            }
+        };
+        this.cleanNetworkButton.setDisable(true);
+        labelEvent.setText("Event: finding the strongly connected parts of the network");
+
+        task.setOnSucceeded(event -> {
+            this.cleanNetworkButton.setDisable(false);
+            if (network != this.extendedNetwork) {
+                return;
+            }
+            showCleaningPreview(network, task.getValue(), cleaner, removedNodes, removedLinks);
+        });
+        task.setOnFailed(event -> {
+            logger.error("Network cleaning failed", task.getException());
+            this.cleanNetworkButton.setDisable(false);
+            labelEvent.setText("Event: network cleaning failed");
+        });
+        startInBackground(task, "cleaning");
+    }
+
+    /**
+     * Highlights the nodes and links the cleaning would remove and removes them once the user confirms. The preview is
+     * not modal, so the network may be changed while it is open; the elements are then not removed, as they were found
+     * on the network before the change, and the cleaning is run again
+     * @param network The network that was analysed
+     * @param delta The elements to remove and to keep
+     * @param cleaner The cleaner that found them, with the strongly connected components of the network
+     * @param removedNodes The nodes to remove
+     * @param removedLinks The links to remove
+     */
+    private void showCleaningPreview(ExtendedNetwork network, NetworkDelta delta, InMemoryNetworkCleaner cleaner,
+                                     List<Node> removedNodes, List<Link> removedLinks) {
+        if (delta.isEmpty()) {
+            labelEvent.setText("Event: nothing to clean");
+            Alert alert = new Alert(AlertType.INFORMATION);
+            alert.setTitle("Clean network");
+            alert.setHeaderText(null);
+            alert.setContentText("Every node can be reached from every other node, there is nothing to clean.");
+            alert.showAndWait();
+            return;
         }
 
-        // Clean mapview of all previous elements
-        this.extendedNetwork.clear();
+        // Preview of the elements to be removed
+        this.networkLayer.highlight(CLEANING_PREVIEW_COLOR, removedNodes, removedLinks);
+        labelEvent.setText("Event: " + delta.getRemovedNodes().size() + " nodes and " + delta.getRemovedLinks().size()
+                + " links to clean");
 
-        ExtendedNetwork cleanNetwork = new ExtendedNetwork(this.extendedNetwork.getNetwork().getName(), this.extendedNetwork.getNetwork().getEffectiveLaneWidth(),
-                this.extendedNetwork.getNetwork().getEffectiveCellSize(), this.extendedNetwork.getNetwork().getCapacityPeriod(), vboxNetwork, vboxNodes,
-                vboxLinks, vboxValidation, mapView, this.extendedNetwork.getCoordinateSystem());
+        Alert alert = new Alert(AlertType.CONFIRMATION);
+        alert.setTitle("Clean network");
+        alert.setHeaderText("Remove " + delta.getRemovedNodes().size() + " nodes and " + delta.getRemovedLinks().size() + " links?");
+        alert.setContentText("The largest strongly connected part of the network, with " + delta.getKeptNodes().size()
+                + " nodes and " + delta.getKeptLinks().size() + " links, is kept. The nodes and links of the "
+                + (cleaner.getComponents().getComponentCount() - 1) + " smaller parts, and the nodes without any links, "
+                + "are highlighted in red on the map.");
+        // Not modal, so that the highlighted elements can be looked at on the map before deciding
+        alert.initModality(Modality.NONE);
+        AtomicBoolean networkChanged = new AtomicBoolean(false);
+        NetworkChangeListener changeListener = change -> networkChanged.set(true);
+        network.addChangeListener(changeListener);
+        alert.setOnHidden(event -> {
+            network.removeChangeListener(changeListener);
+            if (network != this.extendedNetwork) {
+                return;
+            }
+            this.networkLayer.clearHighlights();
+            if (alert.getResult() != ButtonType.OK) {
+                return;
+            }
+            // The batch holds the write lock, so the network cannot change between the check and the removal
+            network.beginBatch("clean network");
+            if (networkChanged.get()) {
+                network.rollback();
+                labelEvent.setText("Event: the network was changed during the preview, looking for the parts to clean again");
+                cleanNetwork();
+                return;
+            }
+            try {
+                network.checkpoint("before cleaning");
+                network.removeElements(delta.getRemovedNodes(), delta.getRemovedLinks());
+            } catch (RuntimeException e) {
+                network.rollback();
+                throw e;
+            }
+            network.commit();
+            labelEvent.setText("Event: network cleaned, " + delta.getRemovedNodes().size() + " nodes and "
+                    + delta.getRemovedLinks().size() + " links removed");
+        });
+        alert.show();
+    }
+
+    /**
+     * Analyses the connectivity of each mode of the network, i.e. the strongly connected components formed by the links
+     * that allow the mode, in the background. The islands of each mode, the subnetworks that cannot be reached from the
+     * largest one of the mode, are coloured on the map and listed in the validation tableview with their size, with one
+     * row per island about one of its nodes. The rows and colours of a previous analysis are replaced
+     */
+    private void analyzeConnectivity() {
+        if (this.extendedNetwork == null) {
+            return;
+        }
+        // Clear node markers used for link creation
+        firstNodeMarker = null;
+        secondNodeMarker = null;
 
-        new MatsimNetworkReader(this.extendedNetwork.getCoordinateSystem(), "EPSG: 4326", cleanNetwork.getNetwork()).readFile(cleanedFilePath);
+        ExtendedNetwork network = this.extendedNetwork;
+        // The elements are collected and analysed under the read lock, as the modes and the nodes of the links may be
+        // changed by edits and merges running on other threads meanwhile
+        Task<ModeConnectivity> task = new Task<>() {
+            @Override
+            protected ModeConnectivity call() {
+                return network.read(() -> ModeConnectivity.analyze(network.getNetwork()));
+            }
+        };
+        this.connectivityButton.setDisable(true);
+        this.validationStatusLabel.setText("Analysing the connectivity of the modes");
 
-        // To load the new network, the nodes to be removed are kept on a list, then removed from the current network and the map
-        ArrayList<Id<Node>> nodesToRemove = new ArrayList<>();
+        task.setOnSucceeded(event -> {
+            this.connectivityButton.setDisable(false);
+            if (network != this.extendedNetwork) {
+                return;
+            }
+            showConnectivity(task.getValue());
+        });
+        task.setOnFailed(event -> {
+            logger.error("Connectivity analysis failed", task.getException());
+            this.connectivityButton.setDisable(false);
+            this.validationStatusLabel.setText("Connectivity analysis failed");
+        });
+        startInBackground(task, "connectivity");
+    }
 
-        for (Id<Node> nodeId : this.extendedNetwork.getNetwork().getNodes().keySet()) {
-            if (!cleanNetwork.getNetwork().getNodes().containsKey(nodeId)) {
-                nodesToRemove.add(nodeId);
+    /**
+     * Colours the islands of each mode on the map and lists them in the validation tableview
+     * @param connectivity The outcome of the connectivity analysis
+     */
+    private void showConnectivity(ModeConnectivity connectivity) {
+        this.networkLayer.clearHighlights();
+        this.extendedNetwork.removeValidationWarnings(this.connectivityWarnings);
+
+        // The islands are grouped by colour, so that each colour is sent to the map once
+        LinkedHashMap<String, List<Node>> coloredNodes = new LinkedHashMap<>();
+        LinkedHashMap<String, List<Link>> coloredLinks = new LinkedHashMap<>();
+        List<ValidationTableEntry> warnings = new ArrayList<>();
+        StringBuilder summary = new StringBuilder();
+        int island = 0;
+        for (String mode : connectivity.getModes()) {
+            List<Subnetwork> islands = connectivity.getIslands(mode);
+            int mainSize = connectivity.getMainSubnetwork(mode).size();
+            summary.append(summary.length() == 0 ? "" : ", ").append(mode).append(": ").append(islands.size());
+            for (Subnetwork subnetwork : islands) {
+                String color = SUBNETWORK_COLORS[island++ % SUBNETWORK_COLORS.length];
+                coloredNodes.computeIfAbsent(color, c -> new ArrayList<>()).addAll(subnetwork.getNodes());
+                coloredLinks.computeIfAbsent(color, c -> new ArrayList<>()).addAll(subnetwork.getLinks());
+                Node node = subnetwork.getNodes().get(0);
+                warnings.add(new ValidationTableEntry(node, NetworkUtils.getOrigId(node), "Node " + NetworkUtils.getOrigId(node)
+                        + " is on an island of " + subnetwork.size() + " nodes and " + subnetwork.getLinks().size()
+                        + " links of mode " + mode + ", not connected both ways to the main " + mode + " network of "
+                        + mainSize + " nodes"));
             }
         }
+        coloredNodes.forEach((color, colorNodes) -> this.networkLayer.highlight(color, colorNodes,
+                coloredLinks.get(color)));
+        this.extendedNetwork.addValidationWarnings(warnings);
+        this.connectivityWarnings = warnings;
+
+        this.validationStatusLabel.setText(island == 0 ? "Every mode is connected"
+                : "Islands per mode: " + summary);
+        labelEvent.setText("Event: connectivity of " + connectivity.getModes().size() + " modes analysed, "
+                + island + " islands");
+    }
 
-        for (Id<Node> currentNode : nodesToRemove) {
-            this.extendedNetwork.getNetwork().removeNode(currentNode);
-            this.extendedNetwork.getNodeMarkers().remove(currentNode);
+    /**
+     * Highlights the links selected on the link tableview on the map, if there are several of them, and enables the bulk
+     * edit button if any link is selected
+     */
+    private void showLinkSelection() {
+        List<Link> selected = this.extendedNetwork.getLinkTable().getSelectionModel().getSelectedItems();
+        linkBulkEditButton.setDisable(selected.isEmpty());
+        if (this.networkLayer != null) {
+            this.networkLayer.clearHighlight(LINK_SELECTION_COLOR);
+            if (selected.size() > 1) {
+                this.networkLayer.highlight(LINK_SELECTION_COLOR, List.of(), selected);
+            }
         }
+    }
 
-        // Refreshing Node/Link tableview UIs and their listeners to edit/delete Node/Links
-        this.extendedNetwork.initializeTableViews();
-        initializeTableListeners();
+    /**
+     * Adds the links within an area of the map to the selection of the link tableview
+     * @param extent The area, drawn on the map
+     */
+    private void selectLinksWithin(Extent extent) {
+        HashSet<Link> within = new HashSet<>(this.extendedNetwork.findLinksWithin(extent.getMin().getLongitude(),
+                extent.getMin().getLatitude(), extent.getMax().getLongitude(), extent.getMax().getLatitude()));
+        TableView<Link> linkTable = this.extendedNetwork.getLinkTable();
+        int[] indices = IntStream.range(0, linkTable.getItems().size())
+                .filter(i -> within.contains(linkTable.getItems().get(i)))
+                .toArray();
+        if (indices.length > 0) {
+            linkTable.getSelectionModel().selectIndices(indices[0], Arrays.copyOfRange(indices, 1, indices.length));
+        }
+        labelEvent.setText("Event: " + indices.length + " links selected, " + linkTable.getSelectionModel().getSelectedItems().size()
+                + " in total");
+    }
 
-        this.extendedNetwork.paintToMap();
+    /**
+     * Shows a dialog to edit the free speed, capacity, number of lanes and allowed modes of all links selected on the
+     * link tableview at once, each attribute being kept, set to a value or scaled by a factor. The new attributes are
+     * computed in the background, over the selected links and optionally their reverse links, and applied as one change,
+     * so that the map and the tables are refreshed once and the edit is undone at once
+     */
+    private void bulkEditSelectedLinks() {
+        if (this.extendedNetwork == null) {
+            return;
+        }
+        List<Link> links = new ArrayList<>(this.extendedNetwork.getLinkTable().getSelectionModel().getSelectedItems());
+        if (links.isEmpty()) {
+            return;
+        }
         // Clear node markers used for link creation
         firstNodeMarker = null;
         secondNodeMarker = null;
+
+        Dialog<BulkLinkEdit> dialog = new Dialog<>();
+        dialog.setTitle("Edit links");
+        dialog.setHeaderText("Edit the attributes of the " + links.size() + " selected links: ");
+
+        // Set the button types edit and cancel
+        ButtonType editButtonType = new ButtonType("Edit Links", ButtonData.OK_DONE);
+        dialog.getDialogPane().getButtonTypes().addAll(editButtonType, ButtonType.CANCEL);
+
+        GridPane grid = new GridPane();
+        grid.setHgap(10);
+        grid.setVgap(10);
+        grid.setPadding(new Insets(20, 150, 10, 30));
+
+        // One row per numeric attribute: keep it, set it to the value or scale it by the value
+        String[] attributes = {"Free speed", "Capacity", "Lanes"};
+        List<ChoiceBox<String>> operations = new ArrayList<>();
+        List<TextField> values = new ArrayList<>();
+        for (int i = 0; i < attributes.length; i++) {
+            ChoiceBox<String> operation = new ChoiceBox<>();
+            operation.getItems().addAll("Keep", "Set to", "Scale by");
+            operation.setValue("Keep");
+            TextField value = new TextField();
+            value.disableProperty().bind(operation.valueProperty().isEqualTo("Keep"));
+            grid.add(new Label(attributes[i] + ":"), 0, i);
+            grid.add(operation, 1, i);
+            grid.add(value, 2, i);
+            operations.add(operation);
+            values.add(value);
+        }
+        CheckBox modesCheckBox = new CheckBox("Set modes:");
+        TextField modes = new TextField(String.join(",", links.get(0).getAllowedModes()));
+        modes.disableProperty().bind(modesCheckBox.selectedProperty().not());
+        grid.add(modesCheckBox, 0, attributes.length);
+        grid.add(modes, 1, attributes.length, 2, 1);
+        CheckBox reverseCheckBox = new CheckBox("Edit the reverse links as well");
+        grid.add(reverseCheckBox, 0, attributes.length + 1, 3, 1);
+        dialog.getDialogPane().setContent(grid);
+
+        // The dialog stays open until the values of the changed attributes are numbers
+        dialog.getDialogPane().lookupButton(editButtonType).addEventFilter(ActionEvent.ACTION, event -> {
+            for (int i = 0; i < attributes.length; i++) {
+                if (!values.get(i).isDisabled() && !values.get(i).getText().trim().matches("[0-9]*\\.?[0-9]+([eE][-+]?[0-9]+)?")) {
+                    dialog.setHeaderText(attributes[i] + " must be a positive number");
+                    event.consume();
+                    return;
+                }
+            }
+        });
+
+        dialog.setResultConverter(dialogButton -> {
+            if (dialogButton != editButtonType) {
+                return null;
+            }
+            BulkLinkEdit edit = new BulkLinkEdit();
+            double[] parsed = new double[attributes.length];
+            BulkLinkEdit.Operation[] parsedOperations = new BulkLinkEdit.Operation[attributes.length];
+            for (int i = 0; i < attributes.length; i++) {
+                parsedOperations[i] = BulkLinkEdit.Operation.values()[operations.get(i).getSelectionModel().getSelectedIndex()];
+                parsed[i] = parsedOperations[i] == BulkLinkEdit.Operation.KEEP ? 0.0 : Double.parseDouble(values.get(i).getText().trim());
+            }
+            edit.setFreespeed(parsedOperations[0], parsed[0]);
+            edit.setCapacity(parsedOperations[1], parsed[1]);
+            edit.setLanes(parsedOperations[2], parsed[2]);
+            if (modesCheckBox.isSelected()) {
+                edit.setAllowedModes(Arrays.stream(modes.getText().split(","))
+                        .map(String::trim)
+                        .filter(mode -> !mode.isEmpty())
+                        .collect(Collectors.toCollection(LinkedHashSet::new)));
+            }
+            edit.setReverseLinks(reverseCheckBox.isSelected());
+            return edit;
+        });
+
+        Optional<BulkLinkEdit> result = dialog.showAndWait();
+        result.filter(edit -> !edit.isEmpty()).ifPresent(edit -> {
+            ExtendedNetwork network = this.extendedNetwork;
+            LinkIndex linkIndex = network.getLinkIndex();
+            Task<Integer> task = new Task<>() {
+                @Override
+                protected Integer call() {
+                    Set<Id<Link>> selected = network.read(() -> edit.selectLinks(links, linkIndex));
+                    // All links are edited at once on this thread, the map and the tables are refreshed once
+                    return network.editLinks("edit " + selected.size() + " links", selected, edit::apply);
+                }
+            };
+            linkBulkEditButton.setDisable(true);
+            labelEvent.setText("Event: editing " + links.size() + " links");
+            task.setOnSucceeded(event -> {
+                if (network != this.extendedNetwork) {
+                    return;
+                }
+                showLinkSelection();
+                labelEvent.setText("Event: " + task.getValue() + " links edited");
+            });
+            task.setOnFailed(event -> {
+                logger.error("Bulk edit of links failed", task.getException());
+                showLinkSelection();
+                labelEvent.setText("Event: editing the links failed");
+            });
+            startInBackground(task, "bulk link edit");
+        });
     }
 
     /**
-     * Checks the network for nodes that are not corrected by any links, aka dangling nodes
-     * @param list The list in which the validation warning items are stored to show on the side panel
+     * Shows a dialog to pick two network files, e.g. a network and the modified copy another team sent back, and
+     * compares them in the background: both files are read at the same time and compared in parallel, and the
+     * differences are written to a report file if one is given. The differences are then coloured on the map and listed
+     * in the side panel; the network in the editor is not changed
      */
-    private void checkDanglingNodes(ArrayList<ValidationTableEntry> list) {
-        // Iterate through nodes, check for ones that don't have in- or outlinks
-        for (Node node : this.extendedNetwork.getNetwork().getNodes().values()) {
-            if (node.getInLinks().isEmpty() && node.getOutLinks().isEmpty()) {
-                list.add(new ValidationTableEntry(node, NetworkUtils.getOrigId(node), "Node " + NetworkUtils.getOrigId(node) + " is a dangling node"));
+    private void compareNetworkFiles() {
+        Dialog<NetworkComparisonTask> dialog = new Dialog<>();
+        dialog.setTitle("Compare network files");
+        dialog.setHeaderText("Pick the original and the modified network:");
+        ButtonType compareButtonType = new ButtonType("Compare", ButtonData.OK_DONE);
+        dialog.getDialogPane().getButtonTypes().addAll(compareButtonType, ButtonType.CANCEL);
+
+        GridPane grid = new GridPane();
+        grid.setHgap(10);
+        grid.setVgap(10);
+        grid.setPadding(new Insets(20, 150, 10, 30));
+
+        TextField firstPath = new TextField();
+        TextField secondPath = new TextField();
+        TextField reportPath = new TextField();
+        reportPath.setPromptText("No report");
+        Button firstBrowse = new Button("Browse...");
+        Button secondBrowse = new Button("Browse...");
+        Button reportBrowse = new Button("Browse...");
+        firstBrowse.setOnAction(event -> chooseNetworkFile(firstPath));
+        secondBrowse.setOnAction(event -> chooseNetworkFile(secondPath));
+        reportBrowse.setOnAction(event -> {
+            FileChooser chooser = new FileChooser();
+            chooser.setTitle("Choose the report file");
+            chooser.getExtensionFilters().addAll(new FileChooser.ExtensionFilter("Tab separated files", "*.tsv"),
+                    new FileChooser.ExtensionFilter("GZ Files", "*.gz"));
+            File file = chooser.showSaveDialog(new Stage());
+            if (file != null) {
+                reportPath.setText(file.getPath());
             }
+        });
+        // The systems of the import are offered, any other one can be typed in as EPSG:code
+        ComboBox<String> coordinateOptions = new ComboBox<>();
+        coordinateOptions.getItems().addAll(TransformationFactory.DHDN_GK4, TransformationFactory.GK4, TransformationFactory.WGS84);
+        coordinateOptions.setValue(TransformationFactory.WGS84);
+        coordinateOptions.setEditable(true);
+        TextField tolerance = new TextField("1.0");
+
+        grid.add(new Label("Original network:"), 0, 0);
+        grid.add(firstPath, 1, 0);
+        grid.add(firstBrowse, 2, 0);
+        grid.add(new Label("Modified network:"), 0, 1);
+        grid.add(secondPath, 1, 1);
+        grid.add(secondBrowse, 2, 1);
+        grid.add(new Label("Coordinate system:"), 0, 2);
+        grid.add(coordinateOptions, 1, 2);
+        grid.add(new Label("Same place within (m):"), 0, 3);
+        grid.add(tolerance, 1, 3);
+        grid.add(new Label("Report file:"), 0, 4);
+        grid.add(reportPath, 1, 4);
+        grid.add(reportBrowse, 2, 4);
+        dialog.getDialogPane().setContent(grid);
+
+        javafx.scene.Node compareButton = dialog.getDialogPane().lookupButton(compareButtonType);
+        compareButton.disableProperty().bind(firstPath.textProperty().isEmpty().or(secondPath.textProperty().isEmpty()));
+        compareButton.addEventFilter(ActionEvent.ACTION, event -> {
+            if (!tolerance.getText().trim().matches("[0-9]*\\.?[0-9]+")) {
+                dialog.setHeaderText("The distance must be a positive number");
+                event.consume();
+            }
+        });
+        dialog.setResultConverter(dialogButton -> {
+            if (dialogButton != compareButtonType) {
+                return null;
+            }
+            String report = reportPath.getText().trim();
+            return new NetworkComparisonTask(firstPath.getText().trim(), secondPath.getText().trim(),
+                    coordinateOptions.getValue().trim(), report.isEmpty() ? null : report,
+                    Double.parseDouble(tolerance.getText().trim()));
+        });
+
+        Optional<NetworkComparisonTask> result = dialog.showAndWait();
+        result.ifPresent(task -> {
+            compareFilesButton.setDisable(true);
+            differencesStatusLabel.setText("Comparing networks");
+            task.setOnSucceeded(event -> {
+                compareFilesButton.setDisable(false);
+                logger.info("{}", task.getTimings());
+                if (task.getValue() != null) {
+                    showDifferences(task.getValue());
+                }
+            });
+            task.setOnFailed(event -> {
+                logger.error("Comparison of networks failed", task.getException());
+                compareFilesButton.setDisable(false);
+                differencesStatusLabel.setText("Comparison failed: " + task.getException().getMessage());
+            });
+            task.setOnCancelled(event -> {
+                compareFilesButton.setDisable(false);
+                differencesStatusLabel.setText("Comparison cancelled");
+            });
+            new TaskProgressDialog(task, "Comparing networks").show();
+            startInBackground(task, "network-comparison");
+        });
+    }
+
+    /**
+     * Opens up the system's open file window to choose a network file to compare or merge
+     * @param path The field to put the path of the chosen file in
+     */
+    private void chooseNetworkFile(TextField path) {
+        FileChooser chooser = new FileChooser();
+        chooser.setTitle("Choose a network file");
+        chooser.getExtensionFilters().addAll(new FileChooser.ExtensionFilter("XML Files", "*.xml"),
+                new FileChooser.ExtensionFilter("GZ Files", "*.gz"),
+                new FileChooser.ExtensionFilter("Network snapshots", "*" + NetworkSnapshot.EXTENSION));
+        File file = chooser.showOpenDialog(new Stage());
+        if (file != null) {
+            path.setText(file.getPath());
         }
     }
 
     /**
-     * Checks the links that are bidirectional and compares each attribute of the bidirectional links.
-     * If any attribute is different, it is added to the warnings list for the user to ensure correctness
-     * @param list The list in which the validation warning items are stored to show on the side panel
+     * Shows a dialog to pick a second network file, e.g. a hand-edited transit corridor, and merges it into the network.
+     * The file is read and matched against the network in the background: its nodes within the given distance of a node
+     * of the network are that node, its other nodes and its links are added, with the ids that clash with the network
+     * prefixed. The merge is applied at once, so the map is refreshed once and a single undo reverts it
      */
-    private void checkBidirectionalLinkAttributes(ArrayList<ValidationTableEntry> list) {
-        // Check if bidirectional links have the same attributes in both directions
-        for (Link linkA : this.extendedNetwork.getNetwork().getLinks().values()) {
-            for (Link linkB : this.extendedNetwork.getNetwork().getLinks().values()) {
-                if (linkA.getFromNode() == linkB.getToNode() && linkA.getToNode() == linkB.getFromNode()) {
-                    if (linkA.getLength() != linkB.getLength() || linkA.getCapacity() != linkB.getCapacity() ||
-                            linkA.getFreespeed() != linkB.getFreespeed() || linkA.getNumberOfLanes() != linkB.getNumberOfLanes() ||
-                            linkA.getAllowedModes() != linkB.getAllowedModes()) {
-                        // TODO Figure out how to show these
-                        list.add(new ValidationTableEntry(linkA, linkA.getId().toString(), "Bidirectional link " + linkB.getId() + " does not have matching attributes"));
-                    }
+    private void mergeNetworkFile() {
+        if (this.extendedNetwork == null || this.extendedNetwork.isInBatch()) {
+            return;
+        }
+        Dialog<NetworkMergeTask> dialog = new Dialog<>();
+        dialog.setTitle("Merge network file");
+        dialog.setHeaderText("Pick the network to merge into the current one:");
+        ButtonType mergeButtonType = new ButtonType("Merge", ButtonData.OK_DONE);
+        dialog.getDialogPane().getButtonTypes().addAll(mergeButtonType, ButtonType.CANCEL);
+
+        GridPane grid = new GridPane();
+        grid.setHgap(10);
+        grid.setVgap(10);
+        grid.setPadding(new Insets(20, 150, 10, 30));
+
+        TextField path = new TextField();
+        Button browse = new Button("Browse...");
+        browse.setOnAction(event -> chooseNetworkFile(path));
+        ComboBox<String> coordinateOptions = new ComboBox<>();
+        coordinateOptions.getItems().addAll(TransformationFactory.DHDN_GK4, TransformationFactory.GK4, TransformationFactory.WGS84);
+        coordinateOptions.setValue(TransformationFactory.WGS84);
+        coordinateOptions.setEditable(true);
+        TextField tolerance = new TextField("1.0");
+        TextField prefix = new TextField("m_");
+
+        grid.add(new Label("Network:"), 0, 0);
+        grid.add(path, 1, 0);
+        grid.add(browse, 2, 0);
+        grid.add(new Label("Coordinate system:"), 0, 1);
+        grid.add(coordinateOptions, 1, 1);
+        grid.add(new Label("Same node within (m):"), 0, 2);
+        grid.add(tolerance, 1, 2);
+        grid.add(new Label("Prefix of clashing IDs:"), 0, 3);
+        grid.add(prefix, 1, 3);
+        dialog.getDialogPane().setContent(grid);
+
+        javafx.scene.Node mergeButton = dialog.getDialogPane().lookupButton(mergeButtonType);
+        mergeButton.disableProperty().bind(path.textProperty().isEmpty().or(prefix.textProperty().isEmpty()));
+        mergeButton.addEventFilter(ActionEvent.ACTION, event -> {
+            if (!tolerance.getText().trim().matches("[0-9]*\\.?[0-9]+")) {
+                dialog.setHeaderText("The distance must be a positive number");
+                event.consume();
+            }
+        });
+        ExtendedNetwork network = this.extendedNetwork;
+        dialog.setResultConverter(dialogButton -> {
+            if (dialogButton != mergeButtonType) {
+                return null;
+            }
+            // The matching runs on copies of the elements, so that the network can be edited meanwhile
+            return new NetworkMergeTask(path.getText().trim(), coordinateOptions.getValue().trim(),
+                    new NetworkMerge(Double.parseDouble(tolerance.getText().trim()), prefix.getText().trim()), network);
+        });
+
+        Optional<NetworkMergeTask> result = dialog.showAndWait();
+        result.ifPresent(task -> {
+            String fileName = new File(path.getText().trim()).getName();
+            buttonMerge.setDisable(true);
+            labelEvent.setText("Event: merging " + fileName);
+            task.setOnSucceeded(event -> {
+                buttonMerge.setDisable(false);
+                NetworkMerge.Plan plan = task.getValue();
+                if (plan == null || network != this.extendedNetwork) {
+                    return;
+                }
+                network.getAttributeSchema().merge(task.getSchema());
+                int added = task.getAdded();
+                logger.info("{}", task.getTimings());
+
+                long millis = Math.max(1, task.getTimings().getTotal());
+                int incomingNodes = plan.getAddedNodes().size() + plan.getMatchedNodes();
+                labelEvent.setText("Event: " + added + " elements of " + fileName + " merged in " + millis + "ms");
+                Alert alert = new Alert(AlertType.INFORMATION);
+                alert.setTitle("Merge finished");
+                alert.setHeaderText(fileName + " merged in " + millis + "ms");
+                alert.setContentText(String.format("%d nodes and %d links read%n"
+                                + "%d nodes matched, %d nodes and %d links added%n"
+                                + "%d node IDs and %d link IDs prefixed, %d links skipped%n"
+                                + "%.0f nodes/s, %.0f links/s%n%s",
+                        incomingNodes, task.getIncomingLinks(), plan.getMatchedNodes(), plan.getAddedNodes().size(),
+                        plan.getAddedLinks().size(), plan.getRenamedNodes(), plan.getRenamedLinks(),
+                        plan.getSkippedLinks(), incomingNodes * 1000.0 / millis, task.getIncomingLinks() * 1000.0 / millis,
+                        task.getTimings()));
+                alert.show();
+            });
+            task.setOnFailed(event -> {
+                logger.error("Merge of " + fileName + " failed", task.getException());
+                buttonMerge.setDisable(false);
+                labelEvent.setText("Event: merge of " + fileName + " failed");
+                Alert alert = new Alert(AlertType.ERROR);
+                alert.setTitle("Merge failed");
+                alert.setHeaderText("The network could not be merged");
+                alert.setContentText(String.valueOf(task.getException().getMessage()));
+                alert.show();
+            });
+            task.setOnCancelled(event -> {
+                buttonMerge.setDisable(false);
+                labelEvent.setText("Event: merge of " + fileName + " cancelled");
+            });
+            new TaskProgressDialog(task, "Merging " + fileName).show();
+            startInBackground(task, "network-merge");
+        });
+    }
+
+    /**
+     * Colours the differences between two network files on the map, one colour per kind of difference, and lists them
+     * in the side panel; selecting a difference centres the map on it. The differences of a previous comparison are
+     * replaced
+     * @param differenceList The differences
+     */
+    private void showDifferences(List<NetworkComparison.Difference> differenceList) {
+        clearDifferences();
+        // The coordinates are grouped by kind, so that each colour is sent to the map once
+        int kinds = NetworkComparison.Kind.values().length;
+        List<List<double[]>> nodeCoords = new ArrayList<>();
+        List<List<double[]>> linkCoords = new ArrayList<>();
+        int[] counts = new int[kinds];
+        for (int k = 0; k < kinds; k++) {
+            nodeCoords.add(new ArrayList<>());
+            linkCoords.add(new ArrayList<>());
+        }
+        for (NetworkComparison.Difference difference : differenceList) {
+            int kind = difference.getKind().ordinal();
+            counts[kind]++;
+            (difference.getElement() == NetworkComparison.Element.NODE ? nodeCoords : linkCoords).get(kind).add(difference.getCoords());
+        }
+        for (int k = 0; k < kinds; k++) {
+            this.networkLayer.highlightCoordinates(DIFFERENCE_COLORS[k], nodeCoords.get(k), linkCoords.get(k));
+        }
+
+        TableView<NetworkComparison.Difference> table = new TableView<>();
+        table.setEditable(false);
+        table.setColumnResizePolicy(TableView.CONSTRAINED_RESIZE_POLICY);
+        TableColumn<NetworkComparison.Difference, String> changeColumn = new TableColumn<>("Change");
+        changeColumn.setCellValueFactory(p -> new SimpleStringProperty(p.getValue().getElement().name().toLowerCase()
+                + " " + p.getValue().getKind().name().toLowerCase()));
+        TableColumn<NetworkComparison.Difference, String> idColumn = new TableColumn<>("ID");
+        idColumn.setCellValueFactory(p -> new SimpleStringProperty(p.getValue().getKind() == NetworkComparison.Kind.RENAMED
+                ? p.getValue().getFirstId() + " -> " + p.getValue().getSecondId() : p.getValue().getId()));
+        TableColumn<NetworkComparison.Difference, String> detailsColumn = new TableColumn<>("Details");
+        detailsColumn.setCellValueFactory(p -> new SimpleStringProperty(p.getValue().getDetails()));
+        table.getColumns().addAll(changeColumn, idColumn, detailsColumn);
+        table.setItems(FXCollections.observableArrayList(differenceList));
+        table.getSelectionModel().selectedItemProperty().addListener((observable, oldValue, selected) -> {
+            if (selected != null) {
+                mapView.setCenter(new Coordinate(selected.getCenterY(), selected.getCenterX()));
+                if (mapView.getZoom() < DIFFERENCE_ZOOM) {
+                    mapView.setZoom(DIFFERENCE_ZOOM);
                 }
             }
+        });
+        vboxDifferences.getChildren().add(table);
+        differences.setExpanded(true);
+        differencesClearButton.setDisable(false);
+
+        String[] kindNames = {"added", "removed", "changed", "renamed"};
+        StringBuilder summary = new StringBuilder(differenceList.size() + " differences");
+        for (int k = 0; k < kinds; k++) {
+            summary.append(k == 0 ? ": " : ", ").append(counts[k]).append(' ').append(kindNames[k]);
         }
+        differencesStatusLabel.setText(summary.toString());
+        labelEvent.setText("Event: networks compared, " + differenceList.size() + " differences");
     }
 
     /**
-     * Checks the links of the network for possibly odd values, for the user to ensure their correctness.
-     * @param list The list in which the validation warning items are stored to show on the side panel
+     * Removes the differences of the last comparison from the map and the side panel
      */
-    private void checkAttributeRanges(ArrayList<ValidationTableEntry> list) {
-        double distanceThreshold = 0.9;
-        for (Link link : this.extendedNetwork.getNetwork().getLinks().values()) {
-            // Calculate distance between two coordinates to show as default
-            Coord coordA = TransformationFactory.getCoordinateTransformation(TransformationFactory.WGS84,
-                    this.extendedNetwork.getCoordinateSystem()).transform(link.getFromNode().getCoord());
-            Coord coordB = TransformationFactory.getCoordinateTransformation(TransformationFactory.WGS84,
-                    this.extendedNetwork.getCoordinateSystem()).transform(link.getToNode().getCoord());
-
-            double nodesDistance = CoordUtils.calcEuclideanDistance(coordA, coordB);
-            if (link.getNumberOfLanes() < 0 || link.getLength() < nodesDistance - distanceThreshold ||
-                    link.getLength() > nodesDistance + distanceThreshold || link.getFreespeed() < 0 ||
-                    link.getCapacity() < 0 || link.getFlowCapacityPerSec() < 0) {
-                list.add(new ValidationTableEntry(link, link.getId().toString(), "Link attributes might contain out of range values"));
-            }
+    private void clearDifferences() {
+        for (String color : DIFFERENCE_COLORS) {
+            this.networkLayer.clearHighlight(color);
+        }
+        // The toolbar stays, the table of the differences follows it
+        if (vboxDifferences.getChildren().size() > 1) {
+            vboxDifferences.getChildren().remove(1);
         }
+        differencesClearButton.setDisable(true);
+        differencesStatusLabel.setText("Compare two network files");
     }
-}
\ No newline at end of file
+}
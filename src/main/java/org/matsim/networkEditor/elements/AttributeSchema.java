@@ -0,0 +1,70 @@
+package org.matsim.networkEditor.elements;
+
+import java.util.LinkedHashMap;
+
+/**
+ * Names and value classes of the custom attributes found on the network, its nodes and its links when a file is read.
+ * MATSim attributes can only be looked up by name, so the schema is kept to copy or write all the attributes of a network
+ * again later
+ */
+public class AttributeSchema {
+    private final LinkedHashMap<String, String> networkAttributes = new LinkedHashMap<>();
+    private final LinkedHashMap<String, String> nodeAttributes = new LinkedHashMap<>();
+    private final LinkedHashMap<String, String> linkAttributes = new LinkedHashMap<>();
+
+    /**
+     * @return The attribute names of the network mapped to the java class names of their values
+     */
+    public LinkedHashMap<String, String> getNetworkAttributes() {
+        return this.networkAttributes;
+    }
+
+    /**
+     * @return The attribute names of the nodes mapped to the java class names of their values
+     */
+    public LinkedHashMap<String, String> getNodeAttributes() {
+        return this.nodeAttributes;
+    }
+
+    /**
+     * @return The attribute names of the links mapped to the java class names of their values
+     */
+    public LinkedHashMap<String, String> getLinkAttributes() {
+        return this.linkAttributes;
+    }
+
+    /**
+     * Adds the attributes of another schema to this one
+     * @param other The schema whose attributes are added
+     */
+    public void merge(AttributeSchema other) {
+        other.networkAttributes.forEach(this.networkAttributes::putIfAbsent);
+        other.nodeAttributes.forEach(this.nodeAttributes::putIfAbsent);
+        other.linkAttributes.forEach(this.linkAttributes::putIfAbsent);
+    }
+
+    /**
+     * Converts the string form of an attribute value, as written in a network file, to an object of its class.
+     * Values of classes other than strings, numbers and booleans are kept as strings
+     * @param className The java class name of the value
+     * @param value The string form of the value
+     * @return The value as an object of the given class
+     */
+    public static Object parseValue(String className, String value) {
+        if (value == null) {
+            return null;
+        }
+        switch (className) {
+            case "java.lang.Double":
+                return Double.valueOf(value);
+            case "java.lang.Integer":
+                return Integer.valueOf(value);
+            case "java.lang.Long":
+                return Long.valueOf(value);
+            case "java.lang.Boolean":
+                return Boolean.valueOf(value);
+            default:
+                return value;
+        }
+    }
+}
@@ -0,0 +1,136 @@
+package org.matsim.networkEditor.elements;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.network.Link;
+
+/**
+ * An edit of the attributes of many links at once: the free speed, the capacity and the number of lanes are each kept,
+ * set to a value or scaled by a factor, and the allowed modes are kept or replaced. The links to edit are collected
+ * without modifying the network, in parallel, and then edited with {@link ExtendedNetwork#editLinks}, which computes
+ * their new attributes from the current ones
+ */
+public class BulkLinkEdit {
+    /**
+     * What is done to a numeric attribute of the links
+     */
+    public enum Operation {
+        KEEP, SET, SCALE
+    }
+
+    private Operation freespeedOperation = Operation.KEEP;
+    private double freespeedValue = 0.0;
+    private Operation capacityOperation = Operation.KEEP;
+    private double capacityValue = 0.0;
+    private Operation lanesOperation = Operation.KEEP;
+    private double lanesValue = 0.0;
+    // Null to keep the modes of each link
+    private Set<String> allowedModes = null;
+    private boolean reverseLinks = false;
+
+    /**
+     * @param operation What is done to the free speed of the links
+     * @param value The new free speed, or the factor it is scaled by
+     */
+    public void setFreespeed(Operation operation, double value) {
+        this.freespeedOperation = operation;
+        this.freespeedValue = value;
+    }
+
+    /**
+     * @param operation What is done to the capacity of the links
+     * @param value The new capacity, or the factor it is scaled by
+     */
+    public void setCapacity(Operation operation, double value) {
+        this.capacityOperation = operation;
+        this.capacityValue = value;
+    }
+
+    /**
+     * @param operation What is done to the number of lanes of the links
+     * @param value The new number of lanes, or the factor it is scaled by
+     */
+    public void setLanes(Operation operation, double value) {
+        this.lanesOperation = operation;
+        this.lanesValue = value;
+    }
+
+    /**
+     * @param allowedModes The modes allowed on the links from now on, or null to keep the modes of each link
+     */
+    public void setAllowedModes(Set<String> allowedModes) {
+        this.allowedModes = allowedModes == null ? null : Collections.unmodifiableSet(new LinkedHashSet<>(allowedModes));
+    }
+
+    /**
+     * @param reverseLinks True to edit the reverse links of the edited links as well, i.e. the links between the same
+     *                     nodes in the opposite direction
+     */
+    public void setReverseLinks(boolean reverseLinks) {
+        this.reverseLinks = reverseLinks;
+    }
+
+    /**
+     * @return True if the edit does not change any attribute, otherwise false
+     */
+    public boolean isEmpty() {
+        return this.freespeedOperation == Operation.KEEP && this.capacityOperation == Operation.KEEP
+                && this.lanesOperation == Operation.KEEP && this.allowedModes == null;
+    }
+
+    /**
+     * Collects the links to edit, in parallel: the given links and, if the reverse links are edited as well, their reverse
+     * links. Only reads the links and the index, so it may run off the JavaFX application thread
+     * @param links The links to edit
+     * @param linkIndex The index of the links of the network, to find the reverse links
+     * @return The ids of the links to edit
+     */
+    public Set<Id<Link>> selectLinks(Collection<? extends Link> links, LinkIndex linkIndex) {
+        Set<Id<Link>> selected = ConcurrentHashMap.newKeySet();
+        links.parallelStream().forEach(link -> {
+            selected.add(link.getId());
+            if (this.reverseLinks) {
+                Link reverse = linkIndex.getReverse(link);
+                if (reverse != null) {
+                    selected.add(reverse.getId());
+                }
+            }
+        });
+        return selected;
+    }
+
+    /**
+     * Computes the new attributes of a link
+     * @param current The current attributes of the link
+     * @return The attributes of the link after the edit
+     */
+    public CommandJournal.LinkState apply(CommandJournal.LinkState current) {
+        return new CommandJournal.LinkState(current.getLength(),
+                apply(this.freespeedOperation, this.freespeedValue, current.getFreespeed()),
+                apply(this.capacityOperation, this.capacityValue, current.getCapacity()),
+                apply(this.lanesOperation, this.lanesValue, current.getNumLanes()),
+                this.allowedModes == null ? current.getAllowedModes() : this.allowedModes);
+    }
+
+    /**
+     * @param operation What is done to the attribute
+     * @param value The new value, or the factor the attribute is scaled by
+     * @param current The current value of the attribute
+     * @return The new value of the attribute
+     */
+    private static double apply(Operation operation, double value, double current) {
+        switch (operation) {
+            case SET:
+                return value;
+            case SCALE:
+                return current * value;
+            default:
+                return current;
+        }
+    }
+}
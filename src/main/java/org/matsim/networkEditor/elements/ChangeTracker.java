@@ -0,0 +1,127 @@
+package org.matsim.networkEditor.elements;
+
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.network.Link;
+import org.matsim.api.core.v01.network.Node;
+
+/**
+ * Records the ids of the nodes and links that were added, modified or removed since the view of the network was last
+ * refreshed. Additions are recorded as such, since not every element of the network is drawn on the map; whether an
+ * element was modified or removed follows from looking it up in the network when the changes are applied
+ */
+public class ChangeTracker {
+    private final LinkedHashSet<Id<Node>> nodes = new LinkedHashSet<>();
+    private final LinkedHashSet<Id<Link>> links = new LinkedHashSet<>();
+    private final HashSet<Id<Node>> addedNodes = new HashSet<>();
+    private final HashSet<Id<Link>> addedLinks = new HashSet<>();
+
+    /**
+     * Records a node that was added to the network
+     * @param nodeId The id of the new node
+     */
+    public void markNodeAdded(Id<Node> nodeId) {
+        // A node that was removed and is added again since the last refresh is still listed, it was only modified
+        if (this.nodes.add(nodeId)) {
+            this.addedNodes.add(nodeId);
+        }
+    }
+
+    /**
+     * Records a link that was added to the network
+     * @param linkId The id of the new link
+     */
+    public void markLinkAdded(Id<Link> linkId) {
+        if (this.links.add(linkId)) {
+            this.addedLinks.add(linkId);
+        }
+    }
+
+    /**
+     * @param nodeId The id of a changed node
+     * @return True if the node was added since the last refresh, otherwise false
+     */
+    public boolean isNodeAdded(Id<Node> nodeId) {
+        return this.addedNodes.contains(nodeId);
+    }
+
+    /**
+     * @param linkId The id of a changed link
+     * @return True if the link was added since the last refresh, otherwise false
+     */
+    public boolean isLinkAdded(Id<Link> linkId) {
+        return this.addedLinks.contains(linkId);
+    }
+
+    /**
+     * Records a change of a node
+     * @param nodeId The id of the node that was added, modified or removed
+     */
+    public void markNode(Id<Node> nodeId) {
+        this.nodes.add(nodeId);
+    }
+
+    /**
+     * Records a change of a node that affects its in- and outlinks as well, e.g. a changed coordinate or its removal.
+     * Must be called before the node is removed from the network, while its links are still attached
+     * @param node The node that was moved or is about to be removed
+     */
+    public void markNodeWithLinks(Node node) {
+        this.nodes.add(node.getId());
+        this.links.addAll(node.getInLinks().keySet());
+        this.links.addAll(node.getOutLinks().keySet());
+    }
+
+    /**
+     * Records a change of a link
+     * @param linkId The id of the link that was added, modified or removed
+     */
+    public void markLink(Id<Link> linkId) {
+        this.links.add(linkId);
+    }
+
+    /**
+     * Records the changes recorded by another tracker as well
+     * @param other The other tracker
+     */
+    public void addAll(ChangeTracker other) {
+        this.nodes.addAll(other.nodes);
+        this.links.addAll(other.links);
+        this.addedNodes.addAll(other.addedNodes);
+        this.addedLinks.addAll(other.addedLinks);
+    }
+
+    /**
+     * @return The ids of the changed nodes, in the order of their first change
+     */
+    public Set<Id<Node>> getNodes() {
+        return this.nodes;
+    }
+
+    /**
+     * @return The ids of the changed links, in the order of their first change
+     */
+    public Set<Id<Link>> getLinks() {
+        return this.links;
+    }
+
+    /**
+     * @return True if no change was recorded, otherwise false
+     */
+    public boolean isEmpty() {
+        return this.nodes.isEmpty() && this.links.isEmpty();
+    }
+
+    /**
+     * Forgets all recorded changes, once they were applied
+     */
+    public void clear() {
+        this.nodes.clear();
+        this.links.clear();
+        this.addedNodes.clear();
+        this.addedLinks.clear();
+    }
+}
@@ -0,0 +1,502 @@
+package org.matsim.networkEditor.elements;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+
+import org.matsim.api.core.v01.Coord;
+import org.matsim.api.core.v01.network.Link;
+import org.matsim.api.core.v01.network.Node;
+import org.matsim.core.network.NetworkUtils;
+
+/**
+ * The history of the commands applied to a network, for undo and redo. A command, e.g. adding a node or cleaning the
+ * network, is recorded as the primitive changes it made, in order: an added or removed node or link, or the attributes
+ * of a modified one before and after. Removed nodes and links are kept as they were rather than copied, so that undoing
+ * puts the same objects back; undoing a command applies the inverse of its changes in reverse order, redoing applies
+ * them again. The history is bounded by an estimate of the memory it holds, the oldest commands are dropped once the
+ * limit is exceeded
+ */
+public class CommandJournal {
+    // Rough sizes of a recorded change and of the removed elements it keeps alive
+    private static final long CHANGE_BYTES = 64;
+    private static final long NODE_BYTES = 256;
+    private static final long LINK_BYTES = 320;
+
+    /**
+     * The kinds of primitive changes of a network
+     */
+    public enum ChangeType {
+        ADD_NODE, REMOVE_NODE, MODIFY_NODE, ADD_LINK, REMOVE_LINK, MODIFY_LINK
+    }
+
+    /**
+     * A primitive change of a network: the changed element and, for modifications, its attributes before and after
+     */
+    public static final class Change {
+        private final ChangeType type;
+        private final Node node;
+        private final Link link;
+        private final NodeState nodeBefore;
+        private final NodeState nodeAfter;
+        private final LinkState linkBefore;
+        private final LinkState linkAfter;
+
+        private Change(ChangeType type, Node node, Link link, NodeState nodeBefore, NodeState nodeAfter,
+                       LinkState linkBefore, LinkState linkAfter) {
+            this.type = type;
+            this.node = node;
+            this.link = link;
+            this.nodeBefore = nodeBefore;
+            this.nodeAfter = nodeAfter;
+            this.linkBefore = linkBefore;
+            this.linkAfter = linkAfter;
+        }
+
+        /**
+         * @return The kind of change
+         */
+        public ChangeType getType() {
+            return this.type;
+        }
+
+        /**
+         * @return The added, removed or modified node, or null if the change is about a link
+         */
+        public Node getNode() {
+            return this.node;
+        }
+
+        /**
+         * @return The added, removed or modified link, or null if the change is about a node
+         */
+        public Link getLink() {
+            return this.link;
+        }
+
+        /**
+         * @return The attributes of the modified node before the change, or null if no node was modified
+         */
+        public NodeState getNodeBefore() {
+            return this.nodeBefore;
+        }
+
+        /**
+         * @return The attributes of the modified node after the change, or null if no node was modified
+         */
+        public NodeState getNodeAfter() {
+            return this.nodeAfter;
+        }
+
+        /**
+         * @return The attributes of the modified link before the change, or null if no link was modified
+         */
+        public LinkState getLinkBefore() {
+            return this.linkBefore;
+        }
+
+        /**
+         * @return The attributes of the modified link after the change, or null if no link was modified
+         */
+        public LinkState getLinkAfter() {
+            return this.linkAfter;
+        }
+
+        /**
+         * @return The estimated memory held by the change
+         */
+        private long estimatedBytes() {
+            switch (this.type) {
+                case REMOVE_NODE:
+                    return CHANGE_BYTES + NODE_BYTES;
+                case REMOVE_LINK:
+                    return CHANGE_BYTES + LINK_BYTES;
+                case MODIFY_NODE:
+                case MODIFY_LINK:
+                    return 3 * CHANGE_BYTES;
+                default:
+                    return CHANGE_BYTES;
+            }
+        }
+    }
+
+    /**
+     * The editable attributes of a node: its original id and its coordinate
+     */
+    public static final class NodeState {
+        private final String origId;
+        private final Coord coord;
+
+        /**
+         * @param origId The original id of the node
+         * @param coord The coordinate of the node
+         */
+        public NodeState(String origId, Coord coord) {
+            this.origId = origId;
+            this.coord = coord;
+        }
+
+        /**
+         * @param node A node
+         * @return The current attributes of the node
+         */
+        public static NodeState of(Node node) {
+            return new NodeState(NetworkUtils.getOrigId(node), node.getCoord());
+        }
+
+        /**
+         * @return The original id of the node
+         */
+        public String getOrigId() {
+            return this.origId;
+        }
+
+        /**
+         * @return The coordinate of the node
+         */
+        public Coord getCoord() {
+            return this.coord;
+        }
+
+        /**
+         * @param other The attributes of a node
+         * @return True if the attributes are the same as the other ones, otherwise false
+         */
+        public boolean sameAs(NodeState other) {
+            return Objects.equals(this.origId, other.origId) && this.coord.getX() == other.coord.getX()
+                    && this.coord.getY() == other.coord.getY();
+        }
+    }
+
+    /**
+     * The editable attributes of a link: its length, free speed, capacity, number of lanes and allowed modes
+     */
+    public static final class LinkState {
+        private final double length;
+        private final double freespeed;
+        private final double capacity;
+        private final double numLanes;
+        private final Set<String> allowedModes;
+
+        /**
+         * @param length The length of the link
+         * @param freespeed The free speed of the link
+         * @param capacity The capacity of the link
+         * @param numLanes The number of lanes of the link
+         * @param allowedModes The modes allowed on the link; MATSim replaces the set of a link instead of modifying it,
+         *                     so the set of the link itself can be kept
+         */
+        public LinkState(double length, double freespeed, double capacity, double numLanes, Set<String> allowedModes) {
+            this.length = length;
+            this.freespeed = freespeed;
+            this.capacity = capacity;
+            this.numLanes = numLanes;
+            this.allowedModes = allowedModes;
+        }
+
+        /**
+         * @param link A link
+         * @return The current attributes of the link
+         */
+        public static LinkState of(Link link) {
+            return new LinkState(link.getLength(), link.getFreespeed(), link.getCapacity(), link.getNumberOfLanes(),
+                    link.getAllowedModes());
+        }
+
+        /**
+         * @return The length of the link
+         */
+        public double getLength() {
+            return this.length;
+        }
+
+        /**
+         * @return The free speed of the link
+         */
+        public double getFreespeed() {
+            return this.freespeed;
+        }
+
+        /**
+         * @return The capacity of the link
+         */
+        public double getCapacity() {
+            return this.capacity;
+        }
+
+        /**
+         * @return The number of lanes of the link
+         */
+        public double getNumLanes() {
+            return this.numLanes;
+        }
+
+        /**
+         * @return The modes allowed on the link
+         */
+        public Set<String> getAllowedModes() {
+            return this.allowedModes;
+        }
+
+        /**
+         * @param other The attributes of a link
+         * @return True if the attributes are the same as the other ones, otherwise false
+         */
+        public boolean sameAs(LinkState other) {
+            return this.length == other.length && this.freespeed == other.freespeed && this.capacity == other.capacity
+                    && this.numLanes == other.numLanes && this.allowedModes.equals(other.allowedModes);
+        }
+    }
+
+    /**
+     * A command applied to the network, as the primitive changes it made in order
+     */
+    public static final class Command {
+        private final String description;
+        private final ArrayList<Change> changes = new ArrayList<>();
+        private long estimatedBytes = 0;
+
+        private Command(String description) {
+            this.description = description;
+        }
+
+        /**
+         * @return The description of the command, e.g. "add node"
+         */
+        public String getDescription() {
+            return this.description;
+        }
+
+        /**
+         * @return The changes of the command, in the order they were made
+         */
+        public List<Change> getChanges() {
+            return Collections.unmodifiableList(this.changes);
+        }
+    }
+
+    private final ArrayDeque<Command> undoCommands = new ArrayDeque<>();
+    private final ArrayDeque<Command> redoCommands = new ArrayDeque<>();
+    private final long memoryLimit;
+    private long memory = 0;
+    // The command being recorded, and how many nested commands it consists of
+    private Command current = null;
+    private int depth = 0;
+    private Runnable listener = null;
+
+    /**
+     * Creates a journal that may hold a twentieth of the memory available to the application
+     */
+    public CommandJournal() {
+        this(Runtime.getRuntime().maxMemory() / 20);
+    }
+
+    /**
+     * @param memoryLimit The estimated memory in bytes the journal may hold before the oldest commands are dropped
+     */
+    public CommandJournal(long memoryLimit) {
+        this.memoryLimit = memoryLimit;
+    }
+
+    /**
+     * Starts recording a command. Commands started while another one is being recorded become part of it, e.g. the
+     * removals of the links of a removed node
+     * @param description The description of the command
+     */
+    public void begin(String description) {
+        if (this.depth++ == 0) {
+            this.current = new Command(description);
+        }
+    }
+
+    /**
+     * Finishes recording a command; the outermost command is added to the history, unless it did not change anything,
+     * and the commands that were undone before can no longer be redone
+     */
+    public void end() {
+        if (this.depth == 0 || --this.depth > 0) {
+            return;
+        }
+        Command command = this.current;
+        this.current = null;
+        if (command.changes.isEmpty()) {
+            return;
+        }
+        this.redoCommands.forEach(undone -> this.memory -= undone.estimatedBytes);
+        this.redoCommands.clear();
+        this.undoCommands.addLast(command);
+        this.memory += command.estimatedBytes;
+        trim();
+        changed();
+    }
+
+    /**
+     * Stops recording the command being recorded, including the commands it consists of, without adding it to the
+     * history, e.g. because its changes are reverted
+     * @return The command with the changes recorded so far, or null if no command is being recorded
+     */
+    public Command abort() {
+        Command command = this.current;
+        this.current = null;
+        this.depth = 0;
+        return command;
+    }
+
+    /**
+     * Records a primitive change as part of the command being recorded. Changes made outside of a command, e.g. while a
+     * command is undone or redone, are not recorded
+     * @param change The change
+     */
+    private void record(Change change) {
+        if (this.current != null) {
+            this.current.changes.add(change);
+            this.current.estimatedBytes += change.estimatedBytes();
+        }
+    }
+
+    /**
+     * @param node A node that was added to the network
+     */
+    public void nodeAdded(Node node) {
+        record(new Change(ChangeType.ADD_NODE, node, null, null, null, null, null));
+    }
+
+    /**
+     * @param node A node that was removed from the network, after its links were removed
+     */
+    public void nodeRemoved(Node node) {
+        record(new Change(ChangeType.REMOVE_NODE, node, null, null, null, null, null));
+    }
+
+    /**
+     * @param node A node that was modified
+     * @param before The attributes of the node before the modification
+     * @param after The attributes of the node after the modification
+     */
+    public void nodeModified(Node node, NodeState before, NodeState after) {
+        record(new Change(ChangeType.MODIFY_NODE, node, null, before, after, null, null));
+    }
+
+    /**
+     * @param link A link that was added to the network
+     */
+    public void linkAdded(Link link) {
+        record(new Change(ChangeType.ADD_LINK, null, link, null, null, null, null));
+    }
+
+    /**
+     * @param link A link that was removed from the network
+     */
+    public void linkRemoved(Link link) {
+        record(new Change(ChangeType.REMOVE_LINK, null, link, null, null, null, null));
+    }
+
+    /**
+     * @param link A link that was modified
+     * @param before The attributes of the link before the modification
+     * @param after The attributes of the link after the modification
+     */
+    public void linkModified(Link link, LinkState before, LinkState after) {
+        record(new Change(ChangeType.MODIFY_LINK, null, link, null, null, before, after));
+    }
+
+    /**
+     * @return True if there is a command to undo, otherwise false
+     */
+    public boolean canUndo() {
+        return !this.undoCommands.isEmpty();
+    }
+
+    /**
+     * @return True if there is an undone command to redo, otherwise false
+     */
+    public boolean canRedo() {
+        return !this.redoCommands.isEmpty();
+    }
+
+    /**
+     * @return The description of the command to undo, or null if there is none
+     */
+    public String getUndoDescription() {
+        return this.undoCommands.isEmpty() ? null : this.undoCommands.getLast().description;
+    }
+
+    /**
+     * @return The description of the command to redo, or null if there is none
+     */
+    public String getRedoDescription() {
+        return this.redoCommands.isEmpty() ? null : this.redoCommands.getLast().description;
+    }
+
+    /**
+     * Takes the last command to undo it, after which it can be redone
+     * @return The command whose changes have to be reverted, or null if there is none
+     */
+    public Command undo() {
+        Command command = this.undoCommands.pollLast();
+        if (command != null) {
+            this.redoCommands.addLast(command);
+            changed();
+        }
+        return command;
+    }
+
+    /**
+     * Takes the last undone command to redo it, after which it can be undone again
+     * @return The command whose changes have to be applied again, or null if there is none
+     */
+    public Command redo() {
+        Command command = this.redoCommands.pollLast();
+        if (command != null) {
+            this.undoCommands.addLast(command);
+            changed();
+        }
+        return command;
+    }
+
+    /**
+     * Forgets all commands, e.g. when another network is loaded
+     */
+    public void clear() {
+        this.undoCommands.clear();
+        this.redoCommands.clear();
+        this.memory = 0;
+        changed();
+    }
+
+    /**
+     * @return The estimated memory in bytes held by the recorded commands
+     */
+    public long getEstimatedMemory() {
+        return this.memory;
+    }
+
+    /**
+     * @param listener Called whenever commands are recorded, undone, redone or forgotten, e.g. to update the undo and
+     *                 redo buttons; null for none
+     */
+    public void setListener(Runnable listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * Drops the oldest commands while the history holds more memory than allowed; the last command is always kept
+     */
+    private void trim() {
+        while (this.memory > this.memoryLimit && this.undoCommands.size() > 1) {
+            this.memory -= this.undoCommands.removeFirst().estimatedBytes;
+        }
+    }
+
+    /**
+     * Notifies the listener of a change of the history
+     */
+    private void changed() {
+        if (this.listener != null) {
+            this.listener.run();
+        }
+    }
+}
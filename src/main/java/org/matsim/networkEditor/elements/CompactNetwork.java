@@ -0,0 +1,709 @@
+package org.matsim.networkEditor.elements;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+import org.matsim.api.core.v01.Coord;
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.network.Link;
+import org.matsim.api.core.v01.network.Network;
+import org.matsim.api.core.v01.network.NetworkFactory;
+import org.matsim.api.core.v01.network.Node;
+import org.matsim.core.network.NetworkUtils;
+import org.matsim.networkEditor.utils.CachedTransformation;
+
+/**
+ * Columnar, primitive-array representation of a network. Nodes and links are addressed by their index; coordinates and
+ * link attributes are kept in plain double/int arrays (the z coordinates only once a node has one) and ids, allowed modes and attribute values are interned strings.
+ * It has a fraction of the memory footprint of the MATSim object graph and is used as the target of the streaming
+ * readers, for the binary snapshots and wherever only the geometry and the link values of a network are needed. The
+ * editor itself works on the MATSim network, which a loaded network is moved into with {@link #moveToNetwork()}.
+ * Coordinates are stored in the same notation as the MATSim network of the editor (x is the longitude, y the latitude)
+ */
+public class CompactNetwork {
+    private static final String ORIG_ID = "origid";
+    private static final String TYPE = "type";
+
+    private String name = null;
+    private String coordinateSystem = null;
+    private double capacityPeriod = 3600.0;
+    private double effectiveLaneWidth = 3.75;
+    private double effectiveCellSize = 7.5;
+
+    private int nodeCount = 0;
+    private String[] nodeIds;
+    private double[] nodeX;
+    private double[] nodeY;
+    private double[] nodeZ = null;
+
+    private int linkCount = 0;
+    private String[] linkIds;
+    private int[] linkFrom;
+    private int[] linkTo;
+    private double[] linkLength;
+    private double[] linkFreespeed;
+    private double[] linkCapacity;
+    private double[] linkLanes;
+    private String[] linkModes;
+
+    private final AttributeSchema schema = new AttributeSchema();
+    private final LinkedHashMap<String, String> networkAttributeValues = new LinkedHashMap<>();
+    private final LinkedHashMap<String, String[]> nodeAttributeValues = new LinkedHashMap<>();
+    private final LinkedHashMap<String, String[]> linkAttributeValues = new LinkedHashMap<>();
+
+    private final HashMap<String, String> strings = new HashMap<>();
+    private HashMap<String, Integer> nodeIndex = null;
+
+    /**
+     * Creates an empty network with room for the given number of nodes and links, the arrays grow when needed
+     * @param expectedNodes The expected number of nodes
+     * @param expectedLinks The expected number of links
+     */
+    public CompactNetwork(int expectedNodes, int expectedLinks) {
+        int nodeCapacity = Math.max(16, expectedNodes);
+        int linkCapacity = Math.max(16, expectedLinks);
+        this.nodeIds = new String[nodeCapacity];
+        this.nodeX = new double[nodeCapacity];
+        this.nodeY = new double[nodeCapacity];
+        this.linkIds = new String[linkCapacity];
+        this.linkFrom = new int[linkCapacity];
+        this.linkTo = new int[linkCapacity];
+        this.linkLength = new double[linkCapacity];
+        this.linkFreespeed = new double[linkCapacity];
+        this.linkCapacity = new double[linkCapacity];
+        this.linkLanes = new double[linkCapacity];
+        this.linkModes = new String[linkCapacity];
+    }
+
+    /**
+     * Creates an empty network
+     */
+    public CompactNetwork() {
+        this(1024, 2048);
+    }
+
+    /**
+     * Returns the shared instance of a string, so that repeated ids, modes and attribute values are stored only once
+     * @param value The string to intern
+     * @return The shared instance equal to the given string
+     */
+    public String intern(String value) {
+        if (value == null) {
+            return null;
+        }
+        String shared = this.strings.putIfAbsent(value, value);
+        return shared == null ? value : shared;
+    }
+
+    /**
+     * Adds a node
+     * @param id The id of the node
+     * @param x The x coordinate of the node
+     * @param y The y coordinate of the node
+     * @return The index of the new node
+     */
+    public int addNode(String id, double x, double y) {
+        if (this.nodeCount == this.nodeIds.length) {
+            int capacity = Math.max(16, this.nodeIds.length * 2);
+            this.nodeIds = Arrays.copyOf(this.nodeIds, capacity);
+            this.nodeX = Arrays.copyOf(this.nodeX, capacity);
+            this.nodeY = Arrays.copyOf(this.nodeY, capacity);
+            if (this.nodeZ != null) {
+                this.nodeZ = Arrays.copyOf(this.nodeZ, capacity);
+                Arrays.fill(this.nodeZ, this.nodeCount, capacity, Double.NaN);
+            }
+            this.nodeAttributeValues.replaceAll((key, column) -> Arrays.copyOf(column, capacity));
+        }
+        int index = this.nodeCount++;
+        this.nodeIds[index] = id;
+        this.nodeX[index] = x;
+        this.nodeY[index] = y;
+        if (this.nodeIndex != null) {
+            this.nodeIndex.put(id, index);
+        }
+        return index;
+    }
+
+    /**
+     * Sets the z coordinate of a node. The column of the z coordinates is only created once a node has one, the nodes
+     * without are marked by NaN
+     * @param node The index of the node
+     * @param z The z coordinate of the node
+     */
+    public void setNodeZ(int node, double z) {
+        if (this.nodeZ == null) {
+            this.nodeZ = new double[this.nodeIds.length];
+            Arrays.fill(this.nodeZ, Double.NaN);
+        }
+        this.nodeZ[node] = z;
+    }
+
+    /**
+     * Adds a link between two nodes that were already added
+     * @param id The id of the link
+     * @param from The index of the 'from' node
+     * @param to The index of the 'to' node
+     * @param length The length of the link
+     * @param freespeed The free speed of the link
+     * @param capacity The capacity of the link
+     * @param lanes The number of lanes of the link
+     * @param modes The allowed modes of the link, comma separated
+     * @return The index of the new link
+     */
+    public int addLink(String id, int from, int to, double length, double freespeed, double capacity, double lanes, String modes) {
+        if (this.linkCount == this.linkIds.length) {
+            resizeLinks(Math.max(16, this.linkIds.length * 2));
+        }
+        int index = this.linkCount++;
+        this.linkIds[index] = id;
+        this.linkFrom[index] = from;
+        this.linkTo[index] = to;
+        this.linkLength[index] = length;
+        this.linkFreespeed[index] = freespeed;
+        this.linkCapacity[index] = capacity;
+        this.linkLanes[index] = lanes;
+        this.linkModes[index] = intern(modes);
+        return index;
+    }
+
+    /**
+     * Sets a custom attribute of the network
+     * @param name The name of the attribute
+     * @param className The java class name of the value
+     * @param value The string form of the value
+     */
+    public void setNetworkAttribute(String name, String className, String value) {
+        this.schema.getNetworkAttributes().putIfAbsent(name, className);
+        this.networkAttributeValues.put(name, value);
+    }
+
+    /**
+     * Sets a custom attribute of a node
+     * @param node The index of the node
+     * @param name The name of the attribute
+     * @param className The java class name of the value
+     * @param value The string form of the value
+     */
+    public void setNodeAttribute(int node, String name, String className, String value) {
+        this.schema.getNodeAttributes().putIfAbsent(intern(name), className);
+        this.nodeAttributeValues.computeIfAbsent(intern(name), key -> new String[this.nodeIds.length])[node] = intern(value);
+    }
+
+    /**
+     * Sets a custom attribute of a link
+     * @param link The index of the link
+     * @param name The name of the attribute
+     * @param className The java class name of the value
+     * @param value The string form of the value
+     */
+    public void setLinkAttribute(int link, String name, String className, String value) {
+        this.schema.getLinkAttributes().putIfAbsent(intern(name), className);
+        this.linkAttributeValues.computeIfAbsent(intern(name), key -> new String[this.linkIds.length])[link] = intern(value);
+    }
+
+    /**
+     * Transforms the coordinates of some of the nodes in place, all at once
+     * @param transformation The transformation from the coordinate system the coordinates are in
+     * @param fromNode The index of the first node to transform, the nodes after it are transformed as well
+     */
+    public void transformNodes(CachedTransformation transformation, int fromNode) {
+        transformation.transform(this.nodeX, this.nodeY, fromNode, this.nodeCount);
+    }
+
+    /**
+     * Resizes the columns of the links, dropping the links beyond the new size
+     * @param capacity The new size of the columns
+     */
+    private void resizeLinks(int capacity) {
+        this.linkIds = Arrays.copyOf(this.linkIds, capacity);
+        this.linkFrom = Arrays.copyOf(this.linkFrom, capacity);
+        this.linkTo = Arrays.copyOf(this.linkTo, capacity);
+        this.linkLength = Arrays.copyOf(this.linkLength, capacity);
+        this.linkFreespeed = Arrays.copyOf(this.linkFreespeed, capacity);
+        this.linkCapacity = Arrays.copyOf(this.linkCapacity, capacity);
+        this.linkLanes = Arrays.copyOf(this.linkLanes, capacity);
+        this.linkModes = Arrays.copyOf(this.linkModes, capacity);
+        this.linkAttributeValues.replaceAll((key, column) -> Arrays.copyOf(column, capacity));
+        this.linkCount = Math.min(this.linkCount, capacity);
+    }
+
+    /**
+     * Shrinks the arrays to the number of nodes and links and drops the interning table, once no more elements are added
+     */
+    public void trimToSize() {
+        this.nodeIds = Arrays.copyOf(this.nodeIds, this.nodeCount);
+        this.nodeX = Arrays.copyOf(this.nodeX, this.nodeCount);
+        this.nodeY = Arrays.copyOf(this.nodeY, this.nodeCount);
+        if (this.nodeZ != null) {
+            this.nodeZ = Arrays.copyOf(this.nodeZ, this.nodeCount);
+        }
+        this.nodeAttributeValues.replaceAll((key, column) -> Arrays.copyOf(column, this.nodeCount));
+        this.linkIds = Arrays.copyOf(this.linkIds, this.linkCount);
+        this.linkFrom = Arrays.copyOf(this.linkFrom, this.linkCount);
+        this.linkTo = Arrays.copyOf(this.linkTo, this.linkCount);
+        this.linkLength = Arrays.copyOf(this.linkLength, this.linkCount);
+        this.linkFreespeed = Arrays.copyOf(this.linkFreespeed, this.linkCount);
+        this.linkCapacity = Arrays.copyOf(this.linkCapacity, this.linkCount);
+        this.linkLanes = Arrays.copyOf(this.linkLanes, this.linkCount);
+        this.linkModes = Arrays.copyOf(this.linkModes, this.linkCount);
+        this.linkAttributeValues.replaceAll((key, column) -> Arrays.copyOf(column, this.linkCount));
+        this.strings.clear();
+    }
+
+    /**
+     * Finds the index of a node by its id. The lookup table is only built on the first call, the readers keep their own
+     * @param id The id of the node
+     * @return The index of the node, or -1 if there is no node with this id
+     */
+    public int indexOfNode(String id) {
+        if (this.nodeIndex == null) {
+            this.nodeIndex = new HashMap<>(this.nodeCount * 2);
+            for (int i = 0; i < this.nodeCount; i++) {
+                this.nodeIndex.put(this.nodeIds[i], i);
+            }
+        }
+        Integer index = this.nodeIndex.get(id);
+        return index == null ? -1 : index;
+    }
+
+    /**
+     * Builds the MATSim network out of the compact representation, including all custom attributes
+     * @return A new MATSim network with the nodes, links and attributes of this network
+     */
+    public Network toNetwork() {
+        return toNetwork(false);
+    }
+
+    /**
+     * Builds the MATSim network out of the compact representation and empties this network while doing so, for a
+     * network that is only read to be turned into a MATSim one. The columns of the nodes are dropped once the MATSim
+     * nodes exist, and the links are created from the last chunk to the first, with the columns shortened after each
+     * chunk, so that the compact network shrinks while the MATSim network grows instead of being held next to all of it
+     * @return A new MATSim network with the nodes, links and attributes of this network, which is left empty
+     */
+    public Network moveToNetwork() {
+        return toNetwork(true);
+    }
+
+    /**
+     * @param release Whether to empty this network while the MATSim network is built
+     * @return A new MATSim network with the nodes, links and attributes of this network
+     */
+    private Network toNetwork(boolean release) {
+        if (release) {
+            this.nodeIndex = null;
+        }
+        Network network = NetworkUtils.createNetwork();
+        network.setName(this.name);
+        network.setCapacityPeriod(this.capacityPeriod);
+        network.setEffectiveLaneWidth(this.effectiveLaneWidth);
+        network.setEffectiveCellSize(this.effectiveCellSize);
+        for (Map.Entry<String, String> entry : this.networkAttributeValues.entrySet()) {
+            network.getAttributes().putAttribute(entry.getKey(),
+                    AttributeSchema.parseValue(this.schema.getNetworkAttributes().get(entry.getKey()), entry.getValue()));
+        }
+
+        NetworkFactory factory = network.getFactory();
+        Node[] nodes = new Node[this.nodeCount];
+        for (int i = 0; i < this.nodeCount; i++) {
+            nodes[i] = createNode(i, Id.create(this.nodeIds[i], Node.class), factory);
+            network.addNode(nodes[i]);
+        }
+        if (release) {
+            this.nodeCount = 0;
+            this.nodeIds = new String[0];
+            this.nodeX = new double[0];
+            this.nodeY = new double[0];
+            this.nodeZ = null;
+            this.nodeAttributeValues.clear();
+        }
+
+        // Links with the same modes share the same set; the links are added in their order once all are created
+        HashMap<String, Set<String>> modeSets = new HashMap<>();
+        Link[] links = new Link[this.linkCount];
+        int chunk = release ? Math.max(1 << 16, this.linkCount / 8) : Math.max(1, this.linkCount);
+        for (int end = this.linkCount; end > 0; end -= chunk) {
+            int begin = Math.max(0, end - chunk);
+            for (int i = begin; i < end; i++) {
+                links[i] = createLink(i, Id.create(this.linkIds[i], Link.class), nodes[this.linkFrom[i]],
+                        nodes[this.linkTo[i]], factory, modeSets);
+            }
+            if (release) {
+                resizeLinks(begin);
+            }
+        }
+        for (Link link : links) {
+            network.addLink(link);
+        }
+        if (release) {
+            this.linkAttributeValues.clear();
+            this.networkAttributeValues.clear();
+        }
+        return network;
+    }
+
+    /**
+     * Creates the MATSim node of a node, including all custom attributes, without adding it to a network
+     * @param node The index of the node
+     * @param id The id of the MATSim node, e.g. the id of the node or one that does not clash with another network
+     * @param factory The factory of the network the node is meant for
+     * @return The node
+     */
+    public Node createNode(int node, Id<Node> id, NetworkFactory factory) {
+        double z = getNodeZ(node);
+        Coord coord = Double.isNaN(z) ? new Coord(this.nodeX[node], this.nodeY[node])
+                : new Coord(this.nodeX[node], this.nodeY[node], z);
+        Node matsimNode = factory.createNode(id, coord);
+        for (Map.Entry<String, String[]> column : this.nodeAttributeValues.entrySet()) {
+            String value = column.getValue()[node];
+            if (value == null) {
+                continue;
+            }
+            if (ORIG_ID.equals(column.getKey())) {
+                NetworkUtils.setOrigId(matsimNode, value);
+            } else {
+                matsimNode.getAttributes().putAttribute(column.getKey(),
+                        AttributeSchema.parseValue(this.schema.getNodeAttributes().get(column.getKey()), value));
+            }
+        }
+        return matsimNode;
+    }
+
+    /**
+     * Creates the MATSim link of a link, including all custom attributes, without adding it to a network
+     * @param link The index of the link
+     * @param id The id of the MATSim link, e.g. the id of the link or one that does not clash with another network
+     * @param fromNode The 'from' node of the MATSim link
+     * @param toNode The 'to' node of the MATSim link
+     * @param factory The factory of the network the link is meant for
+     * @param modeSets The sets of allowed modes by their comma separated modes, shared by the links with the same modes
+     * @return The link
+     */
+    public Link createLink(int link, Id<Link> id, Node fromNode, Node toNode, NetworkFactory factory,
+                           Map<String, Set<String>> modeSets) {
+        Link matsimLink = factory.createLink(id, fromNode, toNode);
+        matsimLink.setLength(this.linkLength[link]);
+        matsimLink.setFreespeed(this.linkFreespeed[link]);
+        matsimLink.setCapacity(this.linkCapacity[link]);
+        matsimLink.setNumberOfLanes(this.linkLanes[link]);
+        if (this.linkModes[link] != null) {
+            matsimLink.setAllowedModes(modeSets.computeIfAbsent(this.linkModes[link], CompactNetwork::parseModes));
+        }
+        for (Map.Entry<String, String[]> column : this.linkAttributeValues.entrySet()) {
+            String value = column.getValue()[link];
+            if (value == null) {
+                continue;
+            }
+            if (TYPE.equals(column.getKey())) {
+                NetworkUtils.setType(matsimLink, value);
+            } else {
+                matsimLink.getAttributes().putAttribute(column.getKey(),
+                        AttributeSchema.parseValue(this.schema.getLinkAttributes().get(column.getKey()), value));
+            }
+        }
+        return matsimLink;
+    }
+
+    /**
+     * Builds the compact representation of a MATSim network
+     * @param network The MATSim network
+     * @param coordinateSystem The coordinate system the network is stored in
+     * @param schema The custom attributes to copy, besides the node origid and the link type
+     * @return The compact representation of the network
+     */
+    public static CompactNetwork fromNetwork(Network network, String coordinateSystem, AttributeSchema schema) {
+        CompactNetwork compactNetwork = new CompactNetwork(network.getNodes().size(), network.getLinks().size());
+        compactNetwork.setName(network.getName());
+        compactNetwork.setCoordinateSystem(coordinateSystem);
+        compactNetwork.setCapacityPeriod(network.getCapacityPeriod());
+        compactNetwork.setEffectiveLaneWidth(network.getEffectiveLaneWidth());
+        compactNetwork.setEffectiveCellSize(network.getEffectiveCellSize());
+        for (Map.Entry<String, String> attribute : schema.getNetworkAttributes().entrySet()) {
+            Object value = network.getAttributes().getAttribute(attribute.getKey());
+            if (value != null) {
+                compactNetwork.setNetworkAttribute(attribute.getKey(), attribute.getValue(), value.toString());
+            }
+        }
+
+        HashMap<Id<Node>, Integer> nodeIndices = new HashMap<>(network.getNodes().size() * 2);
+        for (Node node : network.getNodes().values()) {
+            int index = compactNetwork.addNode(node.getId().toString(), node.getCoord().getX(), node.getCoord().getY());
+            nodeIndices.put(node.getId(), index);
+            if (node.getCoord().hasZ()) {
+                compactNetwork.setNodeZ(index, node.getCoord().getZ());
+            }
+            String origId = NetworkUtils.getOrigId(node);
+            if (origId != null) {
+                compactNetwork.setNodeAttribute(index, ORIG_ID, "java.lang.String", origId);
+            }
+            for (Map.Entry<String, String> attribute : schema.getNodeAttributes().entrySet()) {
+                if (ORIG_ID.equals(attribute.getKey())) {
+                    continue;
+                }
+                Object value = node.getAttributes().getAttribute(attribute.getKey());
+                if (value != null) {
+                    compactNetwork.setNodeAttribute(index, attribute.getKey(), attribute.getValue(), value.toString());
+                }
+            }
+        }
+
+        for (Link link : network.getLinks().values()) {
+            int index = compactNetwork.addLink(link.getId().toString(), nodeIndices.get(link.getFromNode().getId()),
+                    nodeIndices.get(link.getToNode().getId()), link.getLength(), link.getFreespeed(), link.getCapacity(),
+                    link.getNumberOfLanes(), String.join(",", link.getAllowedModes()));
+            String type = NetworkUtils.getType(link);
+            if (type != null) {
+                compactNetwork.setLinkAttribute(index, TYPE, "java.lang.String", type);
+            }
+            for (Map.Entry<String, String> attribute : schema.getLinkAttributes().entrySet()) {
+                if (TYPE.equals(attribute.getKey())) {
+                    continue;
+                }
+                Object value = link.getAttributes().getAttribute(attribute.getKey());
+                if (value != null) {
+                    compactNetwork.setLinkAttribute(index, attribute.getKey(), attribute.getValue(), value.toString());
+                }
+            }
+        }
+        return compactNetwork;
+    }
+
+    /**
+     * @param modes Comma separated modes
+     * @return The set of the modes
+     */
+    private static Set<String> parseModes(String modes) {
+        HashSet<String> modeSet = new HashSet<>();
+        for (String mode : modes.split(",")) {
+            if (!mode.trim().isEmpty()) {
+                modeSet.add(mode.trim());
+            }
+        }
+        return modeSet;
+    }
+
+    /**
+     * @return The number of nodes
+     */
+    public int getNodeCount() {
+        return this.nodeCount;
+    }
+
+    /**
+     * @return The number of links
+     */
+    public int getLinkCount() {
+        return this.linkCount;
+    }
+
+    /**
+     * @param node The index of the node
+     * @return The id of the node
+     */
+    public String getNodeId(int node) {
+        return this.nodeIds[node];
+    }
+
+    /**
+     * @param node The index of the node
+     * @return The x coordinate (longitude) of the node
+     */
+    public double getNodeX(int node) {
+        return this.nodeX[node];
+    }
+
+    /**
+     * @param node The index of the node
+     * @return The y coordinate (latitude) of the node
+     */
+    public double getNodeY(int node) {
+        return this.nodeY[node];
+    }
+
+    /**
+     * @param node The index of the node
+     * @return The z coordinate of the node, or NaN if it has none
+     */
+    public double getNodeZ(int node) {
+        return this.nodeZ == null ? Double.NaN : this.nodeZ[node];
+    }
+
+    /**
+     * @return Whether any of the nodes has a z coordinate
+     */
+    public boolean hasNodeZ() {
+        return this.nodeZ != null;
+    }
+
+    /**
+     * @param link The index of the link
+     * @return The id of the link
+     */
+    public String getLinkId(int link) {
+        return this.linkIds[link];
+    }
+
+    /**
+     * @param link The index of the link
+     * @return The index of the 'from' node of the link
+     */
+    public int getLinkFrom(int link) {
+        return this.linkFrom[link];
+    }
+
+    /**
+     * @param link The index of the link
+     * @return The index of the 'to' node of the link
+     */
+    public int getLinkTo(int link) {
+        return this.linkTo[link];
+    }
+
+    /**
+     * @param link The index of the link
+     * @return The length of the link
+     */
+    public double getLinkLength(int link) {
+        return this.linkLength[link];
+    }
+
+    /**
+     * @param link The index of the link
+     * @return The free speed of the link
+     */
+    public double getLinkFreespeed(int link) {
+        return this.linkFreespeed[link];
+    }
+
+    /**
+     * @param link The index of the link
+     * @return The capacity of the link
+     */
+    public double getLinkCapacity(int link) {
+        return this.linkCapacity[link];
+    }
+
+    /**
+     * @param link The index of the link
+     * @return The number of lanes of the link
+     */
+    public double getLinkLanes(int link) {
+        return this.linkLanes[link];
+    }
+
+    /**
+     * @param link The index of the link
+     * @return The allowed modes of the link, comma separated, or null if none were given
+     */
+    public String getLinkModes(int link) {
+        return this.linkModes[link];
+    }
+
+    /**
+     * @param node The index of the node
+     * @param name The name of the attribute
+     * @return The string form of the attribute value, or null if the node does not have it
+     */
+    public String getNodeAttribute(int node, String name) {
+        String[] column = this.nodeAttributeValues.get(name);
+        return column == null ? null : column[node];
+    }
+
+    /**
+     * @param link The index of the link
+     * @param name The name of the attribute
+     * @return The string form of the attribute value, or null if the link does not have it
+     */
+    public String getLinkAttribute(int link, String name) {
+        String[] column = this.linkAttributeValues.get(name);
+        return column == null ? null : column[link];
+    }
+
+    /**
+     * @return The custom network attributes, by name, in their string form
+     */
+    public Map<String, String> getNetworkAttributeValues() {
+        return this.networkAttributeValues;
+    }
+
+    /**
+     * @return The names and value classes of the custom attributes of the network, its nodes and its links
+     */
+    public AttributeSchema getSchema() {
+        return this.schema;
+    }
+
+    /**
+     * @return The name of the network
+     */
+    public String getName() {
+        return this.name;
+    }
+
+    /**
+     * @param name The name of the network
+     */
+    public void setName(String name) {
+        this.name = name;
+    }
+
+    /**
+     * @return The coordinate system the network is stored in, when it is written to a file
+     */
+    public String getCoordinateSystem() {
+        return this.coordinateSystem;
+    }
+
+    /**
+     * @param coordinateSystem The coordinate system the network is stored in
+     */
+    public void setCoordinateSystem(String coordinateSystem) {
+        this.coordinateSystem = coordinateSystem;
+    }
+
+    /**
+     * @return The capacity period of the network in seconds
+     */
+    public double getCapacityPeriod() {
+        return this.capacityPeriod;
+    }
+
+    /**
+     * @param capacityPeriod The capacity period of the network in seconds
+     */
+    public void setCapacityPeriod(double capacityPeriod) {
+        this.capacityPeriod = capacityPeriod;
+    }
+
+    /**
+     * @return The width of the lanes represented by the links
+     */
+    public double getEffectiveLaneWidth() {
+        return this.effectiveLaneWidth;
+    }
+
+    /**
+     * @param effectiveLaneWidth The width of the lanes represented by the links
+     */
+    public void setEffectiveLaneWidth(double effectiveLaneWidth) {
+        this.effectiveLaneWidth = effectiveLaneWidth;
+    }
+
+    /**
+     * @return The length of a vehicle in MATSim
+     */
+    public double getEffectiveCellSize() {
+        return this.effectiveCellSize;
+    }
+
+    /**
+     * @param effectiveCellSize The length of a vehicle in MATSim
+     */
+    public void setEffectiveCellSize(double effectiveCellSize) {
+        this.effectiveCellSize = effectiveCellSize;
+    }
+}
@@ -1,16 +1,8 @@
 package org.matsim.networkEditor.elements;
 
-import java.nio.file.Path;
-import java.nio.file.Paths;
-import java.text.DateFormat;
-import java.text.SimpleDateFormat;
 import java.util.*;
-import java.util.Map.Entry;
 
 import com.sothawo.mapjfx.Coordinate;
-import com.sothawo.mapjfx.CoordinateLine;
-import com.sothawo.mapjfx.MapView;
-import com.sothawo.mapjfx.Marker;
 
 import javafx.scene.control.*;
 import javafx.scene.layout.GridPane;
@@ -21,52 +13,50 @@ import org.matsim.api.core.v01.network.Link;
 import org.matsim.api.core.v01.network.Network;
 import org.matsim.api.core.v01.network.Node;
 import org.matsim.core.network.NetworkUtils;
-import org.matsim.core.network.io.MatsimNetworkReader;
-import org.matsim.core.utils.geometry.transformations.TransformationFactory;
-import org.matsim.core.utils.io.OsmNetworkReader;
+import org.matsim.networkEditor.visualElements.FxNetworkChangeAdapter;
+import org.matsim.networkEditor.visualElements.LevelOfDetail;
 import org.matsim.networkEditor.visualElements.NetworkInfo;
+import org.matsim.networkEditor.visualElements.NetworkLayer;
 
 import javafx.beans.property.SimpleStringProperty;
 import javafx.beans.value.ObservableValue;
 import javafx.collections.FXCollections;
 import javafx.collections.ObservableList;
 import javafx.scene.layout.VBox;
-import javafx.scene.paint.Color;
 import javafx.util.Callback;
 
 /**
- * Includes a MATSim network and the elements needed for the visuals for nodes, links, validation items and network information, both for the
- * side panels and the map markers and lines
+ * Includes the model of a MATSim network and the elements needed for the visuals for nodes, links, validation items and
+ * network information, both for the side panels and the map markers and lines. The changes made through the model are
+ * applied to the visuals when they are flushed, on the JavaFX application thread whichever thread made them, see
+ * {@link FxNetworkChangeAdapter}
  */
-public class ExtendedNetwork {
-    private Network network = null;
-    private String networkPath = null;
+public class ExtendedNetwork extends NetworkModel {
     private VBox vBoxNetWork = null;
     private VBox vBoxNodes = null;
     private VBox vBoxLinks = null;
     private VBox vBoxValidation = null;
-    private MapView mapView = null;
-    private HashMap<Id<Node>, Marker> nodeMarkers = null;
-    private HashMap<Id<Link>, CoordinateLine> linkLines = null;
+    private NetworkLayer networkLayer = null;
+    // The nodes drawn on the map, with the coordinate they were drawn at, and the links drawn on the map; these are only
+    // the elements within the viewport of the map at its current level of detail
+    private HashMap<Id<Node>, Coord> paintedNodes = null;
+    private HashSet<Id<Link>> paintedLinks = null;
     private TableView<Node> nodeTable = null;
     private TableView<Link> linkTable = null;
     private TableView<ValidationTableEntry> validationTable = null;
     private NetworkInfo networkInfo = null;
-    private String coordinateSystem = null;
-    private ArrayList<ValidationTableEntry> validationWarnings = null;
 
     /**
      * Creates a Network and initializes tableviews and data structures
      */
     public ExtendedNetwork() {
-        this.network = NetworkUtils.createNetwork();
+        super();
         this.nodeTable = new TableView<>();
         this.linkTable = new TableView<>();
         this.validationTable = new TableView<>();
-        this.nodeMarkers = new HashMap<>();
-        this.linkLines = new HashMap<>();
-        this.validationWarnings = new ArrayList<>();
-        this.coordinateSystem = "WGS84";
+        this.paintedNodes = new HashMap<>();
+        this.paintedLinks = new HashSet<>();
+        addChangeListener(new FxNetworkChangeAdapter(this::showChanges));
     }
 
     /**
@@ -79,133 +69,282 @@ public class ExtendedNetwork {
      * @param vBoxNodes The visual box element containing the nodes information
      * @param vBoxLinks The visual box element containing the links information
      * @param vBoxValidation The visual box element containing the validation elements information
-     * @param mapView The visual map component
+     * @param networkLayer The layer of the map the nodes and links are drawn on
      * @param coordinateSystem The coordinate system of the network
      */
     public ExtendedNetwork(String name, Double effectiveLaneWidth, Double effectiveCellSize, Double capPeriod, VBox vBoxNetWork,
-                           VBox vBoxNodes, VBox vBoxLinks, VBox vBoxValidation, MapView mapView, String coordinateSystem) {
-        this.network = NetworkUtils.createNetwork();
-        if (name != null) {
-            this.network.setName(name);
-        }
-        if (effectiveCellSize != null) {
-            this.network.setEffectiveCellSize(effectiveCellSize);
-        }
-        if (effectiveLaneWidth != null) {
-            this.network.setEffectiveLaneWidth(effectiveLaneWidth);
-        }
-        if (capPeriod != null) {
-            this.network.setCapacityPeriod(capPeriod);
-        }
-        if (coordinateSystem != null) {
-            this.coordinateSystem = coordinateSystem;
-        }
-        initializeMapElementLists(vBoxNetWork, vBoxNodes, vBoxLinks, vBoxValidation, mapView);
+                           VBox vBoxNodes, VBox vBoxLinks, VBox vBoxValidation, NetworkLayer networkLayer, String coordinateSystem) {
+        super(name, effectiveLaneWidth, effectiveCellSize, capPeriod, coordinateSystem);
+        addChangeListener(new FxNetworkChangeAdapter(this::showChanges));
+        initializeMapElementLists(vBoxNetWork, vBoxNodes, vBoxLinks, vBoxValidation, networkLayer);
         initializeTableViews();
         paintToMap();
     }
 
     /**
-     * Creates a new network from a file and initializes the visual elements of the editor
+     * Creates the model of a network that has already been read from a file, without any of the visual elements of the
+     * editor. The import pipeline builds it off the JavaFX thread, the view is attached afterwards with {@link #attachToView}
+     * @param network The network read from the file
      * @param networkPath The path to the network file
+     * @param coordinateSystem The coordinate system of the network
+     */
+    public ExtendedNetwork(Network network, String networkPath, String coordinateSystem) {
+        super(network, networkPath, coordinateSystem);
+        addChangeListener(new FxNetworkChangeAdapter(this::showChanges));
+    }
+
+    /**
+     * Connects the network to the side panels and the map of the editor, fills the tables and paints the nodes and links.
+     * Must be called on the JavaFX application thread
      * @param vBoxNetWork The visual box element containing the network information
      * @param vBoxNodes The visual box element containing the nodes information
      * @param vBoxLinks The visual box element containing the links information
      * @param vBoxValidation The visual box element containing the validation elements information
-     * @param mapView The visual map component
-     * @param coordinateSystem The coordinate system of the network
+     * @param networkLayer The layer of the map the nodes and links are drawn on
      */
-    public ExtendedNetwork(String networkPath, VBox vBoxNetWork, VBox vBoxNodes, VBox vBoxLinks, VBox vBoxValidation, MapView mapView, String coordinateSystem) {
-        initializeMapElementLists(vBoxNetWork, vBoxNodes, vBoxLinks, vBoxValidation, mapView);
-        this.network = NetworkUtils.createNetwork();
-        this.networkPath = networkPath;
-        this.coordinateSystem = coordinateSystem;
-
-        System.out.println("---------------------------------------READER---------------------------------------");
+    public void attachToView(VBox vBoxNetWork, VBox vBoxNodes, VBox vBoxLinks, VBox vBoxValidation, NetworkLayer networkLayer) {
+        initializeMapElementLists(vBoxNetWork, vBoxNodes, vBoxLinks, vBoxValidation, networkLayer);
+        initializeTableViews();
+        paintToMap();
+    }
 
-        long startTime = System.nanoTime();
-        // Target is the default for our map, therefore WGS84
-        new MatsimNetworkReader(coordinateSystem, "EPSG: 4326", this.network).readFile(networkPath);
+    /**
+     * Updates the side panels of the editor and the markers and lines on the map, going through the whole network.
+     * Single changes made through the model are applied with {@link #flush()} instead
+     */
+    public void paintToMap() {
+        discardChanges();
+        read(() -> {
+            populateNodesTable();
+            populateLinksTable();
+            populateValidationTable();
+            this.networkInfo.update(getNetwork());
+        });
+        updateViewport();
+    }
 
-        if (this.network.getName() == null) {
-            // Get the name of the imported file and set it as the network name
-            Path p = Paths.get(networkPath);
-            String[] parts = p.getFileName().toString().split("\\.");
-            this.network.setName(parts[0]);
+    /**
+     * Brings the nodes and links drawn on the map in line with the visible extent and the zoom level of the map: the
+     * elements within the viewport are looked up in the spatial index and filtered by the level of detail, only those
+     * that are not drawn yet are added to the map and only those that are no longer visible are removed from it.
+     * Called whenever the map comes to rest after panning or zooming
+     */
+    public void updateViewport() {
+        if (this.networkLayer == null) {
+            return;
+        }
+        read(this::paintViewport);
+    }
+
+    /**
+     * Draws the elements within the viewport that are not drawn yet and erases those that are no longer visible, under
+     * the read lock
+     */
+    private void paintViewport() {
+        double zoom = this.networkLayer.getZoom();
+        double[] viewport = this.networkLayer.getViewport();
+        Collection<? extends Node> candidates = viewport == null ? getNetwork().getNodes().values()
+                : getNodeIndex().findWithin(viewport[0], viewport[1], viewport[2], viewport[3]);
+        boolean showNodes = LevelOfDetail.showNodes(zoom);
+        double capacityPeriod = getNetwork().getCapacityPeriod();
+
+        HashMap<Id<Node>, Coord> visibleNodes = new HashMap<>();
+        HashSet<Id<Link>> visibleLinks = new HashSet<>();
+        ArrayList<Node> nodesToDraw = new ArrayList<>();
+        ArrayList<Link> linksToDraw = new ArrayList<>();
+        for (Node node : candidates) {
+            if (showNodes) {
+                // A node that is drawn already keeps the coordinate it was drawn at, until its changes are flushed
+                Coord paintedCoord = this.paintedNodes.get(node.getId());
+                if (paintedCoord == null) {
+                    nodesToDraw.add(node);
+                    paintedCoord = node.getCoord();
+                }
+                visibleNodes.put(node.getId(), paintedCoord);
+            }
+            // A link is visible if one of its nodes is, so the links are found through the nodes within the viewport
+            for (Map<Id<Link>, ? extends Link> links : List.of(node.getOutLinks(), node.getInLinks())) {
+                for (Link link : links.values()) {
+                    if (!visibleLinks.contains(link.getId()) && LevelOfDetail.showLink(link, capacityPeriod, zoom)) {
+                        visibleLinks.add(link.getId());
+                        if (!this.paintedLinks.contains(link.getId())) {
+                            linksToDraw.add(link);
+                        }
+                    }
+                }
+            }
         }
 
-        initializeTableViews();
-        paintToMap();
-
-        long endTime = System.nanoTime();
-        //divided by 1000000 to get milliseconds.
-        long duration = (endTime - startTime)/1000000;
-        System.out.println("Time elapsed to load network: " + duration + "ms");
+        ArrayList<Id<Node>> nodesToErase = new ArrayList<>();
+        for (Id<Node> nodeId : this.paintedNodes.keySet()) {
+            if (!visibleNodes.containsKey(nodeId)) {
+                nodesToErase.add(nodeId);
+            }
+        }
+        ArrayList<Id<Link>> linksToErase = new ArrayList<>();
+        for (Id<Link> linkId : this.paintedLinks) {
+            if (!visibleLinks.contains(linkId)) {
+                linksToErase.add(linkId);
+            }
+        }
+        this.networkLayer.removeNodes(nodesToErase);
+        this.networkLayer.removeLinks(linksToErase);
+        this.networkLayer.addNodes(nodesToDraw);
+        this.networkLayer.addLinks(linksToDraw);
+        this.paintedNodes = visibleNodes;
+        this.paintedLinks = visibleLinks;
     }
 
-    public ExtendedNetwork(String networkPath, String coordinateSystem, VBox vBoxNetWork, VBox vBoxNodes, VBox vBoxLinks, VBox vBoxValidation, MapView mapView) {
-        initializeMapElementLists(vBoxNetWork, vBoxNodes, vBoxLinks, vBoxValidation, mapView);
-        this.network = NetworkUtils.createNetwork();
-        this.networkPath = networkPath;
-        this.coordinateSystem = coordinateSystem;
-        System.out.println("-------------------------------------OSM READER-------------------------------------");
+    /**
+     * @param node A node of the network
+     * @return True if the node is drawn in the current viewport and at the current zoom level, otherwise false
+     */
+    private boolean isVisible(Node node) {
+        return LevelOfDetail.showNodes(this.networkLayer.getZoom())
+                && this.networkLayer.isInViewport(node.getCoord().getX(), node.getCoord().getY());
+    }
 
-        long startTime = System.nanoTime();
-        new OsmNetworkReader(this.network, TransformationFactory.getCoordinateTransformation(this.getCoordinateSystem(), TransformationFactory.WGS84))
-                .parse(this.networkPath);
+    /**
+     * @param link A link of the network
+     * @return True if the link is drawn in the current viewport and at the current zoom level, otherwise false
+     */
+    private boolean isVisible(Link link) {
+        Coord from = link.getFromNode().getCoord();
+        Coord to = link.getToNode().getCoord();
+        return LevelOfDetail.showLink(link, getNetwork().getCapacityPeriod(), this.networkLayer.getZoom())
+                && (this.networkLayer.isInViewport(from.getX(), from.getY()) || this.networkLayer.isInViewport(to.getX(), to.getY()));
+    }
 
-        if (this.network.getName() == null) {
-            // Get the name of the imported file and set it as the network name
-            Path p = Paths.get(networkPath);
-            String[] parts = p.getFileName().toString().split("\\.");
-            this.network.setName(parts[0]);
+    /**
+     * Applies the flushed changes to the side panels and the map, on the JavaFX application thread: only the table rows,
+     * markers and lines of the changed nodes and links are added, repainted or removed, along with the validation
+     * warnings of removed elements. Without a view there is nothing to refresh, the view is painted from the network
+     * once it is attached
+     * @param event The added, changed and removed nodes and links, possibly of several flushes
+     */
+    private void showChanges(NetworkChangeEvent event) {
+        if (this.networkLayer == null) {
+            return;
         }
-        initializeTableViews();
-        paintToMap();
-
-        long endTime = System.nanoTime();
-        //divided by 1000000 to get milliseconds.
-        long duration = (endTime - startTime)/1000000;
-        System.out.println("Time elapsed to load network: " + duration + "ms");
+        // The event may be handed over from another thread, which can have changed the network again in the meantime;
+        // the elements are looked up as they are now, and the later changes follow with the next event
+        read(() -> showChangesLocked(event));
     }
 
     /**
-     * Updates the side panels of the editor and the markers and lines on the map
+     * Applies the flushed changes to the side panels and the map, under the read lock
+     * @param event The added, changed and removed nodes and links
      */
-    public void paintToMap() {
-        populateNodesTable();
-        populateLinksTable();
-        populateValidationTable();
-        this.networkInfo.update(this.network);
+    private void showChangesLocked(NetworkChangeEvent event) {
+        Network network = getNetwork();
+
+        // The changes are collected first and passed to the map in one call per kind of change. Only the elements within
+        // the viewport at the current level of detail are drawn, while the tables list all of them
+        ArrayList<Node> addedNodes = new ArrayList<>();
+        ArrayList<Id<Node>> nodesToErase = new ArrayList<>();
+        ArrayList<Node> nodesToDraw = new ArrayList<>();
+        for (Id<Node> nodeId : event.getAddedNodes()) {
+            Node node = network.getNodes().get(nodeId);
+            if (node != null) {
+                addedNodes.add(node);
+            }
+        }
+        for (Set<Id<Node>> nodeIds : List.of(event.getAddedNodes(), event.getChangedNodes(), event.getRemovedNodes())) {
+            for (Id<Node> nodeId : nodeIds) {
+                Node node = network.getNodes().get(nodeId);
+                Coord paintedCoord = this.paintedNodes.get(nodeId);
+                boolean visible = node != null && isVisible(node);
+                if (paintedCoord != null && (!visible || paintedCoord.getX() != node.getCoord().getX()
+                        || paintedCoord.getY() != node.getCoord().getY())) {
+                    nodesToErase.add(nodeId);
+                    this.paintedNodes.remove(nodeId);
+                    paintedCoord = null;
+                }
+                if (visible && paintedCoord == null) {
+                    nodesToDraw.add(node);
+                    this.paintedNodes.put(nodeId, node.getCoord());
+                }
+            }
+        }
+        this.networkLayer.removeNodes(nodesToErase);
+        this.networkLayer.addNodes(nodesToDraw);
+        if (!event.getRemovedNodes().isEmpty()) {
+            this.nodeTable.getItems().removeIf(node -> event.getRemovedNodes().contains(node.getId()));
+        }
+        this.nodeTable.getItems().addAll(addedNodes);
+        if (!event.getChangedNodes().isEmpty()) {
+            this.nodeTable.refresh();
+        }
+
+        ArrayList<Link> addedLinks = new ArrayList<>();
+        ArrayList<Link> linksToDraw = new ArrayList<>();
+        ArrayList<Id<Link>> linksToErase = new ArrayList<>();
+        for (Id<Link> linkId : event.getAddedLinks()) {
+            Link link = network.getLinks().get(linkId);
+            if (link != null) {
+                addedLinks.add(link);
+            }
+        }
+        for (Set<Id<Link>> linkIds : List.of(event.getAddedLinks(), event.getChangedLinks(), event.getRemovedLinks())) {
+            for (Id<Link> linkId : linkIds) {
+                Link link = network.getLinks().get(linkId);
+                if (this.paintedLinks.remove(linkId)) {
+                    linksToErase.add(linkId);
+                }
+                // The line is drawn anew, since the nodes of the link might have moved
+                if (link != null && isVisible(link)) {
+                    linksToDraw.add(link);
+                    this.paintedLinks.add(linkId);
+                }
+            }
+        }
+        this.networkLayer.removeLinks(linksToErase);
+        this.networkLayer.addLinks(linksToDraw);
+        if (!event.getRemovedLinks().isEmpty()) {
+            this.linkTable.getItems().removeIf(link -> event.getRemovedLinks().contains(link.getId()));
+        }
+        this.linkTable.getItems().addAll(addedLinks);
+        if (!event.getChangedLinks().isEmpty()) {
+            this.linkTable.refresh();
+        }
+
+        if (!event.getRemovedWarnings().isEmpty()) {
+            this.validationTable.getItems().removeAll(event.getRemovedWarnings());
+        }
+        if (event.hasStaleWarnings()) {
+            this.validationTable.refresh();
+        }
+
+        this.networkInfo.update(network);
     }
 
     /**
-     * Initializes the visual boxes of the side panel and the data structures containing nodes, links and validation warnings
+     * Initializes the visual boxes of the side panel and the data structures containing the painted nodes and links
      * @param vBoxNetwork The visual box element containing the network information
      * @param vBoxNodes The visual box element containing the nodes information
      * @param vBoxLinks The visual box element containing the links information
      * @param vBoxValidation The visual box element containing the validation elements information
-     * @param mapView The visual map component
+     * @param networkLayer The layer of the map the nodes and links are drawn on
      */
-    private void initializeMapElementLists(VBox vBoxNetwork, VBox vBoxNodes, VBox vBoxLinks, VBox vBoxValidation, MapView mapView) {
+    private void initializeMapElementLists(VBox vBoxNetwork, VBox vBoxNodes, VBox vBoxLinks, VBox vBoxValidation,
+                                           NetworkLayer networkLayer) {
         this.vBoxNetWork = vBoxNetwork;
         this.vBoxLinks = vBoxLinks;
         this.vBoxNodes = vBoxNodes;
         this.vBoxValidation = vBoxValidation;
-        this.mapView = mapView;
+        this.networkLayer = networkLayer;
         this.nodeTable = new TableView<>();
         this.linkTable = new TableView<>();
         this.validationTable = new TableView<>();
-        this.nodeMarkers = new HashMap<>();
-        this.linkLines = new HashMap<>();
-        this.validationWarnings = new ArrayList<>();
+        this.paintedNodes = new HashMap<>();
+        this.paintedLinks = new HashSet<>();
     }
 
     /**
      * Initializes the table views of the side panel, setting up the column information
      */
     public void initializeTableViews() {
-        this.networkInfo = new NetworkInfo(this.network);
+        this.networkInfo = new NetworkInfo(getNetwork());
         ArrayList<Pair<javafx.scene.Node, javafx.scene.Node>> networkInfoNodes = this.networkInfo.getAll();
 
         this.vBoxNetWork.getChildren().clear();
@@ -222,6 +361,7 @@ public class ExtendedNetwork {
         this.nodeTable = new TableView<>();
         this.nodeTable.setEditable(false);
         this.nodeTable.setColumnResizePolicy(TableView.CONSTRAINED_RESIZE_POLICY);
+        // The cells of the node and link tables read the network under the read lock, since workers may change it
 
         TableColumn idColumn = new TableColumn("ID");
         idColumn.setMinWidth(5);
@@ -229,7 +369,7 @@ public class ExtendedNetwork {
             @Override
             public ObservableValue<String> call(TableColumn.CellDataFeatures<Node, Id> p) {
                 // Use origID to show
-                return new SimpleStringProperty(NetworkUtils.getOrigId(p.getValue()));
+                return new SimpleStringProperty(read(() -> NetworkUtils.getOrigId(p.getValue())));
             }
         });
 
@@ -239,7 +379,7 @@ public class ExtendedNetwork {
             @Override
             public ObservableValue<String> call(TableColumn.CellDataFeatures<Node, Coord> p) {
                 // Swap X with Y to match MATSim notation
-                return new SimpleStringProperty(Double.toString(p.getValue().getCoord().getY()));
+                return new SimpleStringProperty(read(() -> Double.toString(p.getValue().getCoord().getY())));
             }
         });
 
@@ -249,7 +389,7 @@ public class ExtendedNetwork {
             @Override
             public ObservableValue<String> call(TableColumn.CellDataFeatures<Node, Coord> p) {
                 // Swap X with Y to match MATSim notation
-                return new SimpleStringProperty(Double.toString(p.getValue().getCoord().getX()));
+                return new SimpleStringProperty(read(() -> Double.toString(p.getValue().getCoord().getX())));
             }
         });
 
@@ -258,14 +398,16 @@ public class ExtendedNetwork {
         inLinks.setCellValueFactory(new Callback<TableColumn.CellDataFeatures<Node, String>, ObservableValue<String>>() {
             @Override
             public ObservableValue<String> call(TableColumn.CellDataFeatures<Node, String> p) {
-                StringBuilder inLinksString =  new StringBuilder();
-                for (Id<Link> id:p.getValue().getInLinks().keySet()){
-                    if (inLinksString.length() !=0){
-                        inLinksString.append(",");
+                return new SimpleStringProperty(read(() -> {
+                    StringBuilder inLinksString =  new StringBuilder();
+                    for (Id<Link> id:p.getValue().getInLinks().keySet()){
+                        if (inLinksString.length() !=0){
+                            inLinksString.append(",");
+                        }
+                        inLinksString.append(id.toString());
                     }
-                    inLinksString.append(id.toString());
-                }
-                return new SimpleStringProperty(inLinksString.toString());
+                    return inLinksString.toString();
+                }));
             }
         });
 
@@ -274,14 +416,16 @@ public class ExtendedNetwork {
         outLinks.setCellValueFactory(new Callback<TableColumn.CellDataFeatures<Node, String>, ObservableValue<String>>() {
             @Override
             public ObservableValue<String> call(TableColumn.CellDataFeatures<Node, String> p) {
-                StringBuilder outLinkString =  new StringBuilder();
-                for (Id<Link> id:p.getValue().getOutLinks().keySet()){
-                    if (outLinkString.length() !=0){
-                        outLinkString.append(",");
+                return new SimpleStringProperty(read(() -> {
+                    StringBuilder outLinkString =  new StringBuilder();
+                    for (Id<Link> id:p.getValue().getOutLinks().keySet()){
+                        if (outLinkString.length() !=0){
+                            outLinkString.append(",");
+                        }
+                        outLinkString.append(id.toString());
                     }
-                    outLinkString.append(id.toString());
-                }
-                return new SimpleStringProperty(outLinkString.toString());
+                    return outLinkString.toString();
+                }));
             }
         });
 
@@ -302,7 +446,7 @@ public class ExtendedNetwork {
                 .setCellValueFactory(new Callback<TableColumn.CellDataFeatures<Link, Id>, ObservableValue<String>>() {
                     @Override
                     public ObservableValue<String> call(TableColumn.CellDataFeatures<Link, Id> p) {
-                        return new SimpleStringProperty(p.getValue().getId().toString());
+                        return new SimpleStringProperty(read(() -> p.getValue().getId().toString()));
                     }
                 });
 
@@ -312,7 +456,7 @@ public class ExtendedNetwork {
                 .setCellValueFactory(new Callback<TableColumn.CellDataFeatures<Link, Node>, ObservableValue<String>>() {
                     @Override
                     public ObservableValue<String> call(TableColumn.CellDataFeatures<Link, Node> p) {
-                        return new SimpleStringProperty(p.getValue().getFromNode().getId().toString());
+                        return new SimpleStringProperty(read(() -> p.getValue().getFromNode().getId().toString()));
                     }
                 });
 
@@ -322,7 +466,7 @@ public class ExtendedNetwork {
                 .setCellValueFactory(new Callback<TableColumn.CellDataFeatures<Link, Node>, ObservableValue<String>>() {
                     @Override
                     public ObservableValue<String> call(TableColumn.CellDataFeatures<Link, Node> p) {
-                        return new SimpleStringProperty(p.getValue().getToNode().getId().toString());
+                        return new SimpleStringProperty(read(() -> p.getValue().getToNode().getId().toString()));
                     }
                 });
 
@@ -332,7 +476,7 @@ public class ExtendedNetwork {
                 new Callback<TableColumn.CellDataFeatures<Link, Double>, ObservableValue<String>>() {
                     @Override
                     public ObservableValue<String> call(TableColumn.CellDataFeatures<Link, Double> p) {
-                        return new SimpleStringProperty(Double.toString(p.getValue().getLength()));
+                        return new SimpleStringProperty(read(() -> Double.toString(p.getValue().getLength())));
                     }
                 });
 
@@ -342,7 +486,7 @@ public class ExtendedNetwork {
                 new Callback<TableColumn.CellDataFeatures<Link, Double>, ObservableValue<String>>() {
                     @Override
                     public ObservableValue<String> call(TableColumn.CellDataFeatures<Link, Double> p) {
-                        return new SimpleStringProperty(Double.toString(p.getValue().getCapacity()));
+                        return new SimpleStringProperty(read(() -> Double.toString(p.getValue().getCapacity())));
                     }
                 });
 
@@ -352,7 +496,7 @@ public class ExtendedNetwork {
                 new Callback<TableColumn.CellDataFeatures<Link, Double>, ObservableValue<String>>() {
                     @Override
                     public ObservableValue<String> call(TableColumn.CellDataFeatures<Link, Double> p) {
-                        return new SimpleStringProperty(Double.toString(p.getValue().getFreespeed()));
+                        return new SimpleStringProperty(read(() -> Double.toString(p.getValue().getFreespeed())));
                     }
                 });
 
@@ -362,7 +506,7 @@ public class ExtendedNetwork {
                 new Callback<TableColumn.CellDataFeatures<Link, Double>, ObservableValue<String>>() {
                     @Override
                     public ObservableValue<String> call(TableColumn.CellDataFeatures<Link, Double> p) {
-                        return new SimpleStringProperty(Double.toString(p.getValue().getNumberOfLanes()));
+                        return new SimpleStringProperty(read(() -> Double.toString(p.getValue().getNumberOfLanes())));
                     }
                 });
 
@@ -373,7 +517,7 @@ public class ExtendedNetwork {
                     @Override
                     public ObservableValue<String> call(TableColumn.CellDataFeatures<Link, String> p) {
 
-                        return new SimpleStringProperty(String.join(",", p.getValue().getAllowedModes()));
+                        return new SimpleStringProperty(read(() -> String.join(",", p.getValue().getAllowedModes())));
                     }
                 });
 
@@ -382,6 +526,8 @@ public class ExtendedNetwork {
             this.vBoxLinks.getChildren().remove(1);
         }
         this.vBoxLinks.getChildren().add(this.linkTable);
+        // Several links can be selected for a bulk edit
+        this.linkTable.getSelectionModel().setSelectionMode(SelectionMode.MULTIPLE);
         this.linkTable.getColumns().addAll(idColumnLink, fromNodeColumn, toNodeColumn, lengthColumn, capacityColumn,
                 freeSpeedColumn, nofLanesColumn, allowedModes);
 
@@ -405,7 +551,8 @@ public class ExtendedNetwork {
                 .setCellValueFactory(new Callback<TableColumn.CellDataFeatures<ValidationTableEntry, String>, ObservableValue<String>>() {
                     @Override
                     public ObservableValue<String> call(TableColumn.CellDataFeatures<ValidationTableEntry, String> p) {
-                        return new SimpleStringProperty(p.getValue().getMessage());
+                        // Warnings about elements modified since they were validated might no longer apply
+                        return new SimpleStringProperty((p.getValue().isStale() ? "(outdated) " : "") + p.getValue().getMessage());
                     }
                 });
 
@@ -425,14 +572,7 @@ public class ExtendedNetwork {
      */
     public void addNode(String id, Coordinate coordinate) {
         // Swapped Lat and Long to match MATSim and create MATSim format of coordinate
-        Coord coord = new Coord(coordinate.getLongitude(), coordinate.getLatitude(), 0.0);
-
-        if (!network.getNodes().containsKey(Id.create(id, Node.class))) {
-            NetworkUtils.createAndAddNode(this.network, Id.create(id, Node.class), coord);
-            // Set original node id to use in editing a node, since the other node id does not support this
-            NetworkUtils.setOrigId(this.network.getNodes().get(Id.create(id, Node.class)), id);
-        }
-        paintToMap();
+        addNode(id, new Coord(coordinate.getLongitude(), coordinate.getLatitude(), 0.0));
     }
 
     /**
@@ -444,62 +584,6 @@ public class ExtendedNetwork {
         addNode(newId, coordinate);
     }
 
-    /**
-     * Creates a unique node id based on time
-     * @return The node id
-     */
-    public String createNodeId() {
-        return "node_" + System.currentTimeMillis() / 1000L;
-    }
-
-    /**
-     * Edits the id and/or the coordinate of a node
-     * @param oldId The old id of the node
-     * @param newId The new id of the node
-     * @param newCoord The new coordinate position of the edited node
-     */
-    public void editNode(String oldId, String newId, Coord newCoord) {
-        Node node = this.network.getNodes().get(Id.create(oldId, Node.class));
-        Coord currentCoord = node.getCoord();
-
-        // If the old and new ids are the same, check for changes in the existing/new coordinates of the node
-        if (!newId.equals(oldId)) {
-            // Check that no node with this id already exists in the network
-            for (Node currentNode : this.network.getNodes().values()) {
-                if (NetworkUtils.getOrigId(currentNode).equals(newId)) {
-                    break;
-                } else {
-                    NetworkUtils.setOrigId(node, newId);
-                }
-            }
-        }
-        else {
-            // Set the original id into the already existing id
-            NetworkUtils.setOrigId(node, oldId);
-        }
-
-        // If the coordinate was changed, set it in the node, remove the marker and attached lines from map and data structures,
-        // then refresh the map elements to repaint the node
-        if (newCoord.getX() != currentCoord.getX() || newCoord.getY() != currentCoord.getY()) {
-            node.setCoord(newCoord);
-            mapView.removeMarker(this.nodeMarkers.get(node.getId()));
-            this.nodeMarkers.remove(node.getId());
-            Set<Id<Link>> inLinks = node.getInLinks().keySet();
-            Set<Id<Link>> outLinks = node.getOutLinks().keySet();
-            HashSet<Id<Link>> merged = new HashSet<>() {
-                {
-                    addAll(inLinks);
-                    addAll(outLinks);
-                }
-            };
-            for (Id<Link> idLink : merged) {
-                mapView.removeCoordinateLine(this.linkLines.get(idLink));
-                this.linkLines.remove(idLink);
-            }
-        }
-        paintToMap();
-    }
-
     /**
      * Adds a link to the network with an id, from/to node coordinates and attributes, and paints it on the map
      * @param id Id of the new link
@@ -509,17 +593,16 @@ public class ExtendedNetwork {
      * @param freespeed Maximum speed that vehicles are allowed to travel along the link, typically in meters per second.
      * @param capacity The number of vehicles that traverse the link, typically in vehicles per hour
      * @param numLanes The number of lanes (permlanes) available in the direction specified by the ’from’ and ’to’ nodes.
+     * @return True if the link was added, false if the network already has a link with the id or lacks one of the nodes
      */
-    public void addLink(String id, Coordinate nodeA, Coordinate nodeB, double length, double freespeed,
-                        double capacity, double numLanes) {
-        // TODO Check if link id already exists and other checks
+    public boolean addLink(String id, Coordinate nodeA, Coordinate nodeB, double length, double freespeed,
+                           double capacity, double numLanes) {
         Node fromNode = findNodeByCoordinate(nodeA);
         Node toNode = findNodeByCoordinate(nodeB);
         if (fromNode != null && toNode != null) {
-            NetworkUtils.createAndAddLink(network, Id.create(id, Link.class), fromNode, toNode, length, freespeed,
-                    capacity, numLanes);
-            paintToMap();
+            return addLink(id, fromNode.getId().toString(), toNode.getId().toString(), length, freespeed, capacity, numLanes);
         }
+        return false;
     }
 
     /**
@@ -536,105 +619,6 @@ public class ExtendedNetwork {
         addLink(newId, nodeA, nodeB, length, freespeed, capacity, numLanes);
     }
 
-    /**
-     * Creates a unique link id based on time
-     * @return The link id
-     */
-    public String createLinkId() {
-        return "link_" + System.currentTimeMillis() / 1000L;
-    }
-
-    /**
-     * Adds link to the network and paints it on the map
-     * @param id The id of the new link
-     * @param nodeAId Id of the 'from' node of the link
-     * @param nodeBId Id of the 'to' node of the link
-     * @param length The length of the link, should be matching the distance between the two node coordinates
-     * @param freespeed Maximum speed that vehicles are allowed to travel along the link, typically in meters per second.
-     * @param capacity The number of vehicles that traverse the link, typically in vehicles per hour
-     * @param numLanes The number of lanes (permlanes) available in the direction specified by the ’from’ and ’to’ nodes.
-     * @return true if link is successfully added to the network and painted on the map, false if otherwise
-     */
-    public boolean addLink(String id, String nodeAId, String nodeBId, double length, double freespeed, double capacity,
-                           double numLanes) {
-        // TODO Check if link id already exists and other checks
-        Node fromNode = this.network.getNodes().get(Id.create(nodeAId, Node.class));
-        Node toNode = this.network.getNodes().get(Id.create(nodeBId, Node.class));
-        if (fromNode != null && toNode != null) {
-            NetworkUtils.createAndAddLink(network, Id.create(id, Link.class), fromNode, toNode, length, freespeed,
-                    capacity, numLanes);
-            paintToMap();
-            return true;
-        }
-        return false;
-    }
-
-    /**
-     * Gives the user the option to edit a link's id or attributes. Capacity is not included‚‚
-     * @param oldId The current id of the link
-     * @param newId The new link id set by the user/dialog
-     * @param length The length of the link, should be matching the distance between the two node coordinates
-     * @param freespeed Maximum speed that vehicles are allowed to travel along the link, typically in meters per second.
-     * @param capacity The number of vehicles that traverse the link, typically in vehicles per hour
-     * @param numLanes The number of lanes (permlanes) available in the direction specified by the ’from’ and ’to’ nodes.
-     * @return True if the link is successfully changed, otherwise false
-     */
-    public boolean editLink(String oldId, String newId, double length, double freespeed, double capacity, double numLanes) {
-        Link link = this.network.getLinks().get(Id.create(oldId, Link.class));
-
-        // If the new id is different than the previous one, create new link with these attributes and remove the old one from the network
-        if (!newId.equals(oldId)) {
-            if (!this.network.getLinks().containsKey(Id.create(newId, Link.class))) {
-                NetworkUtils.createAndAddLink(this.network, Id.create(newId, Link.class), link.getFromNode(), link.getToNode(),
-                        length, freespeed, capacity, numLanes);
-                network.removeLink(Id.create(oldId, Link.class));
-            }
-            else {
-                return false;
-            }
-        } else {
-            if (link.getLength() != length || link.getCapacity() != capacity || link.getNumberOfLanes() != numLanes || link.getFreespeed() != freespeed) {
-                link.setLength(length);
-                link.setCapacity(capacity);
-                link.setFreespeed(freespeed);
-                link.setNumberOfLanes(numLanes);
-            }
-        }
-        paintToMap();
-        return true;
-    }
-
-    /**
-     * Removes a node from the network, and the map, along with the in- and outlinks attached to it
-     * @param id The id of the node to be removed
-     * @return True if the node is successfully removed, otherwise false
-     */
-    public boolean removeNode(String id) {
-        // TODO Checks
-        Id<Node> nodeId = Id.create(id, Node.class);
-        Node node = this.network.getNodes().get(nodeId);
-        Set<Id<Link>> inlinks = node.getInLinks().keySet();
-        Set<Id<Link>> outlinks = node.getOutLinks().keySet();
-        HashSet<Id<Link>> merged = new HashSet<Id<Link>>() {
-            {
-                addAll(inlinks);
-                addAll(outlinks);
-            }
-        };
-        // Remove node from network and map, along with attached links
-        if (this.network.removeNode(nodeId) != null) {
-            mapView.removeMarker(this.nodeMarkers.get(nodeId));
-            this.nodeMarkers.remove(nodeId);
-            for (Id<Link> idlink : merged) {
-                mapView.removeCoordinateLine(this.linkLines.get(idlink));
-                this.linkLines.remove(idlink);
-            }
-            paintToMap();
-            return true;
-        }
-        return false;
-    }
-
     /**
      * Remove node by coordinate
      * @param coordinate The coordinates of the node in the map format
@@ -642,35 +626,10 @@ public class ExtendedNetwork {
      */
     public boolean removeNode(Coordinate coordinate) {
         Node node = findNodeByCoordinate(coordinate);
-        return removeNode(node.getId().toString());
-    }
-
-    /**
-     * Removes a link from the network and the map based on its id
-     * @param id The id of the link to be removed
-     * @return True if the link is successfully removed from the network and the map, otherwise false
-     */
-    public boolean removeLink(String id) {
-        // TODO Checks
-        Id<Link> idlink = Id.create(id, Link.class);
-        if (this.network.removeLink(idlink) != null) {
-            mapView.removeCoordinateLine(this.linkLines.get(idlink));
-            this.linkLines.remove(idlink);
-            paintToMap();
-            return true;
+        if (node == null) {
+            return false;
         }
-        return false;
-    }
-
-    /**
-     *
-     * @param nodeAid
-     * @param nodeBid
-     * @return
-     */
-    public boolean removeLink(String nodeAid, String nodeBid) {
-        // TODO Implement - used in editlink for Bidirectional
-        return true;
+        return removeNode(node.getId().toString());
     }
 
     /**
@@ -680,16 +639,18 @@ public class ExtendedNetwork {
      */
     private Node findNodeByCoordinate(Coordinate coordinate) {
         // Swap Lat and Long to match MATSim notation
-        Coord coord = new Coord(coordinate.getLongitude(), coordinate.getLatitude(), 0.0);
-        // Pass through the nodes of the network, check for their coordinates and if they match the parameter
-        // coordinates, return the respective Node object
-        for (Entry<Id<Node>, ? extends Node> entry : this.network.getNodes().entrySet()) {
-            Coord entryCoord = entry.getValue().getCoord();
-            if (entryCoord.getX() == coord.getX() && entryCoord.getY() == coord.getY()) {
-                return entry.getValue();
-            }
-        }
-        return null;
+        return findNode(coordinate.getLongitude(), coordinate.getLatitude());
+    }
+
+    /**
+     * Finds the node closest to a position on the map, e.g. the position of a click
+     * @param coordinate The position in the map format
+     * @param tolerance The maximum distance of the node to the position, in degrees
+     * @return The closest Node within the tolerance, or null if there is none
+     */
+    public Node findNearestNode(Coordinate coordinate, double tolerance) {
+        // Swap Lat and Long to match MATSim notation
+        return findNearestNode(coordinate.getLongitude(), coordinate.getLatitude(), tolerance);
     }
 
     /**
@@ -710,102 +671,40 @@ public class ExtendedNetwork {
     }
 
     /**
-     * Fills the node tableview with the nodes of the network and creates the node markers out of them
+     * Fills the node tableview with the nodes of the network; the nodes are drawn on the map by {@link #updateViewport()}
      */
     private void populateNodesTable() {
-        ObservableList<Node> nodeData = FXCollections.observableArrayList(this.network.getNodes().values());
+        ObservableList<Node> nodeData = FXCollections.observableArrayList(getNetwork().getNodes().values());
         this.nodeTable.getItems().clear();
         this.nodeTable.setItems(nodeData);
         this.nodeTable.refresh();
-        createNodesMarkers(nodeData);
-    }
-
-    /**
-     * Creates markers for nodes of the network that do not have a marker already, stores them by node id
-     * in the respective data structure and paints them on the map
-     * @param data The list containing all the node ids of the network
-     */
-    private void createNodesMarkers(ObservableList<Node> data) {
-        for (Node node : data) {
-            if (!this.nodeMarkers.containsKey(node.getId())) {
-                // Swapped X and Y to match MATSim notation
-                Coordinate coordinate = new Coordinate(node.getCoord().getY(), node.getCoord().getX());
-                Marker marker = new Marker(getClass().getResource("/icons/node.png"), -3, -8)
-                        .setPosition(coordinate).setVisible(true);
-                nodeMarkers.put(node.getId(), marker);
-                mapView.addMarker(marker);
-            }
-        }
     }
 
     /**
-     * Fills the link tableview with the links of the network and creates the link lines out of them
+     * Fills the link tableview with the links of the network; the links are drawn on the map by {@link #updateViewport()}
      */
     private void populateLinksTable() {
-        ObservableList<Link> linkData = FXCollections.observableArrayList(this.network.getLinks().values());
+        ObservableList<Link> linkData = FXCollections.observableArrayList(getNetwork().getLinks().values());
         this.linkTable.getItems().clear();
         this.linkTable.setItems(linkData);
         this.linkTable.refresh();
-        createlinkLines(linkData);
-    }
-
-    /**
-     * Creates lines for the links of the network that do not have one already, stores them by link id
-     * in the respective data structure and paints them on the map
-     * @param data The list containing all the links of the network
-     */
-    private void createlinkLines(ObservableList<Link> data) {
-        for (Link link : data) {
-            if (!this.linkLines.containsKey(link.getId())) {
-                // Create coordinate objects by swapping x, y to match MATSim coordinates
-                Coordinate coordinateFrom = new Coordinate(link.getFromNode().getCoord().getY(),
-                        link.getFromNode().getCoord().getX());
-                Coordinate coordinateTo = new Coordinate(link.getToNode().getCoord().getY(),
-                        link.getToNode().getCoord().getX());
-                List<Coordinate> coordinates = new ArrayList<Coordinate>() {
-                    {
-                        add(coordinateFrom);
-                        add(coordinateTo);
-                    }
-                };
-                CoordinateLine coordinateLine = new CoordinateLine(coordinates).setColor(Color.DARKBLUE).setWidth(1)
-                        .setVisible(true);
-                this.linkLines.put(link.getId(), coordinateLine);
-                mapView.addCoordinateLine(coordinateLine);
-            }
-        }
     }
 
     /**
      * Fills the validation tableview with the validation warnings of the network
      */
     public void populateValidationTable() {
-        ObservableList<ValidationTableEntry> validationData = FXCollections.observableArrayList(this.validationWarnings);
+        ObservableList<ValidationTableEntry> validationData = FXCollections.observableArrayList(getValidationWarnings());
         this.validationTable.getItems().clear();
         this.validationTable.setItems(validationData);
         this.validationTable.refresh();
     }
 
     /**
-     * @return The hashmap containing the mappings of node ids to map markers
-     */
-    public HashMap<Id<Node>, Marker> getNodeMarkers() {
-        return this.nodeMarkers;
-    }
-
-    /**
-     * @return The hashmap containing the mappings of link ids to map lines
-     */
-    public HashMap<Id<Link>, CoordinateLine> getLinkLines() {
-        return this.linkLines;
-    }
-
-    /**
-     * @return The object containing all the MATSim network information including
-     * nodes, links and attributes
+     * @return The layer of the map the nodes and links are drawn on, null while the network is not attached to the view
      */
-    public Network getNetwork() {
-        return this.network;
+    public NetworkLayer getNetworkLayer() {
+        return this.networkLayer;
     }
 
     /**
@@ -834,54 +733,88 @@ public class ExtendedNetwork {
     }
 
     /**
-     * @return A string containing the coordinate system the user wants to store the network in
+     * Replaces all validation warnings with the result of a validation of the whole network and fills the validation
+     * tableview with them
+     * @param warnings The warnings about the nodes and links of the network
+     */
+    @Override
+    public void setValidationWarnings(Collection<ValidationTableEntry> warnings) {
+        super.setValidationWarnings(warnings);
+        populateValidationTable();
+    }
+
+    /**
+     * Removes all validation warnings and the rows of the validation tableview before the network is validated anew
+     */
+    @Override
+    public void startValidation() {
+        super.startValidation();
+        this.validationTable.getItems().clear();
+    }
+
+    /**
+     * Adds a batch of the warnings of a running validation to the validation tableview
+     * @param warnings The warnings found since the last batch
+     * @return The warnings that were added
      */
-    public String getCoordinateSystem() {
-        return this.coordinateSystem;
+    @Override
+    public List<ValidationTableEntry> addValidationWarnings(Collection<ValidationTableEntry> warnings) {
+        List<ValidationTableEntry> current = super.addValidationWarnings(warnings);
+        this.validationTable.getItems().addAll(current);
+        return current;
     }
 
     /**
-     * @return A list of validation entries, containing the nodes/links that might be problematic
-     * and the respective warning messages
+     * Removes some validation warnings, e.g. those of an analysis that is run again, from the validation tableview
+     * @param warnings The warnings to remove, those that are no longer shown are ignored
+     * @return The warnings that were removed
      */
-    public ArrayList<ValidationTableEntry> getValidationWarnings() {
-        return this.validationWarnings;
+    @Override
+    public Set<ValidationTableEntry> removeValidationWarnings(Collection<ValidationTableEntry> warnings) {
+        Set<ValidationTableEntry> removed = super.removeValidationWarnings(warnings);
+        if (!removed.isEmpty()) {
+            this.validationTable.getItems().removeAll(removed);
+        }
+        return removed;
     }
 
     /**
-     * The coordinate system is a string containing the format of the coordinates
-     * that the user wants to use to save the network. The map itself uses the WGS84
-     * coordinate system
-     *
-     * @param coordinateSystem must be a valid coordinate system number
+     * Replaces the validation warnings of some elements with the result of validating them again, updating the rows of
+     * the validation tableview in place
+     * @param elements The nodes and links that were validated again
+     * @param warnings The warnings about these elements
+     * @return The previous warnings about these elements, which were replaced
      */
-    public void setCoordinateSystem(String coordinateSystem) {
-        this.coordinateSystem = coordinateSystem;
+    @Override
+    public Set<ValidationTableEntry> updateValidationWarnings(ChangeTracker elements, Collection<ValidationTableEntry> warnings) {
+        Set<ValidationTableEntry> outdated = super.updateValidationWarnings(elements, warnings);
+        if (!outdated.isEmpty()) {
+            this.validationTable.getItems().removeAll(outdated);
+        }
+        this.validationTable.getItems().addAll(warnings);
+        return outdated;
     }
 
     /**
      * Removes the node, link and validation entries from the side panel tables
-     * and removes node markers and link lines from the map
+     * and removes the nodes and links from the map. The network is detached from the map, so that changes still made
+     * to it by a task in the background are no longer drawn
      */
+    @Override
     public void clear() {
         this.nodeTable = new TableView<>();
         this.linkTable = new TableView<>();
         this.validationTable = new TableView<>();
 
-        for (Entry<Id<Node>, Marker> entry : this.nodeMarkers.entrySet()) {
-            mapView.removeMarker(entry.getValue());
-        }
-        this.nodeMarkers.clear();
-
-        for (Entry<Id<Link>, CoordinateLine> entry : this.linkLines.entrySet()) {
-            mapView.removeCoordinateLine(entry.getValue());
+        // All nodes and links are removed from the map in a single call
+        if (this.networkLayer != null) {
+            this.networkLayer.clear();
+            this.networkLayer = null;
         }
-        this.linkLines.clear();
-        this.validationWarnings.clear();
 
-        this.nodeMarkers = new HashMap<>();
-        this.linkLines = new HashMap<>();
-        this.validationWarnings = new ArrayList<>();
+        this.paintedNodes = new HashMap<>();
+        this.paintedLinks = new HashSet<>();
+        super.clear();
     }
 
     /**
@@ -891,30 +824,8 @@ public class ExtendedNetwork {
      * @return True if a link exists between those two node in the specific direction, otherwise false
      */
     public boolean containsLink(Coordinate coordinateFrom, Coordinate coordinateTo) {
-        for (Link link : this.network.getLinks().values()) {
-            // Swap X and Y to match MATSim notation
-            if ((link.getFromNode().getCoord().getY() == coordinateFrom.getLatitude() &&
-                    link.getFromNode().getCoord().getX() == coordinateFrom.getLongitude()) &&
-                    (link.getToNode().getCoord().getY() == coordinateTo.getLatitude() &&
-                            link.getToNode().getCoord().getX() == coordinateTo.getLongitude())) {
-                return true;
-            }
-        }
-        return false;
-    }
-
-    /**
-     * Checks if there is a link in the network, connecting two specific nodes, using the ids of these nodes
-     * @param nodeFrom The id of the possible starting node
-     * @param nodeTo The id of the possible ending node
-     * @return True if a link exists between those two node in the specific direction, otherwise false
-     */
-    public boolean containsLink(Id<Node> nodeFrom, Id<Node> nodeTo) {
-        for (Link link : this.network.getLinks().values()) {
-            if (link.getFromNode().getId() == nodeFrom && link.getToNode().getId() == nodeTo) {
-                return true;
-            }
-        }
-        return false;
+        Node fromNode = findNodeByCoordinate(coordinateFrom);
+        Node toNode = findNodeByCoordinate(coordinateTo);
+        return fromNode != null && toNode != null && containsLink(fromNode.getId(), toNode.getId());
     }
-}
\ No newline at end of file
+}
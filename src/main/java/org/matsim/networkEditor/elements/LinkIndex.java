@@ -0,0 +1,135 @@
+package org.matsim.networkEditor.elements;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.network.Link;
+import org.matsim.api.core.v01.network.Network;
+import org.matsim.api.core.v01.network.Node;
+
+/**
+ * Index of the links of a network by their 'from' and 'to' node, answering whether two nodes are connected in a direction
+ * and finding the link in the opposite direction in constant time. MATSim allows parallel links, so there can be more
+ * than one link for a pair of nodes. Like the {@link NodeSpatialIndex}, the index has to be kept in sync with
+ * {@link #add} and {@link #remove} whenever a link is added to or removed from the network
+ */
+public class LinkIndex {
+    private final HashMap<NodePair, List<Link>> links = new HashMap<>();
+
+    /**
+     * Creates an index containing all the links of a network
+     * @param network The network whose links are indexed
+     * @return The index
+     */
+    public static LinkIndex build(Network network) {
+        LinkIndex index = new LinkIndex();
+        for (Link link : network.getLinks().values()) {
+            index.add(link);
+        }
+        return index;
+    }
+
+    /**
+     * Adds a link under its current 'from' and 'to' node
+     * @param link The link to add
+     */
+    public void add(Link link) {
+        this.links.computeIfAbsent(new NodePair(link.getFromNode().getId(), link.getToNode().getId()),
+                key -> new ArrayList<>(1)).add(link);
+    }
+
+    /**
+     * Removes a link
+     * @param link The link to remove
+     * @return True if the link was indexed, otherwise false
+     */
+    public boolean remove(Link link) {
+        NodePair key = new NodePair(link.getFromNode().getId(), link.getToNode().getId());
+        List<Link> pairLinks = this.links.get(key);
+        if (pairLinks == null) {
+            return false;
+        }
+        boolean removed = pairLinks.removeIf(indexedLink -> indexedLink.getId().equals(link.getId()));
+        if (pairLinks.isEmpty()) {
+            this.links.remove(key);
+        }
+        return removed;
+    }
+
+    /**
+     * Removes all links from the index
+     */
+    public void clear() {
+        this.links.clear();
+    }
+
+    /**
+     * @param fromNode The id of the 'from' node
+     * @param toNode The id of the 'to' node
+     * @return True if there is a link from the one node to the other, otherwise false
+     */
+    public boolean contains(Id<Node> fromNode, Id<Node> toNode) {
+        return this.links.containsKey(new NodePair(fromNode, toNode));
+    }
+
+    /**
+     * @param fromNode The id of the 'from' node
+     * @param toNode The id of the 'to' node
+     * @return A link from the one node to the other, or null if there is none
+     */
+    public Link get(Id<Node> fromNode, Id<Node> toNode) {
+        List<Link> pairLinks = this.links.get(new NodePair(fromNode, toNode));
+        return pairLinks == null ? null : pairLinks.get(0);
+    }
+
+    /**
+     * @param fromNode The id of the 'from' node
+     * @param toNode The id of the 'to' node
+     * @return All the (parallel) links from the one node to the other, empty if there are none
+     */
+    public List<Link> getAll(Id<Node> fromNode, Id<Node> toNode) {
+        List<Link> pairLinks = this.links.get(new NodePair(fromNode, toNode));
+        return pairLinks == null ? Collections.emptyList() : Collections.unmodifiableList(pairLinks);
+    }
+
+    /**
+     * @param link A link of the network
+     * @return A link connecting the nodes of the given link in the opposite direction, or null if there is none
+     */
+    public Link getReverse(Link link) {
+        return get(link.getToNode().getId(), link.getFromNode().getId());
+    }
+
+    /**
+     * Key of a directed pair of nodes
+     */
+    private static final class NodePair {
+        private final Id<Node> from;
+        private final Id<Node> to;
+
+        private NodePair(Id<Node> from, Id<Node> to) {
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof NodePair)) {
+                return false;
+            }
+            NodePair other = (NodePair) o;
+            return this.from.equals(other.from) && this.to.equals(other.to);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * this.from.hashCode() + this.to.hashCode();
+        }
+    }
+}
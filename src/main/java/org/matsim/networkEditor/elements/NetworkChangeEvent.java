@@ -0,0 +1,189 @@
+package org.matsim.networkEditor.elements;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.network.Link;
+import org.matsim.api.core.v01.network.Network;
+import org.matsim.api.core.v01.network.Node;
+
+/**
+ * The nodes and links that were added, removed or changed by the changes flushed at once by a {@link NetworkModel},
+ * e.g. a single edit or a whole batch, along with the validation warnings that were dropped or became stale because of
+ * them. Events of consecutive flushes can be coalesced into one, e.g. to refresh a view once for several of them
+ */
+public class NetworkChangeEvent {
+    private final LinkedHashSet<Id<Node>> addedNodes = new LinkedHashSet<>();
+    private final LinkedHashSet<Id<Node>> removedNodes = new LinkedHashSet<>();
+    private final LinkedHashSet<Id<Node>> changedNodes = new LinkedHashSet<>();
+    private final LinkedHashSet<Id<Link>> addedLinks = new LinkedHashSet<>();
+    private final LinkedHashSet<Id<Link>> removedLinks = new LinkedHashSet<>();
+    private final LinkedHashSet<Id<Link>> changedLinks = new LinkedHashSet<>();
+    private final HashSet<ValidationTableEntry> removedWarnings = new HashSet<>();
+    private boolean staleWarnings = false;
+
+    private NetworkChangeEvent() {
+    }
+
+    /**
+     * Sorts the recorded changes into additions, removals and changes by looking the elements up in the network; an
+     * element that was added and removed again since the last flush is left out
+     * @param changes The changes since the last flush
+     * @param network The network the changes were made to
+     * @param removedWarnings The validation warnings dropped because their element was removed
+     * @param staleWarnings True if warnings about changed elements were marked stale, otherwise false
+     */
+    NetworkChangeEvent(ChangeTracker changes, Network network, Set<ValidationTableEntry> removedWarnings,
+                       boolean staleWarnings) {
+        for (Id<Node> nodeId : changes.getNodes()) {
+            if (network.getNodes().containsKey(nodeId)) {
+                (changes.isNodeAdded(nodeId) ? this.addedNodes : this.changedNodes).add(nodeId);
+            } else if (!changes.isNodeAdded(nodeId)) {
+                this.removedNodes.add(nodeId);
+            }
+        }
+        for (Id<Link> linkId : changes.getLinks()) {
+            if (network.getLinks().containsKey(linkId)) {
+                (changes.isLinkAdded(linkId) ? this.addedLinks : this.changedLinks).add(linkId);
+            } else if (!changes.isLinkAdded(linkId)) {
+                this.removedLinks.add(linkId);
+            }
+        }
+        this.removedWarnings.addAll(removedWarnings);
+        this.staleWarnings = staleWarnings;
+    }
+
+    /**
+     * Coalesces this event with the one of the next flush into one event, as if the changes of both had been flushed
+     * at once: an element added by this event and removed by the later one is left out, an element added by this event
+     * and changed by the later one is still added, and an element removed by this event and added again by the later
+     * one is changed
+     * @param later The event of a later flush
+     * @return The coalesced event; neither event is modified
+     */
+    public NetworkChangeEvent coalesce(NetworkChangeEvent later) {
+        NetworkChangeEvent coalesced = new NetworkChangeEvent();
+        coalesce(this.addedNodes, this.removedNodes, this.changedNodes, later.addedNodes, later.removedNodes,
+                later.changedNodes, coalesced.addedNodes, coalesced.removedNodes, coalesced.changedNodes);
+        coalesce(this.addedLinks, this.removedLinks, this.changedLinks, later.addedLinks, later.removedLinks,
+                later.changedLinks, coalesced.addedLinks, coalesced.removedLinks, coalesced.changedLinks);
+        coalesced.removedWarnings.addAll(this.removedWarnings);
+        coalesced.removedWarnings.addAll(later.removedWarnings);
+        coalesced.staleWarnings = this.staleWarnings || later.staleWarnings;
+        return coalesced;
+    }
+
+    /**
+     * Coalesces the changes of one kind of element of two events
+     * @param added The elements added by the earlier event
+     * @param removed The elements removed by the earlier event
+     * @param changed The elements changed by the earlier event
+     * @param laterAdded The elements added by the later event
+     * @param laterRemoved The elements removed by the later event
+     * @param laterChanged The elements changed by the later event
+     * @param coalescedAdded Receives the elements added by both events together
+     * @param coalescedRemoved Receives the elements removed by both events together
+     * @param coalescedChanged Receives the elements changed by both events together
+     * @param <T> The type of the elements
+     */
+    private static <T> void coalesce(Set<Id<T>> added, Set<Id<T>> removed, Set<Id<T>> changed, Set<Id<T>> laterAdded,
+                                     Set<Id<T>> laterRemoved, Set<Id<T>> laterChanged, Set<Id<T>> coalescedAdded,
+                                     Set<Id<T>> coalescedRemoved, Set<Id<T>> coalescedChanged) {
+        coalescedAdded.addAll(added);
+        coalescedRemoved.addAll(removed);
+        coalescedChanged.addAll(changed);
+        for (Id<T> id : laterAdded) {
+            // An element that was removed and is added again was only changed
+            if (coalescedRemoved.remove(id)) {
+                coalescedChanged.add(id);
+            } else {
+                coalescedAdded.add(id);
+            }
+        }
+        for (Id<T> id : laterChanged) {
+            if (!coalescedAdded.contains(id)) {
+                coalescedChanged.add(id);
+            }
+        }
+        for (Id<T> id : laterRemoved) {
+            // An element that was added and is removed again never existed for the receiver of the events
+            if (!coalescedAdded.remove(id)) {
+                coalescedChanged.remove(id);
+                coalescedRemoved.add(id);
+            }
+        }
+    }
+
+    /**
+     * @return The ids of the nodes added to the network
+     */
+    public Set<Id<Node>> getAddedNodes() {
+        return Collections.unmodifiableSet(this.addedNodes);
+    }
+
+    /**
+     * @return The ids of the nodes removed from the network
+     */
+    public Set<Id<Node>> getRemovedNodes() {
+        return Collections.unmodifiableSet(this.removedNodes);
+    }
+
+    /**
+     * @return The ids of the nodes of the network that were changed, including those whose links were added or removed
+     */
+    public Set<Id<Node>> getChangedNodes() {
+        return Collections.unmodifiableSet(this.changedNodes);
+    }
+
+    /**
+     * @return The ids of the links added to the network
+     */
+    public Set<Id<Link>> getAddedLinks() {
+        return Collections.unmodifiableSet(this.addedLinks);
+    }
+
+    /**
+     * @return The ids of the links removed from the network
+     */
+    public Set<Id<Link>> getRemovedLinks() {
+        return Collections.unmodifiableSet(this.removedLinks);
+    }
+
+    /**
+     * @return The ids of the links of the network that were changed, including those whose nodes were moved
+     */
+    public Set<Id<Link>> getChangedLinks() {
+        return Collections.unmodifiableSet(this.changedLinks);
+    }
+
+    /**
+     * @return The validation warnings dropped because their element was removed
+     */
+    public Set<ValidationTableEntry> getRemovedWarnings() {
+        return Collections.unmodifiableSet(this.removedWarnings);
+    }
+
+    /**
+     * @return True if validation warnings about changed elements were marked stale, otherwise false
+     */
+    public boolean hasStaleWarnings() {
+        return this.staleWarnings;
+    }
+
+    /**
+     * @return True if no element was added, removed or changed, otherwise false
+     */
+    public boolean isEmpty() {
+        return this.addedNodes.isEmpty() && this.removedNodes.isEmpty() && this.changedNodes.isEmpty()
+                && this.addedLinks.isEmpty() && this.removedLinks.isEmpty() && this.changedLinks.isEmpty();
+    }
+
+    @Override
+    public String toString() {
+        return "nodes +" + this.addedNodes.size() + " -" + this.removedNodes.size() + " ~" + this.changedNodes.size()
+                + ", links +" + this.addedLinks.size() + " -" + this.removedLinks.size() + " ~" + this.changedLinks.size();
+    }
+}
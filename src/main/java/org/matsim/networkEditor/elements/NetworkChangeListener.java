@@ -0,0 +1,15 @@
+package org.matsim.networkEditor.elements;
+
+/**
+ * Receives the changes of a {@link NetworkModel}, once per flush
+ */
+@FunctionalInterface
+public interface NetworkChangeListener {
+    /**
+     * Called on the thread that made the changes, while it still holds the write lock of the model, so the network is
+     * in the state the event describes. Must return quickly and must not change the model; a view hands the event over
+     * to its own thread, see {@link org.matsim.networkEditor.visualElements.FxNetworkChangeAdapter}
+     * @param event The nodes and links that were added, removed or changed
+     */
+    void networkChanged(NetworkChangeEvent event);
+}
@@ -0,0 +1,233 @@
+package org.matsim.networkEditor.elements;
+
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.network.Link;
+import org.matsim.api.core.v01.network.Node;
+import org.matsim.networkEditor.utils.PersistentHashMap;
+
+/**
+ * A version of a network, e.g. "before cleaning": its nodes and links with their editable attributes at the time the
+ * version was taken. The version shares its structure with the other versions of the network, so taking it costs
+ * neither time nor memory, and only the elements changed since take up memory of their own
+ */
+public final class NetworkCheckpoint {
+    private final String name;
+    private final long time;
+    private final PersistentHashMap<Id<Node>, NodeEntry> nodes;
+    private final PersistentHashMap<Id<Link>, LinkEntry> links;
+
+    /**
+     * @param name The name of the version
+     * @param nodes The nodes of the network, by their id
+     * @param links The links of the network, by their id
+     */
+    NetworkCheckpoint(String name, PersistentHashMap<Id<Node>, NodeEntry> nodes, PersistentHashMap<Id<Link>, LinkEntry> links) {
+        this.name = name;
+        this.time = System.currentTimeMillis();
+        this.nodes = nodes;
+        this.links = links;
+    }
+
+    /**
+     * A node of a version of the network: the node itself, which may be modified or removed afterwards, and its
+     * attributes in the version
+     */
+    public static final class NodeEntry {
+        private final Node node;
+        private final CommandJournal.NodeState state;
+
+        /**
+         * @param node The node
+         * @param state The attributes of the node in the version
+         */
+        NodeEntry(Node node, CommandJournal.NodeState state) {
+            this.node = node;
+            this.state = state;
+        }
+
+        /**
+         * @return The node
+         */
+        public Node getNode() {
+            return this.node;
+        }
+
+        /**
+         * @return The attributes of the node in the version
+         */
+        public CommandJournal.NodeState getState() {
+            return this.state;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof NodeEntry)) {
+                return false;
+            }
+            NodeEntry other = (NodeEntry) o;
+            return this.node == other.node && this.state.sameAs(other.state);
+        }
+
+        @Override
+        public int hashCode() {
+            return System.identityHashCode(this.node);
+        }
+    }
+
+    /**
+     * A link of a version of the network: the link itself, which may be modified or removed afterwards, and its
+     * attributes in the version
+     */
+    public static final class LinkEntry {
+        private final Link link;
+        private final CommandJournal.LinkState state;
+
+        /**
+         * @param link The link
+         * @param state The attributes of the link in the version
+         */
+        LinkEntry(Link link, CommandJournal.LinkState state) {
+            this.link = link;
+            this.state = state;
+        }
+
+        /**
+         * @return The link
+         */
+        public Link getLink() {
+            return this.link;
+        }
+
+        /**
+         * @return The attributes of the link in the version
+         */
+        public CommandJournal.LinkState getState() {
+            return this.state;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof LinkEntry)) {
+                return false;
+            }
+            LinkEntry other = (LinkEntry) o;
+            return this.link == other.link && this.state.sameAs(other.state);
+        }
+
+        @Override
+        public int hashCode() {
+            return System.identityHashCode(this.link);
+        }
+    }
+
+    /**
+     * @return The name of the version
+     */
+    public String getName() {
+        return this.name;
+    }
+
+    /**
+     * @return The time the version was taken, in milliseconds since the epoch
+     */
+    public long getTime() {
+        return this.time;
+    }
+
+    /**
+     * @return The number of nodes of the version
+     */
+    public int getNodeCount() {
+        return this.nodes.size();
+    }
+
+    /**
+     * @return The number of links of the version
+     */
+    public int getLinkCount() {
+        return this.links.size();
+    }
+
+    /**
+     * @param nodeId The id of a node
+     * @return The node in the version, or null if the version does not contain it
+     */
+    public NodeEntry getNode(Id<Node> nodeId) {
+        return this.nodes.get(nodeId);
+    }
+
+    /**
+     * @param linkId The id of a link
+     * @return The link in the version, or null if the version does not contain it
+     */
+    public LinkEntry getLink(Id<Link> linkId) {
+        return this.links.get(linkId);
+    }
+
+    /**
+     * @return The nodes of the version, by their id
+     */
+    PersistentHashMap<Id<Node>, NodeEntry> getNodes() {
+        return this.nodes;
+    }
+
+    /**
+     * @return The links of the version, by their id
+     */
+    PersistentHashMap<Id<Link>, LinkEntry> getLinks() {
+        return this.links;
+    }
+
+    /**
+     * Compares the version with another one
+     * @param other The other version
+     * @return The nodes and links added, removed and changed from this version to the other one
+     */
+    public NetworkDiff diff(NetworkCheckpoint other) {
+        NetworkDiff diff = new NetworkDiff(this.name, other.name);
+        PersistentHashMap.diff(this.nodes, other.nodes, new PersistentHashMap.DiffListener<>() {
+            @Override
+            public void added(Id<Node> key, NodeEntry value) {
+                diff.addedNodes.add(key);
+            }
+
+            @Override
+            public void removed(Id<Node> key, NodeEntry value) {
+                diff.removedNodes.add(key);
+            }
+
+            @Override
+            public void changed(Id<Node> key, NodeEntry before, NodeEntry after) {
+                diff.changedNodes.add(key);
+            }
+        });
+        PersistentHashMap.diff(this.links, other.links, new PersistentHashMap.DiffListener<>() {
+            @Override
+            public void added(Id<Link> key, LinkEntry value) {
+                diff.addedLinks.add(key);
+            }
+
+            @Override
+            public void removed(Id<Link> key, LinkEntry value) {
+                diff.removedLinks.add(key);
+            }
+
+            @Override
+            public void changed(Id<Link> key, LinkEntry before, LinkEntry after) {
+                diff.changedLinks.add(key);
+            }
+        });
+        return diff;
+    }
+
+    @Override
+    public String toString() {
+        return this.name;
+    }
+}
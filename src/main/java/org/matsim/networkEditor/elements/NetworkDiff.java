@@ -0,0 +1,112 @@
+package org.matsim.networkEditor.elements;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.network.Link;
+import org.matsim.api.core.v01.network.Node;
+
+/**
+ * The differences between two versions of a network: the nodes and links that were added, removed or changed from the
+ * first version to the second one. A changed element has different attributes, or was removed and added again with the
+ * same id
+ */
+public class NetworkDiff {
+    private final String fromName;
+    private final String toName;
+    final List<Id<Node>> addedNodes = new ArrayList<>();
+    final List<Id<Node>> removedNodes = new ArrayList<>();
+    final List<Id<Node>> changedNodes = new ArrayList<>();
+    final List<Id<Link>> addedLinks = new ArrayList<>();
+    final List<Id<Link>> removedLinks = new ArrayList<>();
+    final List<Id<Link>> changedLinks = new ArrayList<>();
+
+    /**
+     * @param fromName The name of the first version
+     * @param toName The name of the second version
+     */
+    NetworkDiff(String fromName, String toName) {
+        this.fromName = fromName;
+        this.toName = toName;
+    }
+
+    /**
+     * @return The name of the first version
+     */
+    public String getFromName() {
+        return this.fromName;
+    }
+
+    /**
+     * @return The name of the second version
+     */
+    public String getToName() {
+        return this.toName;
+    }
+
+    /**
+     * @return The nodes that are only in the second version
+     */
+    public List<Id<Node>> getAddedNodes() {
+        return this.addedNodes;
+    }
+
+    /**
+     * @return The nodes that are only in the first version
+     */
+    public List<Id<Node>> getRemovedNodes() {
+        return this.removedNodes;
+    }
+
+    /**
+     * @return The nodes of both versions that changed
+     */
+    public List<Id<Node>> getChangedNodes() {
+        return this.changedNodes;
+    }
+
+    /**
+     * @return The links that are only in the second version
+     */
+    public List<Id<Link>> getAddedLinks() {
+        return this.addedLinks;
+    }
+
+    /**
+     * @return The links that are only in the first version
+     */
+    public List<Id<Link>> getRemovedLinks() {
+        return this.removedLinks;
+    }
+
+    /**
+     * @return The links of both versions that changed
+     */
+    public List<Id<Link>> getChangedLinks() {
+        return this.changedLinks;
+    }
+
+    /**
+     * @return True if the versions are the same, otherwise false
+     */
+    public boolean isEmpty() {
+        return this.addedNodes.isEmpty() && this.removedNodes.isEmpty() && this.changedNodes.isEmpty()
+                && this.addedLinks.isEmpty() && this.removedLinks.isEmpty() && this.changedLinks.isEmpty();
+    }
+
+    /**
+     * @return The number of differing nodes and links
+     */
+    public int size() {
+        return this.addedNodes.size() + this.removedNodes.size() + this.changedNodes.size()
+                + this.addedLinks.size() + this.removedLinks.size() + this.changedLinks.size();
+    }
+
+    @Override
+    public String toString() {
+        return "nodes: " + this.addedNodes.size() + " added, " + this.removedNodes.size() + " removed, "
+                + this.changedNodes.size() + " changed; links: " + this.addedLinks.size() + " added, "
+                + this.removedLinks.size() + " removed, " + this.changedLinks.size() + " changed";
+    }
+}
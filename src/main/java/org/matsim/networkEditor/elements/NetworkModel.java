@@ -0,0 +1,1405 @@
+package org.matsim.networkEditor.elements;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.*;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Supplier;
+import java.util.function.UnaryOperator;
+
+import org.matsim.api.core.v01.Coord;
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.network.Link;
+import org.matsim.api.core.v01.network.Network;
+import org.matsim.api.core.v01.network.Node;
+import org.matsim.core.network.NetworkUtils;
+import org.matsim.networkEditor.algorithms.NetworkMerge;
+
+/**
+ * The model of a network being edited, without any visual elements: the MATSim network with coordinates in WGS84, the
+ * indexes over it, the history of the changes, the named versions and the validation warnings. Every change goes
+ * through this class, which keeps all of them in sync. The editor extends it with the side panels and the map in
+ * {@link ExtendedNetwork}; the headless mode uses it as it is, so it must not depend on JavaFX.
+ * <p>
+ * The model can be changed from any thread, e.g. by an import, a validation or a bulk edit running in the background:
+ * changes take the write lock, queries take the read lock, and a batch holds the write lock from
+ * {@link #beginBatch(String)} until it is committed or rolled back, so other threads only ever see the network before
+ * or after it. Views do not read the changes from the model but listen to them, see {@link NetworkChangeListener}.
+ * The network returned by {@link #getNetwork()} is not guarded; code iterating it while another thread may change the
+ * model does so within {@link #read(Supplier)}
+ */
+public class NetworkModel {
+    private Network network = null;
+    private String networkPath = null;
+    private String coordinateSystem = "WGS84";
+    private final ValidationIndex validationWarnings = new ValidationIndex();
+    private final AttributeSchema attributeSchema = new AttributeSchema();
+    private NodeSpatialIndex nodeIndex = new NodeSpatialIndex();
+    private LinkIndex linkIndex = new LinkIndex();
+    private OrigIdIndex origIdIndex = new OrigIdIndex();
+    // The changes since the last flush, applied to the view, if any, when they are flushed
+    private final ChangeTracker changes = new ChangeTracker();
+    // The changes since the last validation, kept until the changed elements are validated again
+    private final ChangeTracker validationChanges = new ChangeTracker();
+    private boolean autoFlush = true;
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final List<NetworkChangeListener> listeners = new CopyOnWriteArrayList<>();
+    private final CommandJournal journal = new CommandJournal();
+    private final NetworkVersions versions = new NetworkVersions();
+    // Whether a batch is open, and whether the changes were flushed after each change before it was opened; read
+    // without the lock by the guards of the editor
+    private volatile boolean batch = false;
+    private boolean autoFlushBeforeBatch = true;
+
+    /**
+     * Creates a model of a new empty network in WGS84
+     */
+    public NetworkModel() {
+        this.network = NetworkUtils.createNetwork();
+    }
+
+    /**
+     * Creates a model of a new empty network
+     * @param name The name of the network
+     * @param effectiveLaneWidth The width of the lane represented by the links
+     * @param effectiveCellSize The length of a vehicle in MATSim
+     * @param capPeriod The capacity period of the network
+     * @param coordinateSystem The coordinate system of the network
+     */
+    public NetworkModel(String name, Double effectiveLaneWidth, Double effectiveCellSize, Double capPeriod,
+                        String coordinateSystem) {
+        this.network = NetworkUtils.createNetwork();
+        if (name != null) {
+            this.network.setName(name);
+        }
+        if (effectiveCellSize != null) {
+            this.network.setEffectiveCellSize(effectiveCellSize);
+        }
+        if (effectiveLaneWidth != null) {
+            this.network.setEffectiveLaneWidth(effectiveLaneWidth);
+        }
+        if (capPeriod != null) {
+            this.network.setCapacityPeriod(capPeriod);
+        }
+        if (coordinateSystem != null) {
+            this.coordinateSystem = coordinateSystem;
+        }
+    }
+
+    /**
+     * Creates the model of a network that has already been read from a file
+     * @param network The network read from the file
+     * @param networkPath The path to the network file
+     * @param coordinateSystem The coordinate system of the network
+     */
+    public NetworkModel(Network network, String networkPath, String coordinateSystem) {
+        this.network = network;
+        this.networkPath = networkPath;
+        this.coordinateSystem = coordinateSystem;
+
+        if (this.network.getName() == null) {
+            // Get the name of the imported file and set it as the network name
+            Path p = Paths.get(networkPath);
+            String[] parts = p.getFileName().toString().split("\\.");
+            this.network.setName(parts[0]);
+        }
+        this.nodeIndex = NodeSpatialIndex.build(network);
+        this.linkIndex = LinkIndex.build(network);
+        this.origIdIndex = OrigIdIndex.build(network);
+    }
+
+    /**
+     * Hands the changes recorded since the last flush on: warnings about elements that no longer exist are dropped and
+     * those about modified elements are marked stale, and the listeners are told about the changes. Called after every
+     * change unless flushing is deferred with {@link #setAutoFlush(boolean)}
+     */
+    public void flush() {
+        this.lock.writeLock().lock();
+        try {
+            this.validationChanges.addAll(this.changes);
+            if (this.changes.isEmpty()) {
+                return;
+            }
+            // Warnings about elements that no longer exist are dropped, the others stay until the elements are validated
+            // again, but might no longer apply
+            HashSet<ValidationTableEntry> removedWarnings = new HashSet<>();
+            boolean staleWarnings = false;
+            for (Id<Node> nodeId : this.changes.getNodes()) {
+                if (this.network.getNodes().containsKey(nodeId)) {
+                    staleWarnings |= markStale(this.validationWarnings.getNodeWarnings(nodeId));
+                } else {
+                    removedWarnings.addAll(this.validationWarnings.removeNode(nodeId));
+                }
+            }
+            for (Id<Link> linkId : this.changes.getLinks()) {
+                if (this.network.getLinks().containsKey(linkId)) {
+                    staleWarnings |= markStale(this.validationWarnings.getLinkWarnings(linkId));
+                } else {
+                    removedWarnings.addAll(this.validationWarnings.removeLink(linkId));
+                }
+            }
+            try {
+                if (!this.listeners.isEmpty()) {
+                    NetworkChangeEvent event = new NetworkChangeEvent(this.changes, this.network, removedWarnings,
+                            staleWarnings);
+                    for (NetworkChangeListener listener : this.listeners) {
+                        listener.networkChanged(event);
+                    }
+                }
+            } finally {
+                this.changes.clear();
+            }
+        } finally {
+            this.lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Registers a listener to be told about the changes of the network once per flush, on the thread that made them
+     * @param listener The listener
+     */
+    public void addChangeListener(NetworkChangeListener listener) {
+        this.listeners.add(listener);
+    }
+
+    /**
+     * @param listener A listener registered with {@link #addChangeListener}, which is told about no further changes
+     */
+    public void removeChangeListener(NetworkChangeListener listener) {
+        this.listeners.remove(listener);
+    }
+
+    /**
+     * Runs a query over the network under the read lock, e.g. iterating the nodes and links, so that no other thread
+     * changes the model meanwhile; the calling thread may hold the write lock already
+     * @param query The query
+     * @param <T> The type of the result
+     * @return The result of the query
+     */
+    public <T> T read(Supplier<T> query) {
+        this.lock.readLock().lock();
+        try {
+            return query.get();
+        } finally {
+            this.lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Runs code that reads the network under the read lock, so that no other thread changes the model meanwhile
+     * @param reader The code
+     */
+    public void read(Runnable reader) {
+        this.lock.readLock().lock();
+        try {
+            reader.run();
+        } finally {
+            this.lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Forgets the changes since the last flush for the view, after the view was painted from the whole network; they
+     * are still validated again
+     */
+    void discardChanges() {
+        this.lock.writeLock().lock();
+        try {
+            this.validationChanges.addAll(this.changes);
+            this.changes.clear();
+        } finally {
+            this.lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Marks warnings as stale
+     * @param warnings The warnings about a modified element
+     * @return True if there were any warnings, otherwise false
+     */
+    private static boolean markStale(List<ValidationTableEntry> warnings) {
+        warnings.forEach(warning -> warning.setStale(true));
+        return !warnings.isEmpty();
+    }
+
+    /**
+     * Sets whether the changes are flushed right after each change. Bulk operations turn it off, make their changes and
+     * call {@link #flush()} once, so that the view is refreshed only once
+     * @param autoFlush True to flush after each change, false to defer it to the next flush
+     */
+    public void setAutoFlush(boolean autoFlush) {
+        this.lock.writeLock().lock();
+        try {
+            this.autoFlush = autoFlush;
+        } finally {
+            this.lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * @return True if the changes are flushed after each change, false if they are deferred to the next flush
+     */
+    public boolean isAutoFlush() {
+        return this.autoFlush;
+    }
+
+    /**
+     * Flushes the recorded changes right away, unless flushing is deferred for a bulk operation
+     */
+    private void changed() {
+        if (this.autoFlush) {
+            flush();
+        }
+    }
+
+    /**
+     * Adds a node to the network
+     * @param id The id of the node
+     * @param coord The WGS84 coordinate of the node, with the longitude as x and the latitude as y
+     * @return True if the node was added, false if the network already has a node with the id
+     */
+    public boolean addNode(String id, Coord coord) {
+        this.lock.writeLock().lock();
+        try {
+            boolean added = false;
+            if (!this.network.getNodes().containsKey(Id.create(id, Node.class))) {
+                Node node = this.network.getFactory().createNode(Id.create(id, Node.class), coord);
+                // Set original node id to use in editing a node, since the other node id does not support this
+                NetworkUtils.setOrigId(node, id);
+                this.journal.begin("add node");
+                try {
+                    insertNode(node);
+                } finally {
+                    this.journal.end();
+                }
+                added = true;
+            }
+            changed();
+            return added;
+        } finally {
+            this.lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Creates a unique node id based on time, with a counter appended if the network already has a node with it, e.g.
+     * one added within the same second
+     * @return The node id
+     */
+    public String createNodeId() {
+        return read(() -> uniqueId("node_" + System.currentTimeMillis() / 1000L, this.network.getNodes(), Node.class));
+    }
+
+    /**
+     * Edits the id and/or the coordinate of a node
+     * @param oldId The old id of the node
+     * @param newId The new id of the node
+     * @param newCoord The new coordinate position of the edited node
+     */
+    public void editNode(String oldId, String newId, Coord newCoord) {
+        this.lock.writeLock().lock();
+        try {
+            Node node = this.network.getNodes().get(Id.create(oldId, Node.class));
+
+            // Set the original id into the already existing id, unless another node already has the new one
+            String origId = oldId;
+            if (!newId.equals(oldId)) {
+                origId = this.origIdIndex.isTakenByOther(newId, node) ? NetworkUtils.getOrigId(node) : newId;
+            }
+            this.journal.begin("edit node");
+            try {
+                setNodeState(node, new CommandJournal.NodeState(origId, newCoord));
+            } finally {
+                this.journal.end();
+            }
+            changed();
+        } finally {
+            this.lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Creates a unique link id based on time, with a counter appended if the network already has a link with it, e.g.
+     * the other direction of a bidirectional link
+     * @return The link id
+     */
+    public String createLinkId() {
+        return read(() -> uniqueId("link_" + System.currentTimeMillis() / 1000L, this.network.getLinks(), Link.class));
+    }
+
+    /**
+     * @param id An id
+     * @param elements The elements of the network, by their id
+     * @param type The type of the elements
+     * @param <T> The type of the elements
+     * @return The id, or the first of the id followed by _1, _2, ... that no element has
+     */
+    private static <T> String uniqueId(String id, Map<Id<T>, ? extends T> elements, Class<T> type) {
+        String unique = id;
+        for (int n = 1; elements.containsKey(Id.create(unique, type)); n++) {
+            unique = id + "_" + n;
+        }
+        return unique;
+    }
+
+    /**
+     * Adds link to the network
+     * @param id The id of the new link
+     * @param nodeAId Id of the 'from' node of the link
+     * @param nodeBId Id of the 'to' node of the link
+     * @param length The length of the link, should be matching the distance between the two node coordinates
+     * @param freespeed Maximum speed that vehicles are allowed to travel along the link, typically in meters per second.
+     * @param capacity The number of vehicles that traverse the link, typically in vehicles per hour
+     * @param numLanes The number of lanes (permlanes) available in the direction specified by the ’from’ and ’to’ nodes.
+     * @return True if the link was added, false if the network already has a link with the id or lacks one of the nodes
+     */
+    public boolean addLink(String id, String nodeAId, String nodeBId, double length, double freespeed, double capacity,
+                           double numLanes) {
+        this.lock.writeLock().lock();
+        try {
+            if (this.network.getLinks().containsKey(Id.create(id, Link.class))) {
+                return false;
+            }
+            Node fromNode = this.network.getNodes().get(Id.create(nodeAId, Node.class));
+            Node toNode = this.network.getNodes().get(Id.create(nodeBId, Node.class));
+            if (fromNode != null && toNode != null) {
+                this.journal.begin("add link");
+                try {
+                    insertLink(createLink(id, fromNode, toNode, length, freespeed, capacity, numLanes));
+                } finally {
+                    this.journal.end();
+                }
+                changed();
+                return true;
+            }
+            return false;
+        } finally {
+            this.lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Gives the user the option to edit a link's id or attributes. Capacity is not included‚‚
+     * @param oldId The current id of the link
+     * @param newId The new link id set by the user/dialog
+     * @param length The length of the link, should be matching the distance between the two node coordinates
+     * @param freespeed Maximum speed that vehicles are allowed to travel along the link, typically in meters per second.
+     * @param capacity The number of vehicles that traverse the link, typically in vehicles per hour
+     * @param numLanes The number of lanes (permlanes) available in the direction specified by the ’from’ and ’to’ nodes.
+     * @return True if the link is successfully changed, otherwise false
+     */
+    public boolean editLink(String oldId, String newId, double length, double freespeed, double capacity, double numLanes) {
+        this.lock.writeLock().lock();
+        try {
+            Link link = this.network.getLinks().get(Id.create(oldId, Link.class));
+
+            // If the new id is different than the previous one, create new link with these attributes and remove the old one from the network
+            if (!newId.equals(oldId)) {
+                if (!this.network.getLinks().containsKey(Id.create(newId, Link.class))) {
+                    Link newLink = createLink(newId, link.getFromNode(), link.getToNode(), length, freespeed, capacity, numLanes);
+                    // The recreated link keeps the modes of the link it replaces
+                    newLink.setAllowedModes(link.getAllowedModes());
+                    this.journal.begin("edit link");
+                    try {
+                        insertLink(newLink);
+                        deleteLink(link);
+                    } finally {
+                        this.journal.end();
+                    }
+                }
+                else {
+                    return false;
+                }
+            } else {
+                if (link.getLength() != length || link.getCapacity() != capacity || link.getNumberOfLanes() != numLanes || link.getFreespeed() != freespeed) {
+                    this.journal.begin("edit link");
+                    try {
+                        setLinkState(link, new CommandJournal.LinkState(length, freespeed, capacity, numLanes,
+                                link.getAllowedModes()));
+                    } finally {
+                        this.journal.end();
+                    }
+                }
+            }
+            changed();
+            return true;
+        } finally {
+            this.lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Removes a node from the network, along with the in- and outlinks attached to it
+     * @param id The id of the node to be removed
+     * @return True if the node is successfully removed, otherwise false
+     */
+    public boolean removeNode(String id) {
+        this.lock.writeLock().lock();
+        try {
+            Id<Node> nodeId = Id.create(id, Node.class);
+            Node node = this.network.getNodes().get(nodeId);
+            if (node == null) {
+                return false;
+            }
+            // Remove node from network, along with attached links; the links are removed first, so that undoing adds the
+            // node back before its links
+            LinkedHashSet<Link> attachedLinks = new LinkedHashSet<>(node.getInLinks().values());
+            attachedLinks.addAll(node.getOutLinks().values());
+            this.journal.begin("remove node");
+            try {
+                attachedLinks.forEach(this::deleteLink);
+                deleteNode(node);
+            } finally {
+                this.journal.end();
+            }
+            changed();
+            return true;
+        } finally {
+            this.lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Removes a link from the network based on its id
+     * @param id The id of the link to be removed
+     * @return True if the link is successfully removed from the network, otherwise false
+     */
+    public boolean removeLink(String id) {
+        this.lock.writeLock().lock();
+        try {
+            Id<Link> idlink = Id.create(id, Link.class);
+            Link link = this.network.getLinks().get(idlink);
+            if (link != null) {
+                this.journal.begin("remove link");
+                try {
+                    deleteLink(link);
+                } finally {
+                    this.journal.end();
+                }
+                changed();
+                return true;
+            }
+            return false;
+        } finally {
+            this.lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Removes the link connecting two nodes in a direction from the network
+     * @param nodeAid The id of the 'from' node of the link
+     * @param nodeBid The id of the 'to' node of the link
+     * @return True if such a link existed and was removed, otherwise false
+     */
+    public boolean removeLink(String nodeAid, String nodeBid) {
+        this.lock.writeLock().lock();
+        try {
+            Link link = this.linkIndex.get(Id.create(nodeAid, Node.class), Id.create(nodeBid, Node.class));
+            if (link == null) {
+                return false;
+            }
+            return removeLink(link.getId().toString());
+        } finally {
+            this.lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Removes many nodes and links at once, e.g. the result of a cleaning, flushing the changes only once afterwards
+     * @param nodeIds The ids of the nodes to remove, along with their in- and outlinks
+     * @param linkIds The ids of the links to remove
+     */
+    public void removeElements(Collection<Id<Node>> nodeIds, Collection<Id<Link>> linkIds) {
+        this.lock.writeLock().lock();
+        try {
+            boolean previousAutoFlush = this.autoFlush;
+            this.autoFlush = false;
+            // The removals are one command, undone at once
+            this.journal.begin("remove " + nodeIds.size() + " nodes and " + linkIds.size() + " links");
+            try {
+                for (Id<Link> linkId : linkIds) {
+                    removeLink(linkId.toString());
+                }
+                for (Id<Node> nodeId : nodeIds) {
+                    removeNode(nodeId.toString());
+                }
+            } finally {
+                this.journal.end();
+                this.autoFlush = previousAutoFlush;
+            }
+            changed();
+        } finally {
+            this.lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Opens a batch of changes, e.g. of a script or a bulk edit. Within the batch the changes only update the network
+     * and its indexes; they are flushed once by {@link #commit()}, which also records all changes as a single command to
+     * undo, or the changes are reverted by {@link #rollback()}. Batches do not nest. The batch holds the write lock
+     * until it is closed, on the same thread; a batch opened by another thread is waited for
+     * @param description The description of the batch as a command to undo, e.g. "edit 100 links"
+     * @throws IllegalStateException If this thread has already opened a batch
+     */
+    public void beginBatch(String description) {
+        this.lock.writeLock().lock();
+        if (this.batch) {
+            this.lock.writeLock().unlock();
+            throw new IllegalStateException("A batch of changes is already open");
+        }
+        this.batch = true;
+        this.autoFlushBeforeBatch = this.autoFlush;
+        this.autoFlush = false;
+        this.journal.begin(description);
+    }
+
+    /**
+     * Closes the open batch, keeping its changes: they are recorded as one command to undo and flushed once for all of
+     * them
+     * @throws IllegalStateException If this thread has not opened a batch
+     */
+    public void commit() {
+        checkBatchOwner();
+        try {
+            this.journal.end();
+            closeBatch();
+        } finally {
+            this.lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Closes the open batch, reverting its changes in reverse order; nothing is recorded to undo and only the changes of
+     * the batch that could not be reverted, if any, are flushed
+     * @throws IllegalStateException If this thread has not opened a batch
+     */
+    public void rollback() {
+        checkBatchOwner();
+        try {
+            CommandJournal.Command command = this.journal.abort();
+            try {
+                if (command != null) {
+                    List<CommandJournal.Change> commandChanges = command.getChanges();
+                    for (int i = commandChanges.size() - 1; i >= 0; i--) {
+                        revert(commandChanges.get(i));
+                    }
+                }
+            } finally {
+                closeBatch();
+            }
+        } finally {
+            this.lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Checks that a batch is open and that it was opened by the calling thread, which holds the write lock for it
+     * @throws IllegalStateException If this thread has not opened a batch
+     */
+    private void checkBatchOwner() {
+        if (!this.batch || !this.lock.isWriteLockedByCurrentThread()) {
+            throw new IllegalStateException("No batch of changes is open on this thread");
+        }
+    }
+
+    /**
+     * @return True if a batch of changes is open, on any thread, otherwise false
+     */
+    public boolean isInBatch() {
+        return this.batch;
+    }
+
+    /**
+     * Restores flushing as it was before the batch was opened and flushes the changes of the batch
+     */
+    private void closeBatch() {
+        this.batch = false;
+        this.autoFlush = this.autoFlushBeforeBatch;
+        flush();
+    }
+
+    /**
+     * Sets the attributes of many links at once, e.g. the result of a bulk edit, as one batch: the changes are flushed
+     * once and the edit is undone at once. The new attributes are computed within the batch from the current ones, so
+     * that changes made to the links since they were picked are edited as well instead of overwritten
+     * @param description The description of the edit as a command to undo
+     * @param links The ids of the links to edit; links that no longer exist are skipped
+     * @param edit Computes the new attributes of a link from its current ones
+     * @return The number of edited links, i.e. the links whose attributes changed
+     */
+    public int editLinks(String description, Collection<Id<Link>> links, UnaryOperator<CommandJournal.LinkState> edit) {
+        beginBatch(description);
+        int edited = 0;
+        try {
+            for (Id<Link> id : links) {
+                Link link = this.network.getLinks().get(id);
+                if (link == null) {
+                    continue;
+                }
+                CommandJournal.LinkState current = CommandJournal.LinkState.of(link);
+                CommandJournal.LinkState state = edit.apply(current);
+                if (!state.sameAs(current)) {
+                    setLinkState(link, state);
+                    edited++;
+                }
+            }
+        } catch (RuntimeException e) {
+            rollback();
+            throw e;
+        }
+        commit();
+        return edited;
+    }
+
+    /**
+     * Adds the nodes and links of a planned merge of a second network, as one batch: the changes are flushed once and
+     * the merge is undone at once. Elements that can no longer be added because the network was edited since the merge
+     * was planned, i.e. whose id is taken or whose nodes are gone, are skipped
+     * @param description The description of the merge as a command to undo
+     * @param plan The nodes and links to add
+     * @return The number of added nodes and links
+     */
+    public int merge(String description, NetworkMerge.Plan plan) {
+        beginBatch(description);
+        int added = 0;
+        try {
+            for (Node node : plan.getAddedNodes()) {
+                if (!this.network.getNodes().containsKey(node.getId())) {
+                    insertNode(node);
+                    added++;
+                }
+            }
+            for (Link link : plan.getAddedLinks()) {
+                if (!this.network.getLinks().containsKey(link.getId())
+                        && this.network.getNodes().get(link.getFromNode().getId()) == link.getFromNode()
+                        && this.network.getNodes().get(link.getToNode().getId()) == link.getToNode()) {
+                    insertLink(link);
+                    added++;
+                }
+            }
+        } catch (RuntimeException e) {
+            rollback();
+            throw e;
+        }
+        commit();
+        return added;
+    }
+
+    /**
+     * Reverts the last command applied to the network, flushing the changes once for all of them
+     * @return The description of the reverted command, or null if there was none
+     */
+    public String undo() {
+        this.lock.writeLock().lock();
+        try {
+            if (this.batch) {
+                throw new IllegalStateException("Cannot undo while a batch of changes is open");
+            }
+            CommandJournal.Command command = this.journal.undo();
+            if (command == null) {
+                return null;
+            }
+            List<CommandJournal.Change> commandChanges = command.getChanges();
+            replay(() -> {
+                for (int i = commandChanges.size() - 1; i >= 0; i--) {
+                    revert(commandChanges.get(i));
+                }
+            });
+            return command.getDescription();
+        } finally {
+            this.lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Applies the last reverted command to the network again, flushing the changes once for all of them
+     * @return The description of the applied command, or null if there was none
+     */
+    public String redo() {
+        this.lock.writeLock().lock();
+        try {
+            if (this.batch) {
+                throw new IllegalStateException("Cannot redo while a batch of changes is open");
+            }
+            CommandJournal.Command command = this.journal.redo();
+            if (command == null) {
+                return null;
+            }
+            replay(() -> command.getChanges().forEach(this::apply));
+            return command.getDescription();
+        } finally {
+            this.lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * @return The history of the commands applied to the network
+     */
+    public CommandJournal getJournal() {
+        return this.journal;
+    }
+
+    /**
+     * Takes a named version of the network, e.g. "before cleaning", to compare the network with or to restore it to
+     * later; a previous version with the same name is replaced. Taking a version does not copy the network, apart from
+     * mirroring it once when the first version is taken
+     * @param name The name of the version
+     * @return The version
+     */
+    public NetworkCheckpoint checkpoint(String name) {
+        this.lock.writeLock().lock();
+        try {
+            return this.versions.checkpoint(name, this.network);
+        } finally {
+            this.lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * @return The current version of the network, to compare with the named versions
+     */
+    public NetworkCheckpoint getCurrentVersion() {
+        this.lock.writeLock().lock();
+        try {
+            return this.versions.current(this.network);
+        } finally {
+            this.lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * @return The named versions of the network
+     */
+    public NetworkVersions getVersions() {
+        return this.versions;
+    }
+
+    /**
+     * Restores the network to a named version as one batch: only the nodes and links that differ from the version are
+     * changed and flushed, and the restore is undone at once
+     * @param name The name of the version
+     * @return The differences from the network before the restore to the version, or null if there is no version with
+     *         the name
+     */
+    public NetworkDiff restoreCheckpoint(String name) {
+        this.lock.writeLock().lock();
+        try {
+            NetworkCheckpoint target = this.versions.getCheckpoint(name);
+            if (target == null) {
+                return null;
+            }
+            NetworkDiff diff = getCurrentVersion().diff(target);
+            if (diff.isEmpty()) {
+                return diff;
+            }
+            beginBatch("restore " + name);
+            try {
+                // The links go first, so that the nodes are removed without links; a link or node that was removed and added
+                // again with the same id since the version is replaced by the one of the version
+                for (Id<Link> linkId : diff.getRemovedLinks()) {
+                    deleteLink(this.network.getLinks().get(linkId));
+                }
+                for (Id<Link> linkId : diff.getChangedLinks()) {
+                    Link link = this.network.getLinks().get(linkId);
+                    if (link != target.getLink(linkId).getLink()) {
+                        deleteLink(link);
+                    }
+                }
+                for (Id<Node> nodeId : diff.getRemovedNodes()) {
+                    deleteNode(this.network.getNodes().get(nodeId));
+                }
+                for (Id<Node> nodeId : diff.getChangedNodes()) {
+                    Node node = this.network.getNodes().get(nodeId);
+                    NetworkCheckpoint.NodeEntry entry = target.getNode(nodeId);
+                    if (node != entry.getNode()) {
+                        deleteNode(node);
+                        restoreNode(entry);
+                    } else {
+                        setNodeState(node, entry.getState());
+                    }
+                }
+                for (Id<Node> nodeId : diff.getAddedNodes()) {
+                    restoreNode(target.getNode(nodeId));
+                }
+                for (Id<Link> linkId : diff.getChangedLinks()) {
+                    Link link = this.network.getLinks().get(linkId);
+                    NetworkCheckpoint.LinkEntry entry = target.getLink(linkId);
+                    if (link == entry.getLink()) {
+                        setLinkState(link, entry.getState());
+                    } else {
+                        restoreLink(entry);
+                    }
+                }
+                for (Id<Link> linkId : diff.getAddedLinks()) {
+                    restoreLink(target.getLink(linkId));
+                }
+            } catch (RuntimeException e) {
+                rollback();
+                throw e;
+            }
+            commit();
+            // The restored network shares its structure with the version again
+            this.versions.reset(target);
+            return diff;
+        } finally {
+            this.lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Adds a node of a version back to the network, with its attributes in the version
+     * @param entry The node in the version
+     */
+    private void restoreNode(NetworkCheckpoint.NodeEntry entry) {
+        insertNode(entry.getNode());
+        if (!CommandJournal.NodeState.of(entry.getNode()).sameAs(entry.getState())) {
+            setNodeState(entry.getNode(), entry.getState());
+        }
+    }
+
+    /**
+     * Adds a link of a version back to the network, with its attributes in the version
+     * @param entry The link in the version
+     */
+    private void restoreLink(NetworkCheckpoint.LinkEntry entry) {
+        insertLink(entry.getLink());
+        if (!CommandJournal.LinkState.of(entry.getLink()).sameAs(entry.getState())) {
+            setLinkState(entry.getLink(), entry.getState());
+        }
+    }
+
+    /**
+     * Applies recorded changes to the network with flushing deferred, and flushes them once afterwards
+     * @param changes Applies the changes
+     */
+    private void replay(Runnable changes) {
+        boolean previousAutoFlush = this.autoFlush;
+        this.autoFlush = false;
+        try {
+            changes.run();
+        } finally {
+            this.autoFlush = previousAutoFlush;
+        }
+        changed();
+    }
+
+    /**
+     * Applies a recorded change to the network again
+     * @param change The change
+     */
+    private void apply(CommandJournal.Change change) {
+        switch (change.getType()) {
+            case ADD_NODE:
+                insertNode(change.getNode());
+                break;
+            case REMOVE_NODE:
+                deleteNode(change.getNode());
+                break;
+            case MODIFY_NODE:
+                setNodeState(change.getNode(), change.getNodeAfter());
+                break;
+            case ADD_LINK:
+                insertLink(change.getLink());
+                break;
+            case REMOVE_LINK:
+                deleteLink(change.getLink());
+                break;
+            case MODIFY_LINK:
+                setLinkState(change.getLink(), change.getLinkAfter());
+                break;
+        }
+    }
+
+    /**
+     * Applies the inverse of a recorded change to the network
+     * @param change The change
+     */
+    private void revert(CommandJournal.Change change) {
+        switch (change.getType()) {
+            case ADD_NODE:
+                deleteNode(change.getNode());
+                break;
+            case REMOVE_NODE:
+                insertNode(change.getNode());
+                break;
+            case MODIFY_NODE:
+                setNodeState(change.getNode(), change.getNodeBefore());
+                break;
+            case ADD_LINK:
+                deleteLink(change.getLink());
+                break;
+            case REMOVE_LINK:
+                insertLink(change.getLink());
+                break;
+            case MODIFY_LINK:
+                setLinkState(change.getLink(), change.getLinkBefore());
+                break;
+        }
+    }
+
+    /**
+     * Adds a node to the network and its indexes, and records the change for the flush and the journal
+     * @param node The node, not yet in the network
+     */
+    private void insertNode(Node node) {
+        this.network.addNode(node);
+        this.nodeIndex.add(node);
+        this.origIdIndex.add(node);
+        this.changes.markNodeAdded(node.getId());
+        this.journal.nodeAdded(node);
+        this.versions.nodeChanged(node);
+    }
+
+    /**
+     * Removes a node without any links from the network and its indexes, and records the change for the flush and the
+     * journal
+     * @param node The node, whose links were removed before
+     */
+    private void deleteNode(Node node) {
+        this.network.removeNode(node.getId());
+        this.nodeIndex.remove(node.getId());
+        this.origIdIndex.remove(node);
+        this.changes.markNode(node.getId());
+        this.journal.nodeRemoved(node);
+        this.versions.nodeRemoved(node);
+    }
+
+    /**
+     * Sets the editable attributes of a node, and records the change for the flush and the journal. If the coordinate
+     * changed, the attached links are recorded as changed as well, since their geometry changed with it
+     * @param node The node
+     * @param state The new attributes of the node
+     */
+    private void setNodeState(Node node, CommandJournal.NodeState state) {
+        CommandJournal.NodeState before = CommandJournal.NodeState.of(node);
+        if (state.getOrigId() != null) {
+            NetworkUtils.setOrigId(node, state.getOrigId());
+            this.origIdIndex.update(node, before.getOrigId());
+        }
+        Coord currentCoord = node.getCoord();
+        if (state.getCoord().getX() != currentCoord.getX() || state.getCoord().getY() != currentCoord.getY()) {
+            node.setCoord(state.getCoord());
+            this.nodeIndex.update(node);
+            this.changes.markNodeWithLinks(node);
+        } else {
+            this.changes.markNode(node.getId());
+        }
+        this.journal.nodeModified(node, before, state);
+        this.versions.nodeChanged(node);
+    }
+
+    /**
+     * Creates a link that is not yet added to the network
+     * @param id The id of the link
+     * @param fromNode The 'from' node of the link
+     * @param toNode The 'to' node of the link
+     * @param length The length of the link
+     * @param freespeed The free speed of the link
+     * @param capacity The capacity of the link
+     * @param numLanes The number of lanes of the link
+     * @return The link
+     */
+    private Link createLink(String id, Node fromNode, Node toNode, double length, double freespeed, double capacity,
+                            double numLanes) {
+        Link link = this.network.getFactory().createLink(Id.create(id, Link.class), fromNode, toNode);
+        link.setLength(length);
+        link.setFreespeed(freespeed);
+        link.setCapacity(capacity);
+        link.setNumberOfLanes(numLanes);
+        return link;
+    }
+
+    /**
+     * Adds a link to the network and its index, and records the change for the flush and the journal
+     * @param link The link, not yet in the network, between nodes of the network
+     */
+    private void insertLink(Link link) {
+        this.network.addLink(link);
+        this.linkIndex.add(link);
+        this.changes.markLinkAdded(link.getId());
+        // The links of the nodes are listed in the node table
+        this.changes.markNode(link.getFromNode().getId());
+        this.changes.markNode(link.getToNode().getId());
+        this.journal.linkAdded(link);
+        this.versions.linkChanged(link);
+    }
+
+    /**
+     * Removes a link from the network and its index, and records the change for the flush and the journal
+     * @param link The link
+     */
+    private void deleteLink(Link link) {
+        this.network.removeLink(link.getId());
+        this.linkIndex.remove(link);
+        this.changes.markLink(link.getId());
+        this.changes.markNode(link.getFromNode().getId());
+        this.changes.markNode(link.getToNode().getId());
+        this.journal.linkRemoved(link);
+        this.versions.linkRemoved(link);
+    }
+
+    /**
+     * Sets the editable attributes of a link, and records the change for the flush and the journal
+     * @param link The link
+     * @param state The new attributes of the link
+     */
+    private void setLinkState(Link link, CommandJournal.LinkState state) {
+        CommandJournal.LinkState before = CommandJournal.LinkState.of(link);
+        link.setLength(state.getLength());
+        link.setFreespeed(state.getFreespeed());
+        link.setCapacity(state.getCapacity());
+        link.setNumberOfLanes(state.getNumLanes());
+        if (!state.getAllowedModes().equals(link.getAllowedModes())) {
+            link.setAllowedModes(state.getAllowedModes());
+        }
+        this.changes.markLink(link.getId());
+        this.journal.linkModified(link, before, state);
+        this.versions.linkChanged(link);
+    }
+
+    /**
+     * Finds the node at a position
+     * @param x The longitude of the position
+     * @param y The latitude of the position
+     * @return The node at the position, or null if there is none
+     */
+    public Node findNode(double x, double y) {
+        this.lock.readLock().lock();
+        try {
+            return this.nodeIndex.find(x, y);
+        } finally {
+            this.lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Finds the node closest to a position
+     * @param x The longitude of the position
+     * @param y The latitude of the position
+     * @param tolerance The maximum distance of the node to the position, in degrees
+     * @return The closest Node within the tolerance, or null if there is none
+     */
+    public Node findNearestNode(double x, double y, double tolerance) {
+        this.lock.readLock().lock();
+        try {
+            return this.nodeIndex.findNearest(x, y, tolerance);
+        } finally {
+            this.lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Finds the links that lie within an area, i.e. whose 'from' and 'to' nodes both lie within it
+     * @param minX The minimum longitude of the area
+     * @param minY The minimum latitude of the area
+     * @param maxX The maximum longitude of the area
+     * @param maxY The maximum latitude of the area
+     * @return The links within the area
+     */
+    public ArrayList<Link> findLinksWithin(double minX, double minY, double maxX, double maxY) {
+        this.lock.readLock().lock();
+        try {
+            ArrayList<Link> links = new ArrayList<>();
+            for (Node node : this.nodeIndex.findWithin(minX, minY, maxX, maxY)) {
+                for (Link link : node.getOutLinks().values()) {
+                    Coord to = link.getToNode().getCoord();
+                    if (to.getX() >= minX && to.getY() >= minY && to.getX() <= maxX && to.getY() <= maxY) {
+                        links.add(link);
+                    }
+                }
+            }
+            return links;
+        } finally {
+            this.lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Removes the nodes that lie outside an area, along with their links, e.g. to cut a city out of a regional network.
+     * The removals are one command, undone at once
+     * @param minX The minimum longitude of the area
+     * @param minY The minimum latitude of the area
+     * @param maxX The maximum longitude of the area
+     * @param maxY The maximum latitude of the area
+     * @return The number of removed nodes
+     */
+    public int crop(double minX, double minY, double maxX, double maxY) {
+        this.lock.writeLock().lock();
+        try {
+            HashSet<Node> kept = new HashSet<>(this.nodeIndex.findWithin(minX, minY, maxX, maxY));
+            ArrayList<Id<Node>> removed = new ArrayList<>();
+            for (Node node : this.network.getNodes().values()) {
+                if (!kept.contains(node)) {
+                    removed.add(node.getId());
+                }
+            }
+            if (!removed.isEmpty()) {
+                removeElements(removed, Collections.emptyList());
+            }
+            return removed.size();
+        } finally {
+            this.lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * @return The spatial index over the node coordinates, which has to be kept in sync when the network is modified
+     * directly instead of through this class
+     */
+    public NodeSpatialIndex getNodeIndex() {
+        return this.nodeIndex;
+    }
+
+    /**
+     * @return The index of the links by their 'from' and 'to' node, which has to be kept in sync when the network is
+     * modified directly instead of through this class
+     */
+    public LinkIndex getLinkIndex() {
+        return this.linkIndex;
+    }
+
+    /**
+     * Rebuilds the node and link indexes from the network, after it was modified directly instead of through this class
+     */
+    public void rebuildIndexes() {
+        this.lock.writeLock().lock();
+        try {
+            this.nodeIndex = NodeSpatialIndex.build(this.network);
+            this.linkIndex = LinkIndex.build(this.network);
+            this.origIdIndex = OrigIdIndex.build(this.network);
+        } finally {
+            this.lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * @return The object containing all the MATSim network information including
+     * nodes, links and attributes
+     */
+    public Network getNetwork() {
+        return this.network;
+    }
+
+    /**
+     * @return The path to the file the network was read from, or null for a new network
+     */
+    public String getNetworkPath() {
+        return this.networkPath;
+    }
+
+    /**
+     * @return A string containing the coordinate system the user wants to store the network in
+     */
+    public String getCoordinateSystem() {
+        return this.coordinateSystem;
+    }
+
+    /**
+     * The coordinate system is a string containing the format of the coordinates
+     * that the user wants to use to save the network. The network itself is held in the WGS84
+     * coordinate system
+     *
+     * @param coordinateSystem must be a valid coordinate system number
+     */
+    public void setCoordinateSystem(String coordinateSystem) {
+        this.coordinateSystem = coordinateSystem;
+    }
+
+    /**
+     * @return A list of validation entries, containing the nodes/links that might be problematic
+     * and the respective warning messages
+     */
+    public ArrayList<ValidationTableEntry> getValidationWarnings() {
+        this.lock.readLock().lock();
+        try {
+            return this.validationWarnings.getAll();
+        } finally {
+            this.lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Replaces all validation warnings with the result of a validation of the whole network
+     * @param warnings The warnings about the nodes and links of the network
+     */
+    public void setValidationWarnings(Collection<ValidationTableEntry> warnings) {
+        this.lock.writeLock().lock();
+        try {
+            this.validationWarnings.clear();
+            warnings.forEach(this.validationWarnings::add);
+            this.validationChanges.clear();
+        } finally {
+            this.lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Removes all validation warnings before the network is validated anew, with the warnings passed in batches to
+     * {@link #addValidationWarnings} as they are found. Changes to the network are recorded from here on
+     */
+    public void startValidation() {
+        this.lock.writeLock().lock();
+        try {
+            this.validationWarnings.clear();
+            this.validationChanges.clear();
+        } finally {
+            this.lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Adds a batch of the warnings of a running validation. Warnings about elements that were removed in the meantime
+     * are dropped, those about elements that were modified in the meantime are marked stale
+     * @param warnings The warnings found since the last batch
+     * @return The warnings that were added
+     */
+    public List<ValidationTableEntry> addValidationWarnings(Collection<ValidationTableEntry> warnings) {
+        this.lock.writeLock().lock();
+        try {
+            ArrayList<ValidationTableEntry> current = new ArrayList<>(warnings.size());
+            for (ValidationTableEntry warning : warnings) {
+                Object element = warning.getElement();
+                boolean exists;
+                boolean modified;
+                if (element instanceof Node) {
+                    Id<Node> nodeId = ((Node) element).getId();
+                    exists = this.network.getNodes().get(nodeId) == element;
+                    modified = this.validationChanges.getNodes().contains(nodeId);
+                } else {
+                    Id<Link> linkId = ((Link) element).getId();
+                    exists = this.network.getLinks().get(linkId) == element;
+                    modified = this.validationChanges.getLinks().contains(linkId);
+                }
+                if (exists) {
+                    warning.setStale(modified);
+                    this.validationWarnings.add(warning);
+                    current.add(warning);
+                }
+            }
+            return current;
+        } finally {
+            this.lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Removes some validation warnings, e.g. those of an analysis that is run again
+     * @param warnings The warnings to remove, those that are no longer kept are ignored
+     * @return The warnings that were removed
+     */
+    public Set<ValidationTableEntry> removeValidationWarnings(Collection<ValidationTableEntry> warnings) {
+        this.lock.writeLock().lock();
+        try {
+            HashSet<ValidationTableEntry> removed = new HashSet<>();
+            for (ValidationTableEntry warning : warnings) {
+                if (this.validationWarnings.remove(warning)) {
+                    removed.add(warning);
+                }
+            }
+            return removed;
+        } finally {
+            this.lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Replaces the validation warnings of some elements with the result of validating them again
+     * @param elements The nodes and links that were validated again
+     * @param warnings The warnings about these elements
+     * @return The previous warnings about these elements, which were replaced
+     */
+    public Set<ValidationTableEntry> updateValidationWarnings(ChangeTracker elements, Collection<ValidationTableEntry> warnings) {
+        this.lock.writeLock().lock();
+        try {
+            HashSet<ValidationTableEntry> outdated = new HashSet<>();
+            elements.getNodes().forEach(nodeId -> outdated.addAll(this.validationWarnings.removeNode(nodeId)));
+            elements.getLinks().forEach(linkId -> outdated.addAll(this.validationWarnings.removeLink(linkId)));
+            warnings.forEach(this.validationWarnings::add);
+            return outdated;
+        } finally {
+            this.lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Hands out the nodes and links that were added, modified or removed since the network was last validated, and
+     * starts recording anew
+     * @return The changes since the last validation
+     */
+    public ChangeTracker takeValidationChanges() {
+        this.lock.writeLock().lock();
+        try {
+            ChangeTracker taken = new ChangeTracker();
+            taken.addAll(this.validationChanges);
+            this.validationChanges.clear();
+            return taken;
+        } finally {
+            this.lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * @return The custom attributes of the network, its nodes and its links that were found in the imported file
+     */
+    public AttributeSchema getAttributeSchema() {
+        return this.attributeSchema;
+    }
+
+    /**
+     * Builds the compact, array based representation of the current state of the network, as used by the binary
+     * snapshot format and by consumers that only need the geometry and the link values
+     * @return The compact representation of the network
+     */
+    public CompactNetwork toCompactNetwork() {
+        this.lock.readLock().lock();
+        try {
+            return CompactNetwork.fromNetwork(this.network, this.coordinateSystem, this.attributeSchema);
+        } finally {
+            this.lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Forgets the validation warnings, the history of the changes and the versions of the network
+     */
+    public void clear() {
+        this.lock.writeLock().lock();
+        try {
+            this.validationWarnings.clear();
+            this.journal.clear();
+            this.versions.clear();
+        } finally {
+            this.lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Checks if there is a link in the network, connecting two specific nodes, using the ids of these nodes
+     * @param nodeFrom The id of the possible starting node
+     * @param nodeTo The id of the possible ending node
+     * @return True if a link exists between those two node in the specific direction, otherwise false
+     */
+    public boolean containsLink(Id<Node> nodeFrom, Id<Node> nodeTo) {
+        this.lock.readLock().lock();
+        try {
+            return this.linkIndex.contains(nodeFrom, nodeTo);
+        } finally {
+            this.lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Finds the link connecting the nodes of a link in the opposite direction
+     * @param link A link of the network
+     * @return The reverse link, or null if there is none
+     */
+    public Link findReverseLink(Link link) {
+        this.lock.readLock().lock();
+        try {
+            return this.linkIndex.getReverse(link);
+        } finally {
+            this.lock.readLock().unlock();
+        }
+    }
+}
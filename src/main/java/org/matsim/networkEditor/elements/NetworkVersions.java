@@ -0,0 +1,181 @@
+package org.matsim.networkEditor.elements;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.network.Link;
+import org.matsim.api.core.v01.network.Network;
+import org.matsim.api.core.v01.network.Node;
+import org.matsim.networkEditor.utils.PersistentHashMap;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The named versions of a network, e.g. "before cleaning" or "after speed update". The current nodes and links of the
+ * network are mirrored in persistent maps that every change updates by copying a short path, so taking a version only
+ * keeps the current maps and comparing two versions only visits the parts of the maps that differ. The maps are built
+ * from the network when the first version is taken, so that a network without versions costs nothing
+ */
+public class NetworkVersions {
+    private static final Logger logger = LoggerFactory.getLogger(NetworkVersions.class);
+
+    private PersistentHashMap<Id<Node>, NetworkCheckpoint.NodeEntry> nodes = null;
+    private PersistentHashMap<Id<Link>, NetworkCheckpoint.LinkEntry> links = null;
+    private final List<NetworkCheckpoint> checkpoints = new ArrayList<>();
+
+    /**
+     * @return True if the changes of the network are mirrored, i.e. a version was taken, otherwise false
+     */
+    public boolean isTracking() {
+        return this.nodes != null;
+    }
+
+    /**
+     * Takes a version of the network; a previous version with the same name is replaced
+     * @param name The name of the version
+     * @param network The network, whose changes are reported to this object
+     * @return The version
+     */
+    public NetworkCheckpoint checkpoint(String name, Network network) {
+        NetworkCheckpoint checkpoint = new NetworkCheckpoint(name, currentNodes(network), currentLinks(network));
+        this.checkpoints.removeIf(existing -> existing.getName().equals(name));
+        this.checkpoints.add(checkpoint);
+        return checkpoint;
+    }
+
+    /**
+     * @param network The network, whose changes are reported to this object
+     * @return The current version of the network, without a name and not listed with the versions
+     */
+    public NetworkCheckpoint current(Network network) {
+        return new NetworkCheckpoint("current", currentNodes(network), currentLinks(network));
+    }
+
+    /**
+     * @return The versions, in the order they were taken
+     */
+    public List<NetworkCheckpoint> getCheckpoints() {
+        return this.checkpoints;
+    }
+
+    /**
+     * @param name The name of a version
+     * @return The version, or null if there is none with the name
+     */
+    public NetworkCheckpoint getCheckpoint(String name) {
+        for (NetworkCheckpoint checkpoint : this.checkpoints) {
+            if (checkpoint.getName().equals(name)) {
+                return checkpoint;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @param name The name of a version
+     * @return True if the version was removed, false if there is none with the name
+     */
+    public boolean removeCheckpoint(String name) {
+        return this.checkpoints.removeIf(checkpoint -> checkpoint.getName().equals(name));
+    }
+
+    /**
+     * Takes the maps of a version as the current ones, after the network was restored to it, so that the restored network
+     * shares its structure with the version again
+     * @param checkpoint The version the network was restored to
+     */
+    void reset(NetworkCheckpoint checkpoint) {
+        this.nodes = checkpoint.getNodes();
+        this.links = checkpoint.getLinks();
+    }
+
+    /**
+     * Forgets the versions and stops mirroring the changes of the network
+     */
+    public void clear() {
+        this.checkpoints.clear();
+        this.nodes = null;
+        this.links = null;
+    }
+
+    /**
+     * Records a node that was added to the network or modified
+     * @param node The node
+     */
+    void nodeChanged(Node node) {
+        if (this.nodes != null) {
+            this.nodes = this.nodes.put(node.getId(), new NetworkCheckpoint.NodeEntry(node, CommandJournal.NodeState.of(node)));
+        }
+    }
+
+    /**
+     * Records a node that was removed from the network
+     * @param node The node
+     */
+    void nodeRemoved(Node node) {
+        if (this.nodes != null) {
+            this.nodes = this.nodes.remove(node.getId());
+        }
+    }
+
+    /**
+     * Records a link that was added to the network or modified
+     * @param link The link
+     */
+    void linkChanged(Link link) {
+        if (this.links != null) {
+            this.links = this.links.put(link.getId(), new NetworkCheckpoint.LinkEntry(link, CommandJournal.LinkState.of(link)));
+        }
+    }
+
+    /**
+     * Records a link that was removed from the network
+     * @param link The link
+     */
+    void linkRemoved(Link link) {
+        if (this.links != null) {
+            this.links = this.links.remove(link.getId());
+        }
+    }
+
+    /**
+     * @param network The network
+     * @return The current nodes of the network, mirrored from the network on the first call
+     */
+    private PersistentHashMap<Id<Node>, NetworkCheckpoint.NodeEntry> currentNodes(Network network) {
+        if (this.nodes == null) {
+            startTracking(network);
+        }
+        return this.nodes;
+    }
+
+    /**
+     * @param network The network
+     * @return The current links of the network, mirrored from the network on the first call
+     */
+    private PersistentHashMap<Id<Link>, NetworkCheckpoint.LinkEntry> currentLinks(Network network) {
+        if (this.links == null) {
+            startTracking(network);
+        }
+        return this.links;
+    }
+
+    /**
+     * Mirrors the nodes and links of the network, once, before the first version is taken
+     * @param network The network
+     */
+    private void startTracking(Network network) {
+        long start = System.nanoTime();
+        PersistentHashMap<Id<Node>, NetworkCheckpoint.NodeEntry> networkNodes = PersistentHashMap.of(
+                network.getNodes().values(), Node::getId,
+                node -> new NetworkCheckpoint.NodeEntry(node, CommandJournal.NodeState.of(node)));
+        PersistentHashMap<Id<Link>, NetworkCheckpoint.LinkEntry> networkLinks = PersistentHashMap.of(
+                network.getLinks().values(), Link::getId,
+                link -> new NetworkCheckpoint.LinkEntry(link, CommandJournal.LinkState.of(link)));
+        this.nodes = networkNodes;
+        this.links = networkLinks;
+        logger.info("versions of {} nodes and {} links tracked in {}ms", networkNodes.size(), networkLinks.size(),
+                (System.nanoTime() - start) / 1000000);
+    }
+}
@@ -0,0 +1,251 @@
+package org.matsim.networkEditor.elements;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+
+import org.matsim.api.core.v01.Coord;
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.network.Network;
+import org.matsim.api.core.v01.network.Node;
+
+/**
+ * Grid hash over the coordinates of the nodes of a network. The plane is divided into square cells and every node is
+ * stored in the cell its coordinate falls into, so that an exact lookup only looks at the nodes of one cell and a
+ * nearest-node query only at the cells within the tolerance, independent of the size of the network. The index does not
+ * observe the network, it has to be kept in sync with {@link #add}, {@link #update} and {@link #remove} whenever a node is
+ * added, moved or removed
+ */
+public class NodeSpatialIndex {
+    /** Default cell size in degrees, about 100m in latitude */
+    public static final double DEFAULT_CELL_SIZE = 0.001;
+
+    private final double cellSize;
+    private final HashMap<Long, ArrayList<Node>> cells = new HashMap<>();
+    // The coordinate each node was indexed with, to find its cell again once the coordinate of the node has changed
+    private final HashMap<Id<Node>, Coord> indexedCoords = new HashMap<>();
+
+    /**
+     * Creates an empty index
+     * @param cellSize The side length of the cells, in the units of the node coordinates
+     */
+    public NodeSpatialIndex(double cellSize) {
+        if (cellSize <= 0) {
+            throw new IllegalArgumentException("The cell size must be positive: " + cellSize);
+        }
+        this.cellSize = cellSize;
+    }
+
+    /**
+     * Creates an empty index with the default cell size, suited for WGS84 coordinates
+     */
+    public NodeSpatialIndex() {
+        this(DEFAULT_CELL_SIZE);
+    }
+
+    /**
+     * Creates an index containing all the nodes of a network
+     * @param network The network whose nodes are indexed
+     * @return The index
+     */
+    public static NodeSpatialIndex build(Network network) {
+        NodeSpatialIndex index = new NodeSpatialIndex();
+        for (Node node : network.getNodes().values()) {
+            index.add(node);
+        }
+        return index;
+    }
+
+    /**
+     * Adds a node at its current coordinate; a node that is already indexed is moved to its current coordinate
+     * @param node The node to add
+     */
+    public void add(Node node) {
+        if (this.indexedCoords.containsKey(node.getId())) {
+            remove(node.getId());
+        }
+        Coord coord = node.getCoord();
+        this.cells.computeIfAbsent(cellKey(coord.getX(), coord.getY()), key -> new ArrayList<>(2)).add(node);
+        this.indexedCoords.put(node.getId(), coord);
+    }
+
+    /**
+     * Moves a node to its current coordinate, after it was changed
+     * @param node The node that was moved
+     */
+    public void update(Node node) {
+        add(node);
+    }
+
+    /**
+     * Removes a node from the index
+     * @param nodeId The id of the node to remove
+     * @return True if the node was indexed, otherwise false
+     */
+    public boolean remove(Id<Node> nodeId) {
+        Coord coord = this.indexedCoords.remove(nodeId);
+        if (coord == null) {
+            return false;
+        }
+        long key = cellKey(coord.getX(), coord.getY());
+        ArrayList<Node> cell = this.cells.get(key);
+        if (cell != null) {
+            cell.removeIf(node -> node.getId().equals(nodeId));
+            if (cell.isEmpty()) {
+                this.cells.remove(key);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Removes all nodes from the index
+     */
+    public void clear() {
+        this.cells.clear();
+        this.indexedCoords.clear();
+    }
+
+    /**
+     * @return The number of indexed nodes
+     */
+    public int size() {
+        return this.indexedCoords.size();
+    }
+
+    /**
+     * Finds a node lying exactly at a coordinate
+     * @param x The x coordinate
+     * @param y The y coordinate
+     * @return A node at the coordinate, or null if there is none
+     */
+    public Node find(double x, double y) {
+        ArrayList<Node> cell = this.cells.get(cellKey(x, y));
+        if (cell != null) {
+            for (Node node : cell) {
+                if (node.getCoord().getX() == x && node.getCoord().getY() == y) {
+                    return node;
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Finds the node closest to a coordinate, if it lies within a tolerance
+     * @param x The x coordinate
+     * @param y The y coordinate
+     * @param tolerance The maximum euclidean distance of the node to the coordinate, in the units of the coordinates
+     * @return The closest node within the tolerance, or null if there is none
+     */
+    public Node findNearest(double x, double y, double tolerance) {
+        long minCellX = cellIndex(x - tolerance);
+        long maxCellX = cellIndex(x + tolerance);
+        long minCellY = cellIndex(y - tolerance);
+        long maxCellY = cellIndex(y + tolerance);
+
+        Node nearest = null;
+        double nearestDistance = tolerance * tolerance;
+        // For a tolerance spanning more cells than there are occupied, it is cheaper to look at the occupied ones
+        if ((maxCellX - minCellX + 1) * (maxCellY - minCellY + 1) > this.cells.size()) {
+            for (ArrayList<Node> cell : this.cells.values()) {
+                for (Node node : cell) {
+                    double distance = squaredDistance(node, x, y);
+                    if (distance <= nearestDistance) {
+                        nearest = node;
+                        nearestDistance = distance;
+                    }
+                }
+            }
+            return nearest;
+        }
+        for (long cellX = minCellX; cellX <= maxCellX; cellX++) {
+            for (long cellY = minCellY; cellY <= maxCellY; cellY++) {
+                ArrayList<Node> cell = this.cells.get(cellKey(cellX, cellY));
+                if (cell == null) {
+                    continue;
+                }
+                for (Node node : cell) {
+                    double distance = squaredDistance(node, x, y);
+                    if (distance <= nearestDistance) {
+                        nearest = node;
+                        nearestDistance = distance;
+                    }
+                }
+            }
+        }
+        return nearest;
+    }
+
+    /**
+     * Collects the nodes lying within a rectangle
+     * @param minX The minimum x coordinate of the rectangle
+     * @param minY The minimum y coordinate of the rectangle
+     * @param maxX The maximum x coordinate of the rectangle
+     * @param maxY The maximum y coordinate of the rectangle
+     * @return The nodes inside the rectangle, including its border
+     */
+    public ArrayList<Node> findWithin(double minX, double minY, double maxX, double maxY) {
+        ArrayList<Node> result = new ArrayList<>();
+        long minCellX = cellIndex(minX);
+        long maxCellX = cellIndex(maxX);
+        long minCellY = cellIndex(minY);
+        long maxCellY = cellIndex(maxY);
+        if ((maxCellX - minCellX + 1) * (maxCellY - minCellY + 1) > this.cells.size()) {
+            for (ArrayList<Node> cell : this.cells.values()) {
+                addWithin(cell, minX, minY, maxX, maxY, result);
+            }
+            return result;
+        }
+        for (long cellX = minCellX; cellX <= maxCellX; cellX++) {
+            for (long cellY = minCellY; cellY <= maxCellY; cellY++) {
+                ArrayList<Node> cell = this.cells.get(cellKey(cellX, cellY));
+                if (cell != null) {
+                    addWithin(cell, minX, minY, maxX, maxY, result);
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Adds the nodes of a cell that lie within a rectangle to a list
+     */
+    private static void addWithin(ArrayList<Node> cell, double minX, double minY, double maxX, double maxY, ArrayList<Node> result) {
+        for (Node node : cell) {
+            Coord coord = node.getCoord();
+            if (coord.getX() >= minX && coord.getX() <= maxX && coord.getY() >= minY && coord.getY() <= maxY) {
+                result.add(node);
+            }
+        }
+    }
+
+    /**
+     * @return The squared euclidean distance of a node to a coordinate
+     */
+    private static double squaredDistance(Node node, double x, double y) {
+        double dx = node.getCoord().getX() - x;
+        double dy = node.getCoord().getY() - y;
+        return dx * dx + dy * dy;
+    }
+
+    /**
+     * @return The index of the cell column or row a coordinate value falls into
+     */
+    private long cellIndex(double value) {
+        return (long) Math.floor(value / this.cellSize);
+    }
+
+    /**
+     * @return The key of the cell a coordinate falls into
+     */
+    private long cellKey(double x, double y) {
+        return cellKey(cellIndex(x), cellIndex(y));
+    }
+
+    /**
+     * @return The key of the cell with the given column and row
+     */
+    private static long cellKey(long cellX, long cellY) {
+        return (cellX << 32) ^ (cellY & 0xffffffffL);
+    }
+}
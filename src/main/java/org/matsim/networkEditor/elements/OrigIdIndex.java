@@ -0,0 +1,93 @@
+package org.matsim.networkEditor.elements;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+import org.matsim.api.core.v01.network.Network;
+import org.matsim.api.core.v01.network.Node;
+import org.matsim.core.network.NetworkUtils;
+
+/**
+ * Index of the nodes of a network by their original id, the id the editor shows and edits, answering whether a node
+ * other than a given one has an original id in constant time. Unlike the MATSim ids, the original ids change when a node
+ * is edited and are not necessarily unique, so there can be more than one node for an id. Like the
+ * {@link NodeSpatialIndex}, the index has to be kept in sync with {@link #add}, {@link #update} and {@link #remove}
+ * whenever a node is added, renamed or removed
+ */
+public class OrigIdIndex {
+    private final HashMap<String, List<Node>> nodes = new HashMap<>();
+
+    /**
+     * Creates an index containing all the nodes of a network
+     * @param network The network whose nodes are indexed
+     * @return The index
+     */
+    public static OrigIdIndex build(Network network) {
+        OrigIdIndex index = new OrigIdIndex();
+        for (Node node : network.getNodes().values()) {
+            index.add(node);
+        }
+        return index;
+    }
+
+    /**
+     * Adds a node under its current original id; nodes without one are not indexed
+     * @param node The node to add
+     */
+    public void add(Node node) {
+        String origId = NetworkUtils.getOrigId(node);
+        if (origId != null) {
+            this.nodes.computeIfAbsent(origId, key -> new ArrayList<>(1)).add(node);
+        }
+    }
+
+    /**
+     * Moves a node to its current original id, after it was changed
+     * @param node The node that was renamed
+     * @param previousOrigId The original id the node was indexed with
+     */
+    public void update(Node node, String previousOrigId) {
+        remove(node, previousOrigId);
+        add(node);
+    }
+
+    /**
+     * Removes a node that still has the original id it was indexed with
+     * @param node The node to remove
+     * @return True if the node was indexed, otherwise false
+     */
+    public boolean remove(Node node) {
+        return remove(node, NetworkUtils.getOrigId(node));
+    }
+
+    /**
+     * @param node The node to remove
+     * @param origId The original id the node was indexed with
+     * @return True if the node was indexed, otherwise false
+     */
+    private boolean remove(Node node, String origId) {
+        if (origId == null) {
+            return false;
+        }
+        List<Node> idNodes = this.nodes.get(origId);
+        if (idNodes == null) {
+            return false;
+        }
+        boolean removed = idNodes.remove(node);
+        if (idNodes.isEmpty()) {
+            this.nodes.remove(origId);
+        }
+        return removed;
+    }
+
+    /**
+     * @param origId An original id
+     * @param node A node
+     * @return True if a node other than the given one has the original id, otherwise false
+     */
+    public boolean isTakenByOther(String origId, Node node) {
+        List<Node> idNodes = this.nodes.get(origId);
+        return idNodes != null && (idNodes.size() > 1 || idNodes.get(0) != node);
+    }
+}
@@ -0,0 +1,136 @@
+package org.matsim.networkEditor.elements;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.network.Link;
+import org.matsim.api.core.v01.network.Node;
+
+/**
+ * The validation warnings of a network, indexed by the id of the node or link they are about, so that the warnings of
+ * an element can be replaced after it was edited without going through all warnings
+ */
+public class ValidationIndex {
+    private final LinkedHashMap<Id<Node>, List<ValidationTableEntry>> nodeWarnings = new LinkedHashMap<>();
+    private final LinkedHashMap<Id<Link>, List<ValidationTableEntry>> linkWarnings = new LinkedHashMap<>();
+    private int size = 0;
+
+    /**
+     * Adds a warning under the id of its element
+     * @param entry The warning about a Node or a Link
+     */
+    public void add(ValidationTableEntry entry) {
+        if (entry.getElement() instanceof Node) {
+            this.nodeWarnings.computeIfAbsent(((Node) entry.getElement()).getId(), id -> new ArrayList<>(1)).add(entry);
+        } else if (entry.getElement() instanceof Link) {
+            this.linkWarnings.computeIfAbsent(((Link) entry.getElement()).getId(), id -> new ArrayList<>(1)).add(entry);
+        } else {
+            throw new IllegalArgumentException("A validation warning must be about a Node or a Link: " + entry.getElementId());
+        }
+        this.size++;
+    }
+
+    /**
+     * Removes a single warning
+     * @param entry The warning about a Node or a Link
+     * @return True if the warning was in the index, otherwise false
+     */
+    public boolean remove(ValidationTableEntry entry) {
+        List<ValidationTableEntry> warnings;
+        if (entry.getElement() instanceof Node) {
+            warnings = this.nodeWarnings.get(((Node) entry.getElement()).getId());
+        } else if (entry.getElement() instanceof Link) {
+            warnings = this.linkWarnings.get(((Link) entry.getElement()).getId());
+        } else {
+            return false;
+        }
+        if (warnings == null || !warnings.remove(entry)) {
+            return false;
+        }
+        if (warnings.isEmpty()) {
+            if (entry.getElement() instanceof Node) {
+                this.nodeWarnings.remove(((Node) entry.getElement()).getId());
+            } else {
+                this.linkWarnings.remove(((Link) entry.getElement()).getId());
+            }
+        }
+        this.size--;
+        return true;
+    }
+
+    /**
+     * Removes the warnings about a node
+     * @param nodeId The id of the node
+     * @return The removed warnings, empty if there were none
+     */
+    public List<ValidationTableEntry> removeNode(Id<Node> nodeId) {
+        return removed(this.nodeWarnings.remove(nodeId));
+    }
+
+    /**
+     * Removes the warnings about a link
+     * @param linkId The id of the link
+     * @return The removed warnings, empty if there were none
+     */
+    public List<ValidationTableEntry> removeLink(Id<Link> linkId) {
+        return removed(this.linkWarnings.remove(linkId));
+    }
+
+    /**
+     * @param nodeId The id of a node
+     * @return The warnings about the node, empty if there are none
+     */
+    public List<ValidationTableEntry> getNodeWarnings(Id<Node> nodeId) {
+        return Collections.unmodifiableList(this.nodeWarnings.getOrDefault(nodeId, Collections.emptyList()));
+    }
+
+    /**
+     * @param linkId The id of a link
+     * @return The warnings about the link, empty if there are none
+     */
+    public List<ValidationTableEntry> getLinkWarnings(Id<Link> linkId) {
+        return Collections.unmodifiableList(this.linkWarnings.getOrDefault(linkId, Collections.emptyList()));
+    }
+
+    /**
+     * @return All warnings, those about nodes first, each in the order their element was first added
+     */
+    public ArrayList<ValidationTableEntry> getAll() {
+        ArrayList<ValidationTableEntry> all = new ArrayList<>(this.size);
+        this.nodeWarnings.values().forEach(all::addAll);
+        this.linkWarnings.values().forEach(all::addAll);
+        return all;
+    }
+
+    /**
+     * @return The number of warnings
+     */
+    public int size() {
+        return this.size;
+    }
+
+    /**
+     * Removes all warnings
+     */
+    public void clear() {
+        this.nodeWarnings.clear();
+        this.linkWarnings.clear();
+        this.size = 0;
+    }
+
+    /**
+     * Accounts for the removed warnings of an element
+     * @param warnings The warnings that were removed from the index, or null if the element had none
+     * @return The removed warnings, empty if there were none
+     */
+    private List<ValidationTableEntry> removed(List<ValidationTableEntry> warnings) {
+        if (warnings == null) {
+            return Collections.emptyList();
+        }
+        this.size -= warnings.size();
+        return warnings;
+    }
+}
@@ -8,6 +8,8 @@ public class ValidationTableEntry {
     private Object element = null;
     private String elementId = null;
     private String message = null;
+    // Set by the thread changing the element, read by the validation table on the JavaFX application thread
+    private volatile boolean stale = false;
 
     public ValidationTableEntry() {
 
@@ -71,4 +73,19 @@ public class ValidationTableEntry {
     public void setElement(Object element) {
         this.element = element;
     }
+
+    /**
+     * @return True if the Node or Link was modified after the warning was found, so that the warning might no
+     * longer apply until the element is validated again
+     */
+    public boolean isStale() {
+        return stale;
+    }
+
+    /**
+     * @param stale Whether the Node or Link was modified after the warning was found
+     */
+    public void setStale(boolean stale) {
+        this.stale = stale;
+    }
 }
@@ -0,0 +1,246 @@
+package org.matsim.networkEditor.io;
+
+import java.io.BufferedInputStream;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.HashMap;
+import java.util.function.BooleanSupplier;
+import java.util.zip.GZIPInputStream;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+import org.matsim.networkEditor.elements.CompactNetwork;
+import org.matsim.networkEditor.utils.CachedTransformation;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Streaming StAX reader for MATSim network files (network_v1 and network_v2, plain or gzipped). It reads the file in one
+ * pass straight into a {@link CompactNetwork}, without validating against the DTD and without building the MATSim object
+ * graph. Node coordinates are transformed from the coordinate system of the file to WGS84, the system of the map, all
+ * at once after the file is read
+ */
+public class CompactNetworkReader {
+    private static final Logger logger = LoggerFactory.getLogger(CompactNetworkReader.class);
+    private static final String FILE_CRS_ATTRIBUTE = "coordinateReferenceSystem";
+
+    private static final int OWNER_NONE = 0;
+    private static final int OWNER_NETWORK = 1;
+    private static final int OWNER_NODE = 2;
+    private static final int OWNER_LINK = 3;
+
+    private final String coordinateSystem;
+    private final CachedTransformation transformation;
+
+    /**
+     * @param coordinateSystem The coordinate system of the network stored in the file
+     */
+    public CompactNetworkReader(String coordinateSystem) {
+        this.coordinateSystem = coordinateSystem;
+        this.transformation = coordinateSystem == null ? null : CachedTransformation.toWgs84(coordinateSystem);
+    }
+
+    /**
+     * Reads a network file, gzipped files are recognized by their .gz ending
+     * @param path The path to the network file
+     * @return The network read from the file
+     * @throws IOException If the file cannot be read
+     */
+    public CompactNetwork read(String path) throws IOException {
+        return read(path, () -> false);
+    }
+
+    /**
+     * Reads a network file that can be cancelled, gzipped files are recognized by their .gz ending
+     * @param path The path to the network file
+     * @param cancelled Tells whether the reading should stop, asked between two reads from the file
+     * @return The network read from the file
+     * @throws IOException If the file cannot be read, an {@link java.io.InterruptedIOException} if it is cancelled
+     */
+    public CompactNetwork read(String path, BooleanSupplier cancelled) throws IOException {
+        try (InputStream in = new ProgressInputStream(new BufferedInputStream(new FileInputStream(path), 1 << 16),
+                bytesRead -> { }, cancelled)) {
+            CompactNetwork network = new CompactNetwork();
+            read(path.endsWith(".gz") ? new GZIPInputStream(in, 1 << 16) : in, network);
+            return network;
+        }
+    }
+
+    /**
+     * Reads a network from a stream of its (decompressed) xml into the given network. The counts of the network can be
+     * read by a progress listener of the stream while the reading is ongoing, since it is called on the same thread
+     * @param in The stream of the xml
+     * @param network The network the nodes and links are added to
+     * @throws IOException If the stream cannot be read or does not contain a valid network file
+     */
+    public void read(InputStream in, CompactNetwork network) throws IOException {
+        XMLInputFactory factory = XMLInputFactory.newInstance();
+        // The DTD is neither needed nor should it be fetched from the internet for every file
+        factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+
+        HashMap<String, Integer> nodeIndices = new HashMap<>();
+        int attributesOwner = OWNER_NONE;
+        int currentNode = -1;
+        int currentLink = -1;
+        String fileCoordinateSystem = null;
+        int firstNode = network.getNodeCount();
+
+        XMLStreamReader reader = null;
+        try {
+            reader = factory.createXMLStreamReader(in);
+            while (reader.hasNext()) {
+                int event = reader.next();
+                if (event == XMLStreamConstants.START_ELEMENT) {
+                    switch (reader.getLocalName()) {
+                        case "network":
+                            network.setName(reader.getAttributeValue(null, "name"));
+                            attributesOwner = OWNER_NETWORK;
+                            break;
+                        case "node": {
+                            String id = network.intern(requireAttribute(reader, "id"));
+                            double x = Double.parseDouble(requireAttribute(reader, "x"));
+                            double y = Double.parseDouble(requireAttribute(reader, "y"));
+                            currentNode = network.addNode(id, x, y);
+                            nodeIndices.put(id, currentNode);
+                            String z = reader.getAttributeValue(null, "z");
+                            if (z != null) {
+                                network.setNodeZ(currentNode, Double.parseDouble(z));
+                            }
+                            String origId = reader.getAttributeValue(null, "origid");
+                            if (origId != null) {
+                                network.setNodeAttribute(currentNode, "origid", "java.lang.String", origId);
+                            }
+                            attributesOwner = OWNER_NODE;
+                            break;
+                        }
+                        case "links": {
+                            String capacityPeriod = reader.getAttributeValue(null, "capperiod");
+                            if (capacityPeriod != null) {
+                                network.setCapacityPeriod(parseTime(capacityPeriod));
+                            }
+                            String cellSize = reader.getAttributeValue(null, "effectivecellsize");
+                            if (cellSize != null) {
+                                network.setEffectiveCellSize(Double.parseDouble(cellSize));
+                            }
+                            String laneWidth = reader.getAttributeValue(null, "effectivelanewidth");
+                            if (laneWidth != null) {
+                                network.setEffectiveLaneWidth(Double.parseDouble(laneWidth));
+                            }
+                            break;
+                        }
+                        case "link": {
+                            String id = requireAttribute(reader, "id");
+                            String from = requireAttribute(reader, "from");
+                            String to = requireAttribute(reader, "to");
+                            Integer fromIndex = nodeIndices.get(from);
+                            Integer toIndex = nodeIndices.get(to);
+                            if (fromIndex == null || toIndex == null) {
+                                throw new IOException("Link " + id + " refers to a missing node " + (fromIndex == null ? from : to));
+                            }
+                            currentLink = network.addLink(network.intern(id), fromIndex, toIndex,
+                                    Double.parseDouble(requireAttribute(reader, "length")),
+                                    Double.parseDouble(requireAttribute(reader, "freespeed")),
+                                    Double.parseDouble(requireAttribute(reader, "capacity")),
+                                    Double.parseDouble(requireAttribute(reader, "permlanes")),
+                                    reader.getAttributeValue(null, "modes"));
+                            String origId = reader.getAttributeValue(null, "origid");
+                            if (origId != null) {
+                                network.setLinkAttribute(currentLink, "origid", "java.lang.String", origId);
+                            }
+                            String type = reader.getAttributeValue(null, "type");
+                            if (type != null) {
+                                network.setLinkAttribute(currentLink, "type", "java.lang.String", type);
+                            }
+                            attributesOwner = OWNER_LINK;
+                            break;
+                        }
+                        case "attribute": {
+                            String name = reader.getAttributeValue(null, "name");
+                            String className = reader.getAttributeValue(null, "class");
+                            String value = reader.getElementText();
+                            if (attributesOwner == OWNER_NETWORK) {
+                                if (FILE_CRS_ATTRIBUTE.equals(name)) {
+                                    fileCoordinateSystem = value;
+                                } else {
+                                    network.setNetworkAttribute(name, className, value);
+                                }
+                            } else if (attributesOwner == OWNER_NODE) {
+                                network.setNodeAttribute(currentNode, name, className, value);
+                            } else if (attributesOwner == OWNER_LINK) {
+                                network.setLinkAttribute(currentLink, name, className, value);
+                            }
+                            break;
+                        }
+                        default:
+                            break;
+                    }
+                } else if (event == XMLStreamConstants.END_ELEMENT) {
+                    String localName = reader.getLocalName();
+                    if ("node".equals(localName) || "link".equals(localName)) {
+                        attributesOwner = OWNER_NONE;
+                    }
+                }
+            }
+        } catch (XMLStreamException | NumberFormatException e) {
+            throw new IOException("Invalid network file: " + e.getMessage(), e);
+        } finally {
+            if (reader != null) {
+                try {
+                    reader.close();
+                } catch (XMLStreamException e) {
+                    logger.debug("Closing the xml reader failed", e);
+                }
+            }
+        }
+
+        if (fileCoordinateSystem != null && !fileCoordinateSystem.equals(this.coordinateSystem)) {
+            logger.warn("The file declares the coordinate system {}, the network is read as {}", fileCoordinateSystem,
+                    this.coordinateSystem);
+        }
+        if (this.transformation != null) {
+            network.transformNodes(this.transformation, firstNode);
+        }
+        network.setCoordinateSystem(this.coordinateSystem);
+        network.trimToSize();
+    }
+
+    /**
+     * Returns an attribute of the current element that the network file format requires
+     * @param reader The reader, positioned at the start of the element
+     * @param name The name of the attribute
+     * @return The value of the attribute
+     * @throws IOException If the element does not have the attribute
+     */
+    private static String requireAttribute(XMLStreamReader reader, String name) throws IOException {
+        String value = reader.getAttributeValue(null, name);
+        if (value == null) {
+            String id = reader.getAttributeValue(null, "id");
+            throw new IOException("Invalid network file: the " + reader.getLocalName() + (id == null ? "" : " " + id)
+                    + " at line " + reader.getLocation().getLineNumber() + " has no " + name + " attribute");
+        }
+        return value;
+    }
+
+    /**
+     * Parses a time of the form hh:mm:ss, hh:mm or plain seconds
+     * @param time The time string
+     * @return The time in seconds
+     */
+    private static double parseTime(String time) {
+        String[] parts = time.trim().split(":");
+        double seconds = 0;
+        for (String part : parts) {
+            seconds = seconds * 60 + Double.parseDouble(part);
+        }
+        if (parts.length == 2) {
+            // hh:mm
+            seconds *= 60;
+        }
+        return seconds;
+    }
+}
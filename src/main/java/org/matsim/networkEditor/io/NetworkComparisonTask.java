@@ -0,0 +1,145 @@
+package org.matsim.networkEditor.io;
+
+import java.io.BufferedWriter;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.zip.GZIPOutputStream;
+
+import javafx.concurrent.Task;
+import org.matsim.networkEditor.algorithms.NetworkComparison;
+import org.matsim.networkEditor.elements.CompactNetwork;
+import org.matsim.networkEditor.utils.StageTimings;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Background task comparing two network files, e.g. a network and the modified copy another team sent back. Both files
+ * are read at the same time into the compact model, the networks are compared in parallel and the differences of each
+ * phase of the comparison are written to a tab separated report as soon as they are found, gzipped if its name ends
+ * with .gz. The networks themselves are dropped once compared, only the differences are kept to show them on the map
+ */
+public class NetworkComparisonTask extends Task<List<NetworkComparison.Difference>> {
+    private static final Logger logger = LoggerFactory.getLogger(NetworkComparisonTask.class);
+
+    private final String firstPath;
+    private final String secondPath;
+    private final String coordinateSystem;
+    private final String reportPath;
+    private final double tolerance;
+    private final StageTimings timings;
+
+    /**
+     * @param firstPath The path to the first network file, e.g. the original network
+     * @param secondPath The path to the second network file, e.g. the modified network
+     * @param coordinateSystem The coordinate system of the networks stored in the files, snapshots store their own
+     * @param reportPath The path to write the report of the differences to, or null to write no report
+     * @param tolerance The distance in metres within which two nodes are at the same place
+     */
+    public NetworkComparisonTask(String firstPath, String secondPath, String coordinateSystem, String reportPath,
+                                 double tolerance) {
+        this.firstPath = firstPath;
+        this.secondPath = secondPath;
+        this.coordinateSystem = coordinateSystem;
+        this.reportPath = reportPath;
+        this.tolerance = tolerance;
+        this.timings = new StageTimings("Comparison of networks");
+    }
+
+    @Override
+    protected List<NetworkComparison.Difference> call() throws Exception {
+        updateMessage("Reading both networks");
+        this.timings.start("read");
+        CompactNetwork first;
+        CompactNetwork second;
+        try {
+            CompletableFuture<CompactNetwork> firstNetwork = CompletableFuture.supplyAsync(() -> read(this.firstPath));
+            CompletableFuture<CompactNetwork> secondNetwork = CompletableFuture.supplyAsync(() -> read(this.secondPath));
+            first = firstNetwork.join();
+            second = secondNetwork.join();
+        } catch (CompletionException e) {
+            if (isCancelled()) {
+                logger.info("Comparison of {} and {} cancelled while reading", this.firstPath, this.secondPath);
+                return null;
+            }
+            throw e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
+        } finally {
+            this.timings.stop();
+        }
+        if (isCancelled()) {
+            return null;
+        }
+
+        // The rows of the report are written as each phase of the comparison finds them, the differences are kept for
+        // the map
+        updateMessage("Comparing " + first.getLinkCount() + " and " + second.getLinkCount() + " links");
+        List<NetworkComparison.Difference> differences = new ArrayList<>();
+        NetworkComparison comparison = new NetworkComparison(this.tolerance);
+        this.timings.start("compare");
+        try (Writer writer = this.reportPath == null ? null : openReport()) {
+            if (writer != null) {
+                NetworkComparison.writeReportHeader(writer);
+            }
+            comparison.compare(first, second, difference -> {
+                differences.add(difference);
+                if (writer != null) {
+                    try {
+                        NetworkComparison.writeReportRow(difference, writer);
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                }
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        } finally {
+            this.timings.stop();
+        }
+        logger.info("{} differences between {} and {}", differences.size(), this.firstPath, this.secondPath);
+        return differences;
+    }
+
+    /**
+     * Reads a network file into the compact model, with the coordinates in WGS84. The reading of a network file stops
+     * when the task is cancelled
+     * @param path The path to the file, a MATSim network, optionally gzipped, or a snapshot
+     * @return The network
+     */
+    private CompactNetwork read(String path) {
+        try {
+            if (path.endsWith(NetworkSnapshot.EXTENSION)) {
+                return NetworkSnapshot.read(path);
+            }
+            return new CompactNetworkReader(this.coordinateSystem).read(path, this::isCancelled);
+        } catch (IOException e) {
+            throw new CompletionException(e);
+        }
+    }
+
+    /**
+     * @return The buffered writer of the report, gzipped if the name of the report ends with .gz
+     * @throws IOException If the report cannot be created
+     */
+    private Writer openReport() throws IOException {
+        OutputStream out = new FileOutputStream(this.reportPath);
+        if (this.reportPath.endsWith(".gz")) {
+            out = new GZIPOutputStream(out, 1 << 16);
+        }
+        return new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8), 1 << 16);
+    }
+
+    /**
+     * @return The durations of the reading and comparing stages, the report is written while comparing
+     */
+    public StageTimings getTimings() {
+        return this.timings;
+    }
+}
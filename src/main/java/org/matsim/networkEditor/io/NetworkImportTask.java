@@ -0,0 +1,77 @@
+package org.matsim.networkEditor.io;
+
+import java.io.File;
+
+import javafx.concurrent.Task;
+import org.matsim.api.core.v01.network.Network;
+import org.matsim.networkEditor.elements.ExtendedNetwork;
+import org.matsim.networkEditor.utils.StageTimings;
+
+/**
+ * Background task reading a network file and building the network model off the JavaFX thread. The progress of the task
+ * reports the bytes read from the file, the message the number of nodes and links parsed so far. The task can be cancelled
+ * at any point of the reading. The resulting {@link ExtendedNetwork} has no visual elements yet, they are attached on the
+ * JavaFX thread once the task has succeeded
+ */
+public class NetworkImportTask extends Task<ExtendedNetwork> {
+    private final String networkPath;
+    private final String coordinateSystem;
+    private final NetworkLoader.Format format;
+    private final StageTimings timings;
+    private OsmImportOptions osmOptions = new OsmImportOptions();
+
+    /**
+     * @param networkPath The path to the network file
+     * @param coordinateSystem The coordinate system of the network stored in the file
+     * @param format The format of the file
+     */
+    public NetworkImportTask(String networkPath, String coordinateSystem, NetworkLoader.Format format) {
+        this.networkPath = networkPath;
+        this.coordinateSystem = coordinateSystem;
+        this.format = format;
+        this.timings = new StageTimings("Import of " + new File(networkPath).getName());
+    }
+
+    /**
+     * @param osmOptions The highway types to import and the area to crop to, for OpenStreetMap files
+     */
+    public void setOsmOptions(OsmImportOptions osmOptions) {
+        this.osmOptions = osmOptions;
+    }
+
+    @Override
+    protected ExtendedNetwork call() throws Exception {
+        NetworkLoader loader = new NetworkLoader(this.networkPath, this.coordinateSystem, this.format, this.timings);
+        loader.setProgress((message, bytesRead, totalBytes) -> {
+            updateProgress(bytesRead, totalBytes);
+            updateMessage(message);
+        });
+        loader.setCancelled(this::isCancelled);
+        loader.setOsmOptions(this.osmOptions);
+        Network network = loader.load();
+        if (network == null) {
+            return null;
+        }
+
+        updateMessage("Building network model: " + network.getNodes().size() + " nodes, " + network.getLinks().size() + " links");
+        ExtendedNetwork extendedNetwork = this.timings.time("build",
+                () -> new ExtendedNetwork(network, this.networkPath, loader.getCoordinateSystem()));
+        extendedNetwork.getAttributeSchema().merge(loader.getSchema());
+        return extendedNetwork;
+    }
+
+    /**
+     * @return The durations of the parse and build stages; the render stage is added by the caller once the network is
+     * attached to the view
+     */
+    public StageTimings getTimings() {
+        return this.timings;
+    }
+
+    /**
+     * @return The path to the imported file
+     */
+    public String getNetworkPath() {
+        return this.networkPath;
+    }
+}
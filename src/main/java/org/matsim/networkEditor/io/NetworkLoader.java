@@ -0,0 +1,282 @@
+package org.matsim.networkEditor.io;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.function.BooleanSupplier;
+import java.util.function.IntSupplier;
+import java.util.zip.GZIPInputStream;
+
+import org.matsim.api.core.v01.network.Network;
+import org.matsim.core.network.NetworkUtils;
+import org.matsim.core.utils.io.OsmNetworkReader;
+import org.matsim.networkEditor.elements.AttributeSchema;
+import org.matsim.networkEditor.elements.CompactNetwork;
+import org.matsim.networkEditor.utils.CachedTransformation;
+import org.matsim.networkEditor.utils.StageTimings;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Reads a network file into a MATSim network with coordinates in WGS84, the way the editor holds networks. Shared by
+ * the import of the editor, which reports the progress and can be cancelled, and by the headless mode, so it must not
+ * depend on JavaFX
+ */
+public class NetworkLoader {
+    private static final Logger logger = LoggerFactory.getLogger(NetworkLoader.class);
+
+    /** The file formats that can be read */
+    public enum Format {
+        /** MATSim network.xml, optionally gzipped */
+        MATSIM,
+        /** OpenStreetMap .osm xml */
+        OSM,
+        /** OpenStreetMap .osm.pbf, see {@link OsmPbfReader} */
+        OSM_PBF,
+        /** Binary network snapshot (.mnet), see {@link NetworkSnapshot} */
+        SNAPSHOT;
+
+        /**
+         * @param path The path to a network file
+         * @return The format of the file, guessed from its ending
+         */
+        public static Format of(String path) {
+            if (path.endsWith(NetworkSnapshot.EXTENSION)) {
+                return SNAPSHOT;
+            }
+            if (path.endsWith(".pbf")) {
+                return OSM_PBF;
+            }
+            return path.endsWith(".osm") || path.endsWith(".osm.gz") ? OSM : MATSIM;
+        }
+    }
+
+    /**
+     * Receives the progress of the reading
+     */
+    public interface Progress {
+        /**
+         * @param message The description of what is being done
+         * @param bytesRead The number of bytes read from the file so far
+         * @param totalBytes The size of the file
+         */
+        void update(String message, long bytesRead, long totalBytes);
+    }
+
+    private final String networkPath;
+    private final String coordinateSystem;
+    private final Format format;
+    private final StageTimings timings;
+    private Progress progress = (message, bytesRead, totalBytes) -> { };
+    private BooleanSupplier cancelled = () -> false;
+    private OsmImportOptions osmOptions = new OsmImportOptions();
+    private AttributeSchema schema = null;
+    private String networkCoordinateSystem = null;
+
+    /**
+     * @param networkPath The path to the network file
+     * @param coordinateSystem The coordinate system of the network stored in the file
+     * @param format The format of the file
+     * @param timings The timings to record the stages of the reading in
+     */
+    public NetworkLoader(String networkPath, String coordinateSystem, Format format, StageTimings timings) {
+        this.networkPath = networkPath;
+        this.coordinateSystem = coordinateSystem;
+        this.format = format;
+        this.timings = timings;
+    }
+
+    /**
+     * @param progress Receives the progress of the reading, on the reading thread
+     */
+    public void setProgress(Progress progress) {
+        this.progress = progress;
+    }
+
+    /**
+     * @param cancelled Tells whether the reading should stop, asked between two reads from the file
+     */
+    public void setCancelled(BooleanSupplier cancelled) {
+        this.cancelled = cancelled;
+    }
+
+    /**
+     * @param osmOptions The highway types to import and the area to crop to, applied while OpenStreetMap files are
+     *                   parsed; all highway types and the whole file by default
+     */
+    public void setOsmOptions(OsmImportOptions osmOptions) {
+        this.osmOptions = osmOptions;
+    }
+
+    /**
+     * Reads the network file
+     * @return The network, with coordinates in WGS84, or null if the reading was cancelled
+     * @throws IOException If the file cannot be read
+     */
+    public Network load() throws IOException {
+        File file = new File(this.networkPath);
+        long totalBytes = file.length();
+        this.progress.update("Reading " + file.getName(), 0, totalBytes);
+
+        Network network;
+        this.networkCoordinateSystem = this.coordinateSystem;
+        if (this.format == Format.SNAPSHOT) {
+            // Snapshots are mapped into memory, there is nothing to parse and no progress to report while reading
+            this.timings.start("map");
+            CompactNetwork compactNetwork;
+            try {
+                compactNetwork = NetworkSnapshot.read(this.networkPath);
+            } finally {
+                this.timings.stop();
+            }
+            if (this.cancelled.getAsBoolean()) {
+                return null;
+            }
+            // The snapshot knows the coordinate system the network was stored with
+            if (compactNetwork.getCoordinateSystem() != null) {
+                this.networkCoordinateSystem = compactNetwork.getCoordinateSystem();
+            }
+            this.progress.update("Creating " + compactNetwork.getNodeCount() + " nodes and " + compactNetwork.getLinkCount()
+                    + " links", totalBytes, totalBytes);
+            network = this.timings.time("materialize", compactNetwork::moveToNetwork);
+            this.schema = compactNetwork.getSchema();
+        } else if (this.format == Format.OSM) {
+            Network osmNetwork = NetworkUtils.createNetwork();
+            this.schema = new AttributeSchema();
+            this.timings.start("parse");
+            try (InputStream in = openStream(file, totalBytes,
+                    () -> osmNetwork.getNodes().size(), () -> osmNetwork.getLinks().size())) {
+                newOsmNetworkReader(osmNetwork).parse(in);
+            } catch (RuntimeException | IOException e) {
+                // The reader wraps the exception thrown by the stream on cancellation
+                if (this.cancelled.getAsBoolean()) {
+                    logger.info("Reading of {} cancelled", this.networkPath);
+                    return null;
+                }
+                throw e;
+            } finally {
+                this.timings.stop();
+            }
+            network = osmNetwork;
+        } else if (this.format == Format.OSM_PBF) {
+            // The blocks of the file are decoded in parallel, straight into the compact model
+            CompactNetwork compactNetwork;
+            this.timings.start("parse");
+            try {
+                compactNetwork = new OsmPbfReader(this.osmOptions, this.coordinateSystem)
+                        .read(pass -> openPbfStream(file, totalBytes, pass));
+            } catch (IOException e) {
+                if (this.cancelled.getAsBoolean()) {
+                    logger.info("Reading of {} cancelled", this.networkPath);
+                    return null;
+                }
+                throw e;
+            } finally {
+                this.timings.stop();
+            }
+            this.progress.update("Creating " + compactNetwork.getNodeCount() + " nodes and " + compactNetwork.getLinkCount()
+                    + " links", totalBytes, totalBytes);
+            network = this.timings.time("materialize", compactNetwork::moveToNetwork);
+            this.schema = compactNetwork.getSchema();
+        } else {
+            // MATSim files are streamed into the compact model first, which keeps the reading phase free of the
+            // MATSim object graph and of the parser's validation, and the network objects are created in one go
+            // afterwards, freeing the compact model on the way
+            CompactNetwork compactNetwork = new CompactNetwork();
+            this.timings.start("parse");
+            try (InputStream in = openStream(file, totalBytes, compactNetwork::getNodeCount, compactNetwork::getLinkCount)) {
+                new CompactNetworkReader(this.coordinateSystem).read(in, compactNetwork);
+            } catch (IOException e) {
+                if (this.cancelled.getAsBoolean()) {
+                    logger.info("Reading of {} cancelled", this.networkPath);
+                    return null;
+                }
+                throw e;
+            } finally {
+                this.timings.stop();
+            }
+            this.progress.update("Creating " + compactNetwork.getNodeCount() + " nodes and " + compactNetwork.getLinkCount()
+                    + " links", totalBytes, totalBytes);
+            network = this.timings.time("materialize", compactNetwork::moveToNetwork);
+            this.schema = compactNetwork.getSchema();
+        }
+        logger.info("{} nodes and {} links read from {}", network.getNodes().size(), network.getLinks().size(), this.networkPath);
+        return network;
+    }
+
+    /**
+     * Opens the file for reading, decompressing .gz files and counting the bytes read from disk for the progress
+     * @param file The network file
+     * @param totalBytes The size of the file
+     * @param nodeCount The number of nodes parsed so far
+     * @param linkCount The number of links parsed so far
+     * @return The stream to parse the network from
+     * @throws IOException If the file cannot be opened
+     */
+    private InputStream openStream(File file, long totalBytes, IntSupplier nodeCount, IntSupplier linkCount) throws IOException {
+        InputStream in = new ProgressInputStream(new FileInputStream(file), bytesRead -> {
+            // Called on the reading thread, between two reads of the parser, so the network is not being modified
+            this.progress.update(String.format("Read %.1f of %.1f MB: %d nodes, %d links", bytesRead / 1e6,
+                    totalBytes / 1e6, nodeCount.getAsInt(), linkCount.getAsInt()), bytesRead, totalBytes);
+        }, this.cancelled);
+        in = new BufferedInputStream(in, 1 << 16);
+        if (file.getName().endsWith(".gz")) {
+            in = new GZIPInputStream(in, 1 << 16);
+        }
+        return in;
+    }
+
+    /**
+     * Opens a .osm.pbf file for one of the passes of the reader, reporting the progress of both passes as one
+     * @param file The network file
+     * @param totalBytes The size of the file
+     * @param pass The pass, counted from 0
+     * @return The stream to read the pass from
+     * @throws IOException If the file cannot be opened
+     */
+    private InputStream openPbfStream(File file, long totalBytes, int pass) throws IOException {
+        String elements = OsmPbfReader.passElements(this.osmOptions, pass);
+        long total = OsmPbfReader.PASSES * totalBytes;
+        InputStream in = new ProgressInputStream(new FileInputStream(file), bytesRead ->
+                this.progress.update(String.format("Reading the %s: %.1f of %.1f MB", elements, bytesRead / 1e6,
+                        totalBytes / 1e6), pass * totalBytes + bytesRead, total), this.cancelled);
+        return new BufferedInputStream(in, 1 << 16);
+    }
+
+    /**
+     * Creates the reader of .osm xml files, keeping only the highway types to import and, if there is one, the ways
+     * with a node in the area to crop to
+     * @param osmNetwork The network to read into
+     * @return The reader
+     */
+    private OsmNetworkReader newOsmNetworkReader(Network osmNetwork) {
+        OsmNetworkReader reader = new OsmNetworkReader(osmNetwork, CachedTransformation.toWgs84(this.coordinateSystem), false);
+        for (String type : this.osmOptions.getHighwayTypes()) {
+            OsmImportOptions.HighwayDefaults defaults = OsmImportOptions.HIGHWAY_DEFAULTS.get(type);
+            reader.setHighwayDefaults(defaults.getHierarchy(), type, defaults.getLanesPerDirection(),
+                    defaults.getFreespeed(), defaults.getFreespeedFactor(), defaults.getLaneCapacity(), defaults.isOneway());
+        }
+        double[] area = this.osmOptions.getArea();
+        if (area != null) {
+            // Given as the north west and south east corners; the lowest hierarchy keeps all the selected types
+            reader.setHierarchyLayer(area[3], area[0], area[1], area[2], 6);
+        }
+        return reader;
+    }
+
+    /**
+     * @return The custom attributes found in the file, once it is read
+     */
+    public AttributeSchema getSchema() {
+        return this.schema;
+    }
+
+    /**
+     * @return The coordinate system of the network, once it is read: the one stored in a snapshot, otherwise the given one
+     */
+    public String getCoordinateSystem() {
+        return this.networkCoordinateSystem;
+    }
+}
@@ -0,0 +1,104 @@
+package org.matsim.networkEditor.io;
+
+import java.io.File;
+
+import javafx.concurrent.Task;
+import org.matsim.api.core.v01.network.Link;
+import org.matsim.api.core.v01.network.Network;
+import org.matsim.api.core.v01.network.Node;
+import org.matsim.networkEditor.algorithms.NetworkMerge;
+import org.matsim.networkEditor.elements.AttributeSchema;
+import org.matsim.networkEditor.elements.CompactNetwork;
+import org.matsim.networkEditor.elements.NetworkModel;
+import org.matsim.networkEditor.utils.StageTimings;
+
+/**
+ * Background task reading a second network file and merging it into the network of the editor. The file is read into
+ * the compact model and matched against copies of the arrays of nodes and links of the network, taken under the read
+ * lock, so the network can still be edited while the task runs. The plan is then applied on the task thread as one
+ * batch, and the view follows through the change events of the network
+ */
+public class NetworkMergeTask extends Task<NetworkMerge.Plan> {
+    private final String networkPath;
+    private final String coordinateSystem;
+    private final NetworkMerge merge;
+    private final NetworkModel model;
+    private final StageTimings timings;
+    private AttributeSchema schema = null;
+    private int incomingLinks = 0;
+    private int added = 0;
+
+    /**
+     * @param networkPath The path to the network file to merge, a MATSim network, optionally gzipped, or a snapshot
+     * @param coordinateSystem The coordinate system of the network stored in the file, snapshots store their own
+     * @param merge The settings of the merge
+     * @param model The network to merge into
+     */
+    public NetworkMergeTask(String networkPath, String coordinateSystem, NetworkMerge merge, NetworkModel model) {
+        this.networkPath = networkPath;
+        this.coordinateSystem = coordinateSystem;
+        this.merge = merge;
+        this.model = model;
+        this.timings = new StageTimings("Merge of " + new File(networkPath).getName());
+    }
+
+    @Override
+    protected NetworkMerge.Plan call() throws Exception {
+        updateMessage("Reading " + new File(this.networkPath).getName());
+        this.timings.start("read");
+        CompactNetwork incoming;
+        try {
+            incoming = this.networkPath.endsWith(NetworkSnapshot.EXTENSION) ? NetworkSnapshot.read(this.networkPath)
+                    : new CompactNetworkReader(this.coordinateSystem).read(this.networkPath);
+        } finally {
+            this.timings.stop();
+        }
+        if (isCancelled()) {
+            return null;
+        }
+        this.schema = incoming.getSchema();
+        this.incomingLinks = incoming.getLinkCount();
+        Network network = this.model.getNetwork();
+        Node[] nodes = this.model.read(() -> network.getNodes().values().toArray(new Node[0]));
+        Link[] links = this.model.read(() -> network.getLinks().values().toArray(new Link[0]));
+        updateMessage("Matching " + incoming.getNodeCount() + " nodes to " + nodes.length + " nodes");
+        NetworkMerge.Plan plan = this.timings.time("match", () -> this.merge.plan(incoming, nodes, links,
+                network.getFactory()));
+        if (isCancelled()) {
+            return null;
+        }
+        // Waits for a batch of another thread, if one is open
+        updateMessage("Adding " + plan.getAddedNodes().size() + " nodes and " + plan.getAddedLinks().size() + " links");
+        String description = "merge " + new File(this.networkPath).getName();
+        this.added = this.timings.time("apply", () -> this.model.merge(description, plan));
+        return plan;
+    }
+
+    /**
+     * @return The custom attributes of the merged network, once it is read
+     */
+    public AttributeSchema getSchema() {
+        return this.schema;
+    }
+
+    /**
+     * @return The number of links of the merged network, once it is read
+     */
+    public int getIncomingLinks() {
+        return this.incomingLinks;
+    }
+
+    /**
+     * @return The number of nodes and links added to the network, once the merge is applied
+     */
+    public int getAdded() {
+        return this.added;
+    }
+
+    /**
+     * @return The durations of the reading, matching and applying stages
+     */
+    public StageTimings getTimings() {
+        return this.timings;
+    }
+}
@@ -0,0 +1,337 @@
+package org.matsim.networkEditor.io;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.matsim.networkEditor.elements.CompactNetwork;
+
+/**
+ * Versioned binary snapshot of a network (.mnet). A snapshot stores a {@link CompactNetwork} column by column: the
+ * coordinates and link values as raw doubles, the nodes of the links by their index and the modes through a table of the
+ * distinct mode strings. Reading maps the file into memory and copies the columns in bulk, there is no parsing involved.
+ * The coordinates are stored as they are held by the editor (WGS84), the coordinate system of the network is stored
+ * along with the capacity period, the lane width, the cell size and all custom attributes.
+ *
+ * <p>Layout, big-endian: magic, version, header (name, coordinate system, capacity period, lane width, cell size), network
+ * attributes, node count, node ids, x column, y column, z flag and z column if the flag is set (since version 2), node
+ * attribute columns, link count, mode table, link ids, from,
+ * to, length, freespeed, capacity, lanes and mode columns, link attribute columns, end marker. Strings are written as
+ * their UTF-8 length followed by the bytes, a length of -1 stands for null</p>
+ */
+public class NetworkSnapshot {
+    /** The file ending of network snapshots */
+    public static final String EXTENSION = ".mnet";
+
+    private static final int MAGIC = 0x4D4E4554; // "MNET"
+    private static final int END_MARKER = 0x454E4421; // "END!"
+    private static final int VERSION = 2;
+
+    private NetworkSnapshot() {
+    }
+
+    /**
+     * Returns the path of the snapshot belonging to a network file, which has the name of the file with the
+     * .xml/.xml.gz/.gz ending replaced by .mnet and lies in the same directory
+     * @param networkPath The path to the network file
+     * @return The path to the snapshot
+     */
+    public static String snapshotPathFor(String networkPath) {
+        String base = networkPath;
+        for (String ending : new String[] {".gz", ".xml", ".osm"}) {
+            if (base.endsWith(ending)) {
+                base = base.substring(0, base.length() - ending.length());
+            }
+        }
+        return base + EXTENSION;
+    }
+
+    /**
+     * Writes a network to a snapshot file, an existing file is replaced
+     * @param network The network to write
+     * @param path The path to the snapshot file
+     * @throws IOException If the file cannot be written
+     */
+    public static void write(CompactNetwork network, String path) throws IOException {
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(path), 1 << 16))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            writeString(out, network.getName());
+            writeString(out, network.getCoordinateSystem());
+            out.writeDouble(network.getCapacityPeriod());
+            out.writeDouble(network.getEffectiveLaneWidth());
+            out.writeDouble(network.getEffectiveCellSize());
+
+            Map<String, String> networkAttributes = network.getNetworkAttributeValues();
+            out.writeInt(networkAttributes.size());
+            for (Map.Entry<String, String> attribute : networkAttributes.entrySet()) {
+                writeString(out, attribute.getKey());
+                writeString(out, network.getSchema().getNetworkAttributes().get(attribute.getKey()));
+                writeString(out, attribute.getValue());
+            }
+
+            int nodeCount = network.getNodeCount();
+            out.writeInt(nodeCount);
+            for (int i = 0; i < nodeCount; i++) {
+                writeString(out, network.getNodeId(i));
+            }
+            for (int i = 0; i < nodeCount; i++) {
+                out.writeDouble(network.getNodeX(i));
+            }
+            for (int i = 0; i < nodeCount; i++) {
+                out.writeDouble(network.getNodeY(i));
+            }
+            out.writeBoolean(network.hasNodeZ());
+            if (network.hasNodeZ()) {
+                for (int i = 0; i < nodeCount; i++) {
+                    out.writeDouble(network.getNodeZ(i));
+                }
+            }
+            Map<String, String> nodeAttributes = network.getSchema().getNodeAttributes();
+            out.writeInt(nodeAttributes.size());
+            for (Map.Entry<String, String> attribute : nodeAttributes.entrySet()) {
+                writeString(out, attribute.getKey());
+                writeString(out, attribute.getValue());
+                for (int i = 0; i < nodeCount; i++) {
+                    writeString(out, network.getNodeAttribute(i, attribute.getKey()));
+                }
+            }
+
+            int linkCount = network.getLinkCount();
+            out.writeInt(linkCount);
+            // Only a handful of distinct mode combinations exist in a network, the links refer to them by index
+            HashMap<String, Integer> modeIndices = new HashMap<>();
+            ArrayList<String> modeTable = new ArrayList<>();
+            int[] linkModes = new int[linkCount];
+            for (int i = 0; i < linkCount; i++) {
+                linkModes[i] = modeIndices.computeIfAbsent(network.getLinkModes(i), modes -> {
+                    modeTable.add(modes);
+                    return modeTable.size() - 1;
+                });
+            }
+            out.writeInt(modeTable.size());
+            for (String modes : modeTable) {
+                writeString(out, modes);
+            }
+            for (int i = 0; i < linkCount; i++) {
+                writeString(out, network.getLinkId(i));
+            }
+            for (int i = 0; i < linkCount; i++) {
+                out.writeInt(network.getLinkFrom(i));
+            }
+            for (int i = 0; i < linkCount; i++) {
+                out.writeInt(network.getLinkTo(i));
+            }
+            for (int i = 0; i < linkCount; i++) {
+                out.writeDouble(network.getLinkLength(i));
+            }
+            for (int i = 0; i < linkCount; i++) {
+                out.writeDouble(network.getLinkFreespeed(i));
+            }
+            for (int i = 0; i < linkCount; i++) {
+                out.writeDouble(network.getLinkCapacity(i));
+            }
+            for (int i = 0; i < linkCount; i++) {
+                out.writeDouble(network.getLinkLanes(i));
+            }
+            for (int i = 0; i < linkCount; i++) {
+                out.writeInt(linkModes[i]);
+            }
+            Map<String, String> linkAttributes = network.getSchema().getLinkAttributes();
+            out.writeInt(linkAttributes.size());
+            for (Map.Entry<String, String> attribute : linkAttributes.entrySet()) {
+                writeString(out, attribute.getKey());
+                writeString(out, attribute.getValue());
+                for (int i = 0; i < linkCount; i++) {
+                    writeString(out, network.getLinkAttribute(i, attribute.getKey()));
+                }
+            }
+            out.writeInt(END_MARKER);
+        }
+    }
+
+    /**
+     * Reads a snapshot file by mapping it into memory
+     * @param path The path to the snapshot file
+     * @return The network stored in the snapshot
+     * @throws IOException If the file cannot be read, is not a snapshot, has an unsupported version or is truncated
+     */
+    public static CompactNetwork read(String path) throws IOException {
+        try (FileChannel channel = FileChannel.open(Paths.get(path), StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new IOException("Snapshot " + path + " is too large to be mapped");
+            }
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (buffer.remaining() < 8 || buffer.getInt() != MAGIC) {
+                throw new IOException(path + " is not a network snapshot");
+            }
+            int version = buffer.getInt();
+            if (version < 1 || version > VERSION) {
+                throw new IOException("Unsupported snapshot version " + version + " of " + path + ", expected " + VERSION);
+            }
+            return read(buffer, version);
+        } catch (BufferUnderflowException | IndexOutOfBoundsException | IllegalArgumentException e) {
+            throw new IOException("Snapshot " + path + " is truncated or corrupt", e);
+        }
+    }
+
+    /**
+     * Reads the contents of a snapshot following its version
+     * @param buffer The mapped file, positioned after the version
+     * @param version The version of the snapshot, snapshots before version 2 have no z coordinates
+     * @return The network stored in the snapshot
+     * @throws IOException If the end marker is missing
+     */
+    private static CompactNetwork read(MappedByteBuffer buffer, int version) throws IOException {
+        String name = readString(buffer);
+        String coordinateSystem = readString(buffer);
+        double capacityPeriod = buffer.getDouble();
+        double laneWidth = buffer.getDouble();
+        double cellSize = buffer.getDouble();
+        int networkAttributeCount = buffer.getInt();
+        String[][] networkAttributes = new String[networkAttributeCount][];
+        for (int i = 0; i < networkAttributeCount; i++) {
+            networkAttributes[i] = new String[] {readString(buffer), readString(buffer), readString(buffer)};
+        }
+
+        int nodeCount = buffer.getInt();
+        String[] nodeIds = new String[nodeCount];
+        for (int i = 0; i < nodeCount; i++) {
+            nodeIds[i] = readString(buffer);
+        }
+        double[] nodeX = readDoubles(buffer, nodeCount);
+        double[] nodeY = readDoubles(buffer, nodeCount);
+        double[] nodeZ = version >= 2 && buffer.get() != 0 ? readDoubles(buffer, nodeCount) : null;
+        // The link count is only known after the node attributes, so the network is created with the nodes first
+        CompactNetwork network = new CompactNetwork(nodeCount, 0);
+        network.setName(name);
+        network.setCoordinateSystem(coordinateSystem);
+        network.setCapacityPeriod(capacityPeriod);
+        network.setEffectiveLaneWidth(laneWidth);
+        network.setEffectiveCellSize(cellSize);
+        for (String[] attribute : networkAttributes) {
+            network.setNetworkAttribute(attribute[0], attribute[1], attribute[2]);
+        }
+        for (int i = 0; i < nodeCount; i++) {
+            network.addNode(nodeIds[i], nodeX[i], nodeY[i]);
+            if (nodeZ != null && !Double.isNaN(nodeZ[i])) {
+                network.setNodeZ(i, nodeZ[i]);
+            }
+        }
+        int nodeAttributeCount = buffer.getInt();
+        for (int a = 0; a < nodeAttributeCount; a++) {
+            String attributeName = readString(buffer);
+            String className = readString(buffer);
+            for (int i = 0; i < nodeCount; i++) {
+                String value = readString(buffer);
+                if (value != null) {
+                    network.setNodeAttribute(i, attributeName, className, value);
+                }
+            }
+        }
+
+        int linkCount = buffer.getInt();
+        String[] modeTable = new String[buffer.getInt()];
+        for (int i = 0; i < modeTable.length; i++) {
+            modeTable[i] = readString(buffer);
+        }
+        String[] linkIds = new String[linkCount];
+        for (int i = 0; i < linkCount; i++) {
+            linkIds[i] = readString(buffer);
+        }
+        int[] linkFrom = readInts(buffer, linkCount);
+        int[] linkTo = readInts(buffer, linkCount);
+        double[] linkLength = readDoubles(buffer, linkCount);
+        double[] linkFreespeed = readDoubles(buffer, linkCount);
+        double[] linkCapacity = readDoubles(buffer, linkCount);
+        double[] linkLanes = readDoubles(buffer, linkCount);
+        int[] linkModes = readInts(buffer, linkCount);
+        for (int i = 0; i < linkCount; i++) {
+            network.addLink(linkIds[i], linkFrom[i], linkTo[i], linkLength[i], linkFreespeed[i], linkCapacity[i], linkLanes[i],
+                    modeTable[linkModes[i]]);
+        }
+        int linkAttributeCount = buffer.getInt();
+        for (int a = 0; a < linkAttributeCount; a++) {
+            String attributeName = readString(buffer);
+            String className = readString(buffer);
+            for (int i = 0; i < linkCount; i++) {
+                String value = readString(buffer);
+                if (value != null) {
+                    network.setLinkAttribute(i, attributeName, className, value);
+                }
+            }
+        }
+
+        if (buffer.getInt() != END_MARKER) {
+            throw new IOException("Snapshot is truncated or corrupt, the end marker is missing");
+        }
+        network.trimToSize();
+        return network;
+    }
+
+    /**
+     * Writes a string as its UTF-8 length followed by its bytes
+     * @param out The stream to write to
+     * @param value The string, or null
+     * @throws IOException If writing fails
+     */
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    /**
+     * @param buffer The mapped file
+     * @return The string at the current position, or null
+     */
+    private static String readString(MappedByteBuffer buffer) {
+        int length = buffer.getInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Copies a column of doubles in bulk
+     * @param buffer The mapped file
+     * @param count The number of values
+     * @return The values
+     */
+    private static double[] readDoubles(MappedByteBuffer buffer, int count) {
+        double[] values = new double[count];
+        buffer.asDoubleBuffer().get(values);
+        buffer.position(buffer.position() + count * Double.BYTES);
+        return values;
+    }
+
+    /**
+     * Copies a column of ints in bulk
+     * @param buffer The mapped file
+     * @param count The number of values
+     * @return The values
+     */
+    private static int[] readInts(MappedByteBuffer buffer, int count) {
+        int[] values = new int[count];
+        buffer.asIntBuffer().get(values);
+        buffer.position(buffer.position() + count * Integer.BYTES);
+        return values;
+    }
+}
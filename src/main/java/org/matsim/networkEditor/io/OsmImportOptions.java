@@ -0,0 +1,172 @@
+package org.matsim.networkEditor.io;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * What to take from an OpenStreetMap file when importing it: the highway types that become links and the area to crop
+ * the network to. Both are applied while the file is parsed: ways of other types are dropped as they are read, and the
+ * .osm.pbf reader reads the nodes within the area first, so that it only keeps the ways with a node in the area. Shared
+ * by the readers of .osm xml and .osm.pbf files, with the same link values per highway type as the MATSim OSM reader
+ */
+public class OsmImportOptions {
+    /**
+     * The link values of a highway type
+     */
+    public static final class HighwayDefaults {
+        private final int hierarchy;
+        private final double lanesPerDirection;
+        private final double freespeed;
+        private final double freespeedFactor;
+        private final double laneCapacity;
+        private final boolean oneway;
+
+        /**
+         * @param hierarchy The hierarchy of the type, 1 being the highest
+         * @param lanesPerDirection The number of lanes per direction of a way without a lanes tag
+         * @param freespeed The free speed of a way without a maxspeed tag, in meters per second
+         * @param freespeedFactor The factor the free speed is multiplied with
+         * @param laneCapacity The capacity of one lane, in vehicles per hour
+         * @param oneway True if the ways of the type are one way unless tagged otherwise, otherwise false
+         */
+        private HighwayDefaults(int hierarchy, double lanesPerDirection, double freespeed, double freespeedFactor,
+                                double laneCapacity, boolean oneway) {
+            this.hierarchy = hierarchy;
+            this.lanesPerDirection = lanesPerDirection;
+            this.freespeed = freespeed;
+            this.freespeedFactor = freespeedFactor;
+            this.laneCapacity = laneCapacity;
+            this.oneway = oneway;
+        }
+
+        /**
+         * @return The hierarchy of the type, 1 being the highest
+         */
+        public int getHierarchy() {
+            return this.hierarchy;
+        }
+
+        /**
+         * @return The number of lanes per direction of a way without a lanes tag
+         */
+        public double getLanesPerDirection() {
+            return this.lanesPerDirection;
+        }
+
+        /**
+         * @return The free speed of a way without a maxspeed tag, in meters per second
+         */
+        public double getFreespeed() {
+            return this.freespeed;
+        }
+
+        /**
+         * @return The factor the free speed is multiplied with
+         */
+        public double getFreespeedFactor() {
+            return this.freespeedFactor;
+        }
+
+        /**
+         * @return The capacity of one lane, in vehicles per hour
+         */
+        public double getLaneCapacity() {
+            return this.laneCapacity;
+        }
+
+        /**
+         * @return True if the ways of the type are one way unless tagged otherwise, otherwise false
+         */
+        public boolean isOneway() {
+            return this.oneway;
+        }
+    }
+
+    /** The highway types known to the import, with their link values, ordered by their hierarchy */
+    public static final Map<String, HighwayDefaults> HIGHWAY_DEFAULTS;
+
+    static {
+        LinkedHashMap<String, HighwayDefaults> defaults = new LinkedHashMap<>();
+        defaults.put("motorway", new HighwayDefaults(1, 2, 120.0 / 3.6, 1.0, 2000, true));
+        defaults.put("motorway_link", new HighwayDefaults(1, 1, 80.0 / 3.6, 1.0, 1500, true));
+        defaults.put("trunk", new HighwayDefaults(2, 1, 80.0 / 3.6, 1.0, 2000, false));
+        defaults.put("trunk_link", new HighwayDefaults(2, 1, 50.0 / 3.6, 1.0, 1500, false));
+        defaults.put("primary", new HighwayDefaults(3, 1, 80.0 / 3.6, 1.0, 1500, false));
+        defaults.put("primary_link", new HighwayDefaults(3, 1, 60.0 / 3.6, 1.0, 1500, false));
+        defaults.put("secondary", new HighwayDefaults(4, 1, 30.0 / 3.6, 1.0, 1000, false));
+        defaults.put("tertiary", new HighwayDefaults(5, 1, 25.0 / 3.6, 1.0, 600, false));
+        defaults.put("minor", new HighwayDefaults(6, 1, 20.0 / 3.6, 1.0, 600, false));
+        defaults.put("unclassified", new HighwayDefaults(6, 1, 15.0 / 3.6, 1.0, 600, false));
+        defaults.put("residential", new HighwayDefaults(6, 1, 15.0 / 3.6, 1.0, 600, false));
+        defaults.put("living_street", new HighwayDefaults(6, 1, 10.0 / 3.6, 1.0, 300, false));
+        HIGHWAY_DEFAULTS = Collections.unmodifiableMap(defaults);
+    }
+
+    private final LinkedHashSet<String> highwayTypes = new LinkedHashSet<>(HIGHWAY_DEFAULTS.keySet());
+    private double[] area = null;
+
+    /**
+     * Sets the highway types that become links, the ways of other types are skipped
+     * @param highwayTypes The highway types, each one of {@link #HIGHWAY_DEFAULTS}
+     * @throws IllegalArgumentException If a type is not known or no type is given
+     */
+    public void setHighwayTypes(Set<String> highwayTypes) {
+        for (String type : highwayTypes) {
+            if (!HIGHWAY_DEFAULTS.containsKey(type)) {
+                throw new IllegalArgumentException("Unknown highway type: " + type);
+            }
+        }
+        if (highwayTypes.isEmpty()) {
+            throw new IllegalArgumentException("No highway type given");
+        }
+        this.highwayTypes.clear();
+        this.highwayTypes.addAll(highwayTypes);
+    }
+
+    /**
+     * @return The highway types that become links
+     */
+    public Set<String> getHighwayTypes() {
+        return Collections.unmodifiableSet(this.highwayTypes);
+    }
+
+    /**
+     * @param highwayType The value of the highway tag of a way
+     * @return The link values of the type, or null if the ways of the type are skipped
+     */
+    public HighwayDefaults getDefaults(String highwayType) {
+        return highwayType != null && this.highwayTypes.contains(highwayType) ? HIGHWAY_DEFAULTS.get(highwayType) : null;
+    }
+
+    /**
+     * Sets the area to crop the network to: nodes outside of it are dropped along with the parts of the ways leading
+     * to them
+     * @param minX The minimum longitude of the area
+     * @param minY The minimum latitude of the area
+     * @param maxX The maximum longitude of the area
+     * @param maxY The maximum latitude of the area
+     */
+    public void setArea(double minX, double minY, double maxX, double maxY) {
+        this.area = new double[]{minX, minY, maxX, maxY};
+    }
+
+    /**
+     * @return The area to crop the network to, as minimum longitude, minimum latitude, maximum longitude and maximum
+     * latitude, or null if the whole file is imported
+     */
+    public double[] getArea() {
+        return this.area == null ? null : this.area.clone();
+    }
+
+    /**
+     * @param x The longitude of a node
+     * @param y The latitude of a node
+     * @return True if the node lies within the area to crop to, or if there is none, otherwise false
+     */
+    public boolean isInArea(double x, double y) {
+        return this.area == null || (x >= this.area[0] && y >= this.area[1] && x <= this.area[2] && y <= this.area[3]);
+    }
+}
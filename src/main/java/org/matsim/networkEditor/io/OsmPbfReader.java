@@ -0,0 +1,1168 @@
+package org.matsim.networkEditor.io;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.function.Consumer;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+import org.matsim.networkEditor.elements.CompactNetwork;
+import org.matsim.networkEditor.utils.CachedTransformation;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Reader for OpenStreetMap .osm.pbf files, decoding the blocks of the file in parallel straight into a
+ * {@link CompactNetwork}. The file is read twice. Without an area to crop to, the first pass collects the ways of the
+ * highway types to import and the second the coordinates of the nodes of these ways. With an area, the first pass
+ * collects the nodes within the area and the second only keeps the ways of these types that have a node in the area,
+ * so that the ways of the rest of the file are dropped as soon as their block is decoded. The ways are then split into
+ * links at the nodes they share with other ways, with the link values of their highway type and their lanes, maxspeed,
+ * oneway and junction tags; a closed part of a way, e.g. a roundabout, is also split at its middle node. The blocks are read from the file on the calling thread and decoded on a
+ * pool, in order, with a bounded number of blocks in flight. Blocks compressed with zlib or not at all are supported,
+ * as written by the common tools
+ */
+public class OsmPbfReader {
+    private static final Logger logger = LoggerFactory.getLogger(OsmPbfReader.class);
+    /** The number of times the file is read */
+    public static final int PASSES = 2;
+    /** The maximum sizes of a block header and of a decompressed block, as given by the format */
+    private static final int MAX_HEADER_SIZE = 64 * 1024;
+    private static final int MAX_BLOCK_SIZE = 32 * 1024 * 1024;
+    private static final Set<String> SUPPORTED_FEATURES = Set.of("OsmSchema-V0.6", "DenseNodes");
+    private static final String MODES = "car";
+
+    /**
+     * Opens the file for one of the passes over it
+     */
+    @FunctionalInterface
+    public interface StreamSource {
+        /**
+         * @param pass The pass, counted from 0
+         * @return The stream of the file
+         * @throws IOException If the file cannot be opened
+         */
+        InputStream open(int pass) throws IOException;
+    }
+
+    private final OsmImportOptions options;
+    private final CachedTransformation transformation;
+    private final ForkJoinPool pool;
+    private final int maxPendingBlocks;
+
+    /**
+     * @param options The highway types to import and the area to crop to
+     * @param coordinateSystem The coordinate system of the network, in which the lengths of the links are measured
+     */
+    public OsmPbfReader(OsmImportOptions options, String coordinateSystem) {
+        this(options, coordinateSystem, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * @param options The highway types to import and the area to crop to
+     * @param coordinateSystem The coordinate system of the network, in which the lengths of the links are measured
+     * @param pool The pool the blocks are decoded on
+     */
+    public OsmPbfReader(OsmImportOptions options, String coordinateSystem, ForkJoinPool pool) {
+        this.options = options;
+        this.transformation = CachedTransformation.fromWgs84(coordinateSystem);
+        this.pool = pool;
+        this.maxPendingBlocks = 2 * pool.getParallelism();
+    }
+
+    /**
+     * Reads a .osm.pbf file
+     * @param path The path to the file
+     * @return The network, with coordinates in WGS84
+     * @throws IOException If the file cannot be read or is not a valid .osm.pbf file
+     */
+    public CompactNetwork read(String path) throws IOException {
+        return read(pass -> new BufferedInputStream(new FileInputStream(path), 1 << 16));
+    }
+
+    /**
+     * Reads a .osm.pbf file, opening it once per pass
+     * @param source Opens the file
+     * @return The network, with coordinates in WGS84
+     * @throws IOException If the file cannot be read or is not a valid .osm.pbf file
+     */
+    public CompactNetwork read(StreamSource source) throws IOException {
+        long start = System.nanoTime();
+        List<Way> ways = new ArrayList<>();
+        LongIntMap slots = new LongIntMap(1 << 16);
+        NodeCoordinates coordinates = new NodeCoordinates(1 << 16);
+        if (this.options.getArea() != null) {
+            // The nodes within the area come first, the ways without any of them are then dropped block by block
+            try (InputStream in = source.open(0)) {
+                decodeBlocks(in, this::decodeNodesInArea, block -> {
+                    for (int i = 0; i < block.size; i++) {
+                        coordinates.set(slots.add(block.ids[i]), block.xs[i], block.ys[i]);
+                    }
+                });
+            }
+            try (InputStream in = source.open(1)) {
+                decodeBlocks(in, data -> decodeWays(data, slots), ways::addAll);
+            }
+        } else {
+            try (InputStream in = source.open(0)) {
+                decodeBlocks(in, data -> decodeWays(data, null), ways::addAll);
+            }
+            for (Way way : ways) {
+                for (long ref : way.refs) {
+                    slots.add(ref);
+                }
+            }
+            coordinates.ensureSize(slots.size());
+            try (InputStream in = source.open(1)) {
+                decodeBlocks(in, data -> decodeNodes(data, (id, x, y) -> {
+                    int slot = slots.get(id);
+                    if (slot >= 0) {
+                        coordinates.set(slot, x, y);
+                    }
+                }), count -> { });
+            }
+        }
+        long passesRead = System.nanoTime();
+
+        // A node used more than once, i.e. shared by several ways or ending a way, ends a link
+        int[] uses = new int[slots.size()];
+        for (Way way : ways) {
+            for (int i = 0; i < way.refs.length; i++) {
+                int slot = slots.get(way.refs[i]);
+                if (slot >= 0) {
+                    uses[slot] += i == 0 || i == way.refs.length - 1 ? 2 : 1;
+                }
+            }
+        }
+
+        // Nodes that are not in the file, or outside the area when the ways are read first, keep NaN coordinates
+        double[] xs = Arrays.copyOf(coordinates.xs, slots.size());
+        double[] ys = Arrays.copyOf(coordinates.ys, slots.size());
+        CompactNetwork network = buildNetwork(ways, slots, uses, xs, ys);
+        logger.info("{} ways, {} nodes read, {} nodes and {} links in {}ms (reading {}ms)", ways.size(), slots.size(),
+                network.getNodeCount(), network.getLinkCount(), (System.nanoTime() - start) / 1000000,
+                (passesRead - start) / 1000000);
+        return network;
+    }
+
+    /**
+     * @param options The options of the reading
+     * @param pass The pass, counted from 0
+     * @return The elements the pass reads, "nodes" or "ways"
+     */
+    public static String passElements(OsmImportOptions options, int pass) {
+        return (pass == 0) == (options.getArea() != null) ? "nodes" : "ways";
+    }
+
+    /**
+     * Splits the ways into links at the nodes used more than once, and at the nodes that are missing, e.g. because
+     * they lie outside the area to crop to
+     * @param ways The ways to import
+     * @param slots The slots of the nodes, by their id
+     * @param uses The number of times each node is used by the ways, by slot
+     * @param xs The longitudes of the nodes, by slot, NaN if the node is missing
+     * @param ys The latitudes of the nodes, by slot, NaN if the node is missing
+     * @return The network
+     */
+    private CompactNetwork buildNetwork(List<Way> ways, LongIntMap slots, int[] uses, double[] xs, double[] ys) {
+        // The lengths are measured in the coordinate system of the network, like those of the links created in the editor
+        double[] projectedXs = new double[xs.length];
+        double[] projectedYs = new double[ys.length];
+        for (int slot = 0; slot < xs.length; slot++) {
+            if (!Double.isNaN(xs[slot])) {
+                projectedXs[slot] = xs[slot];
+                projectedYs[slot] = ys[slot];
+            }
+        }
+        this.transformation.transform(projectedXs, projectedYs);
+
+        LinkBuilder builder = new LinkBuilder(new CompactNetwork(slots.size() / 4, ways.size() * 2), slots, xs, ys);
+        // The nodes of the current part of a way, with the length of the part up to each of them
+        int[] part = new int[16];
+        double[] lengths = new double[16];
+        for (Way way : ways) {
+            String type = builder.network.intern(way.type);
+            String origId = Long.toString(way.id);
+            int count = 0;
+            for (long ref : way.refs) {
+                int slot = slots.get(ref);
+                if (slot < 0 || Double.isNaN(xs[slot])) {
+                    // The way is cut here: the part up to the last node found is kept, the part to the next one dropped
+                    builder.addPart(way, type, origId, part, lengths, count);
+                    count = 0;
+                    continue;
+                }
+                if (count == part.length) {
+                    part = Arrays.copyOf(part, count * 2);
+                    lengths = Arrays.copyOf(lengths, count * 2);
+                }
+                lengths[count] = count == 0 ? 0.0 : lengths[count - 1] + Math.hypot(
+                        projectedXs[slot] - projectedXs[part[count - 1]], projectedYs[slot] - projectedYs[part[count - 1]]);
+                part[count++] = slot;
+                if (count > 1 && uses[slot] > 1) {
+                    builder.addPart(way, type, origId, part, lengths, count);
+                    part[0] = slot;
+                    lengths[0] = 0.0;
+                    count = 1;
+                }
+            }
+        }
+        builder.network.trimToSize();
+        return builder.network;
+    }
+
+    /**
+     * Reads the blocks of the file and decodes the data blocks on the pool, handing the results on in the order of the
+     * blocks in the file. Blocks of unknown types are skipped, as the format requires
+     * @param in The stream of the file
+     * @param decoder Decodes a decompressed data block, on the pool
+     * @param consumer Receives the result of each data block, on the calling thread
+     * @param <T> The type of the result of a block
+     * @throws IOException If the file cannot be read or is not a valid .osm.pbf file
+     */
+    private <T> void decodeBlocks(InputStream in, BlockDecoder<T> decoder, Consumer<T> consumer) throws IOException {
+        DataInputStream data = new DataInputStream(in);
+        ArrayDeque<Future<T>> pending = new ArrayDeque<>();
+        try {
+            while (true) {
+                int headerSize;
+                try {
+                    headerSize = data.readInt();
+                } catch (EOFException e) {
+                    break;
+                }
+                if (headerSize < 0 || headerSize > MAX_HEADER_SIZE) {
+                    throw new IOException("Invalid block header size: " + headerSize);
+                }
+                byte[] header = new byte[headerSize];
+                data.readFully(header);
+                String type = null;
+                int blobSize = -1;
+                ProtoReader headerReader = new ProtoReader(header, 0, header.length);
+                while (headerReader.hasMore()) {
+                    int tag = headerReader.readTag();
+                    if (tag >>> 3 == 1) {
+                        type = headerReader.readString();
+                    } else if (tag >>> 3 == 3) {
+                        blobSize = (int) headerReader.readVarint();
+                    } else {
+                        headerReader.skip(tag);
+                    }
+                }
+                if (blobSize < 0 || blobSize > MAX_BLOCK_SIZE) {
+                    throw new IOException("Invalid block size: " + blobSize);
+                }
+                byte[] blob = new byte[blobSize];
+                data.readFully(blob);
+                if ("OSMHeader".equals(type)) {
+                    checkHeader(inflate(blob));
+                } else if ("OSMData".equals(type)) {
+                    pending.add(this.pool.submit((Callable<T>) () -> decoder.decode(inflate(blob))));
+                    if (pending.size() >= this.maxPendingBlocks) {
+                        consumer.accept(join(pending.poll()));
+                    }
+                }
+            }
+            while (!pending.isEmpty()) {
+                consumer.accept(join(pending.poll()));
+            }
+        } finally {
+            pending.forEach(future -> future.cancel(true));
+        }
+    }
+
+    /**
+     * Decodes a decompressed data block
+     * @param <T> The type of the result
+     */
+    @FunctionalInterface
+    private interface BlockDecoder<T> {
+        /**
+         * @param data The decompressed block
+         * @return The result of the block
+         * @throws IOException If the block is not valid
+         */
+        T decode(byte[] data) throws IOException;
+    }
+
+    /**
+     * Waits for the result of a block
+     * @param future The decoding of the block
+     * @param <T> The type of the result
+     * @return The result
+     * @throws IOException If the block could not be decoded
+     */
+    private static <T> T join(Future<T> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Reading interrupted");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new IOException("Invalid block", e.getCause());
+        }
+    }
+
+    /**
+     * Checks that the file only needs features the reader supports, e.g. that it is not a history file
+     * @param data The decompressed header block
+     * @throws IOException If a required feature is not supported
+     */
+    private static void checkHeader(byte[] data) throws IOException {
+        ProtoReader reader = new ProtoReader(data, 0, data.length);
+        while (reader.hasMore()) {
+            int tag = reader.readTag();
+            if (tag >>> 3 == 4) {
+                String feature = reader.readString();
+                if (!SUPPORTED_FEATURES.contains(feature)) {
+                    throw new IOException("Unsupported feature of the file: " + feature);
+                }
+            } else {
+                reader.skip(tag);
+            }
+        }
+    }
+
+    /**
+     * Decompresses a block
+     * @param blob The block as stored in the file
+     * @return The decompressed block
+     * @throws IOException If the block is compressed in an unsupported way or is not valid
+     */
+    private static byte[] inflate(byte[] blob) throws IOException {
+        ProtoReader reader = new ProtoReader(blob, 0, blob.length);
+        int rawSize = -1;
+        int zlibOffset = -1;
+        int zlibLength = 0;
+        while (reader.hasMore()) {
+            int tag = reader.readTag();
+            switch (tag >>> 3) {
+                case 1:
+                    int length = reader.readLength();
+                    return Arrays.copyOfRange(blob, reader.position - length, reader.position);
+                case 2:
+                    rawSize = (int) reader.readVarint();
+                    break;
+                case 3:
+                    zlibLength = reader.readLength();
+                    zlibOffset = reader.position - zlibLength;
+                    break;
+                case 4:
+                case 6:
+                case 7:
+                    throw new IOException("Unsupported compression of a block: field " + (tag >>> 3));
+                default:
+                    reader.skip(tag);
+            }
+        }
+        if (zlibOffset < 0 || rawSize < 0 || rawSize > MAX_BLOCK_SIZE) {
+            throw new IOException("Invalid block");
+        }
+        byte[] data = new byte[rawSize];
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(blob, zlibOffset, zlibLength);
+            if (inflater.inflate(data) != rawSize) {
+                throw new IOException("Invalid block: fewer bytes than stated");
+            }
+        } catch (DataFormatException e) {
+            throw new IOException("Invalid block", e);
+        } finally {
+            inflater.end();
+        }
+        return data;
+    }
+
+    /**
+     * Collects the ways of a block with a highway type to import, along with their link values
+     * @param data The decompressed block
+     * @param nodes The nodes within the area to crop to, a way is only kept if it has one of them, or null to keep the
+     *              ways anywhere. Only read, by the blocks decoded concurrently
+     * @return The ways
+     */
+    private List<Way> decodeWays(byte[] data, LongIntMap nodes) {
+        Block block = new Block(data);
+        List<Way> ways = new ArrayList<>();
+        for (ProtoReader group : block.groups) {
+            while (group.hasMore()) {
+                int tag = group.readTag();
+                if (tag >>> 3 == 3) {
+                    Way way = decodeWay(block, group.readMessage());
+                    if (way != null && (nodes == null || hasAnyNode(way, nodes))) {
+                        ways.add(way);
+                    }
+                } else {
+                    group.skip(tag);
+                }
+            }
+        }
+        return ways;
+    }
+
+    /**
+     * @param way A way
+     * @param nodes Nodes by their id
+     * @return True if the way has one of the nodes, otherwise false
+     */
+    private static boolean hasAnyNode(Way way, LongIntMap nodes) {
+        for (long ref : way.refs) {
+            if (nodes.get(ref) >= 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @param block The block of the way
+     * @param reader The encoded way
+     * @return The way, or null if it is not of a highway type to import
+     */
+    private Way decodeWay(Block block, ProtoReader reader) {
+        long id = 0;
+        ProtoReader keys = null;
+        ProtoReader values = null;
+        ProtoReader refs = null;
+        while (reader.hasMore()) {
+            int tag = reader.readTag();
+            switch (tag >>> 3) {
+                case 1:
+                    id = reader.readVarint();
+                    break;
+                case 2:
+                    keys = reader.readMessage();
+                    break;
+                case 3:
+                    values = reader.readMessage();
+                    break;
+                case 8:
+                    refs = reader.readMessage();
+                    break;
+                default:
+                    reader.skip(tag);
+            }
+        }
+        if (keys == null || values == null || refs == null) {
+            return null;
+        }
+        String highway = null;
+        String oneway = null;
+        String lanes = null;
+        String maxspeed = null;
+        String junction = null;
+        while (keys.hasMore() && values.hasMore()) {
+            String key = block.string((int) keys.readVarint());
+            int value = (int) values.readVarint();
+            switch (key) {
+                case "highway":
+                    highway = block.string(value);
+                    break;
+                case "oneway":
+                    oneway = block.string(value);
+                    break;
+                case "lanes":
+                    lanes = block.string(value);
+                    break;
+                case "maxspeed":
+                    maxspeed = block.string(value);
+                    break;
+                case "junction":
+                    junction = block.string(value);
+                    break;
+                default:
+            }
+        }
+        OsmImportOptions.HighwayDefaults defaults = this.options.getDefaults(highway);
+        if (defaults == null) {
+            return null;
+        }
+
+        Way way = new Way();
+        way.id = id;
+        way.type = highway;
+        long[] refIds = new long[16];
+        int refCount = 0;
+        long ref = 0;
+        while (refs.hasMore()) {
+            ref += refs.readSignedVarint();
+            if (refCount == refIds.length) {
+                refIds = Arrays.copyOf(refIds, refCount * 2);
+            }
+            refIds[refCount++] = ref;
+        }
+        if (refCount < 2) {
+            return null;
+        }
+        way.refs = Arrays.copyOf(refIds, refCount);
+
+        way.forward = true;
+        way.backward = !defaults.isOneway() && !"roundabout".equals(junction);
+        if (oneway != null) {
+            switch (oneway) {
+                case "yes":
+                case "true":
+                case "1":
+                    way.forward = true;
+                    way.backward = false;
+                    break;
+                case "-1":
+                case "reverse":
+                    way.forward = false;
+                    way.backward = true;
+                    break;
+                case "no":
+                case "false":
+                case "0":
+                    way.forward = true;
+                    way.backward = true;
+                    break;
+                default:
+            }
+        }
+        way.lanes = defaults.getLanesPerDirection();
+        double totalLanes = parseNumber(lanes);
+        if (totalLanes > 0) {
+            // The lanes tag counts the lanes of both directions
+            way.lanes = way.forward && way.backward ? Math.max(1.0, totalLanes / 2) : totalLanes;
+        }
+        double speed = parseNumber(maxspeed);
+        if (speed > 0) {
+            way.freespeed = (maxspeed.contains("mph") ? speed * 1.609344 : speed) / 3.6;
+        } else {
+            way.freespeed = defaults.getFreespeed();
+        }
+        way.freespeed *= defaults.getFreespeedFactor();
+        way.capacity = way.lanes * defaults.getLaneCapacity();
+        return way;
+    }
+
+    /**
+     * @param value The value of a numeric tag, e.g. "2", "50 mph" or "2;3"
+     * @return The leading number of the value, or NaN if there is none
+     */
+    private static double parseNumber(String value) {
+        if (value == null) {
+            return Double.NaN;
+        }
+        int end = 0;
+        while (end < value.length() && (Character.isDigit(value.charAt(end)) || value.charAt(end) == '.')) {
+            end++;
+        }
+        try {
+            return end == 0 ? Double.NaN : Double.parseDouble(value.substring(0, end));
+        } catch (NumberFormatException e) {
+            return Double.NaN;
+        }
+    }
+
+    /**
+     * Collects the nodes of a block that lie within the area to crop to
+     * @param data The decompressed block
+     * @return The nodes
+     */
+    private BlockNodes decodeNodesInArea(byte[] data) {
+        BlockNodes nodes = new BlockNodes();
+        decodeNodes(data, (id, x, y) -> {
+            if (this.options.isInArea(x, y)) {
+                nodes.add(id, x, y);
+            }
+        });
+        return nodes;
+    }
+
+    /**
+     * Hands the nodes of a block over with their coordinates
+     * @param data The decompressed block
+     * @param consumer Receives the nodes, on the thread decoding the block
+     * @return The number of nodes of the block
+     */
+    private static int decodeNodes(byte[] data, NodeConsumer consumer) {
+        Block block = new Block(data);
+        int count = 0;
+        for (ProtoReader group : block.groups) {
+            while (group.hasMore()) {
+                int tag = group.readTag();
+                if (tag >>> 3 == 1) {
+                    // A node on its own
+                    ProtoReader node = group.readMessage();
+                    long id = 0;
+                    long lat = 0;
+                    long lon = 0;
+                    while (node.hasMore()) {
+                        int nodeTag = node.readTag();
+                        if (nodeTag >>> 3 == 1) {
+                            id = node.readSignedVarint();
+                        } else if (nodeTag >>> 3 == 8) {
+                            lat = node.readSignedVarint();
+                        } else if (nodeTag >>> 3 == 9) {
+                            lon = node.readSignedVarint();
+                        } else {
+                            node.skip(nodeTag);
+                        }
+                    }
+                    consumer.accept(id, block.lon(lon), block.lat(lat));
+                    count++;
+                } else if (tag >>> 3 == 2) {
+                    // Dense nodes, with the ids and coordinates in parallel delta coded arrays
+                    ProtoReader dense = group.readMessage();
+                    ProtoReader ids = null;
+                    ProtoReader lats = null;
+                    ProtoReader lons = null;
+                    while (dense.hasMore()) {
+                        int denseTag = dense.readTag();
+                        if (denseTag >>> 3 == 1) {
+                            ids = dense.readMessage();
+                        } else if (denseTag >>> 3 == 8) {
+                            lats = dense.readMessage();
+                        } else if (denseTag >>> 3 == 9) {
+                            lons = dense.readMessage();
+                        } else {
+                            dense.skip(denseTag);
+                        }
+                    }
+                    if (ids == null || lats == null || lons == null) {
+                        continue;
+                    }
+                    long id = 0;
+                    long lat = 0;
+                    long lon = 0;
+                    while (ids.hasMore()) {
+                        id += ids.readSignedVarint();
+                        lat += lats.readSignedVarint();
+                        lon += lons.readSignedVarint();
+                        consumer.accept(id, block.lon(lon), block.lat(lat));
+                        count++;
+                    }
+                } else {
+                    group.skip(tag);
+                }
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Receives a node of a block
+     */
+    @FunctionalInterface
+    private interface NodeConsumer {
+        /**
+         * @param id The id of the node
+         * @param x The longitude of the node
+         * @param y The latitude of the node
+         */
+        void accept(long id, double x, double y);
+    }
+
+    /**
+     * The nodes of a block within the area to crop to
+     */
+    private static final class BlockNodes {
+        private long[] ids = new long[64];
+        private double[] xs = new double[64];
+        private double[] ys = new double[64];
+        private int size = 0;
+
+        /**
+         * @param id The id of the node
+         * @param x The longitude of the node
+         * @param y The latitude of the node
+         */
+        private void add(long id, double x, double y) {
+            if (this.size == this.ids.length) {
+                this.ids = Arrays.copyOf(this.ids, this.size * 2);
+                this.xs = Arrays.copyOf(this.xs, this.size * 2);
+                this.ys = Arrays.copyOf(this.ys, this.size * 2);
+            }
+            this.ids[this.size] = id;
+            this.xs[this.size] = x;
+            this.ys[this.size++] = y;
+        }
+    }
+
+    /**
+     * The coordinates of the nodes by slot, NaN until they are read. The slots of the nodes read first are written on the
+     * calling thread; when the ways are read first, the blocks of nodes write them concurrently, but each node is in one
+     * block only, so each slot is written once
+     */
+    private static final class NodeCoordinates {
+        private double[] xs;
+        private double[] ys;
+
+        /**
+         * @param size The initial number of slots
+         */
+        private NodeCoordinates(int size) {
+            this.xs = new double[0];
+            this.ys = new double[0];
+            ensureSize(size);
+        }
+
+        /**
+         * @param size The number of slots needed
+         */
+        private void ensureSize(int size) {
+            int oldSize = this.xs.length;
+            if (size > oldSize) {
+                this.xs = Arrays.copyOf(this.xs, size);
+                this.ys = Arrays.copyOf(this.ys, size);
+                Arrays.fill(this.xs, oldSize, size, Double.NaN);
+                Arrays.fill(this.ys, oldSize, size, Double.NaN);
+            }
+        }
+
+        /**
+         * @param slot The slot of the node
+         * @param x The longitude of the node
+         * @param y The latitude of the node
+         */
+        private void set(int slot, double x, double y) {
+            if (slot >= this.xs.length) {
+                ensureSize(Math.max(slot + 1, this.xs.length * 2));
+            }
+            this.xs[slot] = x;
+            this.ys[slot] = y;
+        }
+    }
+
+    /**
+     * Adds the nodes and links of the ways to the network, each node once it ends a link
+     */
+    private static final class LinkBuilder {
+        private final CompactNetwork network;
+        private final LongIntMap slots;
+        private final double[] xs;
+        private final double[] ys;
+        private final int[] nodeIndices;
+        private int nextLinkId = 1;
+
+        /**
+         * @param network The network to build
+         * @param slots The slots of the nodes, by their id
+         * @param xs The longitudes of the nodes, by slot
+         * @param ys The latitudes of the nodes, by slot
+         */
+        private LinkBuilder(CompactNetwork network, LongIntMap slots, double[] xs, double[] ys) {
+            this.network = network;
+            this.slots = slots;
+            this.xs = xs;
+            this.ys = ys;
+            this.nodeIndices = new int[xs.length];
+            Arrays.fill(this.nodeIndices, -1);
+        }
+
+        /**
+         * Adds the links of a part of a way. A closed part, e.g. a roundabout or a loop attached to the network at a
+         * single node, is split at its middle node, so that it does not become a link from a node to itself
+         * @param way The way
+         * @param type The highway type of the way
+         * @param origId The id of the way
+         * @param part The slots of the nodes of the part
+         * @param lengths The length of the part up to each of its nodes
+         * @param count The number of nodes of the part
+         */
+        private void addPart(Way way, String type, String origId, int[] part, double[] lengths, int count) {
+            if (count < 2) {
+                return;
+            }
+            int from = part[0];
+            int to = part[count - 1];
+            if (from != to) {
+                addLinks(way, type, origId, from, to, lengths[count - 1]);
+            } else if (count > 2) {
+                int middle = count / 2;
+                addLinks(way, type, origId, from, part[middle], lengths[middle]);
+                addLinks(way, type, origId, part[middle], to, lengths[count - 1] - lengths[middle]);
+            }
+        }
+
+        /**
+         * Adds the links of a part of a way, one per direction the way can be driven in
+         * @param way The way
+         * @param type The highway type of the way
+         * @param origId The id of the way
+         * @param from The slot of the first node of the part
+         * @param to The slot of the last node of the part
+         * @param length The length of the part
+         */
+        private void addLinks(Way way, String type, String origId, int from, int to, double length) {
+            int fromNode = node(from);
+            int toNode = node(to);
+            if (way.forward) {
+                addLink(way, type, origId, fromNode, toNode, length);
+            }
+            if (way.backward) {
+                addLink(way, type, origId, toNode, fromNode, length);
+            }
+        }
+
+        /**
+         * @param way The way of the link
+         * @param type The highway type of the way
+         * @param origId The id of the way
+         * @param from The index of the 'from' node
+         * @param to The index of the 'to' node
+         * @param length The length of the link
+         */
+        private void addLink(Way way, String type, String origId, int from, int to, double length) {
+            int link = this.network.addLink(Integer.toString(this.nextLinkId++), from, to, length, way.freespeed,
+                    way.capacity, way.lanes, MODES);
+            this.network.setLinkAttribute(link, "type", "java.lang.String", type);
+            this.network.setLinkAttribute(link, "origid", "java.lang.String", origId);
+        }
+
+        /**
+         * @param slot The slot of a node
+         * @return The index of the node in the network, which is added on first use
+         */
+        private int node(int slot) {
+            if (this.nodeIndices[slot] < 0) {
+                this.nodeIndices[slot] = this.network.addNode(Long.toString(this.slots.keyAt(slot)), this.xs[slot],
+                        this.ys[slot]);
+            }
+            return this.nodeIndices[slot];
+        }
+    }
+
+    /**
+     * A way of a highway type to import, with the values of its links
+     */
+    private static final class Way {
+        private long id;
+        private String type;
+        private long[] refs;
+        private boolean forward;
+        private boolean backward;
+        private double lanes;
+        private double freespeed;
+        private double capacity;
+    }
+
+    /**
+     * A decompressed data block: its string table, its groups of elements and the encoding of its coordinates. The
+     * strings are decoded when they are first needed
+     */
+    private static final class Block {
+        private final byte[] data;
+        private final List<ProtoReader> groups = new ArrayList<>();
+        private int[] stringOffsets = new int[0];
+        private int[] stringLengths = new int[0];
+        private String[] strings = new String[0];
+        private long granularity = 100;
+        private long latOffset = 0;
+        private long lonOffset = 0;
+
+        /**
+         * @param data The decompressed block
+         */
+        private Block(byte[] data) {
+            this.data = data;
+            ProtoReader reader = new ProtoReader(data, 0, data.length);
+            while (reader.hasMore()) {
+                int tag = reader.readTag();
+                switch (tag >>> 3) {
+                    case 1:
+                        readStringTable(reader.readMessage());
+                        break;
+                    case 2:
+                        this.groups.add(reader.readMessage());
+                        break;
+                    case 17:
+                        this.granularity = reader.readVarint();
+                        break;
+                    case 19:
+                        this.latOffset = reader.readVarint();
+                        break;
+                    case 20:
+                        this.lonOffset = reader.readVarint();
+                        break;
+                    default:
+                        reader.skip(tag);
+                }
+            }
+        }
+
+        /**
+         * @param lon An encoded longitude of the block
+         * @return The longitude
+         */
+        private double lon(long lon) {
+            return 1e-9 * (this.lonOffset + this.granularity * lon);
+        }
+
+        /**
+         * @param lat An encoded latitude of the block
+         * @return The latitude
+         */
+        private double lat(long lat) {
+            return 1e-9 * (this.latOffset + this.granularity * lat);
+        }
+
+        /**
+         * Records where the strings of the string table are
+         * @param table The encoded string table
+         */
+        private void readStringTable(ProtoReader table) {
+            int count = 0;
+            int[] offsets = new int[256];
+            int[] lengths = new int[256];
+            while (table.hasMore()) {
+                int tag = table.readTag();
+                if (tag >>> 3 == 1) {
+                    int length = table.readLength();
+                    if (count == offsets.length) {
+                        offsets = Arrays.copyOf(offsets, count * 2);
+                        lengths = Arrays.copyOf(lengths, count * 2);
+                    }
+                    offsets[count] = table.position - length;
+                    lengths[count++] = length;
+                } else {
+                    table.skip(tag);
+                }
+            }
+            this.stringOffsets = offsets;
+            this.stringLengths = lengths;
+            this.strings = new String[count];
+        }
+
+        /**
+         * @param index The index of a string in the string table
+         * @return The string
+         */
+        private String string(int index) {
+            String string = this.strings[index];
+            if (string == null) {
+                string = new String(this.data, this.stringOffsets[index], this.stringLengths[index], StandardCharsets.UTF_8);
+                this.strings[index] = string;
+            }
+            return string;
+        }
+    }
+
+    /**
+     * Reads the fields of an encoded protocol buffer message; repeated numbers are expected to be packed, as they are
+     * in .osm.pbf files. Malformed data fails with an unchecked exception
+     */
+    private static final class ProtoReader {
+        private final byte[] data;
+        private final int limit;
+        private int position;
+
+        /**
+         * @param data The bytes containing the message
+         * @param offset The index of the first byte of the message
+         * @param limit The index after the last byte of the message
+         */
+        private ProtoReader(byte[] data, int offset, int limit) {
+            this.data = data;
+            this.position = offset;
+            this.limit = limit;
+        }
+
+        /**
+         * @return True if there are more fields, or more values of a packed field, otherwise false
+         */
+        private boolean hasMore() {
+            return this.position < this.limit;
+        }
+
+        /**
+         * @return The tag of the next field, its number and its wire type
+         */
+        private int readTag() {
+            return (int) readVarint();
+        }
+
+        /**
+         * @return The next variable length number
+         */
+        private long readVarint() {
+            long result = 0;
+            for (int shift = 0; shift < 64; shift += 7) {
+                byte b = this.data[this.position++];
+                result |= (long) (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) {
+                    return result;
+                }
+            }
+            throw new IllegalArgumentException("Malformed number at " + this.position);
+        }
+
+        /**
+         * @return The next variable length number, zigzag encoded
+         */
+        private long readSignedVarint() {
+            long value = readVarint();
+            return (value >>> 1) ^ -(value & 1);
+        }
+
+        /**
+         * Reads the length of a length delimited field and moves past its content
+         * @return The length of the content, which ends at the new position
+         */
+        private int readLength() {
+            int length = (int) readVarint();
+            if (length < 0 || this.position + length > this.limit) {
+                throw new IllegalArgumentException("Malformed length at " + this.position);
+            }
+            this.position += length;
+            return length;
+        }
+
+        /**
+         * @return A reader of the content of the next length delimited field, e.g. a message or a packed field
+         */
+        private ProtoReader readMessage() {
+            int length = readLength();
+            return new ProtoReader(this.data, this.position - length, this.position);
+        }
+
+        /**
+         * @return The content of the next length delimited field as a string
+         */
+        private String readString() {
+            int length = readLength();
+            return new String(this.data, this.position - length, length, StandardCharsets.UTF_8);
+        }
+
+        /**
+         * Moves past the content of a field
+         * @param tag The tag of the field
+         */
+        private void skip(int tag) {
+            switch (tag & 7) {
+                case 0:
+                    readVarint();
+                    break;
+                case 1:
+                    this.position += 8;
+                    break;
+                case 2:
+                    readLength();
+                    break;
+                case 5:
+                    this.position += 4;
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unsupported wire type " + (tag & 7) + " at " + this.position);
+            }
+        }
+    }
+
+    /**
+     * Open addressing map from node ids to consecutive slots, without boxing the ids. Built on one thread, then read
+     * concurrently
+     */
+    private static final class LongIntMap {
+        private long[] keys;
+        private int[] values;
+        private long[] keysBySlot;
+        private int size = 0;
+
+        /**
+         * @param expectedSize The expected number of keys, the map grows when needed
+         */
+        private LongIntMap(int expectedSize) {
+            int capacity = Integer.highestOneBit(Math.max(16, expectedSize) * 2 - 1) * 2;
+            this.keys = new long[capacity];
+            this.values = new int[capacity];
+            Arrays.fill(this.values, -1);
+            this.keysBySlot = new long[Math.max(16, expectedSize)];
+        }
+
+        /**
+         * @param key A node id
+         * @return The position of the key in the table, or of the free entry it belongs in
+         */
+        private int find(long key) {
+            int mask = this.keys.length - 1;
+            long hash = key * 0x9E3779B97F4A7C15L;
+            int index = (int) (hash ^ (hash >>> 32)) & mask;
+            while (this.values[index] >= 0 && this.keys[index] != key) {
+                index = (index + 1) & mask;
+            }
+            return index;
+        }
+
+        /**
+         * @param key A node id
+         * @return The slot of the id, or -1 if it has none
+         */
+        private int get(long key) {
+            return this.values[find(key)];
+        }
+
+        /**
+         * @param key A node id
+         * @return The slot of the id, which is given the next slot if it has none yet
+         */
+        private int add(long key) {
+            int index = find(key);
+            if (this.values[index] >= 0) {
+                return this.values[index];
+            }
+            int slot = this.size++;
+            this.keys[index] = key;
+            this.values[index] = slot;
+            if (slot == this.keysBySlot.length) {
+                this.keysBySlot = Arrays.copyOf(this.keysBySlot, slot * 2);
+            }
+            this.keysBySlot[slot] = key;
+            if (this.size * 2 > this.keys.length) {
+                grow();
+            }
+            return slot;
+        }
+
+        /**
+         * Doubles the table, keeping the slots
+         */
+        private void grow() {
+            long[] oldKeys = this.keys;
+            int[] oldValues = this.values;
+            this.keys = new long[oldKeys.length * 2];
+            this.values = new int[oldValues.length * 2];
+            Arrays.fill(this.values, -1);
+            for (int i = 0; i < oldKeys.length; i++) {
+                if (oldValues[i] >= 0) {
+                    int index = find(oldKeys[i]);
+                    this.keys[index] = oldKeys[i];
+                    this.values[index] = oldValues[i];
+                }
+            }
+        }
+
+        /**
+         * @param slot A slot
+         * @return The node id of the slot
+         */
+        private long keyAt(int slot) {
+            return this.keysBySlot[slot];
+        }
+
+        /**
+         * @return The number of ids
+         */
+        private int size() {
+            return this.size;
+        }
+    }
+}
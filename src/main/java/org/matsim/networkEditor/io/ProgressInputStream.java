@@ -0,0 +1,82 @@
+package org.matsim.networkEditor.io;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.function.BooleanSupplier;
+import java.util.function.LongConsumer;
+
+/**
+ * Input stream counting the bytes read from the underlying (compressed or plain) file. It reports the count to a listener
+ * in regular steps and aborts the reading with an {@link InterruptedIOException} as soon as the reading is cancelled
+ */
+public class ProgressInputStream extends FilterInputStream {
+    /** Number of bytes read between two reports to the listener */
+    private static final long REPORT_STEP = 1 << 20;
+
+    private final LongConsumer listener;
+    private final BooleanSupplier cancelled;
+    private long bytesRead = 0;
+    private long nextReport = REPORT_STEP;
+
+    /**
+     * @param in The stream of the file being read
+     * @param listener Called with the total number of bytes read so far, every {@link #REPORT_STEP} bytes
+     * @param cancelled Checked on every read, the reading stops with an exception if it returns true
+     */
+    public ProgressInputStream(InputStream in, LongConsumer listener, BooleanSupplier cancelled) {
+        super(in);
+        this.listener = listener;
+        this.cancelled = cancelled;
+    }
+
+    @Override
+    public int read() throws IOException {
+        checkCancelled();
+        int b = super.read();
+        if (b >= 0) {
+            count(1);
+        }
+        return b;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        checkCancelled();
+        int n = super.read(b, off, len);
+        if (n > 0) {
+            count(n);
+        }
+        return n;
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+        checkCancelled();
+        long skipped = super.skip(n);
+        count(skipped);
+        return skipped;
+    }
+
+    /**
+     * @return The number of bytes read so far
+     */
+    public long getBytesRead() {
+        return this.bytesRead;
+    }
+
+    private void count(long n) {
+        this.bytesRead += n;
+        if (this.bytesRead >= this.nextReport) {
+            this.nextReport = this.bytesRead + REPORT_STEP;
+            this.listener.accept(this.bytesRead);
+        }
+    }
+
+    private void checkCancelled() throws InterruptedIOException {
+        if (this.cancelled.getAsBoolean()) {
+            throw new InterruptedIOException("Reading cancelled after " + this.bytesRead + " bytes");
+        }
+    }
+}
@@ -0,0 +1,126 @@
+package org.matsim.networkEditor.utils;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.IntStream;
+
+import org.matsim.api.core.v01.Coord;
+import org.matsim.core.utils.geometry.CoordinateTransformation;
+import org.matsim.core.utils.geometry.transformations.TransformationFactory;
+
+/**
+ * A coordinate transformation between two coordinate systems that is created once per pair of systems and shared
+ * instead of being rebuilt by {@link TransformationFactory} for every coordinate, which is expensive for the GeoTools
+ * based transformations. The underlying transformations are not guaranteed to be thread-safe, so each thread gets its
+ * own one on first use; the shared instance can be used from any thread. Arrays of coordinates are transformed in
+ * parallel chunks
+ */
+public final class CachedTransformation implements CoordinateTransformation {
+    /** Number of coordinates transformed in one chunk of a bulk transformation */
+    private static final int CHUNK_SIZE = 4096;
+    private static final ConcurrentHashMap<String, CachedTransformation> transformations = new ConcurrentHashMap<>();
+
+    private final String fromSystem;
+    private final String toSystem;
+    private final boolean identity;
+    private final ThreadLocal<CoordinateTransformation> transformation;
+
+    private CachedTransformation(String fromSystem, String toSystem) {
+        this.fromSystem = fromSystem;
+        this.toSystem = toSystem;
+        this.identity = fromSystem.equals(toSystem) || (isWgs84(fromSystem) && isWgs84(toSystem));
+        this.transformation = ThreadLocal.withInitial(() ->
+                TransformationFactory.getCoordinateTransformation(fromSystem, toSystem));
+    }
+
+    /**
+     * @param fromSystem The coordinate system to transform from
+     * @param toSystem The coordinate system to transform to
+     * @return The transformation between the coordinate systems, the same instance for every call with the same systems
+     */
+    public static CachedTransformation get(String fromSystem, String toSystem) {
+        return transformations.computeIfAbsent(fromSystem + "\n" + toSystem,
+                key -> new CachedTransformation(fromSystem, toSystem));
+    }
+
+    /**
+     * @param coordinateSystem A coordinate system
+     * @return The transformation from WGS84, which the editor holds the network in, to the coordinate system
+     */
+    public static CachedTransformation fromWgs84(String coordinateSystem) {
+        return get(TransformationFactory.WGS84, coordinateSystem);
+    }
+
+    /**
+     * @param coordinateSystem A coordinate system
+     * @return The transformation from the coordinate system to WGS84, which the editor holds the network in
+     */
+    public static CachedTransformation toWgs84(String coordinateSystem) {
+        return get(coordinateSystem, TransformationFactory.WGS84);
+    }
+
+    /**
+     * @param coordinateSystem A coordinate system
+     * @return True if the coordinate system is WGS84, by its MATSim name or its EPSG code, otherwise false
+     */
+    public static boolean isWgs84(String coordinateSystem) {
+        return TransformationFactory.WGS84.equals(coordinateSystem) || "EPSG:4326".equals(coordinateSystem.replace(" ", ""));
+    }
+
+    /**
+     * @return The coordinate system transformed from
+     */
+    public String getFromSystem() {
+        return this.fromSystem;
+    }
+
+    /**
+     * @return The coordinate system transformed to
+     */
+    public String getToSystem() {
+        return this.toSystem;
+    }
+
+    /**
+     * @return True if both coordinate systems are the same and coordinates are left unchanged, otherwise false
+     */
+    public boolean isIdentity() {
+        return this.identity;
+    }
+
+    @Override
+    public Coord transform(Coord coord) {
+        return this.identity ? coord : this.transformation.get().transform(coord);
+    }
+
+    /**
+     * Transforms arrays of coordinates in place
+     * @param xs The x coordinates
+     * @param ys The y coordinates, at the same positions as the x coordinates
+     */
+    public void transform(double[] xs, double[] ys) {
+        transform(xs, ys, 0, Math.min(xs.length, ys.length));
+    }
+
+    /**
+     * Transforms a range of arrays of coordinates in place, in parallel chunks
+     * @param xs The x coordinates
+     * @param ys The y coordinates, at the same positions as the x coordinates
+     * @param from The first position of the range
+     * @param to The position after the last position of the range
+     */
+    public void transform(double[] xs, double[] ys, int from, int to) {
+        if (this.identity || from >= to) {
+            return;
+        }
+        int chunks = (to - from + CHUNK_SIZE - 1) / CHUNK_SIZE;
+        IntStream.range(0, chunks).parallel().forEach(chunk -> {
+            CoordinateTransformation chunkTransformation = this.transformation.get();
+            int chunkTo = Math.min(from + (chunk + 1) * CHUNK_SIZE, to);
+            for (int i = from + chunk * CHUNK_SIZE; i < chunkTo; i++) {
+                Coord coord = chunkTransformation.transform(new Coord(xs[i], ys[i]));
+                xs[i] = coord.getX();
+                ys[i] = coord.getY();
+            }
+        });
+    }
+}
@@ -0,0 +1,571 @@
+package org.matsim.networkEditor.utils;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+
+/**
+ * An immutable hash map that shares its structure with the maps it was derived from: a hash array mapped trie, in which
+ * every level consumes 5 bits of the hash of the key. Adding, replacing or removing an entry copies only the path from
+ * the root to the entry, so a modified map costs a few small arrays on top of the original one, and keeping an old map
+ * costs nothing. Two maps derived from each other are compared by skipping the subtrees they share, so the cost of
+ * {@link #diff} grows with the number of differences rather than with the size of the maps. Keys and values must not be
+ * null
+ * @param <K> The type of the keys
+ * @param <V> The type of the values
+ */
+public final class PersistentHashMap<K, V> {
+    private static final int BITS = 5;
+    private static final int MASK = (1 << BITS) - 1;
+    private static final PersistentHashMap<?, ?> EMPTY = new PersistentHashMap<>(null, 0);
+
+    private final Trie root;
+    private final int size;
+
+    private PersistentHashMap(Trie root, int size) {
+        this.root = root;
+        this.size = size;
+    }
+
+    /**
+     * Receives the differences between two maps
+     * @param <K> The type of the keys
+     * @param <V> The type of the values
+     */
+    public interface DiffListener<K, V> {
+        /**
+         * @param key A key that is only in the second map
+         * @param value The value of the key in the second map
+         */
+        void added(K key, V value);
+
+        /**
+         * @param key A key that is only in the first map
+         * @param value The value of the key in the first map
+         */
+        void removed(K key, V value);
+
+        /**
+         * @param key A key of both maps, with values that are not equal
+         * @param before The value of the key in the first map
+         * @param after The value of the key in the second map
+         */
+        void changed(K key, V before, V after);
+    }
+
+    /**
+     * @param <K> The type of the keys
+     * @param <V> The type of the values
+     * @return The empty map
+     */
+    @SuppressWarnings("unchecked")
+    public static <K, V> PersistentHashMap<K, V> empty() {
+        return (PersistentHashMap<K, V>) EMPTY;
+    }
+
+    /**
+     * Creates a map with an entry for each of some elements at once, partitioning the entries level by level instead of
+     * copying a path for each one, which is several times faster for large maps
+     * @param elements The elements, with distinct keys
+     * @param key Gives the key of an element
+     * @param value Gives the value of an element
+     * @param <T> The type of the elements
+     * @param <K> The type of the keys
+     * @param <V> The type of the values
+     * @return The map
+     */
+    public static <T, K, V> PersistentHashMap<K, V> of(Collection<? extends T> elements, Function<? super T, ? extends K> key,
+                                                       Function<? super T, ? extends V> value) {
+        int size = elements.size();
+        if (size == 0) {
+            return empty();
+        }
+        Leaf[] leaves = new Leaf[size];
+        int i = 0;
+        for (T element : elements) {
+            K elementKey = key.apply(element);
+            V elementValue = value.apply(element);
+            if (elementValue == null) {
+                throw new NullPointerException("The values of a persistent map must not be null");
+            }
+            leaves[i++] = new Leaf(hash(elementKey), elementKey, elementValue);
+        }
+        return new PersistentHashMap<>(build(leaves, 0, size, 0, new Leaf[size]), size);
+    }
+
+    /**
+     * Builds the subtree of entries whose hashes agree on the bits consumed by the levels above
+     * @param leaves The entries, of which the range is reordered by the fragment of the level
+     * @param from The first entry of the range
+     * @param to The end of the range, exclusive
+     * @param shift The number of bits of the hash consumed by the levels above
+     * @param buffer Space for reordering the entries, as long as the entries
+     * @return The subtree
+     */
+    private static Trie build(Leaf[] leaves, int from, int to, int shift, Leaf[] buffer) {
+        if (to - from == 1) {
+            return leaves[from];
+        }
+        boolean sameHash = true;
+        for (int i = from + 1; i < to && sameHash; i++) {
+            sameHash = leaves[i].hash == leaves[from].hash;
+        }
+        if (sameHash) {
+            return new Collision(leaves[from].hash, Arrays.copyOfRange(leaves, from, to));
+        }
+        // Counting sort of the range by the fragment of the level
+        int[] starts = new int[MASK + 2];
+        for (int i = from; i < to; i++) {
+            starts[((leaves[i].hash >>> shift) & MASK) + 1]++;
+        }
+        int bitmap = 0;
+        for (int f = 0; f <= MASK; f++) {
+            if (starts[f + 1] > 0) {
+                bitmap |= 1 << f;
+            }
+            starts[f + 1] += starts[f];
+        }
+        int[] fill = Arrays.copyOf(starts, MASK + 1);
+        for (int i = from; i < to; i++) {
+            buffer[from + fill[(leaves[i].hash >>> shift) & MASK]++] = leaves[i];
+        }
+        System.arraycopy(buffer, from, leaves, from, to - from);
+        Trie[] children = new Trie[Integer.bitCount(bitmap)];
+        int child = 0;
+        for (int f = 0; f <= MASK; f++) {
+            if (starts[f + 1] > starts[f]) {
+                children[child++] = build(leaves, from + starts[f], from + starts[f + 1], shift + BITS, buffer);
+            }
+        }
+        return new Branch(bitmap, children);
+    }
+
+    /**
+     * @return The number of entries of the map
+     */
+    public int size() {
+        return this.size;
+    }
+
+    /**
+     * @return True if the map has no entries, otherwise false
+     */
+    public boolean isEmpty() {
+        return this.size == 0;
+    }
+
+    /**
+     * @param key A key
+     * @return The value of the key, or null if the map does not contain it
+     */
+    @SuppressWarnings("unchecked")
+    public V get(Object key) {
+        return this.root == null ? null : (V) this.root.get(hash(key), key, 0);
+    }
+
+    /**
+     * @param key A key
+     * @return True if the map contains the key, otherwise false
+     */
+    public boolean containsKey(Object key) {
+        return get(key) != null;
+    }
+
+    /**
+     * @param key The key
+     * @param value The value of the key
+     * @return A map with the entries of this map and the key mapped to the value; this map itself if the key is already
+     *         mapped to the same value
+     */
+    public PersistentHashMap<K, V> put(K key, V value) {
+        if (value == null) {
+            throw new NullPointerException("The values of a persistent map must not be null");
+        }
+        int hash = hash(key);
+        if (this.root == null) {
+            return new PersistentHashMap<>(new Leaf(hash, key, value), 1);
+        }
+        boolean[] added = new boolean[1];
+        Trie newRoot = this.root.put(hash, key, value, 0, added);
+        if (newRoot == this.root) {
+            return this;
+        }
+        return new PersistentHashMap<>(newRoot, added[0] ? this.size + 1 : this.size);
+    }
+
+    /**
+     * @param key The key
+     * @return A map with the entries of this map except the key; this map itself if it does not contain the key
+     */
+    public PersistentHashMap<K, V> remove(Object key) {
+        if (this.root == null) {
+            return this;
+        }
+        Trie newRoot = this.root.remove(hash(key), key, 0);
+        if (newRoot == this.root) {
+            return this;
+        }
+        return newRoot == null ? empty() : new PersistentHashMap<>(newRoot, this.size - 1);
+    }
+
+    /**
+     * Calls an action for every entry of the map, in no particular order
+     * @param action The action
+     */
+    @SuppressWarnings("unchecked")
+    public void forEach(BiConsumer<? super K, ? super V> action) {
+        if (this.root != null) {
+            this.root.forEach((BiConsumer<Object, Object>) action);
+        }
+    }
+
+    /**
+     * Compares two maps, skipping the subtrees they share. Values are compared by reference first and with equals
+     * otherwise
+     * @param from The first map
+     * @param to The second map
+     * @param listener Receives the keys that are only in the second map, only in the first map, or in both with
+     *                 different values
+     * @param <K> The type of the keys
+     * @param <V> The type of the values
+     */
+    @SuppressWarnings("unchecked")
+    public static <K, V> void diff(PersistentHashMap<K, V> from, PersistentHashMap<K, V> to, DiffListener<K, V> listener) {
+        diff(from.root, to.root, 0, (DiffListener<Object, Object>) listener);
+    }
+
+    /**
+     * Compares two subtrees at the same level of their tries
+     * @param from The subtree of the first map, or null
+     * @param to The subtree of the second map, or null
+     * @param shift The number of bits of the hash consumed by the levels above
+     * @param listener Receives the differences
+     */
+    private static void diff(Trie from, Trie to, int shift, DiffListener<Object, Object> listener) {
+        if (from == to) {
+            return;
+        }
+        if (from == null) {
+            to.forEach(listener::added);
+        } else if (to == null) {
+            from.forEach(listener::removed);
+        } else if (from instanceof Branch && to instanceof Branch) {
+            Branch fromBranch = (Branch) from;
+            Branch toBranch = (Branch) to;
+            int bits = fromBranch.bitmap | toBranch.bitmap;
+            while (bits != 0) {
+                int bit = Integer.lowestOneBit(bits);
+                bits &= ~bit;
+                diff(fromBranch.child(bit), toBranch.child(bit), shift + BITS, listener);
+            }
+        } else {
+            // A leaf or collision on one side: look its few entries up in the other subtree
+            from.forEach((key, value) -> {
+                Object other = to.get(hash(key), key, shift);
+                if (other == null) {
+                    listener.removed(key, value);
+                } else if (other != value && !other.equals(value)) {
+                    listener.changed(key, value, other);
+                }
+            });
+            to.forEach((key, value) -> {
+                if (from.get(hash(key), key, shift) == null) {
+                    listener.added(key, value);
+                }
+            });
+        }
+    }
+
+    /**
+     * @param key A key
+     * @return The hash of the key, with the high bits spread to the low ones that the first levels consume
+     */
+    private static int hash(Object key) {
+        int h = key.hashCode();
+        return h ^ (h >>> 16);
+    }
+
+    /**
+     * @param hash A hash
+     * @param shift The number of bits of the hash consumed by the levels above
+     * @return The bit of the branch at the level that selects the hash
+     */
+    private static int bit(int hash, int shift) {
+        return 1 << ((hash >>> shift) & MASK);
+    }
+
+    /**
+     * A subtree of the trie
+     */
+    private abstract static class Trie {
+        /**
+         * @param hash The hash of the key
+         * @param key The key
+         * @param shift The number of bits of the hash consumed by the levels above
+         * @return The value of the key, or null if the subtree does not contain it
+         */
+        abstract Object get(int hash, Object key, int shift);
+
+        /**
+         * @param hash The hash of the key
+         * @param key The key
+         * @param value The value
+         * @param shift The number of bits of the hash consumed by the levels above
+         * @param added Set to true if the key is new
+         * @return The subtree with the key mapped to the value, this subtree if it already was
+         */
+        abstract Trie put(int hash, Object key, Object value, int shift, boolean[] added);
+
+        /**
+         * @param hash The hash of the key
+         * @param key The key
+         * @param shift The number of bits of the hash consumed by the levels above
+         * @return The subtree without the key, this subtree if it does not contain it, or null if it becomes empty
+         */
+        abstract Trie remove(int hash, Object key, int shift);
+
+        /**
+         * @param action Called for every entry of the subtree
+         */
+        abstract void forEach(BiConsumer<Object, Object> action);
+    }
+
+    /**
+     * A single entry
+     */
+    private static final class Leaf extends Trie {
+        private final int hash;
+        private final Object key;
+        private final Object value;
+
+        Leaf(int hash, Object key, Object value) {
+            this.hash = hash;
+            this.key = key;
+            this.value = value;
+        }
+
+        @Override
+        Object get(int hash, Object key, int shift) {
+            return hash == this.hash && key.equals(this.key) ? this.value : null;
+        }
+
+        @Override
+        Trie put(int hash, Object key, Object value, int shift, boolean[] added) {
+            if (hash == this.hash && key.equals(this.key)) {
+                return value == this.value ? this : new Leaf(hash, key, value);
+            }
+            added[0] = true;
+            Leaf leaf = new Leaf(hash, key, value);
+            if (hash == this.hash) {
+                return new Collision(hash, new Leaf[] {this, leaf});
+            }
+            return Branch.of(this, this.hash, leaf, hash, shift);
+        }
+
+        @Override
+        Trie remove(int hash, Object key, int shift) {
+            return hash == this.hash && key.equals(this.key) ? null : this;
+        }
+
+        @Override
+        void forEach(BiConsumer<Object, Object> action) {
+            action.accept(this.key, this.value);
+        }
+    }
+
+    /**
+     * The entries of keys with the same hash
+     */
+    private static final class Collision extends Trie {
+        private final int hash;
+        private final Leaf[] leaves;
+
+        Collision(int hash, Leaf[] leaves) {
+            this.hash = hash;
+            this.leaves = leaves;
+        }
+
+        /**
+         * @param key A key
+         * @return The position of the entry of the key, or -1 if there is none
+         */
+        private int indexOf(Object key) {
+            for (int i = 0; i < this.leaves.length; i++) {
+                if (key.equals(this.leaves[i].key)) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+
+        @Override
+        Object get(int hash, Object key, int shift) {
+            if (hash != this.hash) {
+                return null;
+            }
+            int index = indexOf(key);
+            return index < 0 ? null : this.leaves[index].value;
+        }
+
+        @Override
+        Trie put(int hash, Object key, Object value, int shift, boolean[] added) {
+            if (hash != this.hash) {
+                added[0] = true;
+                return Branch.of(this, this.hash, new Leaf(hash, key, value), hash, shift);
+            }
+            int index = indexOf(key);
+            if (index >= 0) {
+                if (this.leaves[index].value == value) {
+                    return this;
+                }
+                Leaf[] newLeaves = this.leaves.clone();
+                newLeaves[index] = new Leaf(hash, key, value);
+                return new Collision(hash, newLeaves);
+            }
+            added[0] = true;
+            Leaf[] newLeaves = Arrays.copyOf(this.leaves, this.leaves.length + 1);
+            newLeaves[this.leaves.length] = new Leaf(hash, key, value);
+            return new Collision(hash, newLeaves);
+        }
+
+        @Override
+        Trie remove(int hash, Object key, int shift) {
+            int index = hash == this.hash ? indexOf(key) : -1;
+            if (index < 0) {
+                return this;
+            }
+            if (this.leaves.length == 2) {
+                return this.leaves[1 - index];
+            }
+            Leaf[] newLeaves = new Leaf[this.leaves.length - 1];
+            System.arraycopy(this.leaves, 0, newLeaves, 0, index);
+            System.arraycopy(this.leaves, index + 1, newLeaves, index, newLeaves.length - index);
+            return new Collision(hash, newLeaves);
+        }
+
+        @Override
+        void forEach(BiConsumer<Object, Object> action) {
+            for (Leaf leaf : this.leaves) {
+                action.accept(leaf.key, leaf.value);
+            }
+        }
+    }
+
+    /**
+     * A level of the trie, with a subtree for each used 5-bit fragment of the hash, stored compactly in the order of the
+     * fragments
+     */
+    private static final class Branch extends Trie {
+        private final int bitmap;
+        private final Trie[] children;
+
+        Branch(int bitmap, Trie[] children) {
+            this.bitmap = bitmap;
+            this.children = children;
+        }
+
+        /**
+         * Creates the branches that separate two subtrees with different hashes
+         * @param first The first subtree, a leaf or a collision
+         * @param firstHash The hash of the first subtree
+         * @param second The second subtree, a leaf or a collision
+         * @param secondHash The hash of the second subtree
+         * @param shift The number of bits of the hash consumed by the levels above
+         * @return The branch containing both subtrees
+         */
+        static Branch of(Trie first, int firstHash, Trie second, int secondHash, int shift) {
+            int firstBit = bit(firstHash, shift);
+            int secondBit = bit(secondHash, shift);
+            if (firstBit == secondBit) {
+                return new Branch(firstBit, new Trie[] {of(first, firstHash, second, secondHash, shift + BITS)});
+            }
+            return new Branch(firstBit | secondBit, Integer.compareUnsigned(firstBit, secondBit) < 0
+                    ? new Trie[] {first, second} : new Trie[] {second, first});
+        }
+
+        /**
+         * @param bit The bit of a fragment
+         * @return The position of the subtree of the fragment in the children
+         */
+        private int index(int bit) {
+            return Integer.bitCount(this.bitmap & (bit - 1));
+        }
+
+        /**
+         * @param bit The bit of a fragment
+         * @return The subtree of the fragment, or null if there is none
+         */
+        Trie child(int bit) {
+            return (this.bitmap & bit) == 0 ? null : this.children[index(bit)];
+        }
+
+        @Override
+        Object get(int hash, Object key, int shift) {
+            Trie child = child(bit(hash, shift));
+            return child == null ? null : child.get(hash, key, shift + BITS);
+        }
+
+        @Override
+        Trie put(int hash, Object key, Object value, int shift, boolean[] added) {
+            int bit = bit(hash, shift);
+            int index = index(bit);
+            if ((this.bitmap & bit) == 0) {
+                added[0] = true;
+                Trie[] newChildren = new Trie[this.children.length + 1];
+                System.arraycopy(this.children, 0, newChildren, 0, index);
+                newChildren[index] = new Leaf(hash, key, value);
+                System.arraycopy(this.children, index, newChildren, index + 1, this.children.length - index);
+                return new Branch(this.bitmap | bit, newChildren);
+            }
+            Trie child = this.children[index];
+            Trie newChild = child.put(hash, key, value, shift + BITS, added);
+            if (newChild == child) {
+                return this;
+            }
+            Trie[] newChildren = this.children.clone();
+            newChildren[index] = newChild;
+            return new Branch(this.bitmap, newChildren);
+        }
+
+        @Override
+        Trie remove(int hash, Object key, int shift) {
+            int bit = bit(hash, shift);
+            if ((this.bitmap & bit) == 0) {
+                return this;
+            }
+            int index = index(bit);
+            Trie child = this.children[index];
+            Trie newChild = child.remove(hash, key, shift + BITS);
+            if (newChild == child) {
+                return this;
+            }
+            if (newChild == null) {
+                if (this.children.length == 1) {
+                    return null;
+                }
+                Trie[] newChildren = new Trie[this.children.length - 1];
+                System.arraycopy(this.children, 0, newChildren, 0, index);
+                System.arraycopy(this.children, index + 1, newChildren, index, newChildren.length - index);
+                // A single remaining entry moves up, so that equal maps tend to have the same shape
+                if (newChildren.length == 1 && !(newChildren[0] instanceof Branch)) {
+                    return newChildren[0];
+                }
+                return new Branch(this.bitmap & ~bit, newChildren);
+            }
+            if (this.children.length == 1 && !(newChild instanceof Branch)) {
+                return newChild;
+            }
+            Trie[] newChildren = this.children.clone();
+            newChildren[index] = newChild;
+            return new Branch(this.bitmap, newChildren);
+        }
+
+        @Override
+        void forEach(BiConsumer<Object, Object> action) {
+            for (Trie child : this.children) {
+                child.forEach(action);
+            }
+        }
+    }
+}
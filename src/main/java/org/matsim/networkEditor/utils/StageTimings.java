@@ -0,0 +1,122 @@
+package org.matsim.networkEditor.utils;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Supplier;
+
+/**
+ * Collects the durations of the named stages of a longer operation (e.g. parse, build and render of a network import),
+ * in the order they were run, so that they can be logged or reported as one structured entry
+ */
+public class StageTimings {
+    private final String operation;
+    private final LinkedHashMap<String, Long> stages = new LinkedHashMap<>();
+    private String currentStage = null;
+    private long currentStart = 0;
+
+    /**
+     * @param operation The name of the timed operation, used as the prefix of the string representation
+     */
+    public StageTimings(String operation) {
+        this.operation = operation;
+    }
+
+    /**
+     * Starts timing a stage, stopping the stage that is currently running, if any
+     * @param stage The name of the stage
+     */
+    public synchronized void start(String stage) {
+        if (this.currentStage != null) {
+            stop();
+        }
+        this.currentStage = stage;
+        this.currentStart = System.nanoTime();
+    }
+
+    /**
+     * Stops the currently running stage and records its duration. If the same stage was run before, the durations are added
+     * @return The duration of the stopped stage in milliseconds, or 0 if no stage was running
+     */
+    public synchronized long stop() {
+        if (this.currentStage == null) {
+            return 0;
+        }
+        long duration = (System.nanoTime() - this.currentStart) / 1000000;
+        this.stages.merge(this.currentStage, duration, Long::sum);
+        this.currentStage = null;
+        return duration;
+    }
+
+    /**
+     * Runs and times a stage
+     * @param stage The name of the stage
+     * @param action The work done in the stage
+     */
+    public void time(String stage, Runnable action) {
+        start(stage);
+        try {
+            action.run();
+        } finally {
+            stop();
+        }
+    }
+
+    /**
+     * Runs and times a stage that produces a result
+     * @param stage The name of the stage
+     * @param action The work done in the stage
+     * @return The result of the action
+     */
+    public <T> T time(String stage, Supplier<T> action) {
+        start(stage);
+        try {
+            return action.get();
+        } finally {
+            stop();
+        }
+    }
+
+    /**
+     * Records a duration that was measured elsewhere, e.g. by a worker thread
+     * @param stage The name of the stage
+     * @param millis The duration in milliseconds
+     */
+    public synchronized void record(String stage, long millis) {
+        this.stages.merge(stage, millis, Long::sum);
+    }
+
+    /**
+     * @return The recorded stages in the order they were first run, mapped to their duration in milliseconds
+     */
+    public synchronized Map<String, Long> getStages() {
+        return Collections.unmodifiableMap(new LinkedHashMap<>(this.stages));
+    }
+
+    /**
+     * @return The sum of the durations of all recorded stages in milliseconds
+     */
+    public synchronized long getTotal() {
+        return this.stages.values().stream().mapToLong(Long::longValue).sum();
+    }
+
+    /**
+     * @return The name of the timed operation
+     */
+    public String getOperation() {
+        return this.operation;
+    }
+
+    /**
+     * @return The timings in the form "operation: stage=12ms stage=34ms total=46ms"
+     */
+    @Override
+    public synchronized String toString() {
+        StringBuilder stringBuilder = new StringBuilder(this.operation).append(":");
+        for (Map.Entry<String, Long> entry : this.stages.entrySet()) {
+            stringBuilder.append(" ").append(entry.getKey()).append("=").append(entry.getValue()).append("ms");
+        }
+        stringBuilder.append(" total=").append(getTotal()).append("ms");
+        return stringBuilder.toString();
+    }
+}
@@ -0,0 +1,36 @@
+package org.matsim.networkEditor.validation;
+
+import java.util.List;
+
+import org.matsim.api.core.v01.Coord;
+import org.matsim.api.core.v01.network.Link;
+import org.matsim.core.utils.geometry.CoordUtils;
+import org.matsim.networkEditor.elements.ValidationTableEntry;
+
+/**
+ * Reports the links with possibly odd values, for the user to ensure their correctness: negative values, or a length
+ * that does not match the distance between the nodes of the link
+ */
+public class AttributeRangeRule implements ValidationRule {
+    /** Maximum difference between the length of a link and the distance of its nodes */
+    private static final double DISTANCE_THRESHOLD = 0.9;
+
+    @Override
+    public String getName() {
+        return "attribute ranges";
+    }
+
+    @Override
+    public void checkLink(Link link, ValidationContext context, List<ValidationTableEntry> warnings) {
+        // Calculate the distance between the two nodes in the coordinate system of the network
+        Coord coordA = context.toNetworkCoordinates(link.getFromNode().getCoord());
+        Coord coordB = context.toNetworkCoordinates(link.getToNode().getCoord());
+
+        double nodesDistance = CoordUtils.calcEuclideanDistance(coordA, coordB);
+        if (link.getNumberOfLanes() < 0 || link.getLength() < nodesDistance - DISTANCE_THRESHOLD ||
+                link.getLength() > nodesDistance + DISTANCE_THRESHOLD || link.getFreespeed() < 0 ||
+                link.getCapacity() < 0 || link.getFlowCapacityPerSec() < 0) {
+            warnings.add(new ValidationTableEntry(link, link.getId().toString(), "Link attributes might contain out of range values"));
+        }
+    }
+}
@@ -0,0 +1,58 @@
+package org.matsim.networkEditor.validation;
+
+import java.util.List;
+import java.util.StringJoiner;
+
+import org.matsim.api.core.v01.network.Link;
+import org.matsim.networkEditor.elements.ValidationTableEntry;
+
+/**
+ * Compares the attributes of the links that connect two nodes in both directions. The link in the opposite direction is
+ * looked up in the link index, and each pair of links is reported once, by the link with the smaller id
+ */
+public class BidirectionalLinkRule implements ValidationRule {
+
+    @Override
+    public String getName() {
+        return "bidirectional links";
+    }
+
+    @Override
+    public void checkLink(Link link, ValidationContext context, List<ValidationTableEntry> warnings) {
+        for (Link reverse : context.getLinkIndex().getAll(link.getToNode().getId(), link.getFromNode().getId())) {
+            if (link.getId().compareTo(reverse.getId()) < 0) {
+                String differences = differingAttributes(link, reverse);
+                if (!differences.isEmpty()) {
+                    warnings.add(new ValidationTableEntry(link, link.getId().toString(),
+                            "Bidirectional link " + reverse.getId() + " does not have matching attributes: " + differences));
+                }
+            }
+        }
+    }
+
+    /**
+     * Compares the attributes of two links
+     * @param linkA The one link
+     * @param linkB The other link
+     * @return The names of the attributes that differ, comma separated, or an empty string if all of them match
+     */
+    private static String differingAttributes(Link linkA, Link linkB) {
+        StringJoiner differences = new StringJoiner(", ");
+        if (linkA.getLength() != linkB.getLength()) {
+            differences.add("length");
+        }
+        if (linkA.getCapacity() != linkB.getCapacity()) {
+            differences.add("capacity");
+        }
+        if (linkA.getFreespeed() != linkB.getFreespeed()) {
+            differences.add("free speed");
+        }
+        if (linkA.getNumberOfLanes() != linkB.getNumberOfLanes()) {
+            differences.add("lanes");
+        }
+        if (!linkA.getAllowedModes().equals(linkB.getAllowedModes())) {
+            differences.add("allowed modes");
+        }
+        return differences.toString();
+    }
+}
@@ -0,0 +1,25 @@
+package org.matsim.networkEditor.validation;
+
+import java.util.List;
+
+import org.matsim.api.core.v01.network.Node;
+import org.matsim.core.network.NetworkUtils;
+import org.matsim.networkEditor.elements.ValidationTableEntry;
+
+/**
+ * Reports the nodes that are not connected by any links, aka dangling nodes
+ */
+public class DanglingNodeRule implements ValidationRule {
+
+    @Override
+    public String getName() {
+        return "dangling nodes";
+    }
+
+    @Override
+    public void checkNode(Node node, ValidationContext context, List<ValidationTableEntry> warnings) {
+        if (node.getInLinks().isEmpty() && node.getOutLinks().isEmpty()) {
+            warnings.add(new ValidationTableEntry(node, NetworkUtils.getOrigId(node), "Node " + NetworkUtils.getOrigId(node) + " is a dangling node"));
+        }
+    }
+}
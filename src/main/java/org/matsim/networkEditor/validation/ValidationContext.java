@@ -0,0 +1,97 @@
+package org.matsim.networkEditor.validation;
+
+import java.util.function.Supplier;
+
+import org.matsim.api.core.v01.Coord;
+import org.matsim.api.core.v01.network.Network;
+import org.matsim.networkEditor.elements.NetworkModel;
+import org.matsim.networkEditor.elements.LinkIndex;
+import org.matsim.networkEditor.utils.CachedTransformation;
+
+/**
+ * The network being validated, along with the indexes and the coordinate system the rules need. Shared by all threads
+ * of a validation run, which only read from it, within {@link #read(Runnable)} when the network is held by a model that
+ * other threads may change
+ */
+public class ValidationContext {
+    private final Network network;
+    private final LinkIndex linkIndex;
+    private final String coordinateSystem;
+    private final CachedTransformation transformation;
+    private NetworkModel model = null;
+
+    /**
+     * @param network The network to validate, with coordinates in WGS84
+     * @param linkIndex The index of the links of the network by their 'from' and 'to' node
+     * @param coordinateSystem The coordinate system the network is stored in
+     */
+    public ValidationContext(Network network, LinkIndex linkIndex, String coordinateSystem) {
+        this.network = network;
+        this.linkIndex = linkIndex;
+        this.coordinateSystem = coordinateSystem;
+        this.transformation = CachedTransformation.fromWgs84(coordinateSystem);
+    }
+
+    /**
+     * @param model The network of the editor or of the headless mode
+     * @return The context for validating the network
+     */
+    public static ValidationContext of(NetworkModel model) {
+        ValidationContext context = new ValidationContext(model.getNetwork(), model.getLinkIndex(),
+                model.getCoordinateSystem());
+        context.model = model;
+        return context;
+    }
+
+    /**
+     * Reads the network under the read lock of its model, if any, so that it is not changed meanwhile
+     * @param reader The code reading the network
+     */
+    public void read(Runnable reader) {
+        if (this.model == null) {
+            reader.run();
+        } else {
+            this.model.read(reader);
+        }
+    }
+
+    /**
+     * Runs a query over the network under the read lock of its model, if any, so that it is not changed meanwhile
+     * @param query The query
+     * @param <T> The type of the result
+     * @return The result of the query
+     */
+    public <T> T read(Supplier<T> query) {
+        return this.model == null ? query.get() : this.model.read(query);
+    }
+
+    /**
+     * @return The network to validate
+     */
+    public Network getNetwork() {
+        return this.network;
+    }
+
+    /**
+     * @return The index of the links of the network by their 'from' and 'to' node
+     */
+    public LinkIndex getLinkIndex() {
+        return this.linkIndex;
+    }
+
+    /**
+     * @return The coordinate system the network is stored in
+     */
+    public String getCoordinateSystem() {
+        return this.coordinateSystem;
+    }
+
+    /**
+     * Transforms a coordinate of the network, which is held in WGS84, into the coordinate system it is stored in
+     * @param coord The WGS84 coordinate
+     * @return The coordinate in the coordinate system of the network
+     */
+    public Coord toNetworkCoordinates(Coord coord) {
+        return this.transformation.transform(coord);
+    }
+}
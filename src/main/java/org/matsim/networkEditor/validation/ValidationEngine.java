@@ -0,0 +1,252 @@
+package org.matsim.networkEditor.validation;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+import java.util.ServiceLoader;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.network.Link;
+import org.matsim.api.core.v01.network.Network;
+import org.matsim.api.core.v01.network.Node;
+import org.matsim.networkEditor.elements.ChangeTracker;
+import org.matsim.networkEditor.elements.ValidationTableEntry;
+import org.matsim.networkEditor.utils.StageTimings;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Runs validation rules over all nodes and links of a network. The elements are split into ranges that are checked on a
+ * fork-join pool; every range collects the warnings of each rule in its own lists, which are merged in the order of the
+ * ranges once all of them are done, so no list is shared between threads and the result does not depend on the
+ * scheduling. The rules are found with the {@link ServiceLoader}, so new rules plug in without changes to the editor
+ */
+public class ValidationEngine {
+    private static final Logger logger = LoggerFactory.getLogger(ValidationEngine.class);
+    /** Number of elements below which a range is checked by one thread instead of being split further */
+    private static final int RANGE_SIZE = 4096;
+
+    private final List<ValidationRule> rules;
+    private final ForkJoinPool pool;
+
+    /**
+     * Creates an engine running the given rules on the common fork-join pool
+     * @param rules The rules, in the order their warnings are reported
+     */
+    public ValidationEngine(List<ValidationRule> rules) {
+        this(rules, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * @param rules The rules, in the order their warnings are reported
+     * @param pool The pool the rules are run on
+     */
+    public ValidationEngine(List<ValidationRule> rules, ForkJoinPool pool) {
+        this.rules = Collections.unmodifiableList(new ArrayList<>(rules));
+        this.pool = pool;
+    }
+
+    /**
+     * Creates an engine running all rules that are registered as services of {@link ValidationRule}, the built-in
+     * ones as well as those of plugins on the class path
+     * @return The engine
+     */
+    public static ValidationEngine load() {
+        List<ValidationRule> rules = new ArrayList<>();
+        for (ValidationRule rule : ServiceLoader.load(ValidationRule.class)) {
+            rules.add(rule);
+        }
+        logger.info("{} validation rules loaded", rules.size());
+        return new ValidationEngine(rules);
+    }
+
+    /**
+     * @return The rules of the engine, in the order their warnings are reported
+     */
+    public List<ValidationRule> getRules() {
+        return this.rules;
+    }
+
+    /**
+     * @return The pool the rules are run on
+     */
+    public ForkJoinPool getPool() {
+        return this.pool;
+    }
+
+    /**
+     * Runs all rules over all nodes and links of a network, holding the read lock of its model, if any, for the whole
+     * run
+     * @param context The network to validate
+     * @return The warnings of all rules and the time spent in each of them
+     */
+    public ValidationReport validate(ValidationContext context) {
+        return context.read(() -> validateLocked(context));
+    }
+
+    /**
+     * Runs all rules over all nodes and links of a network that is not changed meanwhile
+     * @param context The network to validate
+     * @return The warnings of all rules and the time spent in each of them
+     */
+    private ValidationReport validateLocked(ValidationContext context) {
+        long start = System.nanoTime();
+        Node[] nodes = context.getNetwork().getNodes().values().toArray(new Node[0]);
+        Link[] links = context.getNetwork().getLinks().values().toArray(new Link[0]);
+        RangeResult result = this.pool.invoke(new RangeTask(context, nodes, links, 0, nodes.length + links.length));
+
+        StageTimings timings = new StageTimings("validation");
+        List<ValidationTableEntry> warnings = new ArrayList<>();
+        for (int r = 0; r < this.rules.size(); r++) {
+            timings.record(this.rules.get(r).getName(), result.nanos[r] / 1000000);
+            warnings.addAll(result.warnings.get(r));
+        }
+        logger.info("{} of {} nodes and {} links, {} warnings in {}ms", timings, nodes.length, links.length,
+                warnings.size(), (System.nanoTime() - start) / 1000000);
+        return new ValidationReport(warnings, timings);
+    }
+
+    /**
+     * Validates changed elements again, instead of the whole network. The set of elements is extended by their
+     * neighbours, whose warnings may depend on them: the links of a changed node, and the nodes of a changed link along
+     * with their links, which include the links in the opposite direction. Elements that no longer exist are kept in
+     * the set, so that their warnings are dropped, but are not checked. Holds the read lock of the model, if any
+     * @param context The network the elements belong to
+     * @param elements The changed nodes and links; extended by their neighbours
+     * @return The warnings about the elements and their neighbours
+     */
+    public ValidationReport revalidate(ValidationContext context, ChangeTracker elements) {
+        return context.read(() -> revalidateLocked(context, elements));
+    }
+
+    /**
+     * Validates changed elements and their neighbours again, in a network that is not changed meanwhile
+     * @param context The network the elements belong to
+     * @param elements The changed nodes and links; extended by their neighbours
+     * @return The warnings about the elements and their neighbours
+     */
+    private ValidationReport revalidateLocked(ValidationContext context, ChangeTracker elements) {
+        Network network = context.getNetwork();
+        for (Id<Node> nodeId : new ArrayList<>(elements.getNodes())) {
+            Node node = network.getNodes().get(nodeId);
+            if (node != null) {
+                markLinks(node, elements);
+            }
+        }
+        for (Id<Link> linkId : new ArrayList<>(elements.getLinks())) {
+            Link link = network.getLinks().get(linkId);
+            if (link != null) {
+                for (Node node : List.of(link.getFromNode(), link.getToNode())) {
+                    elements.markNode(node.getId());
+                    markLinks(node, elements);
+                }
+            }
+        }
+
+        List<Node> nodes = new ArrayList<>();
+        elements.getNodes().forEach(nodeId -> Optional.ofNullable(network.getNodes().get(nodeId)).ifPresent(nodes::add));
+        List<Link> links = new ArrayList<>();
+        elements.getLinks().forEach(linkId -> Optional.ofNullable(network.getLinks().get(linkId)).ifPresent(links::add));
+
+        StageTimings timings = new StageTimings("revalidation");
+        List<ValidationTableEntry> warnings = new ArrayList<>();
+        for (ValidationRule rule : this.rules) {
+            timings.time(rule.getName(), () -> {
+                nodes.forEach(node -> rule.checkNode(node, context, warnings));
+                links.forEach(link -> rule.checkLink(link, context, warnings));
+            });
+        }
+        logger.debug("{} of {} nodes and {} links", timings, nodes.size(), links.size());
+        return new ValidationReport(warnings, timings);
+    }
+
+    /**
+     * Adds the in- and outlinks of a node to a set of elements
+     * @param node The node
+     * @param elements The set of elements
+     */
+    private static void markLinks(Node node, ChangeTracker elements) {
+        node.getInLinks().keySet().forEach(elements::markLink);
+        node.getOutLinks().keySet().forEach(elements::markLink);
+    }
+
+    /**
+     * The warnings of each rule found in a range of elements, and the time each rule took
+     */
+    private static final class RangeResult {
+        private final List<List<ValidationTableEntry>> warnings;
+        private final long[] nanos;
+
+        private RangeResult(int ruleCount) {
+            this.warnings = new ArrayList<>(ruleCount);
+            for (int r = 0; r < ruleCount; r++) {
+                this.warnings.add(new ArrayList<>());
+            }
+            this.nanos = new long[ruleCount];
+        }
+
+        /**
+         * Appends the result of the following range
+         * @param next The result of the range following this one
+         * @return This result
+         */
+        private RangeResult append(RangeResult next) {
+            for (int r = 0; r < this.nanos.length; r++) {
+                this.warnings.get(r).addAll(next.warnings.get(r));
+                this.nanos[r] += next.nanos[r];
+            }
+            return this;
+        }
+    }
+
+    /**
+     * Checks a range of elements, where the indexes below the number of nodes denote nodes and the ones above denote
+     * links, splitting it in halves as long as it is larger than {@link #RANGE_SIZE}
+     */
+    private final class RangeTask extends RecursiveTask<RangeResult> {
+        private final ValidationContext context;
+        private final Node[] nodes;
+        private final Link[] links;
+        private final int from;
+        private final int to;
+
+        private RangeTask(ValidationContext context, Node[] nodes, Link[] links, int from, int to) {
+            this.context = context;
+            this.nodes = nodes;
+            this.links = links;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected RangeResult compute() {
+            if (this.to - this.from > RANGE_SIZE) {
+                int middle = (this.from + this.to) >>> 1;
+                RangeTask left = new RangeTask(this.context, this.nodes, this.links, this.from, middle);
+                RangeTask right = new RangeTask(this.context, this.nodes, this.links, middle, this.to);
+                right.fork();
+                RangeResult leftResult = left.compute();
+                return leftResult.append(right.join());
+            }
+            RangeResult result = new RangeResult(rules.size());
+            // Rule by rule, so that the time of each rule is taken once per range instead of once per element
+            for (int r = 0; r < rules.size(); r++) {
+                ValidationRule rule = rules.get(r);
+                List<ValidationTableEntry> warnings = result.warnings.get(r);
+                long start = System.nanoTime();
+                for (int i = this.from; i < this.to; i++) {
+                    if (i < this.nodes.length) {
+                        rule.checkNode(this.nodes[i], this.context, warnings);
+                    } else {
+                        rule.checkLink(this.links[i - this.nodes.length], this.context, warnings);
+                    }
+                }
+                result.nanos[r] += System.nanoTime() - start;
+            }
+            return result;
+        }
+    }
+}
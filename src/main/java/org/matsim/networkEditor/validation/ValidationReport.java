@@ -0,0 +1,39 @@
+package org.matsim.networkEditor.validation;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.matsim.networkEditor.elements.ValidationTableEntry;
+import org.matsim.networkEditor.utils.StageTimings;
+
+/**
+ * The outcome of a validation run: the warnings of all rules, in the order of the rules, and the time spent in each rule
+ */
+public class ValidationReport {
+    private final List<ValidationTableEntry> warnings;
+    private final StageTimings timings;
+
+    /**
+     * @param warnings The warnings found
+     * @param timings The time spent in each rule, summed over all threads
+     */
+    public ValidationReport(List<ValidationTableEntry> warnings, StageTimings timings) {
+        this.warnings = Collections.unmodifiableList(new ArrayList<>(warnings));
+        this.timings = timings;
+    }
+
+    /**
+     * @return The warnings found, grouped by rule in the order of the rules
+     */
+    public List<ValidationTableEntry> getWarnings() {
+        return this.warnings;
+    }
+
+    /**
+     * @return The time spent in each rule, summed over all threads
+     */
+    public StageTimings getTimings() {
+        return this.timings;
+    }
+}
@@ -0,0 +1,39 @@
+package org.matsim.networkEditor.validation;
+
+import java.util.List;
+
+import org.matsim.api.core.v01.network.Link;
+import org.matsim.api.core.v01.network.Node;
+import org.matsim.networkEditor.elements.ValidationTableEntry;
+
+/**
+ * A check of the network that looks at one node or one link at a time. The {@link ValidationEngine} calls the rule for
+ * every element of the network, concurrently from several threads, so a rule must not keep state between calls other than
+ * thread-safe caches. Rules are found with the {@link java.util.ServiceLoader}: a new rule is a class with a public
+ * no-argument constructor, listed in META-INF/services/org.matsim.networkEditor.validation.ValidationRule
+ */
+public interface ValidationRule {
+
+    /**
+     * @return The name of the rule, used to report its timings and progress
+     */
+    String getName();
+
+    /**
+     * Checks a node of the network; does nothing unless overridden
+     * @param node The node to check
+     * @param context The network being validated
+     * @param warnings The list the warnings about the node are added to, owned by the calling thread
+     */
+    default void checkNode(Node node, ValidationContext context, List<ValidationTableEntry> warnings) {
+    }
+
+    /**
+     * Checks a link of the network; does nothing unless overridden
+     * @param link The link to check
+     * @param context The network being validated
+     * @param warnings The list the warnings about the link are added to, owned by the calling thread
+     */
+    default void checkLink(Link link, ValidationContext context, List<ValidationTableEntry> warnings) {
+    }
+}
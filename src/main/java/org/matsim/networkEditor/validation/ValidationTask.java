@@ -0,0 +1,158 @@
+package org.matsim.networkEditor.validation;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+import javafx.application.Platform;
+import javafx.concurrent.Task;
+import org.matsim.api.core.v01.network.Link;
+import org.matsim.api.core.v01.network.Node;
+import org.matsim.networkEditor.elements.ValidationTableEntry;
+import org.matsim.networkEditor.utils.StageTimings;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Background task running the rules of a {@link ValidationEngine} over a network, one rule after the other, with the
+ * elements checked in chunks on the pool of the engine. The warnings are handed to the JavaFX thread in batches as soon
+ * as a chunk is done, the progress covers all rules and the message names the rule that is running. The task can be
+ * cancelled between chunks; batches that have not reached the JavaFX thread by then are dropped.
+ * The network stays editable while the task runs: the elements are collected when the task is created, and each chunk is
+ * checked under the read lock of the model, so that edits happen between chunks; an element that still fails a rule,
+ * e.g. because it was removed since it was collected, is skipped instead of failing the task. Elements modified while
+ * the task runs are recorded as changes of the network and have to be validated again once the task is done
+ */
+public class ValidationTask extends Task<ValidationReport> {
+    private static final Logger logger = LoggerFactory.getLogger(ValidationTask.class);
+    /** Number of elements checked in one chunk, before the found warnings are handed on */
+    private static final int CHUNK_SIZE = 4096;
+
+    private final ValidationEngine engine;
+    private final ValidationContext context;
+    private final Node[] nodes;
+    private final Link[] links;
+    private final Consumer<List<ValidationTableEntry>> warningsConsumer;
+    private final List<ValidationTableEntry> warnings = Collections.synchronizedList(new ArrayList<>());
+    // The warnings found but not yet handed to the JavaFX thread, and whether a hand-over is already scheduled
+    private final ConcurrentLinkedQueue<ValidationTableEntry> pending = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean handOverScheduled = new AtomicBoolean(false);
+    private final AtomicInteger skippedElements = new AtomicInteger();
+
+    /**
+     * Creates the task and collects the elements of the network
+     * @param engine The engine whose rules are run
+     * @param context The network to validate
+     * @param warningsConsumer Receives the warnings in batches, on the JavaFX application thread
+     */
+    public ValidationTask(ValidationEngine engine, ValidationContext context, Consumer<List<ValidationTableEntry>> warningsConsumer) {
+        this.engine = engine;
+        this.context = context;
+        this.nodes = context.read(() -> context.getNetwork().getNodes().values().toArray(new Node[0]));
+        this.links = context.read(() -> context.getNetwork().getLinks().values().toArray(new Link[0]));
+        this.warningsConsumer = warningsConsumer;
+    }
+
+    @Override
+    protected ValidationReport call() throws Exception {
+        List<ValidationRule> rules = this.engine.getRules();
+        int elementCount = this.nodes.length + this.links.length;
+        long totalWork = (long) elementCount * rules.size();
+        AtomicLong workDone = new AtomicLong();
+        updateProgress(0, totalWork);
+
+        StageTimings timings = new StageTimings("validation");
+        for (int r = 0; r < rules.size() && !isCancelled(); r++) {
+            ValidationRule rule = rules.get(r);
+            updateMessage(rule.getName() + " (" + (r + 1) + "/" + rules.size() + ")");
+            List<Callable<Void>> chunks = new ArrayList<>();
+            for (int from = 0; from < elementCount; from += CHUNK_SIZE) {
+                int chunkFrom = from;
+                int chunkTo = Math.min(from + CHUNK_SIZE, elementCount);
+                chunks.add(() -> {
+                    if (!isCancelled()) {
+                        this.context.read(() -> checkChunk(rule, chunkFrom, chunkTo));
+                        updateProgress(workDone.addAndGet(chunkTo - chunkFrom), totalWork);
+                    }
+                    return null;
+                });
+            }
+            timings.start(rule.getName());
+            try {
+                // Failures other than those of single elements fail the task
+                for (Future<Void> chunk : this.engine.getPool().invokeAll(chunks)) {
+                    chunk.get();
+                }
+            } finally {
+                timings.stop();
+            }
+        }
+        if (isCancelled()) {
+            return null;
+        }
+        logger.info("{} of {} nodes and {} links, {} warnings, {} elements skipped as they were modified", timings,
+                this.nodes.length, this.links.length, this.warnings.size(), this.skippedElements.get());
+        return new ValidationReport(this.warnings, timings);
+    }
+
+    /**
+     * @return The number of elements that were modified while they were checked, and skipped
+     */
+    public int getSkippedElements() {
+        return this.skippedElements.get();
+    }
+
+    /**
+     * Checks a range of elements with a rule and hands the found warnings on, where the indexes below the number of
+     * nodes denote nodes and the ones above denote links
+     * @param rule The rule to check
+     * @param from The first index of the range
+     * @param to The index after the last index of the range
+     */
+    private void checkChunk(ValidationRule rule, int from, int to) {
+        List<ValidationTableEntry> chunkWarnings = new ArrayList<>();
+        for (int i = from; i < to; i++) {
+            try {
+                if (i < this.nodes.length) {
+                    rule.checkNode(this.nodes[i], this.context, chunkWarnings);
+                } else {
+                    rule.checkLink(this.links[i - this.nodes.length], this.context, chunkWarnings);
+                }
+            } catch (RuntimeException e) {
+                // The element was modified since it was collected, in a way the rule does not expect
+                this.skippedElements.incrementAndGet();
+                logger.debug("Element skipped by rule " + rule.getName(), e);
+            }
+        }
+        if (!chunkWarnings.isEmpty()) {
+            this.warnings.addAll(chunkWarnings);
+            this.pending.addAll(chunkWarnings);
+            // One hand-over at a time is scheduled, it takes all warnings found until it runs
+            if (this.handOverScheduled.compareAndSet(false, true)) {
+                Platform.runLater(this::handOver);
+            }
+        }
+    }
+
+    /**
+     * Hands the pending warnings to the consumer, on the JavaFX application thread
+     */
+    private void handOver() {
+        this.handOverScheduled.set(false);
+        List<ValidationTableEntry> batch = new ArrayList<>();
+        ValidationTableEntry entry;
+        while ((entry = this.pending.poll()) != null) {
+            batch.add(entry);
+        }
+        if (!batch.isEmpty() && !isCancelled()) {
+            this.warningsConsumer.accept(batch);
+        }
+    }
+}
@@ -0,0 +1,68 @@
+package org.matsim.networkEditor.visualElements;
+
+import org.matsim.networkEditor.elements.NetworkChangeEvent;
+import org.matsim.networkEditor.elements.NetworkChangeListener;
+
+import javafx.application.Platform;
+
+/**
+ * Hands the changes of a network model over to a view on the JavaFX application thread. Changes made on the JavaFX
+ * thread, e.g. by the editing tools, are shown right away; changes made on another thread, e.g. by an import or a bulk
+ * edit running in the background, are coalesced until the JavaFX thread gets to them, so that a worker flushing many
+ * times in a row refreshes the view only once per pulse
+ */
+public class FxNetworkChangeAdapter implements NetworkChangeListener {
+    private final NetworkChangeListener view;
+    // The changes not shown yet and whether they are scheduled to be shown, guarded by this adapter
+    private NetworkChangeEvent pending = null;
+    private boolean scheduled = false;
+
+    /**
+     * @param view Shows the changes, always called on the JavaFX application thread
+     */
+    public FxNetworkChangeAdapter(NetworkChangeListener view) {
+        this.view = view;
+    }
+
+    /**
+     * Shows the changes right away on the JavaFX thread, along with changes of other threads not shown yet, otherwise
+     * adds them to those not shown yet and schedules them to be shown
+     * @param event The nodes and links that were added, removed or changed
+     */
+    @Override
+    public void networkChanged(NetworkChangeEvent event) {
+        if (Platform.isFxApplicationThread()) {
+            NetworkChangeEvent merged;
+            synchronized (this) {
+                merged = this.pending == null ? event : this.pending.coalesce(event);
+                this.pending = null;
+            }
+            this.view.networkChanged(merged);
+            return;
+        }
+        boolean schedule;
+        synchronized (this) {
+            this.pending = this.pending == null ? event : this.pending.coalesce(event);
+            schedule = !this.scheduled;
+            this.scheduled = true;
+        }
+        if (schedule) {
+            Platform.runLater(this::showPending);
+        }
+    }
+
+    /**
+     * Shows the changes not shown yet, on the JavaFX thread
+     */
+    private void showPending() {
+        NetworkChangeEvent event;
+        synchronized (this) {
+            event = this.pending;
+            this.pending = null;
+            this.scheduled = false;
+        }
+        if (event != null) {
+            this.view.networkChanged(event);
+        }
+    }
+}
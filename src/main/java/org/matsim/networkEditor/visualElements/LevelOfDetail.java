@@ -0,0 +1,55 @@
+package org.matsim.networkEditor.visualElements;
+
+import org.matsim.api.core.v01.network.Link;
+
+/**
+ * Decides which nodes and links are drawn at a zoom level of the map. When zoomed out, a city or country network has far
+ * more elements than pixels, so nodes are hidden and only the links of a higher capacity class are drawn, the way a road
+ * map only shows the main roads at a small scale
+ */
+public final class LevelOfDetail {
+    /** Zoom level from which on the nodes are drawn */
+    public static final double NODE_MIN_ZOOM = 14.0;
+    /** Zoom levels from which on the links of the respective capacity class are drawn */
+    private static final double[] ZOOM_LEVELS = {13.0, 11.0, 9.0};
+    /** Minimum capacity in vehicles per hour of the links drawn below the respective zoom level */
+    private static final double[] MIN_CAPACITIES = {1000.0, 2000.0, 4000.0};
+
+    private LevelOfDetail() {
+    }
+
+    /**
+     * @param zoom The zoom level of the map
+     * @return True if the nodes are drawn at the zoom level, otherwise false
+     */
+    public static boolean showNodes(double zoom) {
+        return zoom >= NODE_MIN_ZOOM;
+    }
+
+    /**
+     * @param zoom The zoom level of the map
+     * @return The minimum capacity in vehicles per hour of the links drawn at the zoom level, 0 if all links are drawn
+     */
+    public static double minimumCapacity(double zoom) {
+        double minimumCapacity = 0.0;
+        for (int i = 0; i < ZOOM_LEVELS.length && zoom < ZOOM_LEVELS[i]; i++) {
+            minimumCapacity = MIN_CAPACITIES[i];
+        }
+        return minimumCapacity;
+    }
+
+    /**
+     * @param link The link
+     * @param capacityPeriod The capacity period of the network in seconds, the link capacity refers to
+     * @param zoom The zoom level of the map
+     * @return True if the link is drawn at the zoom level, otherwise false
+     */
+    public static boolean showLink(Link link, double capacityPeriod, double zoom) {
+        double minimumCapacity = minimumCapacity(zoom);
+        if (minimumCapacity == 0.0) {
+            return true;
+        }
+        double hourlyCapacity = capacityPeriod > 0 ? link.getCapacity() * 3600.0 / capacityPeriod : link.getCapacity();
+        return hourlyCapacity >= minimumCapacity;
+    }
+}
@@ -0,0 +1,374 @@
+package org.matsim.networkEditor.visualElements;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.function.BiFunction;
+
+import com.sothawo.mapjfx.Coordinate;
+import com.sothawo.mapjfx.Extent;
+import com.sothawo.mapjfx.MapView;
+import com.sothawo.mapjfx.Marker;
+import com.sothawo.mapjfx.event.MapViewEvent;
+import com.sothawo.mapjfx.event.MarkerEvent;
+import javafx.animation.PauseTransition;
+import javafx.event.EventType;
+import javafx.scene.web.WebEngine;
+import javafx.scene.web.WebView;
+import javafx.util.Duration;
+import netscape.javascript.JSObject;
+import org.matsim.api.core.v01.Id;
+import org.matsim.api.core.v01.network.Link;
+import org.matsim.api.core.v01.network.Node;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Layer drawing the nodes and links of the network on the map. Instead of one mapjfx marker per node and one coordinate
+ * line per link, each of which is a separate call over the JavaFX/JavaScript bridge, the elements are passed to the map in
+ * batches of JSON arrays. The layer script keeps their coordinates in packed typed arrays and draws the whole network on
+ * a single canvas in one pass (see /js/networklayer.js). The drawn nodes are no mapjfx markers, so clicks on the map are
+ * hit-tested against the nodes and turned into the usual {@link MarkerEvent}s, carrying a marker at the position of the
+ * hit node.
+ * The layer follows the visible extent of the map: once the map has come to rest after panning or zooming, the viewport
+ * listener is notified, so that only the elements within the viewport, plus a margin, are kept on the map.
+ * Must be created and used on the JavaFX application thread, once the map view is initialized
+ */
+public class NetworkLayer {
+    private static final Logger logger = LoggerFactory.getLogger(NetworkLayer.class);
+    /** Number of elements passed to the map in one call */
+    private static final int BATCH_SIZE = 20000;
+    /** Distance in pixels within which a click hits a node */
+    private static final double HIT_TOLERANCE_PIXELS = 6.0;
+    /** Margin around the visible extent within which elements are kept on the map, as a fraction of its size */
+    private static final double VIEWPORT_MARGIN = 0.5;
+    /** Time the extent of the map must stay unchanged before the viewport listener is notified */
+    private static final Duration VIEWPORT_DELAY = Duration.millis(150);
+
+    private final MapView mapView;
+    private final JSObject jsLayer;
+    // Kept as a field, since the web engine only holds a weak reference to objects passed to JavaScript
+    private final Connector connector = new Connector();
+    private BiFunction<Coordinate, Double, Node> nodeLocator = (coordinate, tolerance) -> null;
+    private final PauseTransition viewportDelay = new PauseTransition(VIEWPORT_DELAY);
+    private Runnable viewportListener = () -> { };
+    // The visible extent including the margin, in degrees; null as long as the map has not reported its extent
+    private double[] viewport = null;
+
+    /**
+     * Installs the layer in the map view and starts hit-testing the clicks on the map
+     * @param mapView The initialized map view
+     */
+    public NetworkLayer(MapView mapView) {
+        this.mapView = mapView;
+        WebEngine engine = findWebEngine(mapView);
+        engine.executeScript(readScript());
+        this.jsLayer = (JSObject) engine.executeScript("networkLayer");
+        ((JSObject) engine.executeScript("window")).setMember("_networkLayerConnector", this.connector);
+
+        // Filters run before the handlers of the map view, so a click on a node is not handled as a click on the map
+        mapView.addEventFilter(MapViewEvent.MAP_CLICKED, event -> {
+            if (fireNodeEvent(event.getCoordinate(), MarkerEvent.MARKER_CLICKED)) {
+                event.consume();
+            }
+        });
+        mapView.addEventFilter(MapViewEvent.MAP_RIGHTCLICKED, event -> {
+            if (fireNodeEvent(event.getCoordinate(), MarkerEvent.MARKER_RIGHTCLICKED)) {
+                event.consume();
+            }
+        });
+        // The extent is reported continuously while panning, so the listener is only notified once the map is at rest
+        mapView.addEventFilter(MapViewEvent.MAP_BOUNDING_EXTENT, event -> {
+            setViewport(event.getExtent());
+            this.viewportDelay.playFromStart();
+        });
+        this.viewportDelay.setOnFinished(event -> this.viewportListener.run());
+        logger.debug("network layer installed");
+    }
+
+    /**
+     * Sets the lookup used for hit-testing: it returns the node closest to a position within a tolerance in degrees,
+     * or null if there is none
+     * @param nodeLocator The lookup of the nodes of the current network
+     */
+    public void setNodeLocator(BiFunction<Coordinate, Double, Node> nodeLocator) {
+        this.nodeLocator = nodeLocator;
+    }
+
+    /**
+     * Sets the listener notified when the visible extent or the zoom level of the map has changed
+     * @param viewportListener The listener, typically updating the elements drawn on the map
+     */
+    public void setViewportListener(Runnable viewportListener) {
+        this.viewportListener = viewportListener;
+    }
+
+    /**
+     * @param x The longitude of a position
+     * @param y The latitude of a position
+     * @return True if the position lies within the visible extent of the map or its margin, or if the extent is not
+     * known yet, otherwise false
+     */
+    public boolean isInViewport(double x, double y) {
+        return this.viewport == null || (x >= this.viewport[0] && y >= this.viewport[1] && x <= this.viewport[2]
+                && y <= this.viewport[3]);
+    }
+
+    /**
+     * @return The visible extent of the map including its margin, as minimum longitude, minimum latitude, maximum
+     * longitude and maximum latitude, or null if the map has not reported its extent yet
+     */
+    public double[] getViewport() {
+        return this.viewport == null ? null : this.viewport.clone();
+    }
+
+    /**
+     * @return The current zoom level of the map
+     */
+    public double getZoom() {
+        return this.mapView.getZoom();
+    }
+
+    /**
+     * Draws nodes on the map
+     * @param nodes The nodes to draw
+     */
+    public void addNodes(Collection<? extends Node> nodes) {
+        sendInBatches("addNodes", nodes, (node, json) -> {
+            appendId(json, node.getId().toString());
+            // Coordinates are stored as x: longitude, y: latitude
+            json.append(',').append(node.getCoord().getX()).append(',').append(node.getCoord().getY());
+        });
+    }
+
+    /**
+     * Removes nodes from the map
+     * @param nodeIds The ids of the nodes to remove
+     */
+    public void removeNodes(Collection<Id<Node>> nodeIds) {
+        sendInBatches("removeNodes", nodeIds, (id, json) -> appendId(json, id.toString()));
+    }
+
+    /**
+     * Draws links on the map, as straight lines between their nodes
+     * @param links The links to draw
+     */
+    public void addLinks(Collection<? extends Link> links) {
+        sendInBatches("addLinks", links, (link, json) -> {
+            appendId(json, link.getId().toString());
+            json.append(',').append(link.getFromNode().getCoord().getX()).append(',').append(link.getFromNode().getCoord().getY())
+                    .append(',').append(link.getToNode().getCoord().getX()).append(',').append(link.getToNode().getCoord().getY());
+        });
+    }
+
+    /**
+     * Removes links from the map
+     * @param linkIds The ids of the links to remove
+     */
+    public void removeLinks(Collection<Id<Link>> linkIds) {
+        sendInBatches("removeLinks", linkIds, (id, json) -> appendId(json, id.toString()));
+    }
+
+    /**
+     * Highlights nodes and links in a colour, drawn on top of the network until {@link #clearHighlights()} is called.
+     * The highlighted elements are drawn wherever they are, regardless of the viewport
+     * @param color The CSS colour of the highlighted elements, e.g. "#ff0000"
+     * @param nodes The nodes to highlight
+     * @param links The links to highlight
+     */
+    public void highlight(String color, Collection<? extends Node> nodes, Collection<? extends Link> links) {
+        sendInBatches("highlightNodes", nodes, (node, json) ->
+                json.append(node.getCoord().getX()).append(',').append(node.getCoord().getY()), color);
+        sendInBatches("highlightLinks", links, (link, json) ->
+                json.append(link.getFromNode().getCoord().getX()).append(',').append(link.getFromNode().getCoord().getY())
+                        .append(',').append(link.getToNode().getCoord().getX()).append(',').append(link.getToNode().getCoord().getY()),
+                color);
+    }
+
+    /**
+     * Highlights nodes and links given by their coordinates in a colour, e.g. the elements of a network that is not
+     * loaded in the editor; drawn like the elements of {@link #highlight}
+     * @param color The CSS colour of the highlighted elements, e.g. "#ff0000"
+     * @param nodes The WGS84 coordinates of the nodes, x and y each
+     * @param links The WGS84 coordinates of the links, fromX, fromY, toX and toY each
+     */
+    public void highlightCoordinates(String color, Collection<double[]> nodes, Collection<double[]> links) {
+        sendInBatches("highlightNodes", nodes, (coords, json) -> json.append(coords[0]).append(',').append(coords[1]), color);
+        sendInBatches("highlightLinks", links, (coords, json) -> json.append(coords[0]).append(',').append(coords[1])
+                .append(',').append(coords[2]).append(',').append(coords[3]), color);
+    }
+
+    /**
+     * Removes the highlighted elements of one colour from the map
+     * @param color The CSS colour the elements were highlighted in
+     */
+    public void clearHighlight(String color) {
+        this.jsLayer.call("clearHighlight", color);
+    }
+
+    /**
+     * Removes all highlights from the map
+     */
+    public void clearHighlights() {
+        this.jsLayer.call("clearHighlights");
+    }
+
+    /**
+     * Removes all nodes and links from the map in one call
+     */
+    public void clear() {
+        this.jsLayer.call("clear");
+    }
+
+    /**
+     * @return The map view the layer is drawn on
+     */
+    public MapView getMapView() {
+        return this.mapView;
+    }
+
+    /**
+     * Stores the extent reported by the map, widened by the margin
+     * @param extent The visible extent of the map
+     */
+    private void setViewport(Extent extent) {
+        // Swap latitude and longitude to match MATSim notation
+        double minX = extent.getMin().getLongitude();
+        double minY = extent.getMin().getLatitude();
+        double maxX = extent.getMax().getLongitude();
+        double maxY = extent.getMax().getLatitude();
+        double marginX = (maxX - minX) * VIEWPORT_MARGIN;
+        double marginY = (maxY - minY) * VIEWPORT_MARGIN;
+        this.viewport = new double[]{minX - marginX, minY - marginY, maxX + marginX, maxY + marginY};
+    }
+
+    /**
+     * Fires a marker event for the node at a position, if there is one. Nodes can only be hit while they are drawn, so
+     * that a click at a zoom level without nodes is handled as a click on the map and a node cannot be removed unseen
+     * @param coordinate The position of the click
+     * @param eventType The type of the marker event to fire
+     * @return True if a node was hit and the event was fired, otherwise false
+     */
+    private boolean fireNodeEvent(Coordinate coordinate, EventType<MarkerEvent> eventType) {
+        if (!LevelOfDetail.showNodes(this.mapView.getZoom())) {
+            return false;
+        }
+        Node node = this.nodeLocator.apply(coordinate, hitTolerance());
+        if (node == null) {
+            return false;
+        }
+        // Swap X and Y to match MATSim notation
+        Marker marker = new Marker(getClass().getResource("/icons/node.png"), -3, -8)
+                .setPosition(new Coordinate(node.getCoord().getY(), node.getCoord().getX()));
+        this.mapView.fireEvent(new MarkerEvent(eventType, marker));
+        return true;
+    }
+
+    /**
+     * @return The hit tolerance in degrees of longitude at the current zoom level of the map
+     */
+    private double hitTolerance() {
+        // At zoom level z the 360 degrees of longitude span 256 * 2^z pixels
+        return HIT_TOLERANCE_PIXELS * 360.0 / (256.0 * Math.pow(2.0, this.mapView.getZoom()));
+    }
+
+    /**
+     * Passes elements to a function of the layer script as JSON arrays of at most {@link #BATCH_SIZE} elements
+     * @param function The name of the function of the layer script
+     * @param elements The elements to pass
+     * @param writer Writes the JSON array of an element, without the enclosing brackets
+     * @param arguments Arguments passed to the function before the JSON array
+     */
+    private <T> void sendInBatches(String function, Collection<? extends T> elements, ElementWriter<T> writer,
+                                   Object... arguments) {
+        Iterator<? extends T> iterator = elements.iterator();
+        while (iterator.hasNext()) {
+            StringBuilder json = new StringBuilder(64 * Math.min(elements.size(), BATCH_SIZE)).append('[');
+            for (int i = 0; i < BATCH_SIZE && iterator.hasNext(); i++) {
+                if (i > 0) {
+                    json.append(',');
+                }
+                json.append('[');
+                writer.write(iterator.next(), json);
+                json.append(']');
+            }
+            json.append(']');
+            Object[] callArguments = Arrays.copyOf(arguments, arguments.length + 1);
+            callArguments[arguments.length] = json.toString();
+            this.jsLayer.call(function, callArguments);
+        }
+    }
+
+    /**
+     * Appends an id as a JSON string
+     * @param json The JSON being built
+     * @param id The id
+     */
+    private static void appendId(StringBuilder json, String id) {
+        json.append('"');
+        for (int i = 0; i < id.length(); i++) {
+            char c = id.charAt(i);
+            if (c == '"' || c == '\\') {
+                json.append('\\').append(c);
+            } else if (c < 0x20) {
+                json.append(String.format("\\u%04x", (int) c));
+            } else {
+                json.append(c);
+            }
+        }
+        json.append('"');
+    }
+
+    /**
+     * @param mapView The map view
+     * @return The engine of the web view that mapjfx renders the map in
+     */
+    private static WebEngine findWebEngine(MapView mapView) {
+        for (javafx.scene.Node child : mapView.getChildrenUnmodifiable()) {
+            if (child instanceof WebView) {
+                return ((WebView) child).getEngine();
+            }
+        }
+        throw new IllegalStateException("The map view does not contain a web view, it might not be initialized yet");
+    }
+
+    /**
+     * @return The script installing the layer in the map
+     */
+    private static String readScript() {
+        try (InputStream in = NetworkLayer.class.getResourceAsStream("/js/networklayer.js")) {
+            if (in == null) {
+                throw new IllegalStateException("The network layer script /js/networklayer.js is missing");
+            }
+            return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            throw new IllegalStateException("The network layer script cannot be read", e);
+        }
+    }
+
+    /**
+     * Writes an element into a JSON array
+     * @param <T> The type of the element
+     */
+    private interface ElementWriter<T> {
+        void write(T element, StringBuilder json);
+    }
+
+    /**
+     * Receives the calls of the layer script; must be public for the web engine to call it
+     */
+    public class Connector {
+        /**
+         * Called by the layer script on a double click on the map
+         * @param latitude The latitude of the click
+         * @param longitude The longitude of the click
+         * @return True if a node was hit, so that the map does not zoom in, otherwise false
+         */
+        public boolean doubleClickAt(double latitude, double longitude) {
+            return fireNodeEvent(new Coordinate(latitude, longitude), MarkerEvent.MARKER_DOUBLECLICKED);
+        }
+    }
+}
@@ -0,0 +1,62 @@
+package org.matsim.networkEditor.visualElements;
+
+import javafx.concurrent.Task;
+import javafx.concurrent.Worker;
+import javafx.geometry.Insets;
+import javafx.scene.control.ButtonBar.ButtonData;
+import javafx.scene.control.ButtonType;
+import javafx.scene.control.Dialog;
+import javafx.scene.control.Label;
+import javafx.scene.control.ProgressBar;
+import javafx.scene.layout.VBox;
+
+/**
+ * Non-blocking dialog showing the progress and the current message of a background task, with a button to cancel it.
+ * The dialog closes itself as soon as the task has finished, failed or was cancelled
+ */
+public class TaskProgressDialog {
+    private final Dialog<Void> dialog = new Dialog<>();
+
+    /**
+     * Creates the dialog for a task, it is shown with {@link #show()}
+     * @param task The background task whose progress is displayed
+     * @param title The title of the dialog window
+     */
+    public TaskProgressDialog(Task<?> task, String title) {
+        this.dialog.setTitle(title);
+        this.dialog.setHeaderText(title + "...");
+
+        ProgressBar progressBar = new ProgressBar();
+        progressBar.setPrefWidth(400);
+        progressBar.progressProperty().bind(task.progressProperty());
+        Label message = new Label();
+        message.textProperty().bind(task.messageProperty());
+
+        VBox content = new VBox(10, progressBar, message);
+        content.setPadding(new Insets(20, 30, 10, 30));
+        this.dialog.getDialogPane().setContent(content);
+
+        ButtonType buttonTypeCancel = new ButtonType("Cancel", ButtonData.CANCEL_CLOSE);
+        this.dialog.getDialogPane().getButtonTypes().add(buttonTypeCancel);
+        // Pressing cancel (or closing the window) while the task is still running cancels the task
+        this.dialog.setResultConverter(dialogButton -> {
+            if (!task.isDone()) {
+                task.cancel();
+            }
+            return null;
+        });
+
+        task.stateProperty().addListener((observable, oldState, newState) -> {
+            if (newState == Worker.State.SUCCEEDED || newState == Worker.State.FAILED || newState == Worker.State.CANCELLED) {
+                this.dialog.close();
+            }
+        });
+    }
+
+    /**
+     * Shows the dialog without waiting for it to be closed
+     */
+    public void show() {
+        this.dialog.show();
+    }
+}
@@ -0,0 +1,268 @@
+/*
+ * Network layer of the editor: draws all nodes and links of the network on one canvas on top of the map of mapjfx.
+ * Elements are added and removed in batches, passed from Java as JSON arrays, and their projected coordinates are kept
+ * in packed typed arrays, from which the whole network is drawn in a single pass over the arrays: one path for all links
+ * and one for all nodes. The canvas is only redrawn once the view has settled; while panning and zooming the last
+ * image is moved and scaled, so the map stays interactive for networks of hundreds of thousands of links.
+ * Hit-testing of clicks is done in Java against the spatial index of the nodes.
+ * On top of the network, groups of elements can be highlighted in a colour of their own, e.g. the elements a cleaning
+ * would remove or the subnetworks of a mode.
+ */
+(function () {
+    if (window.networkLayer) {
+        return;
+    }
+    var jsMapView = getJSMapView();
+    var map = jsMapView.map;
+    var projections = jsMapView.projections;
+
+    var NODE_RADIUS = 3;
+    var NODE_COLOR = '#00008b';
+    var LINK_COLOR = '#00008b';
+
+    /**
+     * Packed storage of elements with a fixed number of coordinates each. Removed elements leave a hole, marked with
+     * NaN, that is reused by the next added element. The slots are kept in a Map, as the ids are arbitrary strings of
+     * the network, which may collide with the properties of a plain object, e.g. "__proto__" or "constructor".
+     */
+    function PackedBuffer(stride) {
+        this.stride = stride;
+        this.coords = new Float64Array(1024 * stride);
+        this.size = 0;
+        this.slots = new Map();
+        this.free = [];
+    }
+
+    PackedBuffer.prototype.add = function (id, values) {
+        if (this.slots.has(id)) {
+            this.remove(id);
+        }
+        var slot;
+        if (this.free.length > 0) {
+            slot = this.free.pop();
+        } else {
+            if ((this.size + 1) * this.stride > this.coords.length) {
+                var grown = new Float64Array(this.coords.length * 2);
+                grown.set(this.coords);
+                this.coords = grown;
+            }
+            slot = this.size++;
+        }
+        this.coords.set(values, slot * this.stride);
+        this.slots.set(id, slot);
+    };
+
+    PackedBuffer.prototype.remove = function (id) {
+        var slot = this.slots.get(id);
+        if (slot === undefined) {
+            return;
+        }
+        this.slots.delete(id);
+        this.coords[slot * this.stride] = NaN;
+        this.free.push(slot);
+    };
+
+    PackedBuffer.prototype.clear = function () {
+        this.coords = new Float64Array(1024 * this.stride);
+        this.size = 0;
+        this.slots = new Map();
+        this.free = [];
+    };
+
+    var nodes = new PackedBuffer(2);
+    var links = new PackedBuffer(4);
+    // Highlighted elements by colour, in the order the colours were first used; they have no ids, only coordinates
+    var highlights = [];
+    var highlightsByColor = {};
+
+    function highlightGroup(color) {
+        var group = highlightsByColor[color];
+        if (!group) {
+            group = {color: color, nodes: new PackedBuffer(2), links: new PackedBuffer(4)};
+            highlightsByColor[color] = group;
+            highlights.push(group);
+        }
+        return group;
+    }
+
+    function drawNetwork(extent, resolution, pixelRatio, size) {
+        var canvas = document.createElement('canvas');
+        canvas.width = size[0];
+        canvas.height = size[1];
+        var context = canvas.getContext('2d');
+        drawElements(context, extent, resolution, pixelRatio, nodes, links, LINK_COLOR, NODE_COLOR, 1);
+        for (var h = 0; h < highlights.length; h++) {
+            var group = highlights[h];
+            drawElements(context, extent, resolution, pixelRatio, group.nodes, group.links, group.color, group.color, 2);
+        }
+        return canvas;
+    }
+
+    function drawElements(context, extent, resolution, pixelRatio, nodes, links, linkColor, nodeColor, lineWidth) {
+        var scale = pixelRatio / resolution;
+        var minX = extent[0], minY = extent[1], maxX = extent[2], maxY = extent[3];
+
+        var c = links.coords;
+        var end = links.size * 4;
+        context.beginPath();
+        for (var i = 0; i < end; i += 4) {
+            var x1 = c[i], y1 = c[i + 1], x2 = c[i + 2], y2 = c[i + 3];
+            // Removed links are NaN, links lying completely on one side of the extent are not visible
+            if (x1 !== x1 || (x1 < minX && x2 < minX) || (x1 > maxX && x2 > maxX)
+                || (y1 < minY && y2 < minY) || (y1 > maxY && y2 > maxY)) {
+                continue;
+            }
+            context.moveTo((x1 - minX) * scale, (maxY - y1) * scale);
+            context.lineTo((x2 - minX) * scale, (maxY - y2) * scale);
+        }
+        context.strokeStyle = linkColor;
+        context.lineWidth = lineWidth * pixelRatio;
+        context.stroke();
+
+        c = nodes.coords;
+        end = nodes.size * 2;
+        var radius = NODE_RADIUS * pixelRatio;
+        context.beginPath();
+        for (var j = 0; j < end; j += 2) {
+            var x = c[j], y = c[j + 1];
+            if (x !== x || x < minX || x > maxX || y < minY || y > maxY) {
+                continue;
+            }
+            var px = (x - minX) * scale, py = (maxY - y) * scale;
+            context.moveTo(px + radius, py);
+            context.arc(px, py, radius, 0, 2 * Math.PI);
+        }
+        context.fillStyle = nodeColor;
+        context.fill();
+        context.strokeStyle = '#ffffff';
+        context.lineWidth = pixelRatio;
+        context.stroke();
+    }
+
+    var source = new ol.source.ImageCanvas({
+        canvasFunction: drawNetwork,
+        ratio: 1.5
+    });
+    var layer = new ol.layer.Image({
+        source: source
+    });
+    // An unmanaged layer stays on top of the map when mapjfx replaces its layer group on a change of the map type
+    layer.setMap(map);
+
+    // Double clicks are not passed on to Java by mapjfx; a double click on a node must not zoom the map either
+    map.on('dblclick', function (evt) {
+        var connector = window._networkLayerConnector;
+        if (connector) {
+            var coordinate = projections.cToWGS84(evt.coordinate);
+            // lat/lon reversion
+            if (connector.doubleClickAt(coordinate[1], coordinate[0])) {
+                return false;
+            }
+        }
+    });
+
+    function removeAll(buffer, json) {
+        var ids = JSON.parse(json);
+        for (var i = 0; i < ids.length; i++) {
+            buffer.remove(ids[i]);
+        }
+        source.changed();
+    }
+
+    window.networkLayer = {
+        /**
+         * @param json array of nodes, each one as [id, lon, lat]
+         */
+        addNodes: function (json) {
+            var data = JSON.parse(json);
+            for (var i = 0; i < data.length; i++) {
+                var node = data[i];
+                nodes.add(node[0], projections.cFromWGS84([node[1], node[2]]));
+            }
+            source.changed();
+        },
+
+        /**
+         * @param json array of links, each one as [id, fromLon, fromLat, toLon, toLat]
+         */
+        addLinks: function (json) {
+            var data = JSON.parse(json);
+            for (var i = 0; i < data.length; i++) {
+                var link = data[i];
+                var from = projections.cFromWGS84([link[1], link[2]]);
+                var to = projections.cFromWGS84([link[3], link[4]]);
+                links.add(link[0], [from[0], from[1], to[0], to[1]]);
+            }
+            source.changed();
+        },
+
+        /**
+         * @param json array of node ids
+         */
+        removeNodes: function (json) {
+            removeAll(nodes, json);
+        },
+
+        /**
+         * @param json array of link ids
+         */
+        removeLinks: function (json) {
+            removeAll(links, json);
+        },
+
+        /**
+         * @param color CSS colour of the highlighted nodes
+         * @param json array of nodes, each one as [lon, lat]
+         */
+        highlightNodes: function (color, json) {
+            var data = JSON.parse(json);
+            var group = highlightGroup(color);
+            for (var i = 0; i < data.length; i++) {
+                group.nodes.add(group.nodes.size, projections.cFromWGS84(data[i]));
+            }
+            source.changed();
+        },
+
+        /**
+         * @param color CSS colour of the highlighted links
+         * @param json array of links, each one as [fromLon, fromLat, toLon, toLat]
+         */
+        highlightLinks: function (color, json) {
+            var data = JSON.parse(json);
+            var group = highlightGroup(color);
+            for (var i = 0; i < data.length; i++) {
+                var link = data[i];
+                var from = projections.cFromWGS84([link[0], link[1]]);
+                var to = projections.cFromWGS84([link[2], link[3]]);
+                group.links.add(group.links.size, [from[0], from[1], to[0], to[1]]);
+            }
+            source.changed();
+        },
+
+        /**
+         * @param color CSS colour of the highlighted elements to remove
+         */
+        clearHighlight: function (color) {
+            var group = highlightsByColor[color];
+            if (group) {
+                delete highlightsByColor[color];
+                highlights.splice(highlights.indexOf(group), 1);
+                source.changed();
+            }
+        },
+
+        clearHighlights: function () {
+            highlights = [];
+            highlightsByColor = {};
+            source.changed();
+        },
+
+        clear: function () {
+            nodes.clear();
+            links.clear();
+            highlights = [];
+            highlightsByColor = {};
+            source.changed();
+        }
+    };
+})();